@@ -3,6 +3,7 @@ package graphics.cinnabar.loader.services;
 import com.electronwill.nightconfig.core.CommentedConfig;
 import com.mojang.logging.LogUtils;
 import graphics.cinnabar.loader.earlywindow.GLFWClassloadHelper;
+import graphics.cinnabar.loader.earlywindow.StartupTrace;
 import graphics.cinnabar.loader.earlywindow.VulkanStartup;
 import graphics.cinnabar.loader.earlywindow.vulkan.BasicSwapchain;
 import graphics.cinnabar.loader.earlywindow.vulkan.VulkanDebug;
@@ -66,7 +67,11 @@ public class CinnabarEarlyWindowProvider implements ImmediateWindowProvider {
         if (nameQueried || configInjected) {
             return;
         }
-        if (!glfwInit()) {
+        final boolean glfwInitialized;
+        try (final var _ = StartupTrace.phase("glfwInit")) {
+            glfwInitialized = glfwInit();
+        }
+        if (!glfwInitialized) {
             final var msg = """
                     Unrecoverable error
                     Unable to initialize graphics system
@@ -165,7 +170,9 @@ public class CinnabarEarlyWindowProvider implements ImmediateWindowProvider {
         }
         
         glfwWindowHint(GLFW_CLIENT_API, GLFW_NO_API);
-        window = glfwCreateWindow(winWidth, winHeight, "Cinnabar Early Loading", 0, 0);
+        try (final var _ = StartupTrace.phase("Early window GLFW window")) {
+            window = glfwCreateWindow(winWidth, winHeight, "Cinnabar Early Loading", 0, 0);
+        }
         
         if (this.maximized) {
             glfwMaximizeWindow(window);
@@ -173,17 +180,20 @@ public class CinnabarEarlyWindowProvider implements ImmediateWindowProvider {
         try (final var stack = MemoryStack.stackPush()) {
             
             final var debugCreateInfo = VulkanDebug.getCreateInfo(stack, new VulkanDebug.MessageSeverity[]{VulkanDebug.MessageSeverity.ERROR, VulkanDebug.MessageSeverity.WARNING, VulkanDebug.MessageSeverity.INFO}, new VulkanDebug.MessageType[]{VulkanDebug.MessageType.GENERAL, VulkanDebug.MessageType.VALIDATION});
-            instance = VulkanStartup.createVkInstance(!FMLLoader.getCurrent().isProduction(), false, debugCreateInfo);
-            device = VulkanStartup.createLogicalDeviceAndQueues(instance.instance(), VulkanStartup.selectPhysicalDevice(instance.instance(), false, -1, instance.enabledInsanceExtensions()), instance.enabledInsanceExtensions());
+            try (final var _ = StartupTrace.phase("Early window Vulkan instance")) {
+                instance = VulkanStartup.createVkInstance(!FMLLoader.getCurrent().isProduction(), false, debugCreateInfo);
+            }
+            try (final var _ = StartupTrace.phase("Early window Vulkan device")) {
+                device = VulkanStartup.createLogicalDeviceAndQueues(instance.instance(), VulkanStartup.selectPhysicalDevice(instance.instance(), false, -1, instance.enabledInsanceExtensions()), instance.enabledInsanceExtensions());
+            }
             
-            try (final var __ = stack.push()) {
+            try (final var __ = stack.push(); final var _ = StartupTrace.phase("Early window swapchain")) {
                 final var surfacePtr = stack.longs(0);
                 GLFWClassloadHelper.glfwExtCreateWindowSurface(instance.instance(), window, null, surfacePtr);
                 surface = surfacePtr.get(0);
+                swapchain = new BasicSwapchain(device, surface, 0);
             }
             
-            swapchain = new BasicSwapchain(device, surface, 0);
-            
             final var createInfo = VkCommandPoolCreateInfo.calloc(stack).sType$Default();
             createInfo.flags(VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT);
             createInfo.queueFamilyIndex(device.queues().getFirst().queueFamily());
@@ -260,22 +270,24 @@ public class CinnabarEarlyWindowProvider implements ImmediateWindowProvider {
     
     @Override
     public long takeOverGlfwWindow() {
-        windowTick.cancel(false);
-        renderScheduler.shutdown();
-        try {
-            renderScheduler.awaitTermination(30, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-        try (final var stack = MemoryStack.stackPush()) {
-            vkFreeCommandBuffers(device.device(), commandPool, stack.pointers(commandBuffer));
+        try (final var _ = StartupTrace.phase("Early window teardown")) {
+            windowTick.cancel(false);
+            renderScheduler.shutdown();
+            try {
+                renderScheduler.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            try (final var stack = MemoryStack.stackPush()) {
+                vkFreeCommandBuffers(device.device(), commandPool, stack.pointers(commandBuffer));
+            }
+            vkDestroyCommandPool(device.device(), commandPool, null);
+            swapchain.destroy();
+            vkDestroySurfaceKHR(instance.instance(), surface, null);
+            device.destroy();
+            instance.destroy();
+            return window;
         }
-        vkDestroyCommandPool(device.device(), commandPool, null);
-        swapchain.destroy();
-        vkDestroySurfaceKHR(instance.instance(), surface, null);
-        device.destroy();
-        instance.destroy();
-        return window;
     }
     
     @Override
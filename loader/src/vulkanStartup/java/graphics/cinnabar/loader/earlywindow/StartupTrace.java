@@ -0,0 +1,162 @@
+package graphics.cinnabar.loader.earlywindow;
+
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// nested phase timings from JVM start to the first presented frame, to find what actually dominates a cold start
+// phases are chrome trace complete events, nesting comes from their times, so nothing has to be passed around
+// finish() writes the trace (chrome://tracing or ui.perfetto.dev can open it) and logs a one line summary
+// this is in the loader so the early window can use it, the game layer sees the same class
+public final class StartupTrace {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    public static final boolean ENABLED = !"false".equals(System.getProperty("cinnabar.startupTrace"));
+    private static final Path OUTPUT = Path.of(System.getProperty("cinnabar.startupTraceFile", "logs/cinnabar-startup.json"));
+    
+    private static final long BASE_NANOS = System.nanoTime();
+    // nanoTime has no fixed origin, so JVM start is placed using its uptime, once
+    private static final long JVM_UPTIME_AT_BASE_NANOS = TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime());
+    
+    private static final ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<>();
+    private static volatile boolean finished = !ENABLED;
+    
+    private record Event(String name, long threadId, String threadName, long startNanos, long endNanos) {
+        long durationNanos() {
+            return endNanos - startNanos;
+        }
+        
+        boolean contains(Event other) {
+            return threadId == other.threadId && startNanos <= other.startNanos && other.endNanos <= endNanos && this != other;
+        }
+    }
+    
+    private StartupTrace() {
+    }
+    
+    // try (final var _ = StartupTrace.phase("...")) {}, free after the first frame
+    public static Phase phase(String name) {
+        if (finished) {
+            return Phase.NONE;
+        }
+        return new Phase(name, System.nanoTime());
+    }
+    
+    public static final class Phase implements AutoCloseable {
+        private static final Phase NONE = new Phase("", 0);
+        
+        private final String name;
+        private final long startNanos;
+        
+        private Phase(String name, long startNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+        
+        @Override
+        public void close() {
+            if (this == NONE || finished) {
+                return;
+            }
+            final var thread = Thread.currentThread();
+            events.add(new Event(name, thread.threadId(), thread.getName(), startNanos, System.nanoTime()));
+        }
+    }
+    
+    // called on the first presented frame, anything after that isn't startup
+    public static synchronized void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        final var endNanos = System.nanoTime();
+        final var recorded = new ReferenceArrayList<>(events);
+        events.clear();
+        
+        // before anything in Cinnabar runs, the JVM, FML, and mod discovery
+        final var thread = Thread.currentThread();
+        recorded.add(new Event("JVM start to first trace", thread.threadId(), thread.getName(), BASE_NANOS - JVM_UPTIME_AT_BASE_NANOS, BASE_NANOS));
+        
+        final var summary = new StringBuilder();
+        summary.append(String.format("Startup took %.2fs from JVM start to first frame", (endNanos - BASE_NANOS + JVM_UPTIME_AT_BASE_NANOS) / 1e9));
+        final var topLevel = new ReferenceArrayList<Event>();
+        for (final var event : recorded) {
+            boolean nested = false;
+            for (final var other : recorded) {
+                if (other.contains(event)) {
+                    nested = true;
+                    break;
+                }
+            }
+            if (!nested) {
+                topLevel.add(event);
+            }
+        }
+        topLevel.sort(Comparator.comparingLong(Event::durationNanos).reversed());
+        for (int i = 0; i < Math.min(6, topLevel.size()); i++) {
+            final var event = topLevel.get(i);
+            summary.append(i == 0 ? ": " : ", ");
+            summary.append(String.format("%s %dms", event.name, TimeUnit.NANOSECONDS.toMillis(event.durationNanos())));
+        }
+        LOGGER.info(summary.toString());
+        
+        try {
+            if (OUTPUT.getParent() != null) {
+                Files.createDirectories(OUTPUT.getParent());
+            }
+            Files.writeString(OUTPUT, chromeTrace(recorded));
+            LOGGER.info("Startup trace written to {}", OUTPUT.toAbsolutePath());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write startup trace", e);
+        }
+    }
+    
+    private static String chromeTrace(ReferenceArrayList<Event> recorded) {
+        final var json = new StringBuilder();
+        json.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        final var namedThreads = new LongOpenHashSet();
+        for (int i = 0; i < recorded.size(); i++) {
+            final var event = recorded.get(i);
+            if (namedThreads.add(event.threadId)) {
+                json.append("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":").append(event.threadId);
+                json.append(",\"args\":{\"name\":\"").append(escape(event.threadName)).append("\"}},\n");
+            }
+            // microseconds since JVM start
+            json.append("{\"ph\":\"X\",\"pid\":1,\"tid\":").append(event.threadId);
+            json.append(",\"name\":\"").append(escape(event.name)).append('"');
+            json.append(",\"ts\":").append((event.startNanos - BASE_NANOS + JVM_UPTIME_AT_BASE_NANOS) / 1000.0);
+            json.append(",\"dur\":").append(event.durationNanos() / 1000.0).append('}');
+            json.append(i == recorded.size() - 1 ? "\n" : ",\n");
+        }
+        json.append("]}\n");
+        return json.toString();
+    }
+    
+    private static String escape(String string) {
+        final var escaped = new StringBuilder(string.length());
+        for (int i = 0; i < string.length(); i++) {
+            final var c = string.charAt(i);
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                default -> {
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.function.Supplier;
 
 import static graphics.cinnabar.loader.earlywindow.GLFWClassloadHelper.glfwExtGetPhysicalDevicePresentationSupport;
+import static org.lwjgl.vulkan.EXTCalibratedTimestamps.VK_EXT_CALIBRATED_TIMESTAMPS_EXTENSION_NAME;
 import static org.lwjgl.vulkan.EXTDebugUtils.*;
 import static org.lwjgl.vulkan.KHRPortabilitySubset.VK_KHR_PORTABILITY_SUBSET_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRSwapchain.VK_KHR_SWAPCHAIN_EXTENSION_NAME;
@@ -60,6 +61,7 @@ import java.util.function.BiConsumer;
 import java.util.function.Predicate;
 
 import static graphics.cinnabar.loader.earlywindow.GLFWClassloadHelper.glfwExtGetPhysicalDevicePresentationSupport;
+import static org.lwjgl.vulkan.EXTCalibratedTimestamps.VK_EXT_CALIBRATED_TIMESTAMPS_EXTENSION_NAME;
 import static org.lwjgl.vulkan.EXTDebugUtils.*;
 import static org.lwjgl.vulkan.EXTLayerSettings.VK_EXT_LAYER_SETTINGS_EXTENSION_NAME;
 import static org.lwjgl.vulkan.EXTLayerSettings.VK_LAYER_SETTING_TYPE_BOOL32_EXT;
@@ -74,6 +76,8 @@ public class VulkanStartup {
     public static class Config {
         public static String mcVersionString = "1.21.99";
         public static String cinnabarVersionString = "0.0.0";
+        // no window and nothing presented, GLFW doesn't need to be initialized (ie: benchmarks on lavapipe)
+        public static boolean offscreen = Boolean.getBoolean("cinnabar.offscreen");
     }
     
     public record Instance(VkInstance instance, long debugCallback, List<String> enabledInsanceExtensions) {
@@ -102,7 +106,9 @@ public class VulkanStartup {
     );
     
     private static final List<Pair<String, List<String>>> optionalDeviceExtensions = List.of(
-            new ObjectObjectImmutablePair<>(VK_KHR_PORTABILITY_SUBSET_EXTENSION_NAME, List.of())
+            new ObjectObjectImmutablePair<>(VK_KHR_PORTABILITY_SUBSET_EXTENSION_NAME, List.of()),
+            // only used for GPU timestamps, see MercuryGpuTimer
+            new ObjectObjectImmutablePair<>(VK_EXT_CALIBRATED_TIMESTAMPS_EXTENSION_NAME, List.of())
     );
     
     private static VkAllocationCallbacks callbacks() {
@@ -136,6 +142,11 @@ public class VulkanStartup {
         return callbacks;
     }
     
+    // offscreen, any queue family will do
+    private static boolean canPresent(VkInstance vkInstance, VkPhysicalDevice physicalDevice, int queueFamily) {
+        return Config.offscreen || glfwExtGetPhysicalDevicePresentationSupport(vkInstance, physicalDevice, queueFamily);
+    }
+    
     public static Instance createVkInstance(boolean validationLayers, @Nullable VkDebugUtilsMessengerCreateInfoEXT debugCreateInfo) {
         
         #if FABRIC
@@ -143,6 +154,11 @@ public class VulkanStartup {
         VulkanStartup.Config.cinnabarVersionString = FabricLoader.getInstance().getModContainer("cinnabar").get().getMetadata().getVersion().getFriendlyString();
         #endif
         
+        try (final var _ = StartupTrace.phase("Vulkan loader")) {
+            // loads the loader's native library, if nothing has yet, so it isn't hidden in the first vk call
+            VK.getFunctionProvider();
+        }
+        
         try (var stack = MemoryStack.stackPush()) {
             final var appInfo = VkApplicationInfo.calloc(stack);
             final var appName = stack.UTF8("Minecraft");
@@ -279,7 +295,7 @@ public class VulkanStartup {
             
             
             @Nullable
-            final var glfwExtensions = GLFWClassloadHelper.glfwGetRequiredInstanceExtensions();
+            final var glfwExtensions = Config.offscreen ? stack.mallocPointer(0) : GLFWClassloadHelper.glfwGetRequiredInstanceExtensions();
             if (glfwExtensions == null) {
                 throw new IllegalStateException("GLFW unable to present VK image");
             }
@@ -409,7 +425,7 @@ public class VulkanStartup {
                 boolean hasDedicatedComputeQueue = false;
                 boolean hasDedicatedTransferQueue = false;
                 for (int j = 0; j < queueFamilyCount; j++) {
-                    if (!glfwExtGetPhysicalDevicePresentationSupport(vkInstance, physicalDevice, 0)) {
+                    if (!canPresent(vkInstance, physicalDevice, 0)) {
                         continue;
                     }
                     int familyUsedQueues = 0;
@@ -418,7 +434,7 @@ public class VulkanStartup {
                     // both graphics and compute queues are implicit transfer queues
                     // graphics queue must also support present (all do in reality)
                     final var graphicsQueueBits = VK_QUEUE_GRAPHICS_BIT | VK_QUEUE_COMPUTE_BIT;
-                    if ((queueFamilyProperties.queueFlags() & graphicsQueueBits) == graphicsQueueBits && glfwExtGetPhysicalDevicePresentationSupport(vkInstance, physicalDevice, j)) {
+                    if ((queueFamilyProperties.queueFlags() & graphicsQueueBits) == graphicsQueueBits && canPresent(vkInstance, physicalDevice, j)) {
                         hasGraphicsQueue = true;
                         familyUsedQueues++;
                     }
@@ -539,7 +555,7 @@ public class VulkanStartup {
                 queueFamilyProperties2.position(0);
                 vkGetPhysicalDeviceQueueFamilyProperties2(vkPhysicalDevice, queueFamilyCountPtr, queueFamilyProperties2);
                 for (int j = 0; j < queueFamilyCount; j++) {
-                    if (!glfwExtGetPhysicalDevicePresentationSupport(vkInstance, vkPhysicalDevice, j)) {
+                    if (!canPresent(vkInstance, vkPhysicalDevice, j)) {
                         continue;
                     }
                     int familyUsedQueues = 0;
@@ -549,7 +565,7 @@ public class VulkanStartup {
                     // both graphics and compute queues are implicit transfer queues
                     // graphics queue must also support present (all do in reality)
                     final var graphicsQueueBits = VK_QUEUE_GRAPHICS_BIT | VK_QUEUE_COMPUTE_BIT;
-                    if (graphicsQueueFamily == -1 && (queueFamilyProperties.queueFlags() & graphicsQueueBits) == graphicsQueueBits && glfwExtGetPhysicalDevicePresentationSupport(vkInstance, vkPhysicalDevice, j)) {
+                    if (graphicsQueueFamily == -1 && (queueFamilyProperties.queueFlags() & graphicsQueueBits) == graphicsQueueBits && canPresent(vkInstance, vkPhysicalDevice, j)) {
                         graphicsQueueFamily = j;
                         familyUsedQueues++;
                     }
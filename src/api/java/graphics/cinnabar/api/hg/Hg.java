@@ -9,6 +9,7 @@ public class Hg {
     private static final VarHandle traceLoggingFieldHandle;
     private static final VarHandle debugLoggingFieldHandle;
     private static final MethodHandle createMethodHandle;
+    private static final MethodHandle createHeadlessMethodHandle;
     
     static {
         try {
@@ -19,6 +20,9 @@ public class Hg {
             
             final var mercuryClass = classLoader.loadClass("graphics.cinnabar.core.mercury.Mercury");
             createMethodHandle = MethodHandles.lookup().findStatic(mercuryClass, "createDevice", MethodType.methodType(HgDevice.class, HgDevice.CreateInfo.class));
+            
+            final var headlessClass = classLoader.loadClass("graphics.cinnabar.core.headless.Headless");
+            createHeadlessMethodHandle = MethodHandles.lookup().findStatic(headlessClass, "createDevice", MethodType.methodType(HgDevice.class));
         } catch (NoSuchMethodException | IllegalAccessException | ClassNotFoundException | NoSuchFieldException e) {
             throw new RuntimeException(e);
         }
@@ -49,4 +53,15 @@ public class Hg {
             throw new RuntimeException(e);
         }
     }
+    
+    // CPU only device, for benchmarking the layers above Hg without a GPU
+    public static HgDevice createHeadlessDevice() {
+        try {
+            return (HgDevice) createHeadlessMethodHandle.invoke();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
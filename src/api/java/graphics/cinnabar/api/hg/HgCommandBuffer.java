@@ -11,7 +11,24 @@ import java.util.List;
 @ApiStatus.NonExtendable
 @ThreadSafety.VulkanObjectHandle(note = "must sync with pool")
 public interface HgCommandBuffer extends HgObject<HgCommandBuffer> {
-
+    
+    // coarse grouping of the commands below, for HgDevice.commandCount
+    enum Command {
+        DEBUG_GROUP,
+        BARRIER,
+        COPY,
+        CLEAR,
+        BLIT,
+        RENDER_PASS,
+        DYNAMIC_STATE,
+        BIND_PIPELINE,
+        BIND_UNIFORM_SET,
+        BIND_VERTEX_BUFFER,
+        BIND_INDEX_BUFFER,
+        DRAW,
+        DRAW_INDIRECT,
+    }
+    
     HgCommandBuffer begin();
     
     HgCommandBuffer end();
@@ -65,6 +82,9 @@ public interface HgCommandBuffer extends HgObject<HgCommandBuffer> {
     
     HgCommandBuffer bindUniformSet(int index, HgUniformSet uniformSet);
     
+    // dynamic offsets are in the same order as the UNIFORM_BUFFER_DYNAMIC bindings in the set's layout
+    HgCommandBuffer bindUniformSet(int index, HgUniformSet uniformSet, IntList dynamicOffsets);
+    
     HgCommandBuffer bindVertexBuffer(int index, HgBuffer.Slice buffer);
     
     HgCommandBuffer bindIndexBuffer(HgBuffer.Slice buffer, int type);
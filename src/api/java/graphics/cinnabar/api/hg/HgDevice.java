@@ -24,12 +24,12 @@ public interface HgDevice extends HgObject<HgDevice> {
     default HgDevice device() {
         return this;
     }
-
+    
     interface AllocFailedCallback {
         @ThreadSafety.Many
         boolean allocFailed(boolean deviceLocal, long allocSize);
     }
-
+    
     @ThreadSafety.Any(lockGroups = "bufferCreate")
     void setAllocFailedCallback(@Nullable AllocFailedCallback callback);
     
@@ -38,14 +38,14 @@ public interface HgDevice extends HgObject<HgDevice> {
     
     @ThreadSafety.Many
     HgQueue queue(HgQueue.Type queueType);
-
+    
     @ThreadSafety.Many(lockGroups = "bufferCreate")
     HgBuffer createBuffer(HgBuffer.MemoryRequest request, long size, long usage);
-
+    
     @Nullable
     @ThreadSafety.Many(lockGroups = "bufferCreate")
     HgBuffer tryCreateBuffer(HgBuffer.MemoryRequest request, long size, long usage);
-
+    
     @ThreadSafety.Many
     HgImage createImage(HgImage.Type type, HgFormat format, int width, int height, int depth, int layers, int mipLevels, long usage, int flags, boolean hostMemory);
     
@@ -108,14 +108,34 @@ public interface HgDevice extends HgObject<HgDevice> {
     
     @ThreadSafety.Any
     void markFame();
-
+    
+    // commands of this kind submitted so far, 0 if the device doesn't count them (Mercury only counts with -Dcinnabar.countCommands=true)
+    @ThreadSafety.Many
+    default long commandCount(HgCommandBuffer.Command command) {
+        return 0;
+    }
+    
+    @ThreadSafety.Many
+    default long submitCount() {
+        return 0;
+    }
+    
     @ThreadSafety.Many
     LongLongImmutablePair hostLocalMemoryStats();
-
+    
     @ThreadSafety.Many
     LongLongImmutablePair deviceLocalMemoryStats();
-
+    
+    // host-visible device-local memory, (0, 0) if the device has none
+    @ThreadSafety.Many
+    LongLongImmutablePair mappableDeviceMemoryStats();
+    
     @Constant
     @ThreadSafety.Many
     boolean UMA();
+    
+    // all of VRAM is host-visible, UMA devices also report true
+    @Constant
+    @ThreadSafety.Many
+    boolean ReBAR();
 }
@@ -4,5 +4,7 @@ public enum HgUniformType {
     COMBINED_IMAGE_SAMPLER,
     UNIFORM_TEXEL_BUFFER,
     UNIFORM_BUFFER,
+    // offset is supplied at bind time, not written to the set
+    UNIFORM_BUFFER_DYNAMIC,
     STORAGE_BUFFER,
 }
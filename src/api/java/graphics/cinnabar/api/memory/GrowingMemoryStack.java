@@ -3,7 +3,7 @@ package graphics.cinnabar.api.memory;
 import graphics.cinnabar.api.annotations.API;
 import graphics.cinnabar.api.exceptions.NotImplemented;
 import graphics.cinnabar.api.util.Destroyable;
-import it.unimi.dsi.fastutil.ints.IntLongMutablePair;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
 import org.lwjgl.system.MemoryStack;
@@ -14,13 +14,15 @@ public class GrowingMemoryStack extends MemoryStack implements Destroyable {
     private static final long STACK_BLOCK_SIZE = 256 * MagicMemorySizes.KiB;
     private final ReferenceArrayList<PointerWrapper> stackBlocks = new ReferenceArrayList<>();
     
-    private IntLongMutablePair currentFrame;
-    private final ReferenceArrayList<IntLongMutablePair> frames = new ReferenceArrayList<>();
+    private int currentBlock = 0;
+    private long currentBlockAllocated = 0;
+    // saved frames as parallel primitive stacks, push/pop are on every Mercury command and must not allocate
+    private final IntArrayList frameBlocks = new IntArrayList();
+    private final LongArrayList frameBlocksAllocated = new LongArrayList();
     private final ReferenceArrayList<LongArrayList> frameOverflowAllocs = new ReferenceArrayList<>();
     
     public GrowingMemoryStack() {
         super(null, 1, (int) STACK_BLOCK_SIZE);
-        currentFrame = new IntLongMutablePair(0, 0);
     }
     
     @Override
@@ -30,24 +32,27 @@ public class GrowingMemoryStack extends MemoryStack implements Destroyable {
     }
     
     public void reset() {
-        currentFrame = new IntLongMutablePair(0, 0);
-        frames.clear();
+        currentBlock = 0;
+        currentBlockAllocated = 0;
+        frameBlocks.clear();
+        frameBlocksAllocated.clear();
         stackBlocks.forEach(PointerWrapper::free);
         stackBlocks.clear();
     }
     
     @Override
     public MemoryStack push() {
-        frames.push(currentFrame);
-        currentFrame = new IntLongMutablePair(currentFrame.leftInt(), currentFrame.rightLong());
+        frameBlocks.push(currentBlock);
+        frameBlocksAllocated.push(currentBlockAllocated);
         return this;
     }
     
     @Override
     public MemoryStack pop() {
-        currentFrame = frames.pop();
-        if (frameOverflowAllocs.size() > frames.size()) {
-            final var overflowAllocs = frameOverflowAllocs.get(frames.size());
+        currentBlock = frameBlocks.popInt();
+        currentBlockAllocated = frameBlocksAllocated.popLong();
+        if (frameOverflowAllocs.size() > frameBlocks.size()) {
+            final var overflowAllocs = frameOverflowAllocs.get(frameBlocks.size());
             if (overflowAllocs != null) {
                 overflowAllocs.forEach(MemoryUtil::nmemFree);
                 overflowAllocs.clear();
@@ -72,18 +77,18 @@ public class GrowingMemoryStack extends MemoryStack implements Destroyable {
     @Override
     public long nmalloc(int alignment, int size) {
         if (size > STACK_BLOCK_SIZE) {
-            if (frameOverflowAllocs.size() < frames.size()) {
-                frameOverflowAllocs.size(frames.size());
+            if (frameOverflowAllocs.size() < frameBlocks.size()) {
+                frameOverflowAllocs.size(frameBlocks.size());
             }
-            if (frameOverflowAllocs.get(frames.size() - 1) == null) {
-                frameOverflowAllocs.set(frames.size() - 1, new LongArrayList());
+            if (frameOverflowAllocs.get(frameBlocks.size() - 1) == null) {
+                frameOverflowAllocs.set(frameBlocks.size() - 1, new LongArrayList());
             }
             final var overflowAlloc = MemoryUtil.nmemAlloc(size);
-            frameOverflowAllocs.get(frames.size() - 1).add(overflowAlloc);
+            frameOverflowAllocs.get(frameBlocks.size() - 1).add(overflowAlloc);
             return overflowAlloc;
         }
-        final var currentStackBlockIndex = currentFrame.leftInt();
-        final var currentStackBlockAllocated = currentFrame.rightLong();
+        final var currentStackBlockIndex = currentBlock;
+        final var currentStackBlockAllocated = currentBlockAllocated;
         while (stackBlocks.size() <= currentStackBlockIndex) {
             stackBlocks.add(PointerWrapper.alloc(STACK_BLOCK_SIZE));
         }
@@ -92,8 +97,8 @@ public class GrowingMemoryStack extends MemoryStack implements Destroyable {
         long allocOffset = allocAddress - stackBlock.pointer();
         // wont fit in this block, get the next one
         if ((allocOffset + size) > STACK_BLOCK_SIZE) {
-            currentFrame.left(currentStackBlockIndex + 1);
-            final var stackBlockIndex = currentFrame.leftInt();
+            currentBlock = currentStackBlockIndex + 1;
+            final var stackBlockIndex = currentBlock;
             // out of blocks, new one
             if (stackBlockIndex == stackBlocks.size()) {
                 stackBlocks.add(PointerWrapper.alloc(STACK_BLOCK_SIZE));
@@ -108,7 +113,7 @@ public class GrowingMemoryStack extends MemoryStack implements Destroyable {
                 throw new IllegalArgumentException("Stack alloc size/alignment is too large");
             }
         }
-        currentFrame.right(allocOffset + size);
+        currentBlockAllocated = allocOffset + size;
         return stackBlock.pointer() + allocOffset;
     }
 }
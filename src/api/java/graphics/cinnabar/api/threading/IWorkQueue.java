@@ -4,8 +4,11 @@ import graphics.cinnabar.api.annotations.API;
 import graphics.cinnabar.api.annotations.Internal;
 import graphics.cinnabar.api.annotations.ThreadSafety;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 @API
 public interface IWorkQueue {
@@ -24,6 +27,26 @@ public interface IWorkQueue {
             """)
     IWorkQueue BACKGROUND_THREADS = Bootstrapper.BACKGROUND_THREADS;
     
+    @API(note = """
+            Same guarantees as BACKGROUND_THREADS, but always scheduled ahead of the other background lanes
+            For work the next frame is going to block on (uploads, pipelines a draw needs), keep it small
+            """)
+    IWorkQueue BACKGROUND_THREADS_FRAME_CRITICAL = Bootstrapper.BACKGROUND_THREADS_FRAME_CRITICAL;
+    
+    @API(note = """
+            Same guarantees as BACKGROUND_THREADS, but only gets a share of the workers when there is normal work waiting
+            For throughput work nothing is waiting on (precompiles, eviction copies, readback conversions)
+            Will not starve, work that has waited too long gets run regardless of lane
+            """)
+    IWorkQueue BACKGROUND_THREADS_BULK = Bootstrapper.BACKGROUND_THREADS_BULK;
+    
+    @API(note = """
+            For work that blocks (file and network I/O), each item runs on its own virtual thread, not on a CPU worker
+            Work is started in order, but may complete out of order, signals wait for all earlier work to complete
+            The ThreadIndex passed is only valid for the duration of that item, a limited number exist, so items beyond that wait to start
+            """)
+    IWorkQueue BACKGROUND_IO = Bootstrapper.BACKGROUND_IO;
+    
     @API(note = """
             Work and callbacks will run from cleanup thread
             May be run immediately, will be run before AFTER_END_OF_CPU_FRAME
@@ -56,22 +79,55 @@ public interface IWorkQueue {
         void accept(ThreadIndex threadIndex);
     }
     
+    @API(note = """
+            Nothing enqueued to this queue after the wait starts until the semaphore reaches the value
+            This includes work enqueued from inside a task of this queue, once that task (or anything it spawned) has waited
+            """)
     void wait(ISemaphore semaphore, long value);
     
+    @API(note = """
+            From inside a task of the same queue, the work is part of that task and may start right away, ahead of anything already enqueued
+            Unless that task (or anything it spawned) has called wait on this queue, then it is enqueued normally, behind the wait
+            """)
     void enqueue(Work work);
     
-    @API(note = "For best performance, use a random access list (ArrayList)")
+    @API(note = """
+            For best performance, use a random access list (ArrayList)
+            Same ordering as enqueue(Work)
+            """)
     void enqueue(List<? extends Work> work);
     
     void signal(ISemaphore semaphore, long value);
     
+    @API
+    enum Priority {
+        FRAME_CRITICAL,
+        NORMAL,
+        BULK,
+    }
+    
+    @API
+    static IWorkQueue backgroundThreads(Priority priority) {
+        return switch (priority) {
+            case FRAME_CRITICAL -> BACKGROUND_THREADS_FRAME_CRITICAL;
+            case NORMAL -> BACKGROUND_THREADS;
+            case BULK -> BACKGROUND_THREADS_BULK;
+        };
+    }
+    
     @Internal
     @SuppressWarnings("DataFlowIssue")
     class Bootstrapper {
         static IWorkQueue MAIN_THREAD = null;
         static IWorkQueue BACKGROUND_CLEANUP = null;
         static IWorkQueue BACKGROUND_THREADS = null;
+        static IWorkQueue BACKGROUND_THREADS_FRAME_CRITICAL = null;
+        static IWorkQueue BACKGROUND_THREADS_BULK = null;
+        static IWorkQueue BACKGROUND_IO = null;
         static IWorkQueue AFTER_END_OF_CPU_FRAME = null;
         static IWorkQueue AFTER_END_OF_GPU_FRAME = null;
+        // runs some queued work the given thread is allowed to run, returns if it ran anything
+        @Nullable
+        static Predicate<ThreadIndex> HELP_WHILE_WAITING = null;
     }
 }
@@ -12,7 +12,8 @@ import java.util.function.Supplier;
  * Thread block ordering is
  * main render thread, always index 0
  * cleaner thread, always index 1
- * background work threads remainder of indices
+ * background work threads
+ * blocking I/O tasks, lent out per task, remainder of indices
  */
 @API
 public record ThreadIndex(@API(note = "will be in range [0, threadCount)") int index) {
@@ -1,66 +1,133 @@
 package graphics.cinnabar.api.threading;
 
-import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
+// lock-free, state is either the stack of continuations waiting on it, or the result once it's done
+// completing swaps the result in and runs whatever continuations it took out, anything added after that sees the result and runs immediately
 public class WorkFuture<T> implements IWorkQueue.Work, Future<T> {
     
-    boolean executed = false;
-    @Nullable
-    private Exception exception;
-    @Nullable
-    private T object;
+    private static final VarHandle STATE_VAR_HANDLE;
+    private static final VarHandle QUEUE_VAR_HANDLE;
+    
+    static {
+        try {
+            final var lookup = MethodHandles.lookup();
+            STATE_VAR_HANDLE = lookup.findVarHandle(WorkFuture.class, "state", Object.class);
+            QUEUE_VAR_HANDLE = lookup.findVarHandle(WorkFuture.class, "queue", IWorkQueue.class);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // a join on a queue thread that found nothing to help with sleeps this long before looking again
+    private static final long IDLE_JOIN_PARK_NANOS = 100_000;
+    
     private final Function<ThreadIndex, @Nullable T> creationFunc;
+    // null, a Continuation, or a Result
     @Nullable
-    private IWorkQueue queue;
-    @Nullable
-    private BiConsumer<WorkFuture<T>, ThreadIndex> onCompleteSingle;
+    @SuppressWarnings("unused")
+    private Object state;
     @Nullable
-    private List<BiConsumer<WorkFuture<T>, ThreadIndex>> onCompleteMultiple;
+    @SuppressWarnings("unused")
+    private IWorkQueue queue;
     
     public WorkFuture(Function<ThreadIndex, @Nullable T> creationFunc) {
         this.creationFunc = creationFunc;
     }
     
+    // for futures that are completed by something other than running them
+    private WorkFuture() {
+        this(_ -> {
+            throw new IllegalStateException("WorkFuture can only be completed externally");
+        });
+    }
+    
+    public static <T> WorkFuture<T> completed(@Nullable T value) {
+        final var future = new WorkFuture<T>();
+        future.complete(new Result(value, null), ThreadIndex.currentThreadIndex());
+        return future;
+    }
+    
     public final WorkFuture<T> enqueue(IWorkQueue queue) {
-        if (this.queue != null) {
-            return this;
+        if (markQueued(queue)) {
+            queue.enqueue(this);
         }
-        queue.enqueue(this);
-        this.queue = queue;
         return this;
     }
     
+    // for callers that enqueue it themselves, (batched), returns false if it was already queued
+    boolean markQueued(IWorkQueue queue) {
+        return QUEUE_VAR_HANDLE.compareAndSet(this, (IWorkQueue) null, queue);
+    }
+    
     @Override
     public final void accept(ThreadIndex threadIndex) {
+        @Nullable T value = null;
+        @Nullable Exception exception = null;
         try {
-            object = creationFunc.apply(threadIndex);
+            value = creationFunc.apply(threadIndex);
         } catch (Exception e) {
             exception = e;
         }
-        synchronized (this) {
-            executed = true;
-            notifyAll();
-        }
-        if (onCompleteMultiple != null) {
-            for (final var consumer : onCompleteMultiple) {
-                consumer.accept(this, threadIndex);
+        complete(new Result(value, exception), threadIndex);
+    }
+    
+    private boolean complete(Result result, ThreadIndex threadIndex) {
+        Object current;
+        do {
+            current = STATE_VAR_HANDLE.getAcquire(this);
+            if (current instanceof Result) {
+                return false;
             }
-        } else if (onCompleteSingle != null) {
-            onCompleteSingle.accept(this, threadIndex);
+        } while (!STATE_VAR_HANDLE.compareAndSet(this, current, result));
+        // pushed as a stack, flip it so callbacks run in the order they were added
+        @Nullable Continuation reversed = null;
+        for (var continuation = (Continuation) current; continuation != null; continuation = continuation.next) {
+            reversed = new Continuation(continuation.callback, reversed);
         }
-        onCompleteMultiple = null;
-        onCompleteSingle = null;
+        for (var continuation = reversed; continuation != null; continuation = continuation.next) {
+            //noinspection unchecked
+            ((BiConsumer<WorkFuture<T>, ThreadIndex>) continuation.callback).accept(this, threadIndex);
+        }
+        return true;
+    }
+    
+    boolean fail(Exception exception, ThreadIndex threadIndex) {
+        return complete(new Result(null, exception), threadIndex);
+    }
+    
+    private void completeFrom(WorkFuture<?> other, ThreadIndex threadIndex) {
+        complete((Result) STATE_VAR_HANDLE.getAcquire(other), threadIndex);
+    }
+    
+    @Nullable
+    private Result result() {
+        return STATE_VAR_HANDLE.getAcquire(this) instanceof Result result ? result : null;
+    }
+    
+    // only valid once done
+    @Nullable
+    Exception failure() {
+        return Objects.requireNonNull(result()).exception;
+    }
+    
+    @Nullable
+    private T value() {
+        //noinspection unchecked
+        return (T) Objects.requireNonNull(result()).value;
     }
     
     @Override
@@ -75,7 +142,7 @@ public class WorkFuture<T> implements IWorkQueue.Work, Future<T> {
     
     @Override
     public boolean isDone() {
-        return executed;
+        return result() != null;
     }
     
     public T getNotNull() {
@@ -94,63 +161,132 @@ public class WorkFuture<T> implements IWorkQueue.Work, Future<T> {
     @Override
     @Nullable
     public T get() throws InterruptedException, ExecutionException {
-        if (!isDone()) {
-            synchronized (this) {
-                if (!isDone()) {
-                    // TODO: this can deadlock if waiting on the only thread able to execute this future
-                    wait();
-                }
-            }
-        }
-        if (exception != null) {
-            throw new ExecutionException(exception);
-        }
-        return object;
+        awaitDone(false, 0);
+        return report();
     }
     
     @Override
     @Nullable
     public T get(long timeout, @NotNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        if (!isDone()) {
-            synchronized (this) {
-                if (!isDone()) {
-                    wait(unit.toMillis(timeout));
-                }
-                if (!isDone()) {
-                    throw new TimeoutException();
-                }
-            }
+        if (!awaitDone(true, System.nanoTime() + unit.toNanos(timeout))) {
+            throw new TimeoutException();
         }
+        return report();
+    }
+    
+    @Nullable
+    private T report() throws ExecutionException {
+        @Nullable
+        final var exception = failure();
         if (exception != null) {
             throw new ExecutionException(exception);
         }
-        return object;
+        return value();
     }
     
-    public synchronized void onCompleteCallback(BiConsumer<WorkFuture<T>, ThreadIndex> callback) {
-        if (onCompleteSingle == null) {
-            onCompleteSingle = callback;
-            return;
+    // helping join, a queue system thread runs other queued work while it waits, instead of blocking
+    // that is also what keeps a worker waiting on work queued behind it from deadlocking, it'll end up running it itself
+    private boolean awaitDone(boolean timed, long deadline) throws InterruptedException {
+        if (isDone()) {
+            return true;
         }
-        
-        if (onCompleteMultiple == null) {
-            onCompleteMultiple = new ReferenceArrayList<>(2);
-            onCompleteMultiple.add(onCompleteSingle);
+        final var threadIndex = ThreadIndex.currentThreadIndex();
+        @Nullable
+        final var helper = IWorkQueue.Bootstrapper.HELP_WHILE_WAITING;
+        boolean unparkRegistered = false;
+        while (!isDone()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            final var remaining = timed ? deadline - System.nanoTime() : Long.MAX_VALUE;
+            if (remaining <= 0) {
+                return false;
+            }
+            if (helper != null && threadIndex.valid() && helper.test(threadIndex)) {
+                continue;
+            }
+            if (!unparkRegistered) {
+                final var thread = Thread.currentThread();
+                onCompleteCallback((_, _) -> LockSupport.unpark(thread));
+                unparkRegistered = true;
+                continue;
+            }
+            // threads outside the queue system can't help, so just sleep until it's done
+            LockSupport.parkNanos(this, threadIndex.valid() ? Math.min(IDLE_JOIN_PARK_NANOS, remaining) : remaining);
+        }
+        return true;
+    }
+    
+    // runs on whatever thread completes this, or immediately on this thread if already complete
+    public void onCompleteCallback(BiConsumer<WorkFuture<T>, ThreadIndex> callback) {
+        while (true) {
+            final var current = STATE_VAR_HANDLE.getAcquire(this);
+            if (current instanceof Result) {
+                callback.accept(this, ThreadIndex.currentThreadIndex());
+                return;
+            }
+            if (STATE_VAR_HANDLE.compareAndSet(this, current, new Continuation(callback, (Continuation) current))) {
+                return;
+            }
         }
-        
-        onCompleteMultiple.add(callback);
     }
     
     public <R> WorkFuture<R> enqueueWhenFinished(WorkFuture<R> future) {
         onCompleteCallback((a, b) -> {
+            @Nullable
+            final var queue = (IWorkQueue) QUEUE_VAR_HANDLE.getAcquire(this);
             assert queue != null;
             future.enqueue(queue);
         });
         return future;
     }
     
+    // continuations are enqueued onto queue once this completes successfully
+    // if this fails, the continuation fails with the same exception without being run
+    public <R> WorkFuture<R> thenApply(IWorkQueue queue, BiFunction<@Nullable T, ThreadIndex, @Nullable R> func) {
+        final var next = new WorkFuture<R>(threadIndex -> func.apply(value(), threadIndex));
+        onCompleteCallback((self, threadIndex) -> {
+            @Nullable
+            final var exception = self.failure();
+            if (exception != null) {
+                next.fail(exception, threadIndex);
+            } else {
+                next.enqueue(queue);
+            }
+        });
+        return next;
+    }
+    
+    public WorkFuture<@Nullable Void> thenRun(IWorkQueue queue, IWorkQueue.Work work) {
+        return thenApply(queue, (_, threadIndex) -> {
+            work.accept(threadIndex);
+            return null;
+        });
+    }
+    
+    // func runs on queue, and the returned future completes when the future func returned does
+    public <R> WorkFuture<R> thenCompose(IWorkQueue queue, BiFunction<@Nullable T, ThreadIndex, WorkFuture<R>> func) {
+        final var composed = new WorkFuture<R>();
+        thenApply(queue, func).onCompleteCallback((stage, threadIndex) -> {
+            @Nullable
+            final var exception = stage.failure();
+            if (exception != null) {
+                composed.fail(exception, threadIndex);
+                return;
+            }
+            Objects.requireNonNull(stage.value()).onCompleteCallback((inner, innerThreadIndex) -> composed.completeFrom(inner, innerThreadIndex));
+        });
+        return composed;
+    }
+    
     public static <R, T extends R> WorkFuture<R> cast(WorkFuture<T> other) {
         //noinspection unchecked
         return (WorkFuture<R>) other;
     }
+    
+    private record Result(@Nullable Object value, @Nullable Exception exception) {
+    }
+    
+    private record Continuation(BiConsumer<?, ThreadIndex> callback, @Nullable Continuation next) {
+    }
 }
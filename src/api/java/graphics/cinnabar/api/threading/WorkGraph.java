@@ -0,0 +1,97 @@
+package graphics.cinnabar.api.threading;
+
+import graphics.cinnabar.api.annotations.API;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// a set of dependent tasks, submitted together
+// nothing starts until submit, after that each task is enqueued onto its queue as soon as everything it depends on is done
+// a task whose dependency failed fails with the same exception without being run
+@API
+public final class WorkGraph {
+    
+    private final ReferenceArrayList<Node<?>> nodes = new ReferenceArrayList<>();
+    private boolean submitted = false;
+    
+    // dependencies can be from this graph (added before this) or any other future
+    @API
+    public <T> WorkFuture<T> add(IWorkQueue queue, Function<ThreadIndex, @Nullable T> func, WorkFuture<?>... dependencies) {
+        if (submitted) {
+            throw new IllegalStateException("Cannot add to an already submitted WorkGraph");
+        }
+        final var node = new Node<>(new WorkFuture<>(func), queue, dependencies);
+        nodes.add(node);
+        return node.future;
+    }
+    
+    @API
+    public WorkFuture<@Nullable Void> run(IWorkQueue queue, IWorkQueue.Work work, WorkFuture<?>... dependencies) {
+        return add(queue, threadIndex -> {
+            work.accept(threadIndex);
+            return null;
+        }, dependencies);
+    }
+    
+    @API
+    public void submit() {
+        if (submitted) {
+            throw new IllegalStateException("WorkGraph already submitted");
+        }
+        submitted = true;
+        for (int i = 0; i < nodes.size(); i++) {
+            final var node = nodes.get(i);
+            for (final var dependency : node.dependencies) {
+                dependency.onCompleteCallback((_, threadIndex) -> node.dependencyDone(threadIndex));
+            }
+        }
+        // each node holds one extra count until here, so everything that's ready now goes out batched per queue
+        final var batches = new Reference2ReferenceLinkedOpenHashMap<IWorkQueue, ReferenceArrayList<IWorkQueue.Work>>();
+        final var threadIndex = ThreadIndex.currentThreadIndex();
+        for (int i = 0; i < nodes.size(); i++) {
+            final var node = nodes.get(i);
+            if (node.remaining.decrementAndGet() == 0 && node.failIfDependencyFailed(threadIndex) && node.future.markQueued(node.queue)) {
+                batches.computeIfAbsent(node.queue, _ -> new ReferenceArrayList<>()).add(node.future);
+            }
+        }
+        for (final var batch : batches.reference2ReferenceEntrySet()) {
+            batch.getKey().enqueue(batch.getValue());
+        }
+    }
+    
+    private static final class Node<T> {
+        private final WorkFuture<T> future;
+        private final IWorkQueue queue;
+        private final WorkFuture<?>[] dependencies;
+        private final AtomicInteger remaining;
+        
+        private Node(WorkFuture<T> future, IWorkQueue queue, WorkFuture<?>[] dependencies) {
+            this.future = future;
+            this.queue = queue;
+            this.dependencies = dependencies.clone();
+            remaining = new AtomicInteger(dependencies.length + 1);
+        }
+        
+        private void dependencyDone(ThreadIndex threadIndex) {
+            if (remaining.decrementAndGet() == 0 && failIfDependencyFailed(threadIndex)) {
+                future.enqueue(queue);
+            }
+        }
+        
+        // returns if the node should run
+        private boolean failIfDependencyFailed(ThreadIndex threadIndex) {
+            for (final var dependency : dependencies) {
+                @Nullable
+                final var exception = dependency.failure();
+                if (exception != null) {
+                    future.fail(exception, threadIndex);
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
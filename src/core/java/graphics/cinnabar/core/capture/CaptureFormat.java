@@ -0,0 +1,138 @@
+package graphics.cinnabar.core.capture;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// .hg3dcap files, a raw MAGIC and VERSION, then everything else deflated
+// body is the renderer it was captured on, the uniform alignment, frame count, the snapshot table, then the command stream
+// the table is objects from before the capture, with their contents as of the start of it, the stream is every call, in order
+// object ids are one space for everything, -1 is null, enums are written by name so captures survive enum reorders between versions
+final class CaptureFormat {
+    
+    static final int MAGIC = 0x48673343;
+    static final int VERSION = 1;
+    static final String EXTENSION = ".hg3dcap";
+    
+    enum Op {
+        // snapshot table only
+        // id, label, usage, size, contents
+        SNAPSHOT_BUFFER,
+        // id, label, usage, format, width, height, depthOrLayers, mipLevels, then contents for each mip of each layer, empty if not captured
+        SNAPSHOT_TEXTURE,
+        END_OF_TABLE,
+        
+        // device
+        // id, label, usage, size, has data, (contents)
+        CREATE_BUFFER,
+        // id, label, usage, format, width, height, depthOrLayers, mipLevels
+        CREATE_TEXTURE,
+        // id, texture id, base mip, mip levels
+        CREATE_TEXTURE_VIEW,
+        // id, address U, address V, min filter, mag filter, max anisotropy, has max LOD, (max LOD)
+        CREATE_SAMPLER,
+        // id, pipeline description, see CaptureRecorder.pipeline
+        PIPELINE,
+        // id, noticed at the end of the frame, so replays close it a little later than the game did
+        CLOSE,
+        END_FRAME,
+        
+        // command encoder
+        // texture id, color
+        CLEAR_COLOR,
+        // color texture id, color, depth texture id, depth
+        CLEAR_COLOR_DEPTH,
+        // color texture id, color, depth texture id, depth, x, y, width, height
+        CLEAR_COLOR_DEPTH_REGION,
+        // texture id, depth
+        CLEAR_DEPTH,
+        // buffer id, offset, contents
+        WRITE_BUFFER,
+        // buffer id, offset, contents, written when the mapping is closed
+        MAP_WRITE,
+        // source buffer id, offset, length, destination buffer id, offset, length
+        COPY_BUFFER,
+        // texture id, mip, layer, x, y, width, height, contents, tightly packed
+        WRITE_TEXTURE,
+        // texture id, buffer id, offset, mip, x, y, width, height
+        COPY_TEXTURE_TO_BUFFER,
+        // source texture id, destination texture id, mip, x, y, source x, source y, width, height
+        COPY_TEXTURE_TO_TEXTURE,
+        // view id
+        PRESENT,
+        // fence id
+        CREATE_FENCE,
+        // fence id, timeout
+        AWAIT_FENCE,
+        
+        // render pass
+        // label, color view id, has clear color, (color), depth view id, has clear depth, (depth)
+        BEGIN_RENDER_PASS,
+        END_RENDER_PASS,
+        // label
+        PUSH_DEBUG_GROUP,
+        POP_DEBUG_GROUP,
+        // pipeline id
+        SET_PIPELINE,
+        // name, view id, sampler id
+        BIND_TEXTURE,
+        // name, buffer id, offset, length
+        SET_UNIFORM,
+        // x, y, width, height
+        ENABLE_SCISSOR,
+        DISABLE_SCISSOR,
+        // slot, buffer id
+        SET_VERTEX_BUFFER,
+        // buffer id, index type
+        SET_INDEX_BUFFER,
+        // first vertex, vertex count
+        DRAW,
+        // base vertex, first index, index count, instance count
+        DRAW_INDEXED,
+        // default index buffer id, default index type, dynamic uniform names, draw count
+        // then per draw, slot, vertex buffer id, index buffer id, index type, first index, index count, base vertex, uniform count, uniforms (name, buffer id, offset, length)
+        // null index types are written as an empty string
+        DRAW_MULTIPLE_INDEXED,
+        ;
+        
+        private static final Op[] VALUES = values();
+        
+        static Op read(DataInput in) throws IOException {
+            return VALUES[in.readUnsignedByte()];
+        }
+        
+        void write(DataOutput out) throws IOException {
+            out.writeByte(ordinal());
+        }
+    }
+    
+    private CaptureFormat() {
+    }
+    
+    // writeUTF caps out at 64k, which shader sources can go past
+    static void writeString(DataOutput out, String string) throws IOException {
+        final var bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    static String readString(DataInput in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+    
+    // doesn't move the buffer's position
+    static void writeBytes(DataOutput out, ByteBuffer data) throws IOException {
+        final var bytes = new byte[data.remaining()];
+        data.get(data.position(), bytes);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    static byte[] readBytes(DataInput in) throws IOException {
+        final var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
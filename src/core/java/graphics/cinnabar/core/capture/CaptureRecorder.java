@@ -0,0 +1,445 @@
+package graphics.cinnabar.core.capture;
+
+import com.mojang.blaze3d.buffers.GpuBuffer;
+import com.mojang.blaze3d.buffers.GpuFence;
+import com.mojang.blaze3d.pipeline.RenderPipeline;
+import com.mojang.blaze3d.textures.GpuSampler;
+import com.mojang.blaze3d.textures.GpuTexture;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import graphics.cinnabar.api.hg.HgBuffer;
+import graphics.cinnabar.api.hg.HgCommandBuffer;
+import graphics.cinnabar.api.threading.IWorkQueue;
+import graphics.cinnabar.core.hg3d.Hg3DGpuBuffer;
+import graphics.cinnabar.core.hg3d.Hg3DGpuDevice;
+import graphics.cinnabar.core.hg3d.Hg3DGpuTexture;
+import graphics.cinnabar.lib.threading.WorkQueue;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3i;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static graphics.cinnabar.core.capture.CaptureFormat.writeBytes;
+import static graphics.cinnabar.core.capture.CaptureFormat.writeString;
+import static graphics.cinnabar.core.hg3d.Hg3D.HG3D_LOG;
+import static org.lwjgl.vulkan.VK10.VK_BUFFER_USAGE_TRANSFER_DST_BIT;
+
+// one capture, from the frame boundary it started on to the one after its last frame
+// anything created during the capture is recorded as its created, anything older gets an id and a snapshot the first time its used
+// snapshots are copies in a command buffer put ahead of everything recorded since the last endCommandBuffers
+// nothing the capture recorded so far touched the object (or it would have an id), so that's the state it had when the capture started
+class CaptureRecorder {
+    
+    interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+    
+    private record BufferSnapshot(int id, String label, int usage, long size, @Nullable HgBuffer staging) {
+    }
+    
+    // staging holds every mip of every layer, layer major
+    private record TextureSnapshot(GpuTexture texture, int id, @Nullable HgBuffer staging) {
+    }
+    
+    private final Hg3DGpuDevice device;
+    private final Path file;
+    private final int frames;
+    private int framesLeft;
+    private final ByteArrayOutputStream streamBytes = new ByteArrayOutputStream();
+    private final DataOutputStream stream = new DataOutputStream(streamBytes);
+    private final Reference2IntOpenHashMap<Object> ids = new Reference2IntOpenHashMap<>();
+    private int nextId = 0;
+    // buffers, textures, and views, checked for being closed at the end of every frame
+    private final ReferenceArrayList<Object> closeable = new ReferenceArrayList<>();
+    private final ReferenceArrayList<BufferSnapshot> bufferSnapshots = new ReferenceArrayList<>();
+    private final ReferenceArrayList<TextureSnapshot> textureSnapshots = new ReferenceArrayList<>();
+    @Nullable
+    private HgCommandBuffer snapshotCommandBuffer;
+    
+    CaptureRecorder(Hg3DGpuDevice device, Path file, int frames) {
+        this.device = device;
+        this.file = file;
+        this.frames = frames;
+        framesLeft = frames;
+        ids.defaultReturnValue(-1);
+    }
+    
+    void record(CaptureFormat.Op op, Writer writer) {
+        try {
+            op.write(stream);
+            writer.write(stream);
+        } catch (IOException e) {
+            // ByteArrayOutputStream doesn't throw
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private int newId(Object object) {
+        final var id = nextId++;
+        ids.put(object, id);
+        return id;
+    }
+    
+    // ---------- objects created during the capture ----------
+    
+    void createdBuffer(GpuBuffer buffer, @Nullable String label, int usage, long size, @Nullable ByteBuffer data) {
+        final var id = newId(buffer);
+        closeable.add(buffer);
+        record(CaptureFormat.Op.CREATE_BUFFER, out -> {
+            out.writeInt(id);
+            writeString(out, label != null ? label : "");
+            out.writeInt(usage);
+            out.writeLong(size);
+            out.writeBoolean(data != null);
+            if (data != null) {
+                writeBytes(out, data);
+            }
+        });
+    }
+    
+    void createdTexture(GpuTexture texture) {
+        final var id = newId(texture);
+        closeable.add(texture);
+        record(CaptureFormat.Op.CREATE_TEXTURE, out -> {
+            out.writeInt(id);
+            writeTextureInfo(out, texture);
+        });
+    }
+    
+    void createdView(GpuTextureView view) {
+        // the texture may be older than the capture
+        final var textureId = texture(view.texture());
+        final var id = newId(view);
+        closeable.add(view);
+        record(CaptureFormat.Op.CREATE_TEXTURE_VIEW, out -> {
+            out.writeInt(id);
+            out.writeInt(textureId);
+            out.writeInt(view.baseMipLevel());
+            out.writeInt(view.mipLevels());
+        });
+    }
+    
+    void createdSampler(GpuSampler sampler) {
+        final var id = newId(sampler);
+        record(CaptureFormat.Op.CREATE_SAMPLER, out -> {
+            out.writeInt(id);
+            writeString(out, sampler.getAddressModeU().name());
+            writeString(out, sampler.getAddressModeV().name());
+            writeString(out, sampler.getMinFilter().name());
+            writeString(out, sampler.getMagFilter().name());
+            out.writeInt(sampler.getMaxAnisotropy());
+            out.writeBoolean(sampler.getMaxLod().isPresent());
+            if (sampler.getMaxLod().isPresent()) {
+                out.writeDouble(sampler.getMaxLod().getAsDouble());
+            }
+        });
+    }
+    
+    int createdFence(GpuFence fence) {
+        final var id = newId(fence);
+        record(CaptureFormat.Op.CREATE_FENCE, out -> out.writeInt(id));
+        return id;
+    }
+    
+    // ---------- objects used during the capture, which may be older than it ----------
+    
+    int buffer(@Nullable GpuBuffer buffer) {
+        if (buffer == null) {
+            return -1;
+        }
+        final var id = ids.getInt(buffer);
+        return id != -1 ? id : snapshotBuffer((Hg3DGpuBuffer) buffer);
+    }
+    
+    int texture(GpuTexture texture) {
+        final var id = ids.getInt(texture);
+        return id != -1 ? id : snapshotTexture((Hg3DGpuTexture) texture);
+    }
+    
+    int view(@Nullable GpuTextureView view) {
+        if (view == null) {
+            return -1;
+        }
+        if (!ids.containsKey(view)) {
+            createdView(view);
+        }
+        return ids.getInt(view);
+    }
+    
+    int sampler(@Nullable GpuSampler sampler) {
+        if (sampler == null) {
+            return -1;
+        }
+        if (!ids.containsKey(sampler)) {
+            createdSampler(sampler);
+        }
+        return ids.getInt(sampler);
+    }
+    
+    int pipeline(RenderPipeline pipeline) {
+        final var existingId = ids.getInt(pipeline);
+        if (existingId != -1) {
+            return existingId;
+        }
+        final var id = newId(pipeline);
+        final var compiled = device.getPipeline(pipeline);
+        record(CaptureFormat.Op.PIPELINE, out -> {
+            out.writeInt(id);
+            writeString(out, pipeline.getLocation().toString());
+            writeString(out, compiled.vertexGLSL());
+            writeString(out, compiled.fragmentGLSL());
+            
+            final var format = pipeline.getVertexFormat();
+            final var elements = format.getElements();
+            final var names = format.getElementAttributeNames();
+            out.writeInt(format.getVertexSize());
+            out.writeInt(elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                writeString(out, names.get(i));
+                out.writeInt(elements.get(i).id());
+                out.writeInt(format.getOffset(elements.get(i)));
+            }
+            writeString(out, pipeline.getVertexFormatMode().name());
+            writeString(out, pipeline.getPolygonMode().name());
+            out.writeBoolean(pipeline.isCull());
+            
+            @Nullable
+            final var depthStencil = pipeline.getDepthStencilState();
+            out.writeBoolean(depthStencil != null);
+            if (depthStencil != null) {
+                writeString(out, depthStencil.depthTest().name());
+                out.writeBoolean(depthStencil.writeDepth());
+                out.writeFloat(depthStencil.depthBiasScaleFactor());
+                out.writeFloat(depthStencil.depthBiasConstant());
+            }
+            final var colorTarget = pipeline.getColorTargetState();
+            out.writeBoolean(colorTarget.blendFunction().isPresent());
+            if (colorTarget.blendFunction().isPresent()) {
+                final var blend = colorTarget.blendFunction().get();
+                writeString(out, blend.sourceColor().name());
+                writeString(out, blend.destColor().name());
+                writeString(out, blend.sourceAlpha().name());
+                writeString(out, blend.destAlpha().name());
+            }
+            out.writeInt(colorTarget.writeMask());
+            // NeoForge's stencil state isn't captured, pipelines with it replay without it
+            
+            final var uniforms = pipeline.getUniforms();
+            out.writeInt(uniforms.size());
+            for (final var uniform : uniforms) {
+                writeString(out, uniform.name());
+                writeString(out, uniform.type().name());
+                writeString(out, uniform.textureFormat() != null ? uniform.textureFormat().name() : "");
+            }
+            final var samplers = pipeline.getSamplers();
+            out.writeInt(samplers.size());
+            for (final var sampler : samplers) {
+                writeString(out, sampler);
+            }
+        });
+        return id;
+    }
+    
+    // ---------- snapshots ----------
+    
+    private HgCommandBuffer snapshotCommandBuffer() {
+        if (snapshotCommandBuffer == null) {
+            final var encoder = device.createCommandEncoder();
+            snapshotCommandBuffer = encoder.allocateCommandBuffer().setName("Capture Snapshots");
+            snapshotCommandBuffer.barrier();
+            encoder.insertCommandBufferFirst(snapshotCommandBuffer);
+            encoder.addFlushCallback(this::endSnapshots);
+        }
+        return snapshotCommandBuffer;
+    }
+    
+    private void endSnapshots() {
+        assert snapshotCommandBuffer != null;
+        snapshotCommandBuffer.barrier();
+        snapshotCommandBuffer.end();
+        // the encoder destroys it with the rest of the submit's command buffers
+        snapshotCommandBuffer = null;
+    }
+    
+    private int snapshotBuffer(Hg3DGpuBuffer buffer) {
+        final var id = newId(buffer);
+        closeable.add(buffer);
+        @Nullable
+        final var label = buffer.label();
+        @Nullable
+        HgBuffer staging = null;
+        if (buffer.size() != 0) {
+            // the snapshot command buffer has to be in the queue first, hgSlice can queue a promotion copy, and that needs to go ahead of it
+            final var commandBuffer = snapshotCommandBuffer();
+            final var source = buffer.hgSlice();
+            staging = device.hgDevice().createBuffer(HgBuffer.MemoryRequest.CPU, buffer.size(), VK_BUFFER_USAGE_TRANSFER_DST_BIT).setName("Capture Snapshot");
+            commandBuffer.copyBufferToBuffer(source, staging.slice());
+        }
+        bufferSnapshots.add(new BufferSnapshot(id, label != null ? label : "", buffer.usage(), buffer.size(), staging));
+        return id;
+    }
+    
+    private int snapshotTexture(Hg3DGpuTexture texture) {
+        final var id = newId(texture);
+        closeable.add(texture);
+        @Nullable
+        HgBuffer staging = null;
+        // the depth and stencil aspects would need separate copies, not worth it for how rare they are
+        if (!texture.getFormat().hasStencilAspect()) {
+            final var commandBuffer = snapshotCommandBuffer();
+            final var image = texture.image();
+            staging = device.hgDevice().createBuffer(HgBuffer.MemoryRequest.CPU, textureSize(texture), VK_BUFFER_USAGE_TRANSFER_DST_BIT).setName("Capture Snapshot");
+            long offset = 0;
+            for (int layer = 0; layer < texture.getDepthOrLayers(); layer++) {
+                for (int mip = 0; mip < texture.getMipLevels(); mip++) {
+                    final var width = texture.getWidth(mip);
+                    final var height = texture.getHeight(mip);
+                    final var size = (long) width * height * texture.getFormat().pixelSize();
+                    commandBuffer.copyImageToBuffer(image.transferRange(new Vector3i(0, 0, 0), new Vector3i(width, height, 1), layer, 1, mip), staging.imageSlice(offset, size, width, height));
+                    offset += size;
+                }
+            }
+        }
+        textureSnapshots.add(new TextureSnapshot(texture, id, staging));
+        return id;
+    }
+    
+    private static long textureSize(GpuTexture texture) {
+        long size = 0;
+        for (int mip = 0; mip < texture.getMipLevels(); mip++) {
+            size += (long) texture.getWidth(mip) * texture.getHeight(mip) * texture.getFormat().pixelSize();
+        }
+        return size * texture.getDepthOrLayers();
+    }
+    
+    private static void writeTextureInfo(DataOutputStream out, GpuTexture texture) throws IOException {
+        writeString(out, texture.getLabel());
+        out.writeInt(texture.usage());
+        writeString(out, texture.getFormat().name());
+        out.writeInt(texture.getWidth(0));
+        out.writeInt(texture.getHeight(0));
+        out.writeInt(texture.getDepthOrLayers());
+        out.writeInt(texture.getMipLevels());
+    }
+    
+    // ---------- frames ----------
+    
+    // returns if this was the last frame
+    boolean endFrame() {
+        for (int i = closeable.size() - 1; i >= 0; i--) {
+            final var object = closeable.get(i);
+            final var closed = switch (object) {
+                case GpuBuffer buffer -> buffer.isClosed();
+                case GpuTexture texture -> texture.isClosed();
+                case GpuTextureView view -> view.isClosed();
+                default -> throw new IllegalStateException();
+            };
+            if (closed) {
+                final var id = ids.getInt(object);
+                record(CaptureFormat.Op.CLOSE, out -> out.writeInt(id));
+                closeable.set(i, closeable.getLast());
+                closeable.removeLast();
+            }
+        }
+        record(CaptureFormat.Op.END_FRAME, out -> {
+        });
+        return --framesLeft == 0;
+    }
+    
+    // called right after the last frame is submitted, the staging buffers are read once the GPU is done with it
+    void finish() {
+        WorkQueue.AFTER_END_OF_GPU_FRAME.enqueue(threadIndex -> IWorkQueue.BACKGROUND_IO.enqueue(ioThreadIndex -> write()));
+    }
+    
+    // the device is closing, nothing is going to be written
+    void abort() {
+        for (final var snapshot : bufferSnapshots) {
+            if (snapshot.staging != null) {
+                snapshot.staging.destroy();
+            }
+        }
+        for (final var snapshot : textureSnapshots) {
+            if (snapshot.staging != null) {
+                snapshot.staging.destroy();
+            }
+        }
+    }
+    
+    private void write() {
+        final var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (final var fileOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                fileOut.writeInt(CaptureFormat.MAGIC);
+                fileOut.writeInt(CaptureFormat.VERSION);
+                final var out = new DataOutputStream(new DeflaterOutputStream(fileOut, deflater, 1 << 16));
+                writeString(out, device.getRenderer());
+                out.writeInt(device.getUniformOffsetAlignment());
+                out.writeInt(frames);
+                for (final var snapshot : bufferSnapshots) {
+                    CaptureFormat.Op.SNAPSHOT_BUFFER.write(out);
+                    out.writeInt(snapshot.id);
+                    writeString(out, snapshot.label);
+                    out.writeInt(snapshot.usage);
+                    out.writeLong(snapshot.size);
+                    writeStaging(out, snapshot.staging);
+                }
+                for (final var snapshot : textureSnapshots) {
+                    final var texture = snapshot.texture;
+                    CaptureFormat.Op.SNAPSHOT_TEXTURE.write(out);
+                    out.writeInt(snapshot.id);
+                    writeTextureInfo(out, texture);
+                    @Nullable
+                    final var contents = snapshot.staging != null ? snapshot.staging.map().byteBuffer() : null;
+                    long offset = 0;
+                    for (int layer = 0; layer < texture.getDepthOrLayers(); layer++) {
+                        for (int mip = 0; mip < texture.getMipLevels(); mip++) {
+                            if (contents == null) {
+                                out.writeInt(0);
+                                continue;
+                            }
+                            final var size = (int) ((long) texture.getWidth(mip) * texture.getHeight(mip) * texture.getFormat().pixelSize());
+                            writeBytes(out, contents.slice((int) offset, size));
+                            offset += size;
+                        }
+                    }
+                    if (snapshot.staging != null) {
+                        snapshot.staging.unmap();
+                        snapshot.staging.destroy();
+                    }
+                }
+                CaptureFormat.Op.END_OF_TABLE.write(out);
+                out.writeInt(streamBytes.size());
+                streamBytes.writeTo(out);
+                out.finish();
+            }
+            HG3D_LOG.info("Wrote {} frame capture to {}", frames, file.toAbsolutePath());
+        } catch (IOException e) {
+            HG3D_LOG.error("Failed to write capture to {}", file.toAbsolutePath(), e);
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private static void writeStaging(DataOutputStream out, @Nullable HgBuffer staging) throws IOException {
+        if (staging == null) {
+            out.writeInt(0);
+            return;
+        }
+        writeBytes(out, staging.map().byteBuffer());
+        staging.unmap();
+        staging.destroy();
+    }
+}
@@ -0,0 +1,616 @@
+package graphics.cinnabar.core.capture;
+
+import com.mojang.blaze3d.buffers.GpuBuffer;
+import com.mojang.blaze3d.buffers.GpuFence;
+import com.mojang.blaze3d.pipeline.BlendFunction;
+import com.mojang.blaze3d.pipeline.ColorTargetState;
+import com.mojang.blaze3d.pipeline.DepthStencilState;
+import com.mojang.blaze3d.pipeline.RenderPipeline;
+import com.mojang.blaze3d.platform.CompareOp;
+import com.mojang.blaze3d.platform.DestFactor;
+import com.mojang.blaze3d.platform.NativeImage;
+import com.mojang.blaze3d.platform.PolygonMode;
+import com.mojang.blaze3d.platform.SourceFactor;
+import com.mojang.blaze3d.shaders.ShaderSource;
+import com.mojang.blaze3d.shaders.UniformType;
+import com.mojang.blaze3d.systems.RenderPass;
+import com.mojang.blaze3d.systems.RenderPassBackend;
+import com.mojang.blaze3d.textures.AddressMode;
+import com.mojang.blaze3d.textures.FilterMode;
+import com.mojang.blaze3d.textures.GpuSampler;
+import com.mojang.blaze3d.textures.GpuTexture;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import com.mojang.blaze3d.textures.TextureFormat;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import com.mojang.blaze3d.vertex.VertexFormatElement;
+import graphics.cinnabar.core.hg3d.Hg3DCommandEncoder;
+import graphics.cinnabar.core.hg3d.Hg3DGpuDevice;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import net.minecraft.resources.Identifier;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.function.BiConsumer;
+import java.util.zip.InflaterInputStream;
+
+import static graphics.cinnabar.core.capture.CaptureFormat.readBytes;
+import static graphics.cinnabar.core.capture.CaptureFormat.readString;
+import static graphics.cinnabar.core.hg3d.Hg3D.HG3D_LOG;
+
+// plays a .hg3dcap back through an Hg3DGpuDevice, with no game around it
+// the whole file is decoded up front, so replaying a frame is only the Hg3D calls, and the shaders are available before the device is made
+// replays can be repeated, begin recreates everything the capture started with each time, pipelines are compiled once by the device's cache
+// presents are skipped, replays run offscreen or headless, with no swapchain to present to
+public class CaptureReplay implements AutoCloseable {
+    
+    private interface Command {
+        void run(CaptureReplay replay);
+    }
+    
+    private final String renderer;
+    private final int uniformOffsetAlignment;
+    private final ReferenceArrayList<Command> snapshots = new ReferenceArrayList<>();
+    private final ReferenceArrayList<ReferenceArrayList<Command>> frames = new ReferenceArrayList<>();
+    private final Int2ReferenceOpenHashMap<RenderPipeline> pipelines = new Int2ReferenceOpenHashMap<>();
+    private final Object2ReferenceOpenHashMap<Identifier, String> vertexShaders = new Object2ReferenceOpenHashMap<>();
+    private final Object2ReferenceOpenHashMap<Identifier, String> fragmentShaders = new Object2ReferenceOpenHashMap<>();
+    
+    @Nullable
+    private Hg3DGpuDevice device;
+    // everything live in the replay, by capture id
+    private final Int2ReferenceOpenHashMap<AutoCloseable> objects = new Int2ReferenceOpenHashMap<>();
+    @Nullable
+    private RenderPassBackend renderPass;
+    
+    private CaptureReplay(String renderer, int uniformOffsetAlignment) {
+        this.renderer = renderer;
+        this.uniformOffsetAlignment = uniformOffsetAlignment;
+    }
+    
+    public static CaptureReplay read(Path file) throws IOException {
+        try (final var fileIn = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (fileIn.readInt() != CaptureFormat.MAGIC) {
+                throw new IOException(file + " is not a capture");
+            }
+            final var version = fileIn.readInt();
+            if (version != CaptureFormat.VERSION) {
+                throw new IOException(file + " is capture version " + version + ", expected " + CaptureFormat.VERSION);
+            }
+            final var in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(fileIn), 1 << 16));
+            final var replay = new CaptureReplay(readString(in), in.readInt());
+            final var frameCount = in.readInt();
+            replay.readSnapshots(in);
+            final var stream = new DataInputStream(new ByteArrayInputStream(readBytes(in)));
+            for (int i = 0; i < frameCount; i++) {
+                replay.frames.add(replay.readFrame(stream));
+            }
+            return replay;
+        }
+    }
+    
+    public String renderer() {
+        return renderer;
+    }
+    
+    public int frameCount() {
+        return frames.size();
+    }
+    
+    // the captured sources, the device this is replayed on has to be created with this
+    public ShaderSource shaderSource() {
+        return (location, type) -> switch (type) {
+            case VERTEX -> vertexShaders.get(location);
+            case FRAGMENT -> fragmentShaders.get(location);
+        };
+    }
+    
+    // recreates everything the capture started with, the caller should endFrame after, before timing anything
+    public void begin(Hg3DGpuDevice device) {
+        if (device.getUniformOffsetAlignment() != uniformOffsetAlignment) {
+            HG3D_LOG.warn("Capture was made with a uniform offset alignment of {}, replaying with {}, uniform offsets may be invalid", uniformOffsetAlignment, device.getUniformOffsetAlignment());
+        }
+        closeObjects();
+        this.device = device;
+        for (final var snapshot : snapshots) {
+            snapshot.run(this);
+        }
+    }
+    
+    // the frame's Hg3D calls, the caller ends the frame
+    public void replayFrame(int frame) {
+        for (final var command : frames.get(frame)) {
+            command.run(this);
+        }
+    }
+    
+    @Override
+    public void close() {
+        closeObjects();
+        device = null;
+    }
+    
+    private void closeObjects() {
+        if (renderPass != null) {
+            renderPass.close();
+            renderPass = null;
+        }
+        // a view is always given its id after its texture, so closing newest first closes views first
+        final var ids = new IntArrayList(objects.keySet());
+        ids.sort(null);
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            closeObject(ids.getInt(i));
+        }
+    }
+    
+    private void closeObject(int id) {
+        @Nullable
+        final var object = objects.remove(id);
+        if (object == null) {
+            return;
+        }
+        try {
+            object.close();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private void put(int id, AutoCloseable object) {
+        // ids are never reused by a recorder, but a broken capture shouldn't leak
+        closeObject(id);
+        objects.put(id, object);
+    }
+    
+    private Hg3DGpuDevice device() {
+        assert device != null;
+        return device;
+    }
+    
+    private Hg3DCommandEncoder encoder() {
+        return device().createCommandEncoder();
+    }
+    
+    private RenderPassBackend renderPass() {
+        assert renderPass != null;
+        return renderPass;
+    }
+    
+    private GpuBuffer buffer(int id) {
+        return (GpuBuffer) objects.get(id);
+    }
+    
+    @Nullable
+    private GpuBuffer nullableBuffer(int id) {
+        return id == -1 ? null : buffer(id);
+    }
+    
+    private GpuTexture texture(int id) {
+        return (GpuTexture) objects.get(id);
+    }
+    
+    @Nullable
+    private GpuTextureView view(int id) {
+        return id == -1 ? null : (GpuTextureView) objects.get(id);
+    }
+    
+    @Nullable
+    private GpuSampler sampler(int id) {
+        return id == -1 ? null : (GpuSampler) objects.get(id);
+    }
+    
+    @Nullable
+    private static VertexFormat.IndexType indexType(String name) {
+        return name.isEmpty() ? null : VertexFormat.IndexType.valueOf(name);
+    }
+    
+    // Hg3D copies from the address, so these have to be direct
+    private static ByteBuffer direct(byte[] bytes) {
+        return ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.nativeOrder()).put(0, bytes);
+    }
+    
+    // ---------- decoding ----------
+    
+    private void readSnapshots(DataInputStream in) throws IOException {
+        while (true) {
+            switch (CaptureFormat.Op.read(in)) {
+                case SNAPSHOT_BUFFER -> {
+                    final var id = in.readInt();
+                    final var label = readString(in);
+                    // the contents are uploaded with a copy
+                    final var usage = in.readInt() | GpuBuffer.USAGE_COPY_DST;
+                    final var size = in.readLong();
+                    final var contents = readBytes(in);
+                    if (contents.length == 0) {
+                        snapshots.add(replay -> replay.put(id, replay.device().createBuffer(() -> label, usage, size)));
+                    } else {
+                        final var data = direct(contents);
+                        snapshots.add(replay -> replay.put(id, replay.device().createBuffer(() -> label, usage, data)));
+                    }
+                }
+                case SNAPSHOT_TEXTURE -> {
+                    final var id = in.readInt();
+                    final var label = readString(in);
+                    final var usage = in.readInt() | GpuTexture.USAGE_COPY_DST;
+                    final var format = TextureFormat.valueOf(readString(in));
+                    final var width = in.readInt();
+                    final var height = in.readInt();
+                    final var depthOrLayers = in.readInt();
+                    final var mipLevels = in.readInt();
+                    final var contents = new ReferenceArrayList<ByteBuffer>();
+                    for (int i = 0; i < depthOrLayers * mipLevels; i++) {
+                        final var bytes = readBytes(in);
+                        contents.add(bytes.length == 0 ? null : direct(bytes));
+                    }
+                    snapshots.add(replay -> {
+                        final var texture = replay.device().createTexture(label, usage, format, width, height, depthOrLayers, mipLevels);
+                        replay.put(id, texture);
+                        for (int layer = 0; layer < depthOrLayers; layer++) {
+                            for (int mip = 0; mip < mipLevels; mip++) {
+                                @Nullable
+                                final var data = contents.get(layer * mipLevels + mip);
+                                if (data != null) {
+                                    // Hg3D only uses the texture's format, the image format is ignored
+                                    replay.encoder().writeToTexture(texture, data, NativeImage.Format.RGBA, mip, layer, 0, 0, texture.getWidth(mip), texture.getHeight(mip));
+                                }
+                            }
+                        }
+                    });
+                }
+                case END_OF_TABLE -> {
+                    return;
+                }
+                default -> throw new IOException("Unexpected op in capture snapshot table");
+            }
+        }
+    }
+    
+    private ReferenceArrayList<Command> readFrame(DataInputStream in) throws IOException {
+        final var commands = new ReferenceArrayList<Command>();
+        while (true) {
+            final var op = CaptureFormat.Op.read(in);
+            switch (op) {
+                case CREATE_BUFFER -> {
+                    final var id = in.readInt();
+                    final var label = readString(in);
+                    final var usage = in.readInt();
+                    final var size = in.readLong();
+                    if (in.readBoolean()) {
+                        final var data = direct(readBytes(in));
+                        commands.add(replay -> replay.put(id, replay.device().createBuffer(() -> label, usage, data)));
+                    } else {
+                        commands.add(replay -> replay.put(id, replay.device().createBuffer(() -> label, usage, size)));
+                    }
+                }
+                case CREATE_TEXTURE -> {
+                    final var id = in.readInt();
+                    final var label = readString(in);
+                    final var usage = in.readInt();
+                    final var format = TextureFormat.valueOf(readString(in));
+                    final var width = in.readInt();
+                    final var height = in.readInt();
+                    final var depthOrLayers = in.readInt();
+                    final var mipLevels = in.readInt();
+                    commands.add(replay -> replay.put(id, replay.device().createTexture(label, usage, format, width, height, depthOrLayers, mipLevels)));
+                }
+                case CREATE_TEXTURE_VIEW -> {
+                    final var id = in.readInt();
+                    final var textureId = in.readInt();
+                    final var baseMipLevel = in.readInt();
+                    final var mipLevels = in.readInt();
+                    commands.add(replay -> replay.put(id, replay.device().createTextureView(replay.texture(textureId), baseMipLevel, mipLevels)));
+                }
+                case CREATE_SAMPLER -> {
+                    final var id = in.readInt();
+                    final var addressModeU = AddressMode.valueOf(readString(in));
+                    final var addressModeV = AddressMode.valueOf(readString(in));
+                    final var minFilter = FilterMode.valueOf(readString(in));
+                    final var magFilter = FilterMode.valueOf(readString(in));
+                    final var maxAnisotropy = in.readInt();
+                    final var maxLod = in.readBoolean() ? OptionalDouble.of(in.readDouble()) : OptionalDouble.empty();
+                    commands.add(replay -> replay.put(id, replay.device().createSampler(addressModeU, addressModeV, minFilter, magFilter, maxAnisotropy, maxLod)));
+                }
+                case PIPELINE -> readPipeline(in);
+                case CLOSE -> {
+                    final var id = in.readInt();
+                    commands.add(replay -> replay.closeObject(id));
+                }
+                case END_FRAME -> {
+                    return commands;
+                }
+                case CLEAR_COLOR -> {
+                    final var id = in.readInt();
+                    final var color = in.readInt();
+                    commands.add(replay -> replay.encoder().clearColorTexture(replay.texture(id), color));
+                }
+                case CLEAR_COLOR_DEPTH -> {
+                    final var colorId = in.readInt();
+                    final var color = in.readInt();
+                    final var depthId = in.readInt();
+                    final var depth = in.readDouble();
+                    commands.add(replay -> replay.encoder().clearColorAndDepthTextures(replay.texture(colorId), color, replay.texture(depthId), depth));
+                }
+                case CLEAR_COLOR_DEPTH_REGION -> {
+                    final var colorId = in.readInt();
+                    final var color = in.readInt();
+                    final var depthId = in.readInt();
+                    final var depth = in.readDouble();
+                    final var x = in.readInt();
+                    final var y = in.readInt();
+                    final var width = in.readInt();
+                    final var height = in.readInt();
+                    commands.add(replay -> replay.encoder().clearColorAndDepthTextures(replay.texture(colorId), color, replay.texture(depthId), depth, x, y, width, height));
+                }
+                case CLEAR_DEPTH -> {
+                    final var id = in.readInt();
+                    final var depth = in.readDouble();
+                    commands.add(replay -> replay.encoder().clearDepthTexture(replay.texture(id), depth));
+                }
+                case WRITE_BUFFER -> {
+                    final var id = in.readInt();
+                    final var offset = in.readLong();
+                    final var data = direct(readBytes(in));
+                    commands.add(replay -> replay.encoder().writeToBuffer(replay.buffer(id).slice(offset, data.capacity()), data));
+                }
+                case MAP_WRITE -> {
+                    final var id = in.readInt();
+                    final var offset = in.readLong();
+                    final var data = direct(readBytes(in));
+                    commands.add(replay -> {
+                        try (final var view = replay.encoder().mapBuffer(replay.buffer(id).slice(offset, data.capacity()), false, true)) {
+                            view.data().put(0, data, 0, data.capacity());
+                        }
+                    });
+                }
+                case COPY_BUFFER -> {
+                    final var sourceId = in.readInt();
+                    final var sourceOffset = in.readLong();
+                    final var sourceLength = in.readLong();
+                    final var targetId = in.readInt();
+                    final var targetOffset = in.readLong();
+                    final var targetLength = in.readLong();
+                    commands.add(replay -> replay.encoder().copyToBuffer(replay.buffer(sourceId).slice(sourceOffset, sourceLength), replay.buffer(targetId).slice(targetOffset, targetLength)));
+                }
+                case WRITE_TEXTURE -> {
+                    final var id = in.readInt();
+                    final var mipLevel = in.readInt();
+                    final var layer = in.readInt();
+                    final var x = in.readInt();
+                    final var y = in.readInt();
+                    final var width = in.readInt();
+                    final var height = in.readInt();
+                    final var data = direct(readBytes(in));
+                    commands.add(replay -> replay.encoder().writeToTexture(replay.texture(id), data, NativeImage.Format.RGBA, mipLevel, layer, x, y, width, height));
+                }
+                case COPY_TEXTURE_TO_BUFFER -> {
+                    final var textureId = in.readInt();
+                    final var bufferId = in.readInt();
+                    final var offset = in.readLong();
+                    final var mipLevel = in.readInt();
+                    final var x = in.readInt();
+                    final var y = in.readInt();
+                    final var width = in.readInt();
+                    final var height = in.readInt();
+                    commands.add(replay -> replay.encoder().copyTextureToBuffer(replay.texture(textureId), replay.buffer(bufferId), offset, () -> {
+                    }, mipLevel, x, y, width, height));
+                }
+                case COPY_TEXTURE_TO_TEXTURE -> {
+                    final var sourceId = in.readInt();
+                    final var destinationId = in.readInt();
+                    final var mipLevel = in.readInt();
+                    final var x = in.readInt();
+                    final var y = in.readInt();
+                    final var sourceX = in.readInt();
+                    final var sourceY = in.readInt();
+                    final var width = in.readInt();
+                    final var height = in.readInt();
+                    commands.add(replay -> replay.encoder().copyTextureToTexture(replay.texture(sourceId), replay.texture(destinationId), mipLevel, x, y, sourceX, sourceY, width, height));
+                }
+                // no swapchain to present to
+                case PRESENT -> in.readInt();
+                case CREATE_FENCE -> {
+                    final var id = in.readInt();
+                    commands.add(replay -> replay.put(id, replay.encoder().createFence()));
+                }
+                case AWAIT_FENCE -> {
+                    final var id = in.readInt();
+                    final var timeout = in.readLong();
+                    commands.add(replay -> ((GpuFence) replay.objects.get(id)).awaitCompletion(timeout));
+                }
+                case BEGIN_RENDER_PASS -> {
+                    final var label = readString(in);
+                    final var colorId = in.readInt();
+                    final var clearColor = in.readBoolean() ? OptionalInt.of(in.readInt()) : OptionalInt.empty();
+                    final var depthId = in.readInt();
+                    final var clearDepth = in.readBoolean() ? OptionalDouble.of(in.readDouble()) : OptionalDouble.empty();
+                    commands.add(replay -> {
+                        final var colorView = replay.view(colorId);
+                        assert colorView != null;
+                        replay.renderPass = replay.encoder().createRenderPass(() -> label, colorView, clearColor, replay.view(depthId), clearDepth);
+                    });
+                }
+                case END_RENDER_PASS -> commands.add(replay -> {
+                    replay.renderPass().close();
+                    replay.renderPass = null;
+                });
+                case PUSH_DEBUG_GROUP -> {
+                    final var label = readString(in);
+                    commands.add(replay -> replay.renderPass().pushDebugGroup(() -> label));
+                }
+                case POP_DEBUG_GROUP -> commands.add(replay -> replay.renderPass().popDebugGroup());
+                case SET_PIPELINE -> {
+                    final var pipeline = pipelines.get(in.readInt());
+                    commands.add(replay -> replay.renderPass().setPipeline(pipeline));
+                }
+                case BIND_TEXTURE -> {
+                    final var name = readString(in);
+                    final var viewId = in.readInt();
+                    final var samplerId = in.readInt();
+                    commands.add(replay -> replay.renderPass().bindTexture(name, replay.view(viewId), replay.sampler(samplerId)));
+                }
+                case SET_UNIFORM -> {
+                    final var name = readString(in);
+                    final var id = in.readInt();
+                    final var offset = in.readLong();
+                    final var length = in.readLong();
+                    commands.add(replay -> replay.renderPass().setUniform(name, replay.buffer(id).slice(offset, length)));
+                }
+                case ENABLE_SCISSOR -> {
+                    final var x = in.readInt();
+                    final var y = in.readInt();
+                    final var width = in.readInt();
+                    final var height = in.readInt();
+                    commands.add(replay -> replay.renderPass().enableScissor(x, y, width, height));
+                }
+                case DISABLE_SCISSOR -> commands.add(replay -> replay.renderPass().disableScissor());
+                case SET_VERTEX_BUFFER -> {
+                    final var slot = in.readInt();
+                    final var id = in.readInt();
+                    commands.add(replay -> replay.renderPass().setVertexBuffer(slot, replay.buffer(id)));
+                }
+                case SET_INDEX_BUFFER -> {
+                    final var id = in.readInt();
+                    final var indexType = VertexFormat.IndexType.valueOf(readString(in));
+                    commands.add(replay -> replay.renderPass().setIndexBuffer(replay.buffer(id), indexType));
+                }
+                case DRAW -> {
+                    final var firstVertex = in.readInt();
+                    final var vertexCount = in.readInt();
+                    commands.add(replay -> replay.renderPass().draw(firstVertex, vertexCount));
+                }
+                case DRAW_INDEXED -> {
+                    final var baseVertex = in.readInt();
+                    final var firstIndex = in.readInt();
+                    final var indexCount = in.readInt();
+                    final var instanceCount = in.readInt();
+                    commands.add(replay -> replay.renderPass().drawIndexed(baseVertex, firstIndex, indexCount, instanceCount));
+                }
+                case DRAW_MULTIPLE_INDEXED -> commands.add(readDrawMultipleIndexed(in));
+                default -> throw new IOException("Unexpected op " + op + " in capture stream");
+            }
+        }
+    }
+    
+    private record UniformWrite(String name, int bufferId, long offset, long length) {
+    }
+    
+    private record DrawDescription(int slot, int vertexBufferId, int indexBufferId, @Nullable VertexFormat.IndexType indexType, int firstIndex, int indexCount, int baseVertex, List<UniformWrite> uniforms) {
+    }
+    
+    private static Command readDrawMultipleIndexed(DataInputStream in) throws IOException {
+        final var defaultIndexBufferId = in.readInt();
+        @Nullable
+        final var defaultIndexType = indexType(readString(in));
+        final var dynamicUniforms = new ReferenceArrayList<String>();
+        final var dynamicUniformCount = in.readInt();
+        for (int i = 0; i < dynamicUniformCount; i++) {
+            dynamicUniforms.add(readString(in));
+        }
+        final var drawCount = in.readInt();
+        final var descriptions = new ReferenceArrayList<DrawDescription>(drawCount);
+        for (int i = 0; i < drawCount; i++) {
+            final var slot = in.readInt();
+            final var vertexBufferId = in.readInt();
+            final var indexBufferId = in.readInt();
+            @Nullable
+            final var indexType = indexType(readString(in));
+            final var firstIndex = in.readInt();
+            final var indexCount = in.readInt();
+            final var baseVertex = in.readInt();
+            final var uniformCount = in.readInt();
+            final var uniforms = new ReferenceArrayList<UniformWrite>(uniformCount);
+            for (int j = 0; j < uniformCount; j++) {
+                uniforms.add(new UniformWrite(readString(in), in.readInt(), in.readLong(), in.readLong()));
+            }
+            descriptions.add(new DrawDescription(slot, vertexBufferId, indexBufferId, indexType, firstIndex, indexCount, baseVertex, uniforms));
+        }
+        return replay -> {
+            // Hg3D's fast path needs a random access list
+            final var draws = new ReferenceArrayList<RenderPass.Draw<Object>>(descriptions.size());
+            for (final var description : descriptions) {
+                final BiConsumer<Object, RenderPass.UniformUploader> uploader = (ignored, uniformUploader) -> {
+                    for (final var uniform : description.uniforms) {
+                        uniformUploader.upload(uniform.name, replay.buffer(uniform.bufferId).slice(uniform.offset, uniform.length));
+                    }
+                };
+                draws.add(new RenderPass.Draw<>(description.slot, replay.buffer(description.vertexBufferId), replay.nullableBuffer(description.indexBufferId), description.indexType, description.firstIndex, description.indexCount, description.baseVertex, uploader));
+            }
+            replay.renderPass().drawMultipleIndexed(draws, replay.nullableBuffer(defaultIndexBufferId), defaultIndexType, dynamicUniforms, new Object());
+        };
+    }
+    
+    private void readPipeline(DataInputStream in) throws IOException {
+        final var id = in.readInt();
+        final var originalLocation = readString(in);
+        // each pipeline gets its own shader ids, the captured sources already have the pipeline's defines in them
+        final var location = Identifier.fromNamespaceAndPath("cinnabar", "capture/" + id);
+        vertexShaders.put(location, readString(in));
+        fragmentShaders.put(location, readString(in));
+        
+        final var vertexSize = in.readInt();
+        final var formatBuilder = VertexFormat.builder();
+        final var elementCount = in.readInt();
+        int formatSize = 0;
+        for (int i = 0; i < elementCount; i++) {
+            final var name = readString(in);
+            final var element = VertexFormatElement.byId(in.readInt());
+            final var offset = in.readInt();
+            assert element != null;
+            if (offset > formatSize) {
+                formatBuilder.padding(offset - formatSize);
+            }
+            formatBuilder.add(name, element);
+            formatSize = offset + element.byteSize();
+        }
+        if (vertexSize > formatSize) {
+            formatBuilder.padding(vertexSize - formatSize);
+        }
+        final var mode = VertexFormat.Mode.valueOf(readString(in));
+        final var builder = RenderPipeline.builder()
+                                          .withLocation(location)
+                                          .withVertexShader(location)
+                                          .withFragmentShader(location)
+                                          .withVertexFormat(formatBuilder.build(), mode)
+                                          .withPolygonMode(PolygonMode.valueOf(readString(in)))
+                                          .withCull(in.readBoolean());
+        if (in.readBoolean()) {
+            builder.withDepthStencilState(new DepthStencilState(CompareOp.valueOf(readString(in)), in.readBoolean(), in.readFloat(), in.readFloat()));
+        }
+        @Nullable
+        BlendFunction blendFunction = null;
+        if (in.readBoolean()) {
+            blendFunction = new BlendFunction(SourceFactor.valueOf(readString(in)), DestFactor.valueOf(readString(in)), SourceFactor.valueOf(readString(in)), DestFactor.valueOf(readString(in)));
+        }
+        builder.withColorTargetState(new ColorTargetState(Optional.ofNullable(blendFunction), in.readInt()));
+        final var uniformCount = in.readInt();
+        for (int i = 0; i < uniformCount; i++) {
+            final var name = readString(in);
+            final var type = UniformType.valueOf(readString(in));
+            final var textureFormat = readString(in);
+            if (textureFormat.isEmpty()) {
+                builder.withUniform(name, type);
+            } else {
+                builder.withUniform(name, type, TextureFormat.valueOf(textureFormat));
+            }
+        }
+        final var samplerCount = in.readInt();
+        for (int i = 0; i < samplerCount; i++) {
+            builder.withSampler(readString(in));
+        }
+        HG3D_LOG.debug("Capture pipeline {} is {}", id, originalLocation);
+        pipelines.put(id, builder.build());
+    }
+}
@@ -0,0 +1,353 @@
+package graphics.cinnabar.core.capture;
+
+import com.mojang.blaze3d.buffers.GpuBuffer;
+import com.mojang.blaze3d.buffers.GpuBufferSlice;
+import com.mojang.blaze3d.buffers.GpuFence;
+import com.mojang.blaze3d.platform.NativeImage;
+import com.mojang.blaze3d.systems.CommandEncoderBackend;
+import com.mojang.blaze3d.systems.GpuQuery;
+import com.mojang.blaze3d.systems.RenderPassBackend;
+import com.mojang.blaze3d.textures.GpuTexture;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import graphics.cinnabar.api.exceptions.NotImplemented;
+import graphics.cinnabar.core.hg3d.Hg3DCommandEncoder;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.function.Supplier;
+
+import static graphics.cinnabar.core.capture.CaptureFormat.writeBytes;
+import static graphics.cinnabar.core.capture.CaptureFormat.writeString;
+
+public class CapturingCommandEncoder implements CommandEncoderBackend {
+    
+    private final CapturingGpuDevice device;
+    private final Hg3DCommandEncoder realCommandEncoder;
+    
+    public CapturingCommandEncoder(CapturingGpuDevice device, Hg3DCommandEncoder realCommandEncoder) {
+        this.device = device;
+        this.realCommandEncoder = realCommandEncoder;
+    }
+    
+    @Override
+    public RenderPassBackend createRenderPass(Supplier<String> label, GpuTextureView colorTexture, OptionalInt clearColor) {
+        throw new NotImplemented();
+    }
+    
+    @Override
+    public RenderPassBackend createRenderPass(Supplier<String> label, GpuTextureView colorTexture, OptionalInt clearColor, @Nullable GpuTextureView depthTexture, OptionalDouble clearDepth) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder == null) {
+            return realCommandEncoder.createRenderPass(label, colorTexture, clearColor, depthTexture, clearDepth);
+        }
+        final var labelString = label.get();
+        final var colorId = recorder.view(colorTexture);
+        final var depthId = recorder.view(depthTexture);
+        // resolved before the real pass begins, any snapshot copies have to be outside of it
+        final var renderPass = realCommandEncoder.createRenderPass(label, colorTexture, clearColor, depthTexture, clearDepth);
+        recorder.record(CaptureFormat.Op.BEGIN_RENDER_PASS, out -> {
+            writeString(out, labelString);
+            out.writeInt(colorId);
+            out.writeBoolean(clearColor.isPresent());
+            if (clearColor.isPresent()) {
+                out.writeInt(clearColor.getAsInt());
+            }
+            out.writeInt(depthId);
+            out.writeBoolean(clearDepth.isPresent());
+            if (clearDepth.isPresent()) {
+                out.writeDouble(clearDepth.getAsDouble());
+            }
+        });
+        return new CapturingRenderPass(recorder, renderPass);
+    }
+    
+    @Override
+    public boolean isInRenderPass() {
+        return realCommandEncoder.isInRenderPass();
+    }
+    
+    @Override
+    public void clearColorTexture(GpuTexture colorTexture, int clearColor) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var id = recorder.texture(colorTexture);
+            recorder.record(CaptureFormat.Op.CLEAR_COLOR, out -> {
+                out.writeInt(id);
+                out.writeInt(clearColor);
+            });
+        }
+        realCommandEncoder.clearColorTexture(colorTexture, clearColor);
+    }
+    
+    @Override
+    public void clearColorAndDepthTextures(GpuTexture colorTexture, int clearColor, GpuTexture depthTexture, double clearDepth) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var colorId = recorder.texture(colorTexture);
+            final var depthId = recorder.texture(depthTexture);
+            recorder.record(CaptureFormat.Op.CLEAR_COLOR_DEPTH, out -> {
+                out.writeInt(colorId);
+                out.writeInt(clearColor);
+                out.writeInt(depthId);
+                out.writeDouble(clearDepth);
+            });
+        }
+        realCommandEncoder.clearColorAndDepthTextures(colorTexture, clearColor, depthTexture, clearDepth);
+    }
+    
+    @Override
+    public void clearColorAndDepthTextures(GpuTexture colorTexture, int clearColor, GpuTexture depthTexture, double clearDepth, int regionX, int regionY, int regionWidth, int regionHeight) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var colorId = recorder.texture(colorTexture);
+            final var depthId = recorder.texture(depthTexture);
+            recorder.record(CaptureFormat.Op.CLEAR_COLOR_DEPTH_REGION, out -> {
+                out.writeInt(colorId);
+                out.writeInt(clearColor);
+                out.writeInt(depthId);
+                out.writeDouble(clearDepth);
+                out.writeInt(regionX);
+                out.writeInt(regionY);
+                out.writeInt(regionWidth);
+                out.writeInt(regionHeight);
+            });
+        }
+        realCommandEncoder.clearColorAndDepthTextures(colorTexture, clearColor, depthTexture, clearDepth, regionX, regionY, regionWidth, regionHeight);
+    }
+    
+    @Override
+    public void clearDepthTexture(GpuTexture depthTexture, double clearDepth) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var id = recorder.texture(depthTexture);
+            recorder.record(CaptureFormat.Op.CLEAR_DEPTH, out -> {
+                out.writeInt(id);
+                out.writeDouble(clearDepth);
+            });
+        }
+        realCommandEncoder.clearDepthTexture(depthTexture, clearDepth);
+    }
+    
+    @Override
+    public void writeToBuffer(GpuBufferSlice destination, ByteBuffer data) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var id = recorder.buffer(destination.buffer());
+            recorder.record(CaptureFormat.Op.WRITE_BUFFER, out -> {
+                out.writeInt(id);
+                out.writeLong(destination.offset());
+                writeBytes(out, data);
+            });
+        }
+        realCommandEncoder.writeToBuffer(destination, data);
+    }
+    
+    @Override
+    public GpuBuffer.MappedView mapBuffer(GpuBufferSlice buffer, boolean read, boolean write) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder == null || !write) {
+            return realCommandEncoder.mapBuffer(buffer, read, write);
+        }
+        // writes through the mapping land before the snapshot copy runs, but they're replayed over it anyway
+        final var id = recorder.buffer(buffer.buffer());
+        final var view = realCommandEncoder.mapBuffer(buffer, read, write);
+        // the contents are only known once the game is done writing them
+        return new GpuBuffer.MappedView() {
+            @Override
+            public ByteBuffer data() {
+                return view.data();
+            }
+            
+            @Override
+            public void close() {
+                recorder.record(CaptureFormat.Op.MAP_WRITE, out -> {
+                    out.writeInt(id);
+                    out.writeLong(buffer.offset());
+                    // the game may have moved the position while writing, the whole mapping is recorded
+                    writeBytes(out, view.data().duplicate().clear());
+                });
+                view.close();
+            }
+        };
+    }
+    
+    @Override
+    public void copyToBuffer(GpuBufferSlice source, GpuBufferSlice target) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var sourceId = recorder.buffer(source.buffer());
+            final var targetId = recorder.buffer(target.buffer());
+            recorder.record(CaptureFormat.Op.COPY_BUFFER, out -> {
+                out.writeInt(sourceId);
+                out.writeLong(source.offset());
+                out.writeLong(source.length());
+                out.writeInt(targetId);
+                out.writeLong(target.offset());
+                out.writeLong(target.length());
+            });
+        }
+        realCommandEncoder.copyToBuffer(source, target);
+    }
+    
+    @Override
+    public void writeToTexture(GpuTexture destination, NativeImage source, int mipLevel, int depthOrLayer, int destX, int destY, int width, int height, int sourceX, int sourceY) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var id = recorder.texture(destination);
+            recorder.record(CaptureFormat.Op.WRITE_TEXTURE, out -> {
+                out.writeInt(id);
+                out.writeInt(mipLevel);
+                out.writeInt(depthOrLayer);
+                out.writeInt(destX);
+                out.writeInt(destY);
+                out.writeInt(width);
+                out.writeInt(height);
+                // repacked row by row, the replay doesn't have the image's row length
+                final var pixelSize = destination.getFormat().pixelSize();
+                final var rowSize = width * pixelSize;
+                out.writeInt(rowSize * height);
+                final var row = new byte[rowSize];
+                for (int y = 0; y < height; y++) {
+                    final var rowPointer = source.getPointer() + ((long) (sourceY + y) * source.getWidth() + sourceX) * pixelSize;
+                    MemoryUtil.memByteBuffer(rowPointer, rowSize).get(row);
+                    out.write(row);
+                }
+            });
+        }
+        realCommandEncoder.writeToTexture(destination, source, mipLevel, depthOrLayer, destX, destY, width, height, sourceX, sourceY);
+    }
+    
+    @Override
+    public void writeToTexture(GpuTexture destination, ByteBuffer source, NativeImage.Format format, int mipLevel, int depthOrLayer, int destX, int destY, int width, int height) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var id = recorder.texture(destination);
+            recorder.record(CaptureFormat.Op.WRITE_TEXTURE, out -> {
+                out.writeInt(id);
+                out.writeInt(mipLevel);
+                out.writeInt(depthOrLayer);
+                out.writeInt(destX);
+                out.writeInt(destY);
+                out.writeInt(width);
+                out.writeInt(height);
+                writeBytes(out, source);
+            });
+        }
+        realCommandEncoder.writeToTexture(destination, source, format, mipLevel, depthOrLayer, destX, destY, width, height);
+    }
+    
+    @Override
+    public void copyTextureToBuffer(GpuTexture source, GpuBuffer destination, long offset, Runnable callback, int mipLevel) {
+        copyTextureToBuffer(source, destination, offset, callback, mipLevel, 0, 0, source.getWidth(mipLevel), source.getHeight(mipLevel));
+    }
+    
+    @Override
+    public void copyTextureToBuffer(GpuTexture source, GpuBuffer destination, long offset, Runnable callback, int mipLevel, int x, int y, int width, int height) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var textureId = recorder.texture(source);
+            final var bufferId = recorder.buffer(destination);
+            // the callback is the game reading the result, which a replay has no use for
+            recorder.record(CaptureFormat.Op.COPY_TEXTURE_TO_BUFFER, out -> {
+                out.writeInt(textureId);
+                out.writeInt(bufferId);
+                out.writeLong(offset);
+                out.writeInt(mipLevel);
+                out.writeInt(x);
+                out.writeInt(y);
+                out.writeInt(width);
+                out.writeInt(height);
+            });
+        }
+        realCommandEncoder.copyTextureToBuffer(source, destination, offset, callback, mipLevel, x, y, width, height);
+    }
+    
+    @Override
+    public void copyTextureToTexture(GpuTexture source, GpuTexture destination, int mipLevel, int destX, int destY, int sourceX, int sourceY, int width, int height) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var sourceId = recorder.texture(source);
+            final var destinationId = recorder.texture(destination);
+            recorder.record(CaptureFormat.Op.COPY_TEXTURE_TO_TEXTURE, out -> {
+                out.writeInt(sourceId);
+                out.writeInt(destinationId);
+                out.writeInt(mipLevel);
+                out.writeInt(destX);
+                out.writeInt(destY);
+                out.writeInt(sourceX);
+                out.writeInt(sourceY);
+                out.writeInt(width);
+                out.writeInt(height);
+            });
+        }
+        realCommandEncoder.copyTextureToTexture(source, destination, mipLevel, destX, destY, sourceX, sourceY, width, height);
+    }
+    
+    @Override
+    public void presentTexture(GpuTextureView texture) {
+        @Nullable
+        final var recorder = device.recorder();
+        if (recorder != null) {
+            final var id = recorder.view(texture);
+            recorder.record(CaptureFormat.Op.PRESENT, out -> out.writeInt(id));
+        }
+        realCommandEncoder.presentTexture(texture);
+    }
+    
+    @Override
+    public GpuFence createFence() {
+        @Nullable
+        final var recorder = device.recorder();
+        final var fence = realCommandEncoder.createFence();
+        if (recorder == null) {
+            return fence;
+        }
+        final var id = recorder.createdFence(fence);
+        return new GpuFence() {
+            @Override
+            public void close() {
+                fence.close();
+            }
+            
+            @Override
+            public boolean awaitCompletion(long timeout) {
+                // the recorder may have finished since, a wait after the capture isn't part of it
+                @Nullable
+                final var currentRecorder = device.recorder();
+                if (currentRecorder == recorder) {
+                    recorder.record(CaptureFormat.Op.AWAIT_FENCE, out -> {
+                        out.writeInt(id);
+                        out.writeLong(timeout);
+                    });
+                }
+                return fence.awaitCompletion(timeout);
+            }
+        };
+    }
+    
+    @Override
+    public GpuQuery timerQueryBegin() {
+        // timer queries only measure, replays have their own timing
+        return realCommandEncoder.timerQueryBegin();
+    }
+    
+    @Override
+    public void timerQueryEnd(GpuQuery query) {
+        realCommandEncoder.timerQueryEnd(query);
+    }
+}
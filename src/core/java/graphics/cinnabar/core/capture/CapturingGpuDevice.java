@@ -0,0 +1,239 @@
+package graphics.cinnabar.core.capture;
+
+import com.mojang.blaze3d.buffers.GpuBuffer;
+import com.mojang.blaze3d.pipeline.CompiledRenderPipeline;
+import com.mojang.blaze3d.pipeline.RenderPipeline;
+import com.mojang.blaze3d.shaders.ShaderSource;
+import com.mojang.blaze3d.systems.CommandEncoderBackend;
+import com.mojang.blaze3d.systems.GpuDeviceBackend;
+import com.mojang.blaze3d.textures.*;
+import graphics.cinnabar.api.annotations.ThreadSafety;
+import graphics.cinnabar.core.hg3d.Hg3D;
+import graphics.cinnabar.core.hg3d.Hg3DGpuDevice;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.function.Supplier;
+
+import static graphics.cinnabar.core.hg3d.Hg3D.HG3D_LOG;
+
+// records everything asked of Hg3D between two presentFrame calls, for replaying outside the game, see CaptureReplay
+// always the innermost wrapper, so the real device is always an Hg3DGpuDevice
+// when nothing is being captured, everything goes straight through, the only cost is the null check
+public class CapturingGpuDevice implements GpuDeviceBackend {
+    
+    private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH.mm.ss");
+    
+    private static volatile int requestedFrames = 0;
+    
+    private final Hg3DGpuDevice realDevice;
+    private final CapturingCommandEncoder commandEncoder;
+    private long frame = 0;
+    @Nullable
+    private CaptureRecorder recorder;
+    
+    public CapturingGpuDevice(GpuDeviceBackend realDevice) {
+        this.realDevice = (Hg3DGpuDevice) realDevice;
+        commandEncoder = new CapturingCommandEncoder(this, this.realDevice.createCommandEncoder());
+    }
+    
+    // starts a capture at the next frame boundary, from any thread
+    @ThreadSafety.Many
+    public static void requestCapture(int frames) {
+        requestedFrames = frames;
+    }
+    
+    @Nullable
+    CaptureRecorder recorder() {
+        return recorder;
+    }
+    
+    @Override
+    public CommandEncoderBackend createCommandEncoder() {
+        return commandEncoder;
+    }
+    
+    @Override
+    public GpuSampler createSampler(AddressMode addressModeU, AddressMode addressModeV, FilterMode minFilter, FilterMode magFilter, int maxAnisotropy, OptionalDouble maxLod) {
+        final var sampler = realDevice.createSampler(addressModeU, addressModeV, minFilter, magFilter, maxAnisotropy, maxLod);
+        if (recorder != null) {
+            recorder.createdSampler(sampler);
+        }
+        return sampler;
+    }
+    
+    @Override
+    public GpuTexture createTexture(@Nullable Supplier<String> label, @GpuTexture.Usage int usage, TextureFormat format, int width, int height, int depthOrLayers, int mipLevels) {
+        final var texture = realDevice.createTexture(label, usage, format, width, height, depthOrLayers, mipLevels);
+        if (recorder != null) {
+            recorder.createdTexture(texture);
+        }
+        return texture;
+    }
+    
+    @Override
+    public GpuTexture createTexture(@Nullable String label, @GpuTexture.Usage int usage, TextureFormat format, int width, int height, int depthOrLayers, int mipLevels) {
+        final var texture = realDevice.createTexture(label, usage, format, width, height, depthOrLayers, mipLevels);
+        if (recorder != null) {
+            recorder.createdTexture(texture);
+        }
+        return texture;
+    }
+    
+    @Override
+    public GpuTextureView createTextureView(GpuTexture texture) {
+        final var view = realDevice.createTextureView(texture);
+        if (recorder != null) {
+            recorder.createdView(view);
+        }
+        return view;
+    }
+    
+    @Override
+    public GpuTextureView createTextureView(GpuTexture texture, int baseMipLevel, int mipLevels) {
+        final var view = realDevice.createTextureView(texture, baseMipLevel, mipLevels);
+        if (recorder != null) {
+            recorder.createdView(view);
+        }
+        return view;
+    }
+    
+    @Override
+    public GpuBuffer createBuffer(@Nullable Supplier<String> label, @GpuBuffer.Usage int usage, long size) {
+        final var buffer = realDevice.createBuffer(label, usage, size);
+        if (recorder != null) {
+            recorder.createdBuffer(buffer, label != null ? label.get() : null, usage, size, null);
+        }
+        return buffer;
+    }
+    
+    @Override
+    public GpuBuffer createBuffer(@Nullable Supplier<String> label, @GpuBuffer.Usage int usage, ByteBuffer data) {
+        final var buffer = realDevice.createBuffer(label, usage, data);
+        if (recorder != null) {
+            recorder.createdBuffer(buffer, label != null ? label.get() : null, usage, data.remaining(), data);
+        }
+        return buffer;
+    }
+    
+    @Override
+    public String getImplementationInformation() {
+        return realDevice.getImplementationInformation();
+    }
+    
+    @Override
+    public List<String> getLastDebugMessages() {
+        return realDevice.getLastDebugMessages();
+    }
+    
+    @Override
+    public boolean isDebuggingEnabled() {
+        return realDevice.isDebuggingEnabled();
+    }
+    
+    @Override
+    public String getVendor() {
+        return realDevice.getVendor();
+    }
+    
+    @Override
+    public String getBackendName() {
+        return realDevice.getBackendName();
+    }
+    
+    @Override
+    public String getVersion() {
+        return realDevice.getVersion();
+    }
+    
+    @Override
+    public String getRenderer() {
+        return realDevice.getRenderer();
+    }
+    
+    @Override
+    public int getMaxTextureSize() {
+        return realDevice.getMaxTextureSize();
+    }
+    
+    @Override
+    public int getUniformOffsetAlignment() {
+        return realDevice.getUniformOffsetAlignment();
+    }
+    
+    @Override
+    public CompiledRenderPipeline precompilePipeline(RenderPipeline pipeline, @Nullable ShaderSource shaderSource) {
+        // pipelines are recorded when they're first used, not when they're compiled
+        return realDevice.precompilePipeline(pipeline, shaderSource);
+    }
+    
+    @Override
+    public void clearPipelineCache() {
+        realDevice.clearPipelineCache();
+    }
+    
+    @Override
+    public List<String> getEnabledExtensions() {
+        return realDevice.getEnabledExtensions();
+    }
+    
+    @Override
+    public int getMaxSupportedAnisotropy() {
+        return realDevice.getMaxSupportedAnisotropy();
+    }
+    
+    @Override
+    public void close() {
+        if (recorder != null) {
+            recorder.abort();
+            recorder = null;
+        }
+        realDevice.close();
+    }
+    
+    @Override
+    public void setVsync(boolean enabled) {
+        realDevice.setVsync(enabled);
+    }
+    
+    @Override
+    public void presentFrame() {
+        if (recorder != null && recorder.endFrame()) {
+            final var finished = recorder;
+            recorder = null;
+            realDevice.presentFrame();
+            // the snapshot copies and the last frame are both submitted now, the recorder waits for the GPU itself
+            finished.finish();
+        } else {
+            realDevice.presentFrame();
+        }
+        frame++;
+        if (recorder == null) {
+            maybeStartCapture();
+        }
+    }
+    
+    private void maybeStartCapture() {
+        int frames = requestedFrames;
+        if (frames > 0) {
+            requestedFrames = 0;
+        } else if (frame == Hg3D.CAPTURE_AT_FRAME) {
+            frames = Hg3D.CAPTURE_FRAMES;
+        } else {
+            return;
+        }
+        final var file = Path.of("cinnabar_captures", "capture-" + LocalDateTime.now().format(FILE_DATE_FORMAT) + CaptureFormat.EXTENSION);
+        HG3D_LOG.info("Capturing {} frame(s) to {}", frames, file.toAbsolutePath());
+        recorder = new CaptureRecorder(realDevice, file, frames);
+    }
+    
+    @Override
+    public boolean isZZeroToOne() {
+        return realDevice.isZZeroToOne();
+    }
+}
@@ -0,0 +1,214 @@
+package graphics.cinnabar.core.capture;
+
+import com.mojang.blaze3d.buffers.GpuBuffer;
+import com.mojang.blaze3d.buffers.GpuBufferSlice;
+import com.mojang.blaze3d.pipeline.RenderPipeline;
+import com.mojang.blaze3d.systems.RenderPass;
+import com.mojang.blaze3d.systems.RenderPassBackend;
+import com.mojang.blaze3d.textures.GpuSampler;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import static graphics.cinnabar.core.capture.CaptureFormat.writeString;
+
+public class CapturingRenderPass implements RenderPassBackend {
+    
+    private final CaptureRecorder recorder;
+    private final RenderPassBackend realRenderPass;
+    
+    public CapturingRenderPass(CaptureRecorder recorder, RenderPassBackend realRenderPass) {
+        this.recorder = recorder;
+        this.realRenderPass = realRenderPass;
+    }
+    
+    @Override
+    public void close() {
+        recorder.record(CaptureFormat.Op.END_RENDER_PASS, out -> {
+        });
+        realRenderPass.close();
+    }
+    
+    @Override
+    public void pushDebugGroup(Supplier<String> label) {
+        final var labelString = label.get();
+        recorder.record(CaptureFormat.Op.PUSH_DEBUG_GROUP, out -> writeString(out, labelString));
+        realRenderPass.pushDebugGroup(label);
+    }
+    
+    @Override
+    public void popDebugGroup() {
+        recorder.record(CaptureFormat.Op.POP_DEBUG_GROUP, out -> {
+        });
+        realRenderPass.popDebugGroup();
+    }
+    
+    @Override
+    public void setPipeline(RenderPipeline pipeline) {
+        final var id = recorder.pipeline(pipeline);
+        recorder.record(CaptureFormat.Op.SET_PIPELINE, out -> out.writeInt(id));
+        realRenderPass.setPipeline(pipeline);
+    }
+    
+    @Override
+    public void bindTexture(String name, @Nullable GpuTextureView textureView, @Nullable GpuSampler sampler) {
+        final var viewId = recorder.view(textureView);
+        final var samplerId = recorder.sampler(sampler);
+        recorder.record(CaptureFormat.Op.BIND_TEXTURE, out -> {
+            writeString(out, name);
+            out.writeInt(viewId);
+            out.writeInt(samplerId);
+        });
+        realRenderPass.bindTexture(name, textureView, sampler);
+    }
+    
+    @Override
+    public void setUniform(String name, GpuBuffer value) {
+        recordUniform(name, value.slice());
+        realRenderPass.setUniform(name, value);
+    }
+    
+    @Override
+    public void setUniform(String name, GpuBufferSlice value) {
+        recordUniform(name, value);
+        realRenderPass.setUniform(name, value);
+    }
+    
+    private void recordUniform(String name, GpuBufferSlice value) {
+        final var id = recorder.buffer(value.buffer());
+        recorder.record(CaptureFormat.Op.SET_UNIFORM, out -> {
+            writeString(out, name);
+            out.writeInt(id);
+            out.writeLong(value.offset());
+            out.writeLong(value.length());
+        });
+    }
+    
+    @Override
+    public void enableScissor(int x, int y, int width, int height) {
+        recorder.record(CaptureFormat.Op.ENABLE_SCISSOR, out -> {
+            out.writeInt(x);
+            out.writeInt(y);
+            out.writeInt(width);
+            out.writeInt(height);
+        });
+        realRenderPass.enableScissor(x, y, width, height);
+    }
+    
+    @Override
+    public void disableScissor() {
+        recorder.record(CaptureFormat.Op.DISABLE_SCISSOR, out -> {
+        });
+        realRenderPass.disableScissor();
+    }
+    
+    @Override
+    public void setVertexBuffer(int slot, GpuBuffer vertexBuffer) {
+        final var id = recorder.buffer(vertexBuffer);
+        recorder.record(CaptureFormat.Op.SET_VERTEX_BUFFER, out -> {
+            out.writeInt(slot);
+            out.writeInt(id);
+        });
+        realRenderPass.setVertexBuffer(slot, vertexBuffer);
+    }
+    
+    @Override
+    public void setIndexBuffer(GpuBuffer indexBuffer, VertexFormat.IndexType indexType) {
+        final var id = recorder.buffer(indexBuffer);
+        recorder.record(CaptureFormat.Op.SET_INDEX_BUFFER, out -> {
+            out.writeInt(id);
+            writeString(out, indexType.name());
+        });
+        realRenderPass.setIndexBuffer(indexBuffer, indexType);
+    }
+    
+    @Override
+    public void drawIndexed(int baseVertex, int firstIndex, int indexCount, int instanceCount) {
+        recorder.record(CaptureFormat.Op.DRAW_INDEXED, out -> {
+            out.writeInt(baseVertex);
+            out.writeInt(firstIndex);
+            out.writeInt(indexCount);
+            out.writeInt(instanceCount);
+        });
+        realRenderPass.drawIndexed(baseVertex, firstIndex, indexCount, instanceCount);
+    }
+    
+    @Override
+    public <T> void drawMultipleIndexed(Collection<RenderPass.Draw<T>> draws, @Nullable GpuBuffer defaultIndexBuffer, @Nullable VertexFormat.IndexType defaultIndexType, Collection<String> dynamicUniforms, T uniformArgument) {
+        final var defaultIndexBufferId = recorder.buffer(defaultIndexBuffer);
+        final var vertexBufferIds = new IntArrayList(draws.size());
+        final var indexBufferIds = new IntArrayList(draws.size());
+        // per draw, the uniforms the uploader set, flattened as name, buffer id, offset, length
+        final var uniformCounts = new IntArrayList(draws.size());
+        final var uniformNames = new ReferenceArrayList<String>();
+        final var uniformBufferIds = new IntArrayList();
+        final var uniformRanges = new LongArrayList();
+        for (final var draw : draws) {
+            vertexBufferIds.add(recorder.buffer(draw.vertexBuffer()));
+            indexBufferIds.add(recorder.buffer(draw.indexBuffer()));
+            final var uniformsBefore = uniformNames.size();
+            // this runs the uploaders a second time, they're expected to only set uniforms, which is all they can do with what they're given
+            if (draw.uniformUploaderConsumer() instanceof BiConsumer<?, ?> consumer) {
+                //noinspection unchecked
+                ((BiConsumer<T, RenderPass.UniformUploader>) consumer).accept(uniformArgument, (name, slice) -> {
+                    uniformNames.add(name);
+                    uniformBufferIds.add(recorder.buffer(slice.buffer()));
+                    uniformRanges.add(slice.offset());
+                    uniformRanges.add(slice.length());
+                });
+            }
+            uniformCounts.add(uniformNames.size() - uniformsBefore);
+        }
+        recorder.record(CaptureFormat.Op.DRAW_MULTIPLE_INDEXED, out -> {
+            out.writeInt(defaultIndexBufferId);
+            writeString(out, defaultIndexType != null ? defaultIndexType.name() : "");
+            out.writeInt(dynamicUniforms.size());
+            for (final var name : dynamicUniforms) {
+                writeString(out, name);
+            }
+            out.writeInt(draws.size());
+            int drawIndex = 0;
+            int uniformIndex = 0;
+            for (final var draw : draws) {
+                out.writeInt(draw.slot());
+                out.writeInt(vertexBufferIds.getInt(drawIndex));
+                out.writeInt(indexBufferIds.getInt(drawIndex));
+                writeString(out, draw.indexType() != null ? draw.indexType().name() : "");
+                out.writeInt(draw.firstIndex());
+                out.writeInt(draw.indexCount());
+                out.writeInt(draw.baseVertex());
+                final var uniformCount = uniformCounts.getInt(drawIndex);
+                out.writeInt(uniformCount);
+                for (int i = 0; i < uniformCount; i++, uniformIndex++) {
+                    writeString(out, uniformNames.get(uniformIndex));
+                    out.writeInt(uniformBufferIds.getInt(uniformIndex));
+                    out.writeLong(uniformRanges.getLong(uniformIndex * 2));
+                    out.writeLong(uniformRanges.getLong(uniformIndex * 2 + 1));
+                }
+                drawIndex++;
+            }
+        });
+        realRenderPass.drawMultipleIndexed(draws, defaultIndexBuffer, defaultIndexType, dynamicUniforms, uniformArgument);
+    }
+    
+    @Override
+    public void draw(int firstVertex, int vertexCount) {
+        recorder.record(CaptureFormat.Op.DRAW, out -> {
+            out.writeInt(firstVertex);
+            out.writeInt(vertexCount);
+        });
+        realRenderPass.draw(firstVertex, vertexCount);
+    }
+    
+    @Override
+    public boolean isClosed() {
+        return realRenderPass.isClosed();
+    }
+}
@@ -0,0 +1,4 @@
+@NotNullDefault
+package graphics.cinnabar.core.capture;
+
+import graphics.cinnabar.api.annotations.NotNullDefault;
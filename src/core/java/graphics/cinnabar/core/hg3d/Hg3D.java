@@ -2,10 +2,21 @@ package graphics.cinnabar.core.hg3d;
 
 import com.mojang.logging.LogUtils;
 import graphics.cinnabar.api.hg.Hg;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 public class Hg3D {
     public static final Logger HG3D_LOG = LogUtils.getLogger();
     public static final boolean TRACE_LOGGING = Hg.traceLogging();
     public static final boolean DEBUG_LOGGING = Hg.debugLogging() || TRACE_LOGGING;
+    // dumps the per-label memory report when the device closes
+    public static final boolean MEMORY_REPORT = Boolean.getBoolean("cinnabar.memoryReport");
+    // wraps the device with the command stream capture, see CapturingGpuDevice
+    public static final boolean CAPTURE = Boolean.getBoolean("cinnabar.capture");
+    // with capture on, starts one on this frame without needing a request, -1 to only capture when requested
+    public static final long CAPTURE_AT_FRAME = Long.getLong("cinnabar.captureAtFrame", -1);
+    public static final int CAPTURE_FRAMES = Integer.getInteger("cinnabar.captureFrames", 1);
+    // writes a row of Hg3DFrameStats counters to this CSV every frame
+    @Nullable
+    public static final String FRAME_STATS_CSV = System.getProperty("cinnabar.frameStatsCsv");
 }
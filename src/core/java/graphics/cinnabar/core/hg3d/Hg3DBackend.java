@@ -8,8 +8,11 @@ import com.mojang.blaze3d.systems.*;
 import com.mojang.jtracy.TracyClient;
 import graphics.cinnabar.api.annotations.API;
 import graphics.cinnabar.api.hg.HgDevice;
+import graphics.cinnabar.core.capture.CapturingGpuDevice;
 import graphics.cinnabar.core.profiling.ProfilingGpuDevice;
+import graphics.cinnabar.loader.earlywindow.StartupTrace;
 import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.VkPhysicalDeviceFeatures2;
 
@@ -28,6 +31,10 @@ public class Hg3DBackend implements GpuBackend {
     static final ReferenceArrayList<BiConsumer<VkPhysicalDeviceFeatures2, VkPhysicalDeviceFeatures2>> featureEnablers = new ReferenceArrayList<>();
     static final ReferenceArrayList<String> requiredExtensions = new ReferenceArrayList<>();
     
+    // B3D only hands out the wrapped device, this is the unwrapped one for things like the F3 screen
+    @Nullable
+    static Hg3DGpuDevice activeDevice;
+    
     @Override
     public String getName() {
         return "CinnabarVK Hg3D";
@@ -39,6 +46,10 @@ public class Hg3DBackend implements GpuBackend {
         if (TracyClient.isAvailable()) {
             deviceWrappers.add(ProfilingGpuDevice::new);
         }
+        if (Hg3D.CAPTURE) {
+            // added last so it's the innermost wrapper, it records exactly what Hg3D is asked to do
+            deviceWrappers.add(CapturingGpuDevice::new);
+        }
         
         GLFWErrorCapture glfwErrors = new GLFWErrorCapture();
         
@@ -52,22 +63,27 @@ public class Hg3DBackend implements GpuBackend {
                 window = earlyLoadingScreen.takeOverGlfwWindow();
                 glfwSetWindowTitle(window, title);
                 // second VkDevice/VkInstance must be created after the first gets yote, some things get very _very_ mad if you don't
-                device = new Hg3DGpuDevice(defaultShaderSource, debugOptions);
+                try (final var _ = StartupTrace.phase("Hg3D device")) {
+                    device = new Hg3DGpuDevice(defaultShaderSource, debugOptions);
+                }
             } else
             #endif
             {
-                try {
+                try (final var _ = StartupTrace.phase("Hg3D device")) {
                     device = new Hg3DGpuDevice(defaultShaderSource, debugOptions, new HgDevice.CreateInfo(featureChainBuilders, featureCheckers, featureEnablers, requiredExtensions));
                 } catch (IllegalStateException e) {
                     e.printStackTrace();
                     throw new BackendCreationException("Vulkan not supported");
                 }
-                glfwDefaultWindowHints();
-                glfwWindowHint(GLFW_CLIENT_API, GLFW_NO_API);
-                window = glfwCreateWindow(width, height, title, monitor, 0L);
+                try (final var _ = StartupTrace.phase("GLFW window")) {
+                    glfwDefaultWindowHints();
+                    glfwWindowHint(GLFW_CLIENT_API, GLFW_NO_API);
+                    window = glfwCreateWindow(width, height, title, monitor, 0L);
+                }
             }
             
             device.attachWindow(window);
+            activeDevice = device;
             
             GpuDeviceBackend wrappedDevice = device;
             for (int i = deviceWrappers.size() - 1; i >= 0; i--) {
@@ -90,6 +106,11 @@ public class Hg3DBackend implements GpuBackend {
         featureEnablers.add(featureEnabler);
     }
     
+    @Nullable
+    public static Hg3DGpuDevice activeDevice() {
+        return activeDevice;
+    }
+    
     public static void requireExtension(String extension) {
         requiredExtensions.add(extension);
     }
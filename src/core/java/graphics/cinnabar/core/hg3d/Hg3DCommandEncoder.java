@@ -21,8 +21,10 @@ import graphics.cinnabar.api.memory.MagicMemorySizes;
 import graphics.cinnabar.api.memory.PointerWrapper;
 import graphics.cinnabar.api.util.Destroyable;
 import graphics.cinnabar.api.util.Pair;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
 import org.jetbrains.annotations.Nullable;
 import org.joml.Vector3i;
@@ -151,11 +153,12 @@ public class Hg3DCommandEncoder implements C3DCommandEncoder, Hg3DObject, Destro
         earlyCommandBuffer().initImages(List.of(texture.image()));
     }
     
-    void addFlushCallback(Runnable runnable) {
+    public void addFlushCallback(Runnable runnable) {
         flushCallbacks.add(runnable);
     }
     
-    void insertCommandBufferFirst(HgCommandBuffer commandBuffer) {
+    // ahead of everything recorded since the last endCommandBuffers, but after anything already ended
+    public void insertCommandBufferFirst(HgCommandBuffer commandBuffer) {
         commandBuffersThisFlush.add(commandBuffer);
         queueItems.add(0, HgQueue.Item.execute(commandBuffer));
     }
@@ -172,6 +175,7 @@ public class Hg3DCommandEncoder implements C3DCommandEncoder, Hg3DObject, Destro
     }
     
     HgBuffer.Slice uploadBufferSlice(long size) {
+        device.frameStats().add(Hg3DFrameStats.Counter.UPLOAD_BYTES, size);
         if (size > UPLOAD_BUFFER_SIZE) {
             final var tempBuffer = device.hgDevice().createBuffer(HgBuffer.MemoryRequest.CPU, size, VK_BUFFER_USAGE_TRANSFER_SRC_BIT).setName("Upload Oversize");
             device.destroyEndOfFrameAsync(tempBuffer);
@@ -314,11 +318,14 @@ public class Hg3DCommandEncoder implements C3DCommandEncoder, Hg3DObject, Destro
     @Override
     public void writeToBuffer(GpuBufferSlice slice, ByteBuffer buffer) {
         final var targetBuffer = ((Hg3DGpuBuffer) slice.buffer());
+        // before anything marks it used, this needs to see if the write could have skipped staging
+        targetBuffer.recordWrite(buffer.remaining());
         
         if (!targetBuffer.isInFlight() && targetBuffer.hgSlice().buffer().memoryType().mappable) {
             // buffer isn't in flight, and is mappable, write directly to it
             final var bufferPtr = targetBuffer.hgSlice().map();
             assert buffer.remaining() <= slice.length();
+            device.frameStats().add(Hg3DFrameStats.Counter.UPLOAD_BYTES, buffer.remaining());
             MemoryUtil.memCopy(MemoryUtil.memAddress(buffer), bufferPtr.pointer() + slice.offset(), buffer.remaining());
             targetBuffer.hgSlice().unmap();
         } else {
@@ -499,6 +506,15 @@ public class Hg3DCommandEncoder implements C3DCommandEncoder, Hg3DObject, Destro
         private final HgFramebuffer framebuffer;
         private final HgCommandBuffer commandBuffer;
         protected boolean uniformsDirty = false;
+        // what was written into the currently bound set, indexed the same as the layout's bindings
+        // if only dynamic offsets change, the set is just rebound with new offsets
+        // compared by value, the slices are rebuilt every update and MC hands out new GpuBufferSlices for the same range constantly
+        @Nullable
+        private HgUniformSet boundUniformSet;
+        private final ObjectArrayList<Object> boundUniformSetContents = new ObjectArrayList<>();
+        private final ObjectArrayList<Object> pendingUniformSetContents = new ObjectArrayList<>();
+        private final IntArrayList boundDynamicOffsets = new IntArrayList();
+        private final IntArrayList pendingDynamicOffsets = new IntArrayList();
         @Nullable
         private Hg3DRenderPipeline boundPipeline;
         @Nullable
@@ -520,6 +536,7 @@ public class Hg3DCommandEncoder implements C3DCommandEncoder, Hg3DObject, Destro
             uniforms.clear();
             samplers.clear();
             uniformsDirty = true;
+            boundUniformSet = null;
             
             boundPipeline = null;
             hgPipeline = null;
@@ -569,7 +586,10 @@ public class Hg3DCommandEncoder implements C3DCommandEncoder, Hg3DObject, Destro
             boundPipeline = device.getPipeline(pipeline);
             hgPipeline = boundPipeline.getPipeline(renderPass);
             commandBuffer.bindPipeline(hgPipeline);
+            device.frameStats().increment(Hg3DFrameStats.Counter.PIPELINE_BINDS);
             uniformsDirty = true;
+            // different pipelines have different layouts, so the set can't carry over
+            boundUniformSet = null;
         }
         
         @Override
@@ -577,7 +597,11 @@ public class Hg3DCommandEncoder implements C3DCommandEncoder, Hg3DObject, Destro
             if (view == null || sampler == null) {
                 this.samplers.remove(uniformName);
             } else {
-                this.samplers.put(uniformName, new Pair<>(view, sampler));
+                // keep the same pair if nothing changed, rebinding the same texture is common
+                final var current = this.samplers.get(uniformName);
+                if (current == null || current.first() != view || current.second() != sampler) {
+                    this.samplers.put(uniformName, new Pair<>(view, sampler));
+                }
             }
             uniformsDirty = true;
         }
@@ -635,11 +659,15 @@ public class Hg3DCommandEncoder implements C3DCommandEncoder, Hg3DObject, Destro
         public void drawIndexed(int vertexOffset, int firstIndex, int indexCount, int instanceCount) {
             updateUniforms();
             commandBuffer.drawIndexed(indexCount, instanceCount, firstIndex, vertexOffset, 0);
+            device.frameStats().increment(Hg3DFrameStats.Counter.DRAWS);
         }
         
         @Override
         public <T> void drawMultipleIndexed(Collection<RenderPass.Draw<T>> draws, @Nullable GpuBuffer indexBuffer, @Nullable VertexFormat.IndexType indexType, Collection<String> dynamicUniforms, T userData) {
             assert hgPipeline != null;
+            // counted here for both paths
+            device.frameStats().increment(Hg3DFrameStats.Counter.MULTIDRAWS);
+            device.frameStats().add(Hg3DFrameStats.Counter.DRAWS, draws.size());
             
             if (dynamicUniforms.size() == 1) {
                 final var dynamicUniformName = dynamicUniforms.stream().findFirst().get();
@@ -688,6 +716,7 @@ public class Hg3DCommandEncoder implements C3DCommandEncoder, Hg3DObject, Destro
         public void draw(int firstVertex, int vertexCount) {
             updateUniforms();
             commandBuffer.draw(vertexCount, 1, firstVertex, 0);
+            device.frameStats().increment(Hg3DFrameStats.Counter.DRAWS);
         }
         
         private void updateUniforms() {
@@ -701,39 +730,78 @@ public class Hg3DCommandEncoder implements C3DCommandEncoder, Hg3DObject, Destro
             @Nullable
             final var uniformSetLayout = pipelineLayout.uniformSetLayout(0);
             assert uniformSetLayout != null;
+            final var bindings = uniformSetLayout.bindings();
             
-            final var writes = new ReferenceArrayList<HgUniformSet.Write>();
-            for (final var binding : uniformSetLayout.bindings()) {
+            pendingUniformSetContents.clear();
+            pendingDynamicOffsets.clear();
+            for (final var binding : bindings) {
                 switch (binding.type()) {
                     case COMBINED_IMAGE_SAMPLER -> {
                         final var viewSampler = samplers.get(binding.name());
                         assert viewSampler != null;
-                        final var imageView = (Hg3DGpuTextureView) viewSampler.first();
-                        final var sampler = (Hg3DGpuSampler) viewSampler.second();
-                        writes.add(new HgUniformSet.Write.Image(binding, 0, List.of(new Pair<>(imageView.imageView(), sampler.sampler()))));
+                        pendingUniformSetContents.add(viewSampler);
                     }
-                    case UNIFORM_TEXEL_BUFFER -> {
+                    case UNIFORM_TEXEL_BUFFER, UNIFORM_BUFFER, STORAGE_BUFFER -> {
                         @Nullable
                         final var slice = uniforms.get(binding.name());
                         assert slice != null;
-                        final var hgBuffer = ((Hg3DGpuBuffer) slice.buffer()).hgSlice();
-                        final var view = hgBuffer.view(boundPipeline.texelBufferFormat(binding.name()), slice.offset(), slice.length());
-                        writes.add(new HgUniformSet.Write.BufferView(binding, 0, List.of(view)));
-                        device.destroyEndOfFrameAsync(view);
+                        pendingUniformSetContents.add(((Hg3DGpuBuffer) slice.buffer()).hgSlice().slice(slice.offset(), slice.length()));
                     }
-                    case UNIFORM_BUFFER, STORAGE_BUFFER -> {
+                    case UNIFORM_BUFFER_DYNAMIC -> {
                         @Nullable
                         final var slice = uniforms.get(binding.name());
                         assert slice != null;
-                        writes.add(new HgUniformSet.Write.Buffer(binding, 0, List.of(((Hg3DGpuBuffer) slice.buffer()).hgSlice().slice(slice.offset(), slice.length()))));
+                        // the set only holds the start of the buffer and the size, where in the buffer is the dynamic offset
+                        pendingUniformSetContents.add(((Hg3DGpuBuffer) slice.buffer()).hgSlice().slice(0, slice.length()));
+                        pendingDynamicOffsets.add(Math.toIntExact(slice.offset()));
+                    }
+                }
+            }
+            
+            if (boundUniformSet != null && boundUniformSetContents.equals(pendingUniformSetContents)) {
+                // uniform only change, no new set required
+                if (!boundDynamicOffsets.equals(pendingDynamicOffsets)) {
+                    commandBuffer.bindUniformSet(0, boundUniformSet, pendingDynamicOffsets);
+                    boundDynamicOffsets.clear();
+                    boundDynamicOffsets.addAll(pendingDynamicOffsets);
+                }
+                return;
+            }
+            
+            final var writes = new ReferenceArrayList<HgUniformSet.Write>();
+            for (int i = 0; i < bindings.size(); i++) {
+                final var binding = bindings.get(i);
+                final var contents = pendingUniformSetContents.get(i);
+                switch (binding.type()) {
+                    case COMBINED_IMAGE_SAMPLER -> {
+                        //noinspection unchecked
+                        final var viewSampler = (Pair<GpuTextureView, GpuSampler>) contents;
+                        final var imageView = (Hg3DGpuTextureView) viewSampler.first();
+                        final var sampler = (Hg3DGpuSampler) viewSampler.second();
+                        writes.add(new HgUniformSet.Write.Image(binding, 0, List.of(new Pair<>(imageView.imageView(), sampler.sampler()))));
                     }
+                    case UNIFORM_TEXEL_BUFFER -> {
+                        final var slice = (HgBuffer.Slice) contents;
+                        final var view = slice.view(boundPipeline.texelBufferFormat(binding.name()));
+                        writes.add(new HgUniformSet.Write.BufferView(binding, 0, List.of(view)));
+                        device.destroyEndOfFrameAsync(view);
+                    }
+                    case UNIFORM_BUFFER, UNIFORM_BUFFER_DYNAMIC, STORAGE_BUFFER -> writes.add(new HgUniformSet.Write.Buffer(binding, 0, List.of((HgBuffer.Slice) contents)));
                 }
             }
             
             final var uniformSet = boundPipeline.uniformPool().allocate();
             device.destroyEndOfFrame(uniformSet);
             uniformSet.write(writes);
-            commandBuffer.bindUniformSet(0, uniformSet);
+            device.frameStats().increment(Hg3DFrameStats.Counter.UNIFORM_SETS_ALLOCATED);
+            device.frameStats().add(Hg3DFrameStats.Counter.UNIFORM_WRITES, writes.size());
+            commandBuffer.bindUniformSet(0, uniformSet, pendingDynamicOffsets);
+            
+            boundUniformSet = uniformSet;
+            boundUniformSetContents.clear();
+            boundUniformSetContents.addAll(pendingUniformSetContents);
+            boundDynamicOffsets.clear();
+            boundDynamicOffsets.addAll(pendingDynamicOffsets);
         }
         
         @Override
@@ -163,7 +163,8 @@ public class Hg3DConst {
         int bits = 0;
         // must always have TRANSFER_DST for uploads
         bits |= VK_IMAGE_USAGE_TRANSFER_DST_BIT;
-        if ((b3dUsage & GpuTexture.USAGE_COPY_SRC) != 0) {
+        // capture snapshots read back whatever texture gets used, so with it on everything is a copy source
+        if ((b3dUsage & GpuTexture.USAGE_COPY_SRC) != 0 || Hg3D.CAPTURE) {
             bits |= VK_IMAGE_USAGE_TRANSFER_SRC_BIT;
         }
         if ((b3dUsage & GpuTexture.USAGE_TEXTURE_BINDING) != 0) {
@@ -0,0 +1,177 @@
+package graphics.cinnabar.core.hg3d;
+
+import com.mojang.jtracy.Plot;
+import com.mojang.jtracy.TracyClient;
+import graphics.cinnabar.api.annotations.ThreadSafety;
+import graphics.cinnabar.api.hg.HgCommandBuffer;
+import graphics.cinnabar.api.hg.HgDevice;
+import graphics.cinnabar.lib.util.MathUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static graphics.cinnabar.core.hg3d.Hg3D.HG3D_LOG;
+
+// what a frame cost, counted as Hg3D does the work and totalled once a frame in endFrame
+// counters are LongAdders, which stripe per thread under contention, so the buffer manager and pipeline compiles off the render thread don't fight over a cache line
+// barriers and submits come from the Hg device's own counts instead, Mercury only counts barriers with -Dcinnabar.countCommands=true
+public class Hg3DFrameStats {
+    
+    public enum Counter {
+        // B3D level draws, a drawMultipleIndexed counts every draw in it
+        DRAWS,
+        MULTIDRAWS,
+        PIPELINE_BINDS,
+        UNIFORM_SETS_ALLOCATED,
+        UNIFORM_WRITES,
+        BARRIERS,
+        SUBMITS,
+        UPLOAD_BYTES,
+        EVICTIONS,
+        // per render pass compatible VkPipeline, a RenderPipeline can need a few
+        PIPELINE_COMPILES,
+        ;
+        
+        private static final Counter[] VALUES = values();
+    }
+    
+    // F3 shows averages smoothed over roughly this many frames, single frames are too noisy to read
+    private static final double SMOOTHING = 1.0 / 32.0;
+    
+    private final HgDevice hgDevice;
+    private final LongAdder[] counters = new LongAdder[Counter.VALUES.length];
+    private final long[] lastFrame = new long[Counter.VALUES.length];
+    private final long[] totals = new long[Counter.VALUES.length];
+    private final double[] smoothed = new double[Counter.VALUES.length];
+    private long lastDeviceBarriers;
+    private long lastDeviceSubmits;
+    private long frames;
+    @Nullable
+    private BufferedWriter csv;
+    @Nullable
+    private final Plot[] plots;
+    
+    public Hg3DFrameStats(HgDevice hgDevice, @Nullable String csvPath) {
+        this.hgDevice = hgDevice;
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        lastDeviceBarriers = hgDevice.commandCount(HgCommandBuffer.Command.BARRIER);
+        lastDeviceSubmits = hgDevice.submitCount();
+        if (TracyClient.isAvailable()) {
+            plots = new Plot[Counter.VALUES.length];
+            for (final var counter : Counter.VALUES) {
+                plots[counter.ordinal()] = TracyClient.createPlot("Hg3D " + counter.name().toLowerCase().replace('_', ' '));
+            }
+        } else {
+            plots = null;
+        }
+        if (csvPath != null) {
+            try {
+                csv = Files.newBufferedWriter(Path.of(csvPath));
+                csv.write("frame");
+                for (final var counter : Counter.VALUES) {
+                    csv.write(',');
+                    csv.write(counter.name().toLowerCase());
+                }
+                csv.newLine();
+            } catch (IOException e) {
+                HG3D_LOG.error("Failed to open frame stats CSV {}", csvPath, e);
+                csv = null;
+            }
+        }
+    }
+    
+    @ThreadSafety.Many
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+    
+    @ThreadSafety.Many
+    public void add(Counter counter, long value) {
+        counters[counter.ordinal()].add(value);
+    }
+    
+    // the last completed frame's value
+    @ThreadSafety.MainGraphics
+    public long lastFrame(Counter counter) {
+        return lastFrame[counter.ordinal()];
+    }
+    
+    @ThreadSafety.MainGraphics
+    public long total(Counter counter) {
+        return totals[counter.ordinal()];
+    }
+    
+    @ThreadSafety.MainGraphics
+    public void endOfFrame() {
+        for (int i = 0; i < counters.length; i++) {
+            // a count racing with this just lands in the next frame
+            lastFrame[i] = counters[i].sumThenReset();
+        }
+        final var deviceBarriers = hgDevice.commandCount(HgCommandBuffer.Command.BARRIER);
+        final var deviceSubmits = hgDevice.submitCount();
+        lastFrame[Counter.BARRIERS.ordinal()] += deviceBarriers - lastDeviceBarriers;
+        lastFrame[Counter.SUBMITS.ordinal()] += deviceSubmits - lastDeviceSubmits;
+        lastDeviceBarriers = deviceBarriers;
+        lastDeviceSubmits = deviceSubmits;
+        
+        for (int i = 0; i < lastFrame.length; i++) {
+            totals[i] += lastFrame[i];
+            smoothed[i] += (lastFrame[i] - smoothed[i]) * SMOOTHING;
+        }
+        frames++;
+        
+        if (plots != null) {
+            for (int i = 0; i < plots.length; i++) {
+                plots[i].setValue(lastFrame[i]);
+            }
+        }
+        
+        if (csv != null) {
+            try {
+                csv.write(Long.toString(frames));
+                for (final var value : lastFrame) {
+                    csv.write(',');
+                    csv.write(Long.toString(value));
+                }
+                csv.newLine();
+            } catch (IOException e) {
+                HG3D_LOG.error("Failed to write frame stats CSV, no more rows will be written", e);
+                closeCSV();
+            }
+        }
+    }
+    
+    @ThreadSafety.MainGraphics
+    public void addDebugText(List<String> lines) {
+        lines.add(String.format("Hg3D frame: %.0f draws (%.0f multidraws), %.0f pipeline binds, %.1f pipeline compiles", smoothed(Counter.DRAWS), smoothed(Counter.MULTIDRAWS), smoothed(Counter.PIPELINE_BINDS), smoothed(Counter.PIPELINE_COMPILES)));
+        lines.add(String.format("Hg3D frame: %.0f uniform sets, %.0f uniform writes, %.0f barriers, %.1f submits", smoothed(Counter.UNIFORM_SETS_ALLOCATED), smoothed(Counter.UNIFORM_WRITES), smoothed(Counter.BARRIERS), smoothed(Counter.SUBMITS)));
+        lines.add(String.format("Hg3D frame: %s uploaded, %.1f evictions", MathUtil.byteString((long) smoothed(Counter.UPLOAD_BYTES)), smoothed(Counter.EVICTIONS)));
+    }
+    
+    private double smoothed(Counter counter) {
+        return smoothed[counter.ordinal()];
+    }
+    
+    public void destroy() {
+        closeCSV();
+    }
+    
+    private void closeCSV() {
+        if (csv == null) {
+            return;
+        }
+        try {
+            csv.close();
+        } catch (IOException e) {
+            HG3D_LOG.error("Failed to close frame stats CSV", e);
+        }
+        csv = null;
+    }
+}
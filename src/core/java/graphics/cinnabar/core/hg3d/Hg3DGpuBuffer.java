@@ -7,7 +7,9 @@ import graphics.cinnabar.api.hg.HgQueue;
 import graphics.cinnabar.api.memory.MagicMemorySizes;
 import graphics.cinnabar.api.util.Destroyable;
 import graphics.cinnabar.core.util.MagicNumbers;
-import graphics.cinnabar.lib.datastructures.SpliceableLinkedList;
+import graphics.cinnabar.lib.datastructures.ClockResidencyTracker;
+import graphics.cinnabar.lib.threading.WorkQueue;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
 import org.jetbrains.annotations.Nullable;
 import org.lwjgl.system.MemoryUtil;
 import org.lwjgl.system.libc.LibCString;
@@ -23,6 +25,8 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
     private boolean isClosed = false;
     private final Manager manager;
     private final @Nullable Supplier<String> label;
+    @Nullable
+    private String trackingLabel;
     
     @Nullable
     private final ByteBuffer sourceData;
@@ -38,8 +42,14 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
     @Nullable
     private ByteBuffer immediateUpload;
     
-    private final SpliceableLinkedList.Node<Hg3DGpuBuffer> usageListNode = new SpliceableLinkedList.Node<>(this);
+    // slot in the manager's residency tracker, -1 when there is no backing buffer
+    private int residencySlot = -1;
     private long lastUsedFrame = -1;
+    // write profiling, feeds the placement policy
+    // heat counts frames with writes that could have skipped staging (buffer wasn't in flight), and halves every WRITE_HEAT_DECAY_FRAMES without one
+    private int writeHeat = 0;
+    private long lastWriteFrame = -1;
+    private long bytesWritten = 0;
     
     private Hg3DGpuBuffer(Manager manager, @Nullable Supplier<String> label, int usage, long size, @Nullable ByteBuffer sourceData) {
         super(usage, size);
@@ -82,7 +92,7 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
     @Override
     public void destroy() {
         if (buffer != null) {
-            buffer.destroy();
+            releaseBacking();
         }
         MemoryUtil.memFree(sourceData);
         MemoryUtil.nmemFree(evictedData);
@@ -94,6 +104,11 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
         return device;
     }
     
+    @Nullable
+    public String label() {
+        return label != null ? label.get() : null;
+    }
+    
     public boolean usedThisFrame() {
         return lastUsedFrame == device.currentFrame();
     }
@@ -106,7 +121,7 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
                 manager.promoteImmediate(this);
                 assert slice != null;
             } else if (!hasPreferredMemoryType()) {
-                // buffer would like to be device-local, and isn't, but can be used by the GPU
+                // buffer isn't where the placement policy wants it (usually device-local, or in/out of the BAR), but can be used by the GPU
                 // attempt a softer promotion, this won't fail
                 manager.promoteToDevice(this);
             }
@@ -128,26 +143,99 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
         return device.currentFrame() - lastUsedFrame <= MagicNumbers.MaximumFramesInFlight || isClosed;
     }
     
+    public void recordWrite(long size) {
+        final var currentFrame = device.currentFrame();
+        bytesWritten += size;
+        if (isInFlight() || lastWriteFrame == currentFrame) {
+            // staging would be required regardless of placement, or this frame was already counted
+            return;
+        }
+        writeHeat = currentWriteHeat() + 1;
+        lastWriteFrame = currentFrame;
+    }
+    
+    private int currentWriteHeat() {
+        final var decaySteps = (device.currentFrame() - lastWriteFrame) / Manager.WRITE_HEAT_DECAY_FRAMES;
+        return decaySteps >= Integer.SIZE ? 0 : writeHeat >> decaySteps;
+    }
+    
+    public boolean writeHot() {
+        return currentWriteHeat() >= Manager.HOT_WRITE_HEAT;
+    }
+    
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+    
+    private String trackingLabel() {
+        if (trackingLabel == null) {
+            trackingLabel = Hg3DMemoryTracker.normalizeLabel(label != null ? label.get() : null);
+        }
+        return trackingLabel;
+    }
+    
+    // swaps in a new backing buffer, keeping the memory tracker in sync
+    // the old buffer (if any) is the caller's to destroy
+    private void setBacking(@Nullable HgBuffer newBuffer) {
+        final var tracker = device.memoryTracker();
+        if (buffer != null) {
+            tracker.freed(trackingLabel(), buffer.memoryType(), size());
+        }
+        buffer = newBuffer;
+        if (newBuffer == null) {
+            slice = null;
+            return;
+        }
+        newBuffer.setName(label);
+        slice = newBuffer.slice();
+        memoryType = newBuffer.memoryType();
+        tracker.allocated(trackingLabel(), memoryType, size());
+    }
+    
+    // releaseBacking for the manager's evictions, destroy releases without counting
+    private void evict() {
+        releaseBacking();
+        device.frameStats().increment(Hg3DFrameStats.Counter.EVICTIONS);
+    }
+    
+    private void releaseBacking() {
+        assert buffer != null;
+        final var oldBuffer = buffer;
+        setBacking(null);
+        oldBuffer.destroy();
+        manager.evicted(this);
+    }
+    
     private boolean hasPreferredMemoryType() {
         if (slice == null) {
             return false;
         }
-        if (requestedMemory == HgBuffer.MemoryRequest.CPU) {
-            // anything mappable always has its preferred type, mappable
-            return true;
-        }
-        if (requestedMemory == HgBuffer.MemoryRequest.MAPPABLE_PREF_GPU) {
-            // TODO: detect when we have mappable device memory, and return false here
-            //       for now, consider it always preferred
-            return true;
-        }
         assert memoryType != null;
-        return memoryType.gpuLocal;
+        return switch (manager.placement(this)) {
+            // anything mappable always has its preferred type, mappable
+            case CPU -> true;
+            // wants the BAR, plain device memory isn't it (that's where hot buffers start out), anything else is only fine if the BAR is full
+            case MAPPABLE_PREF_GPU -> (memoryType.gpuLocal && memoryType.mappable) || !manager.mappableDeviceHasRoom(size());
+            // device local, but buffers that aren't hot enough anymore shouldn't be holding a small BAR
+            case GPU -> memoryType.gpuLocal && (memoryType != HgBuffer.MemoryType.GPU_MAPPABLE || device.hgDevice().ReBAR());
+        };
     }
     
     public static class Manager implements Destroyable {
+        // frames with direct-writable writes needed before a GPU buffer is considered hot
+        private static final int HOT_WRITE_HEAT = 4;
+        private static final int WRITE_HEAT_DECAY_FRAMES = 16;
+        // w/o ReBAR, the BAR is only 256MB (usually), leave space in it for the driver and B3D's mapped buffers
+        // and don't let any single buffer take a large chunk of it
+        private static final int SMALL_BAR_USAGE_EIGHTHS = 6;
+        private static final int SMALL_BAR_MAX_BUFFER_FRACTION = 64;
+        // the residency clock hand goes around once every this many frames, so a victim is something untouched for about that long
+        // the hand only moves a fraction of the slots each frame, a full revolution per frame would make everything untouched since last frame a victim
+        private static final int SWEEP_REVOLUTION_FRAMES = 64;
+        private static final int MIN_SWEEP_SLOTS_PER_FRAME = 64;
+        
         private final Hg3DGpuDevice device;
-        private final SpliceableLinkedList<Hg3DGpuBuffer> liveBuffers = new SpliceableLinkedList<>();
+        private final ClockResidencyTracker<Hg3DGpuBuffer> residency = new ClockResidencyTracker<>(4096);
         private long lastPromotionFailedFrame = 0;
         @Nullable
         private HgCommandBuffer promotionCommandBuffer;
@@ -190,20 +278,57 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
         }
         
         public void destroy(Hg3DGpuBuffer buffer) {
-            if (buffer.usageListNode.linked()) {
-                assert (buffer.buffer != null);
-                liveBuffers.remove(buffer.usageListNode);
-            }
+            assert buffer.residencySlot == -1;
             buffer.buffer = null;
             buffer.slice = null;
             buffer.evictedData = 0;
         }
         
+        // where the buffer should live right now
+        // static data and cold buffers go in plain device memory, only buffers that get written while idle benefit from being in the BAR
+        private HgBuffer.MemoryRequest placement(Hg3DGpuBuffer buffer) {
+            if (buffer.requestedMemory != HgBuffer.MemoryRequest.GPU || device.hgDevice().UMA()) {
+                return buffer.requestedMemory;
+            }
+            if (buffer.sourceData != null || !buffer.writeHot()) {
+                return HgBuffer.MemoryRequest.GPU;
+            }
+            if (buffer.memoryType == HgBuffer.MemoryType.GPU_MAPPABLE) {
+                // already in the BAR, and still hot, stay there
+                return HgBuffer.MemoryRequest.MAPPABLE_PREF_GPU;
+            }
+            return mappableDeviceHasRoom(buffer.size()) ? HgBuffer.MemoryRequest.MAPPABLE_PREF_GPU : HgBuffer.MemoryRequest.GPU;
+        }
+        
+        private boolean mappableDeviceHasRoom(long size) {
+            final var stats = device.hgDevice().mappableDeviceMemoryStats();
+            final var budget = stats.rightLong();
+            if (budget == 0) {
+                return false;
+            }
+            if (device.hgDevice().ReBAR()) {
+                // all of VRAM, the normal device budget handling applies
+                return stats.leftLong() + size <= budget;
+            }
+            if (size > budget / SMALL_BAR_MAX_BUFFER_FRACTION) {
+                return false;
+            }
+            return stats.leftLong() + size <= (budget >> 3) * SMALL_BAR_USAGE_EIGHTHS;
+        }
+        
         public void used(Hg3DGpuBuffer buffer) {
-            if (buffer.usageListNode.linked()) {
-                liveBuffers.remove(buffer.usageListNode);
+            if (buffer.residencySlot == -1) {
+                buffer.residencySlot = residency.add(buffer);
+            } else {
+                residency.touch(buffer.residencySlot);
+            }
+        }
+        
+        private void evicted(Hg3DGpuBuffer buffer) {
+            if (buffer.residencySlot != -1) {
+                residency.remove(buffer.residencySlot);
+                buffer.residencySlot = -1;
             }
-            liveBuffers.add(buffer.usageListNode);
         }
         
         private void endPromotionCommandBuffer() {
@@ -221,50 +346,10 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
             // if this fails, the game may crash, so, make every attempt to free some memory.
             // notable that the current frame's buffers can't be freed, because this may be within a renderpass and I cant end that early
             // device can be stalled and anything for N-1 can be though
-            boolean anythingFreed = false;
-            
-            for (@Nullable var currentBuffer = liveBuffers.peekFirst(); currentBuffer != null && allocSize > 0; ) {
-                if (currentBuffer.data.isInFlight()) {
-                    // buffer is too new, must fall to second pass
-                    break;
-                }
-                assert currentBuffer.data.buffer != null;
-                if (currentBuffer.data.buffer.memoryType().gpuLocal != gpuLocal) {
-                    // wrong kind of memory, freeing this won't help
-                    currentBuffer = currentBuffer.next();
-                    continue;
-                }
-                if (currentBuffer.data.sourceData != null) {
-                    currentBuffer.data.buffer.destroy();
-                    currentBuffer.data.buffer = null;
-                    currentBuffer.data.slice = null;
-                    final var removedBuffer = currentBuffer;
-                    currentBuffer = currentBuffer.next();
-                    liveBuffers.remove(removedBuffer);
-                    allocSize -= removedBuffer.data.size();
-                    anythingFreed = true;
-                } else if (currentBuffer.data.buffer.memoryType().mappable && currentBuffer.data.buffer.memoryType() != HgBuffer.MemoryType.GPU_MAPPABLE) {
-                    // mappable memory, can evict to CPU memory and then follow immediate eviction path
-                    // UMA (iGPUs) will also end up here
-                    // GPU_MAPPABLE is specifically for over-pcie devices, which is extremely slow to read (though you can), so im not doing it in this pass
-                    currentBuffer.data.evictedData = MemoryUtil.nmemAlloc(currentBuffer.data.size());
-                    currentBuffer.data.evictedDataSize = currentBuffer.data.size();
-                    final var ptr = currentBuffer.data.buffer.slice().map();
-                    MemoryUtil.memCopy(ptr.pointer(), currentBuffer.data.evictedData, currentBuffer.data.size());
-                    currentBuffer.data.buffer.slice().unmap();
-                    
-                    currentBuffer.data.buffer.destroy();
-                    currentBuffer.data.buffer = null;
-                    currentBuffer.data.slice = null;
-                    final var removedBuffer = currentBuffer;
-                    currentBuffer = currentBuffer.next();
-                    liveBuffers.remove(removedBuffer);
-                    allocSize -= removedBuffer.data.size();
-                    anythingFreed = true;
-                } else {
-                    currentBuffer = currentBuffer.next();
-                }
-            }
+            // there is no recency order to walk here, anything not in-flight is equally fair game when it's this bad
+            long freed = evictWithoutCopy(gpuLocal, allocSize, false);
+            boolean anythingFreed = freed != 0;
+            allocSize -= freed;
             
             if (allocSize <= 0) {
                 // enough memory freed, attempt the alloc again
@@ -273,48 +358,9 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
             device.hgDevice().waitIdle(); // TODO: use something better than wait idle, this is dangerous w/ multiple threads
             // anything for N-1 is now free to yeet too
             
-            for (@Nullable var currentBuffer = liveBuffers.peekFirst(); currentBuffer != null && allocSize > 0; ) {
-                if (currentBuffer.data.usedThisFrame()) {
-                    // buffer is too new, must fall to second pass
-                    break;
-                }
-                assert currentBuffer.data.buffer != null;
-                if (currentBuffer.data.buffer.memoryType().gpuLocal != gpuLocal) {
-                    // wrong kind of memory, freeing this wont help
-                    currentBuffer = currentBuffer.next();
-                    continue;
-                }
-                if (currentBuffer.data.sourceData != null) {
-                    currentBuffer.data.buffer.destroy();
-                    currentBuffer.data.buffer = null;
-                    currentBuffer.data.slice = null;
-                    final var removedBuffer = currentBuffer;
-                    currentBuffer = currentBuffer.next();
-                    liveBuffers.remove(removedBuffer);
-                    allocSize -= removedBuffer.data.size();
-                    anythingFreed = true;
-                } else if (currentBuffer.data.buffer.memoryType().mappable && currentBuffer.data.buffer.memoryType() != HgBuffer.MemoryType.GPU_MAPPABLE) {
-                    // mappable memory, can evict to CPU memory and then follow immediate eviction path
-                    // UMA (iGPUs) will also end up here
-                    // GPU_MAPPABLE is specifically for over-pcie devices, which is extremely slow to read (though you can), so im not doing it in this pass
-                    currentBuffer.data.evictedData = MemoryUtil.nmemAlloc(currentBuffer.data.size());
-                    currentBuffer.data.evictedDataSize = currentBuffer.data.size();
-                    final var ptr = currentBuffer.data.buffer.slice().map();
-                    MemoryUtil.memCopy(ptr.pointer(), currentBuffer.data.evictedData, currentBuffer.data.size());
-                    currentBuffer.data.buffer.slice().unmap();
-                    
-                    currentBuffer.data.buffer.destroy();
-                    currentBuffer.data.buffer = null;
-                    currentBuffer.data.slice = null;
-                    final var removedBuffer = currentBuffer;
-                    currentBuffer = currentBuffer.next();
-                    liveBuffers.remove(removedBuffer);
-                    allocSize -= removedBuffer.data.size();
-                    anythingFreed = true;
-                } else {
-                    currentBuffer = currentBuffer.next();
-                }
-            }
+            freed = evictWithoutCopy(gpuLocal, allocSize, true);
+            anythingFreed |= freed != 0;
+            allocSize -= freed;
             
             if (allocSize <= 0) {
                 // enough memory freed, attempt the alloc again
@@ -329,38 +375,35 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
             
             while (allocSize > 0) {
                 long currentEmergencyBufferOffset = 0;
-                SpliceableLinkedList<Hg3DGpuBuffer> shufflingBuffers = new SpliceableLinkedList<>();
+                final var shufflingBuffers = new ReferenceArrayList<Hg3DGpuBuffer>();
                 HgCommandBuffer currentCommandBuffer = device.createCommandEncoder().allocateCommandBuffer();
                 
-                for (@Nullable var currentBuffer = liveBuffers.peekFirst(); currentBuffer != null && currentEmergencyBufferOffset < allocSize; ) {
-                    if (currentBuffer.data.usedThisFrame()) {
-                        // buffer too new, SOL
-                        return false;
+                for (int slot = 0; slot < residency.slotCount() && currentEmergencyBufferOffset < allocSize; slot++) {
+                    @Nullable
+                    final var currentBuffer = residency.get(slot);
+                    if (currentBuffer == null || currentBuffer.usedThisFrame()) {
+                        // buffer too new, can't touch it
+                        continue;
                     }
-                    assert currentBuffer.data.buffer != null;
-                    if (currentBuffer.data.buffer.memoryType().gpuLocal != gpuLocal) {
+                    assert currentBuffer.buffer != null;
+                    if (currentBuffer.buffer.memoryType().gpuLocal != gpuLocal) {
                         // wrong kind of memory, freeing this wont help
-                        currentBuffer = currentBuffer.next();
                         continue;
                     }
-                    if (currentBuffer.data.size() > emergencyEvictionBuffer.size()) {
+                    if (currentBuffer.size() > emergencyEvictionBuffer.size()) {
                         // buffer is too big, just skip it
-                        currentBuffer = currentBuffer.next();
                         continue;
                     }
-                    if (currentEmergencyBufferOffset + currentBuffer.data.size() > emergencyEvictionBuffer.size()) {
+                    if (currentEmergencyBufferOffset + currentBuffer.size() > emergencyEvictionBuffer.size()) {
                         // out of space for this pass, submit and try again
                         break;
                     }
-                    currentCommandBuffer.copyBufferToBuffer(currentBuffer.data.buffer.slice(), emergencyEvictionBuffer.slice(currentEmergencyBufferOffset, currentBuffer.data.size()));
-                    currentEmergencyBufferOffset += currentBuffer.data.size();
-                    final var removedBuffer = currentBuffer;
-                    currentBuffer = currentBuffer.next();
-                    liveBuffers.remove(removedBuffer);
-                    shufflingBuffers.add(removedBuffer);
+                    currentCommandBuffer.copyBufferToBuffer(currentBuffer.buffer.slice(), emergencyEvictionBuffer.slice(currentEmergencyBufferOffset, currentBuffer.size()));
+                    currentEmergencyBufferOffset += currentBuffer.size();
+                    shufflingBuffers.add(currentBuffer);
                 }
                 
-                if (shufflingBuffers.empty()) {
+                if (shufflingBuffers.isEmpty()) {
                     assert currentEmergencyBufferOffset == 0;
                     currentCommandBuffer.destroy();
                     return anythingFreed;
@@ -376,20 +419,15 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
                 final var ptr = emergencyEvictionBuffer.map();
                 
                 currentEmergencyBufferOffset = 0;
-                for (@Nullable var currentBuffer = shufflingBuffers.peekFirst(); currentBuffer != null; ) {
-                    currentBuffer.data.evictedData = MemoryUtil.nmemAlloc(currentBuffer.data.size());
-                    currentBuffer.data.evictedDataSize = currentBuffer.data.size();
-                    MemoryUtil.memCopy(ptr.pointer() + currentEmergencyBufferOffset, currentBuffer.data.evictedData, currentBuffer.data.size());
-                    currentEmergencyBufferOffset += currentBuffer.data.size();
+                for (int i = 0; i < shufflingBuffers.size(); i++) {
+                    final var currentBuffer = shufflingBuffers.get(i);
+                    currentBuffer.evictedData = MemoryUtil.nmemAlloc(currentBuffer.size());
+                    currentBuffer.evictedDataSize = currentBuffer.size();
+                    MemoryUtil.memCopy(ptr.pointer() + currentEmergencyBufferOffset, currentBuffer.evictedData, currentBuffer.size());
+                    currentEmergencyBufferOffset += currentBuffer.size();
                     
-                    assert currentBuffer.data.buffer != null;
-                    currentBuffer.data.buffer.destroy();
-                    currentBuffer.data.buffer = null;
-                    currentBuffer.data.slice = null;
-                    final var removedBuffer = currentBuffer;
-                    currentBuffer = currentBuffer.next();
-                    liveBuffers.remove(removedBuffer);
-                    allocSize -= removedBuffer.data.size();
+                    currentBuffer.evict();
+                    allocSize -= currentBuffer.size();
                     anythingFreed = true;
                 }
             }
@@ -398,18 +436,57 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
             return true;
         }
         
+        // evicts anything that doesn't need a GPU copy to get out of the way, returns the bytes freed
+        // before a wait idle, anything in-flight is off limits, after one only this frame's buffers are
+        private long evictWithoutCopy(boolean gpuLocal, long allocSize, boolean afterWaitIdle) {
+            long freed = 0;
+            for (int slot = 0; slot < residency.slotCount() && freed < allocSize; slot++) {
+                @Nullable
+                final var currentBuffer = residency.get(slot);
+                if (currentBuffer == null) {
+                    continue;
+                }
+                if (afterWaitIdle ? currentBuffer.usedThisFrame() : currentBuffer.isInFlight()) {
+                    // buffer is too new
+                    continue;
+                }
+                assert currentBuffer.buffer != null;
+                if (currentBuffer.buffer.memoryType().gpuLocal != gpuLocal) {
+                    // wrong kind of memory, freeing this won't help
+                    continue;
+                }
+                if (currentBuffer.sourceData != null) {
+                    currentBuffer.evict();
+                } else if (currentBuffer.buffer.memoryType().mappable && currentBuffer.buffer.memoryType() != HgBuffer.MemoryType.GPU_MAPPABLE) {
+                    // mappable memory, can evict to CPU memory and then follow immediate eviction path
+                    // UMA (iGPUs) will also end up here
+                    // GPU_MAPPABLE is specifically for over-pcie devices, which is extremely slow to read (though you can), so im not doing it in this pass
+                    currentBuffer.evictedData = MemoryUtil.nmemAlloc(currentBuffer.size());
+                    currentBuffer.evictedDataSize = currentBuffer.size();
+                    final var ptr = currentBuffer.buffer.slice().map();
+                    MemoryUtil.memCopy(ptr.pointer(), currentBuffer.evictedData, currentBuffer.size());
+                    currentBuffer.buffer.slice().unmap();
+                    
+                    currentBuffer.evict();
+                } else {
+                    continue;
+                }
+                freed += currentBuffer.size();
+            }
+            return freed;
+        }
+        
         private void promoteImmediate(Hg3DGpuBuffer buffer) {
             // buffer is about to be used, and doesn't have any backing HgBuffer.Slice
             // it needs something to work with _immediately_
             
             if (buffer.slice == null) {
-                buffer.buffer = device.hgDevice().tryCreateBuffer(buffer.requestedMemory, buffer.size(), Hg3DConst.bufferUsageBits(buffer.usage()));
-                if (buffer.buffer == null) {
-                    buffer.buffer = device.hgDevice().createBuffer(HgBuffer.MemoryRequest.CPU, buffer.size(), Hg3DConst.bufferUsageBits(buffer.usage()));
+                @Nullable
+                var newBuffer = device.hgDevice().tryCreateBuffer(placement(buffer), buffer.size(), Hg3DConst.bufferUsageBits(buffer.usage()));
+                if (newBuffer == null) {
+                    newBuffer = device.hgDevice().createBuffer(HgBuffer.MemoryRequest.CPU, buffer.size(), Hg3DConst.bufferUsageBits(buffer.usage()));
                 }
-                buffer.buffer.setName(buffer.label);
-                buffer.slice = buffer.buffer.slice();
-                buffer.memoryType = buffer.slice.buffer().memoryType();
+                buffer.setBacking(newBuffer);
             }
             
             used(buffer);
@@ -469,19 +546,20 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
             assert buffer.slice != null;
             final var oldSlice = buffer.slice;
             
+            final var placement = placement(buffer);
             @Nullable
-            final var newBuffer = device.hgDevice().tryCreateBuffer(HgBuffer.MemoryRequest.GPU, buffer.size(), Hg3DConst.bufferUsageBits(buffer.usage()));
-            if (newBuffer == null) {
+            final var newBuffer = device.hgDevice().tryCreateBuffer(placement, buffer.size(), Hg3DConst.bufferUsageBits(buffer.usage()));
+            if (newBuffer == null || !newBuffer.memoryType().gpuLocal) {
                 // alloc failed, this is ok, the auto-demote process should make room next frame
                 // skip any other device promotions this frame though, we are out of room
+                // MAPPABLE_PREF_GPU is allowed to fall back to host memory, which isn't a promotion
+                if (newBuffer != null) {
+                    newBuffer.destroy();
+                }
                 lastPromotionFailedFrame = device.currentFrame();
                 return;
             }
-            assert newBuffer.memoryType().gpuLocal;
-            newBuffer.setName(buffer.label);
-            buffer.buffer = newBuffer;
-            buffer.slice = newBuffer.slice();
-            buffer.memoryType = buffer.slice.buffer().memoryType();
+            buffer.setBacking(newBuffer);
             
             device.destroyEndOfFrame(oldBuffer);
             if (promotionCommandBuffer == null) {
@@ -495,13 +573,12 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
         }
         
         private void autoDemote() {
-            {
-                @Nullable
-                final var first = liveBuffers.peekFirst();
-                if (first != null && first.data.isInFlight()) {
-                    // everything live is in-flight, can't purge anything from VK
-                    return;
-                }
+            // victims are whatever the last background sweep found untouched for a full revolution of the clock hand
+            // the hand is paced, so these are the buffers in the part it just passed that went SWEEP_REVOLUTION_FRAMES or more without use
+            @Nullable
+            final var victims = residency.pollVictims();
+            if (victims == null || victims.length == 0) {
+                return;
             }
             
             final var commandEncoder = device.createCommandEncoder();
@@ -516,32 +593,19 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
                 final var memoryStats = device.hgDevice().hostLocalMemoryStats();
                 final var targetUsage = ((memoryStats.rightLong() >> 3) * 8);
                 long currentUsage = memoryStats.leftLong();
-                for (
-                        @Nullable var currentNode = liveBuffers.peekFirst();
-                        currentUsage > targetUsage && currentNode != null && !currentNode.data.isInFlight();
-                ) {
-                    final var currentBuffer = currentNode.data;
+                for (int i = 0; i < victims.length && currentUsage > targetUsage; i++) {
+                    @Nullable
+                    final var currentBuffer = victim(victims[i]);
+                    if (currentBuffer == null) {
+                        continue;
+                    }
                     assert currentBuffer.buffer != null;
                     assert currentBuffer.memoryType != null;
                     if (!currentBuffer.memoryType.cpuLocal) {
-                        currentNode = currentNode.next();
                         continue;
                     }
                     assert currentBuffer.memoryType.mappable;
-                    if (currentBuffer.isInFlight()) {
-                        // out of old buffers
-                        break;
-                    }
-                    if (currentBuffer.canEvictImmediate()) {
-                        // easy route, just evict it
-                        // this buffer can re-upload itself when it gets used next
-                        currentBuffer.buffer.destroy();
-                        currentBuffer.buffer = null;
-                        currentBuffer.slice = null;
-                        final var toRemove = currentNode;
-                        currentNode = currentNode.next();
-                        liveBuffers.remove(toRemove);
-                    } else {
+                    if (!currentBuffer.canEvictImmediate()) {
                         // must shuffle this to system memory
                         // mappable memory, can evict to CPU memory and then follow immediate eviction path
                         // UMA (iGPUs) will also end up here
@@ -550,14 +614,11 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
                         final var ptr = currentBuffer.buffer.slice().map();
                         MemoryUtil.memCopy(ptr.pointer(), currentBuffer.evictedData, currentBuffer.size());
                         currentBuffer.buffer.slice().unmap();
-                        
-                        currentBuffer.buffer.destroy();
-                        currentBuffer.buffer = null;
-                        currentBuffer.slice = null;
-                        final var toRemove = currentNode;
-                        currentNode = currentNode.next();
-                        liveBuffers.remove(toRemove);
                     }
+                    // otherwise, easy route, just evict it
+                    // this buffer can re-upload itself when it gets used next
+                    currentBuffer.evict();
+                    currentUsage -= currentBuffer.size();
                 }
             }
             
@@ -566,14 +627,14 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
                 final var memoryStats = device.hgDevice().deviceLocalMemoryStats();
                 final var targetUsage = ((memoryStats.rightLong() >> 4) * 15);
                 long currentUsage = memoryStats.leftLong();
-                for (
-                        @Nullable var currentNode = liveBuffers.peekFirst();
-                        currentUsage > targetUsage && currentNode != null && !currentNode.data.isInFlight();
-                ) {
-                    final var currentBuffer = currentNode.data;
+                for (int i = 0; i < victims.length && currentUsage > targetUsage; i++) {
+                    @Nullable
+                    final var currentBuffer = victim(victims[i]);
+                    if (currentBuffer == null) {
+                        continue;
+                    }
                     assert currentBuffer.memoryType != null;
                     if (!currentBuffer.memoryType.gpuLocal) {
-                        currentNode = currentNode.next();
                         continue;
                     }
                     
@@ -589,11 +650,7 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
                     device.destroyEndOfFrame(currentBuffer.buffer);
                     commandBuffer.copyBufferToBuffer(currentBuffer.buffer.slice(), newBuffer.slice());
                     anyCommandRecorded = true;
-                    newBuffer.setName(currentBuffer.label);
-                    currentBuffer.buffer = newBuffer;
-                    currentBuffer.slice = newBuffer.slice();
-                    currentBuffer.memoryType = currentBuffer.slice.buffer().memoryType();
-                    currentNode = currentNode.next();
+                    currentBuffer.setBacking(newBuffer);
                     // for demotion process, consider it used
                     used(currentBuffer);
                     currentUsage -= currentBuffer.size();
@@ -610,8 +667,27 @@ public class Hg3DGpuBuffer extends GpuBuffer implements Hg3DObject, Destroyable
             }
         }
         
+        // null if the slot was removed, reused, or touched since the sweep, or if the buffer is still in-flight
+        @Nullable
+        private Hg3DGpuBuffer victim(int slot) {
+            if (!residency.stillVictim(slot)) {
+                return null;
+            }
+            @Nullable
+            final var buffer = residency.get(slot);
+            if (buffer == null || buffer.isInFlight()) {
+                return null;
+            }
+            return buffer;
+        }
+        
         public void endOfFrame() {
             autoDemote();
+            if (!residency.sweeping()) {
+                // the sweep only touches the residency bits, its victims get picked up by the next autoDemote
+                final var sweepSlots = Math.max(MIN_SWEEP_SLOTS_PER_FRAME, residency.slotCount() / SWEEP_REVOLUTION_FRAMES);
+                WorkQueue.BACKGROUND_THREADS_BULK.enqueue(_ -> residency.sweep(sweepSlots));
+            }
         }
     }
 }
@@ -14,7 +14,9 @@ import graphics.cinnabar.api.hg.enums.HgFormat;
 import graphics.cinnabar.api.util.Destroyable;
 import graphics.cinnabar.core.util.MagicNumbers;
 import graphics.cinnabar.lib.CinnabarLibBootstrapper;
+import graphics.cinnabar.lib.threading.QueueSystem;
 import graphics.cinnabar.lib.threading.WorkQueue;
+import graphics.cinnabar.loader.earlywindow.StartupTrace;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
@@ -54,6 +56,7 @@ import graphics.cinnabar.core.util.MagicNumbers;
 import graphics.cinnabar.lib.CinnabarLibBootstrapper;
 import graphics.cinnabar.lib.threading.QueueSystem;
 import graphics.cinnabar.lib.threading.WorkQueue;
+import graphics.cinnabar.loader.earlywindow.StartupTrace;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
@@ -73,12 +76,9 @@ import static org.lwjgl.vulkan.VK10.VK_PIPELINE_STAGE_ALL_COMMANDS_BIT;
 #endif
 
 public class Hg3DGpuDevice implements C3DGpuDevice {
-    private static final String backendName = "CinnabarVK "
-        #if NEO
-            + FMLLoader.getCurrent().getLoadingModList().getModFileById("cinnabar").versionString();
-        #else
-            + FabricLoader.getInstance().getModContainer("cinnabar").get().getMetadata().getVersion().getFriendlyString();
-        #endif
+    // looked up on first use, the headless benchmarks run this without a mod loader
+    @Nullable
+    private static String backendName;
     
     private final HgDevice hgDevice;
     private final Hg3DCommandEncoder commandEncoder;
@@ -94,19 +94,38 @@ public class Hg3DGpuDevice implements C3DGpuDevice {
     private final ReferenceArrayList<ReferenceArrayList<Destroyable>> pendingDestroys = new ReferenceArrayList<>();
     private ReferenceArrayList<Destroyable> activelyDestroying = new ReferenceArrayList<>();
     private final Hg3DGpuBuffer.Manager bufferManager;
+    private final Hg3DTexturePool texturePool;
+    private final Hg3DMemoryTracker memoryTracker;
+    private final Hg3DFrameStats frameStats;
     
     public Hg3DGpuDevice(ShaderSource shaderSourceProvider, GpuDebugOptions debugOptions, HgDevice.CreateInfo createInfo) {
+        this(shaderSourceProvider, () -> Hg.createDevice(createInfo), true);
+    }
+    
+    // for running Hg3D outside the game, (ie: Hg.createHeadlessDevice()), nothing is posted to the mod loader
+    public Hg3DGpuDevice(ShaderSource shaderSourceProvider, Supplier<HgDevice> deviceFactory) {
+        this(shaderSourceProvider, deviceFactory, false);
+    }
+    
+    private Hg3DGpuDevice(ShaderSource shaderSourceProvider, Supplier<HgDevice> deviceFactory, boolean postConfigureEvent) {
         CinnabarLibBootstrapper.bootstrap();
         this.shaderSourceProvider = shaderSourceProvider;
         
         #if NEO
-        // no configurable features currently, result ignored
-        NeoForge.EVENT_BUS.post(new ConfigureGpuDeviceEvent(deviceProperties(), enabledFeatures()));
+        if (postConfigureEvent) {
+            // no configurable features currently, result ignored
+            NeoForge.EVENT_BUS.post(new ConfigureGpuDeviceEvent(deviceProperties(), enabledFeatures()));
+        }
         #endif
         
-        hgDevice = Hg.createDevice(createInfo);
+        try (final var _ = StartupTrace.phase("Hg device")) {
+            hgDevice = deviceFactory.get();
+        }
+        memoryTracker = new Hg3DMemoryTracker(hgDevice.UMA());
+        frameStats = new Hg3DFrameStats(hgDevice, Hg3D.FRAME_STATS_CSV);
         commandEncoder = new Hg3DCommandEncoder(this);
         bufferManager = new Hg3DGpuBuffer.Manager(this);
+        texturePool = new Hg3DTexturePool(this);
         interFrameSemaphore = hgDevice.createSemaphore(0);
         cleanupDoneSemaphore = hgDevice.createSemaphore(0);
         WorkQueue.AFTER_END_OF_GPU_FRAME.wait(interFrameSemaphore, currentFrame);
@@ -141,13 +160,27 @@ public class Hg3DGpuDevice implements C3DGpuDevice {
         
         QueueSystem.deviceShutdown(hgDevice);
         
+        if (Hg3D.MEMORY_REPORT) {
+            // anything still live here is leaked, or owned by B3D's globals
+            memoryTracker.dumpReport();
+        }
         clearPipelineCache();
+        texturePool.destroy();
         bufferManager.destroy();
         commandEncoder.destroy();
-        swapchain.destroy();
-        surface.destroy();
+        // offscreen devices never have a window attached
+        if (swapchain != null) {
+            swapchain.destroy();
+        }
+        if (surface != null) {
+            surface.destroy();
+        }
         samplers.forEach(Destroyable::destroy);
+        frameStats.destroy();
         hgDevice.destroy();
+        if (Hg3DBackend.activeDevice == this) {
+            Hg3DBackend.activeDevice = null;
+        }
     }
     
     public HgDevice hgDevice() {
@@ -158,6 +191,28 @@ public class Hg3DGpuDevice implements C3DGpuDevice {
         return currentFrame;
     }
     
+    public Hg3DTexturePool texturePool() {
+        return texturePool;
+    }
+    
+    public Hg3DMemoryTracker memoryTracker() {
+        return memoryTracker;
+    }
+    
+    public Hg3DFrameStats frameStats() {
+        return frameStats;
+    }
+    
+    public void addDebugText(List<String> lines) {
+        hgDevice.addDebugText(lines);
+        frameStats.addDebugText(lines);
+        memoryTracker.addDebugText(lines);
+        lines.add(String.format("Background workers: %d/%d active, %.0f%% busy", QueueSystem.activeWorkerCount(), QueueSystem.maxWorkerCount(), QueueSystem.workerUtilisation() * 100));
+        for (final var lane : QueueSystem.laneMetrics()) {
+            lines.add(String.format("Background %s: %d queued, %.2fms avg wait, %.2fms oldest", lane.priority(), lane.depth(), lane.averageWaitMillis(), lane.oldestWaitMillis()));
+        }
+    }
+    
     public void endFrame() {
         try (final var _ = TracyClient.beginZone("Hg3DGpuDevice.endFrame", false)) {
             bufferManager.endOfFrame();
@@ -165,6 +220,7 @@ public class Hg3DGpuDevice implements C3DGpuDevice {
             commandEncoder.insertQueueItem(HgQueue.Item.signal(interFrameSemaphore, currentFrame, VK_PIPELINE_STAGE_ALL_COMMANDS_BIT));
             commandEncoder.flush();
             hgDevice.markFame();
+            frameStats.endOfFrame();
             
             currentFrame++;
             
@@ -177,6 +233,8 @@ public class Hg3DGpuDevice implements C3DGpuDevice {
                 activelyDestroying.get(i).destroy();
             }
             activelyDestroying.clear();
+            texturePool.endOfFrame();
+            memoryTracker.endOfFrame();
             commandEncoder.resetUploadBuffer();
         }
     }
@@ -261,6 +319,14 @@ public class Hg3DGpuDevice implements C3DGpuDevice {
     
     @Override
     public String getBackendName() {
+        if (backendName == null) {
+            backendName = "CinnabarVK "
+                #if NEO
+                    + FMLLoader.getCurrent().getLoadingModList().getModFileById("cinnabar").versionString();
+                #else
+                    + FabricLoader.getInstance().getModContainer("cinnabar").get().getMetadata().getVersion().getFriendlyString();
+                #endif
+        }
         return backendName;
     }
     
@@ -349,7 +415,7 @@ public class Hg3DGpuDevice implements C3DGpuDevice {
         pendingDestroys.get((int) (currentFrame % MagicNumbers.MaximumFramesInFlight)).addAll(destroyable);
     }
     
-    Hg3DRenderPipeline getPipeline(RenderPipeline pipeline) {
+    public Hg3DRenderPipeline getPipeline(RenderPipeline pipeline) {
         return getPipeline(pipeline, shaderSourceProvider);
     }
     
@@ -382,9 +448,11 @@ public class Hg3DGpuDevice implements C3DGpuDevice {
     private boolean isVsync = false;
     
     public void attachWindow(long window) {
-        surface = hgDevice.createSurface(window);
-        swapchain = surface.createSwapchain(isVsync, null);
-        swapchain.acquire();
+        try (final var _ = StartupTrace.phase("Swapchain")) {
+            surface = hgDevice.createSurface(window);
+            swapchain = surface.createSwapchain(isVsync, null);
+            swapchain.acquire();
+        }
     }
     
     @Nullable
@@ -403,7 +471,9 @@ public class Hg3DGpuDevice implements C3DGpuDevice {
     
     @Override
     public void presentFrame() {
-        endFrame();
+        try (final var _ = StartupTrace.phase("Frame flush")) {
+            endFrame();
+        }
         
         final var window = Minecraft.getInstance().getWindow();
         
@@ -449,6 +519,9 @@ public class Hg3DGpuDevice implements C3DGpuDevice {
                 recreateSwapchain();
                 window.eventHandler.resizeDisplay();
             }
+        } finally {
+            // the first presented frame ends startup, free after that
+            StartupTrace.finish();
         }
     }
     
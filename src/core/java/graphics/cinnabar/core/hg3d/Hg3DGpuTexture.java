@@ -3,12 +3,17 @@ package graphics.cinnabar.core.hg3d;
 import com.mojang.blaze3d.textures.GpuTexture;
 import com.mojang.blaze3d.textures.TextureFormat;
 import graphics.cinnabar.api.hg.HgImage;
+import org.jetbrains.annotations.Nullable;
 
 import static org.lwjgl.vulkan.VK10.VK_IMAGE_CREATE_CUBE_COMPATIBLE_BIT;
 
 public class Hg3DGpuTexture extends GpuTexture implements Hg3DObject {
     private final Hg3DGpuDevice device;
     private final HgImage image;
+    @Nullable
+    private final Hg3DTexturePool.Key poolKey;
+    private final String trackingLabel;
+    private final long trackedSize;
     private boolean closed = false;
     private int liveViews = 0;
     
@@ -16,8 +21,21 @@ public class Hg3DGpuTexture extends GpuTexture implements Hg3DObject {
         super(usage, label, format, width, height, depthOrLayers, mipLevels);
         this.device = device;
         final var flags = (usage & GpuTexture.USAGE_CUBEMAP_COMPATIBLE) != 0 ? VK_IMAGE_CREATE_CUBE_COMPATIBLE_BIT : 0;
-        image = device.hgDevice().createImage(HgImage.Type.TYPE_2D, Hg3DConst.format(format), width, height, 1, depthOrLayers, mipLevels, Hg3DConst.textureUsageBits(usage, format.hasColorAspect()), flags, false);
+        final var hgFormat = Hg3DConst.format(format);
+        final var usageBits = Hg3DConst.textureUsageBits(usage, format.hasColorAspect());
+        if ((usage & GpuTexture.USAGE_RENDER_ATTACHMENT) != 0) {
+            // render targets churn a lot, so they get pooled, everything else is created once and kept around anyway
+            // these can't be transient attachments, B3D is free to clear/copy any texture, so TRANSFER_DST is always required
+            poolKey = new Hg3DTexturePool.Key(hgFormat, width, height, depthOrLayers, mipLevels, usageBits, flags, 1);
+            image = device.texturePool().acquire(poolKey);
+        } else {
+            poolKey = null;
+            image = device.hgDevice().createImage(HgImage.Type.TYPE_2D, hgFormat, width, height, 1, depthOrLayers, mipLevels, usageBits, flags, false);
+        }
         image.setName(label);
+        trackingLabel = Hg3DMemoryTracker.normalizeLabel(label);
+        trackedSize = Hg3DMemoryTracker.estimateImageSize(format.pixelSize(), width, height, depthOrLayers, mipLevels);
+        device.memoryTracker().imageAllocated(trackingLabel, trackedSize);
     }
     
     @Override
@@ -32,6 +50,15 @@ public class Hg3DGpuTexture extends GpuTexture implements Hg3DObject {
         }
         closed = true;
         if (liveViews == 0) {
+            releaseImage();
+        }
+    }
+    
+    private void releaseImage() {
+        device.memoryTracker().imageFreed(trackingLabel, trackedSize);
+        if (poolKey != null) {
+            device.texturePool().release(poolKey, image, trackedSize);
+        } else {
             device.destroyEndOfFrameAsync(image);
         }
     }
@@ -53,7 +80,7 @@ public class Hg3DGpuTexture extends GpuTexture implements Hg3DObject {
         liveViews--;
         assert liveViews >= 0;
         if (closed && liveViews == 0) {
-            device.destroyEndOfFrameAsync(image);
+            releaseImage();
         }
     }
 }
@@ -0,0 +1,204 @@
+package graphics.cinnabar.core.hg3d;
+
+import com.mojang.jtracy.Plot;
+import com.mojang.jtracy.TracyClient;
+import graphics.cinnabar.api.annotations.ThreadSafety;
+import graphics.cinnabar.api.hg.HgBuffer;
+import graphics.cinnabar.lib.util.MathUtil;
+import it.unimi.dsi.fastutil.objects.Object2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static graphics.cinnabar.core.hg3d.Hg3D.HG3D_LOG;
+
+// per label/memory type accounting of what Hg3D has allocated
+// this is at the Hg3D level, so it's the logical size of buffers and (estimated) size of images, not what VMA actually allocated
+// buffers and textures are created on the main thread, but can be freed from the cleanup thread, so this just locks, allocs aren't frequent enough to matter
+public class Hg3DMemoryTracker {
+    
+    // how many labels get shown in F3, the rest are in the report
+    private static final int DEBUG_TEXT_LABELS = 6;
+    // churn is smoothed over roughly this many frames
+    private static final double CHURN_SMOOTHING = 1.0 / 32.0;
+    
+    private final Map<Key, Entry> entries = new Object2ReferenceOpenHashMap<>();
+    private final ReferenceArrayList<Entry> sortedEntries = new ReferenceArrayList<>();
+    private final long[] typeBytes = new long[HgBuffer.MemoryType.values().length];
+    private long totalAllocations;
+    private long totalFrees;
+    @Nullable
+    private final Plot[] typePlots;
+    // images are always device local, which is UMA memory on iGPUs
+    private final HgBuffer.MemoryType imageMemoryType;
+    
+    public Hg3DMemoryTracker(boolean UMA) {
+        imageMemoryType = UMA ? HgBuffer.MemoryType.UMA : HgBuffer.MemoryType.GPU;
+        if (TracyClient.isAvailable()) {
+            typePlots = new Plot[HgBuffer.MemoryType.values().length];
+            for (final var type : HgBuffer.MemoryType.values()) {
+                typePlots[type.ordinal()] = TracyClient.createPlot("Hg3D memory " + type.name());
+            }
+        } else {
+            typePlots = null;
+        }
+    }
+    
+    // labels often have a counter or index at the end, those all get lumped together
+    public static String normalizeLabel(@Nullable String label) {
+        if (label == null || label.isEmpty()) {
+            return "Unlabeled";
+        }
+        int end = label.length();
+        while (end > 0) {
+            final var c = label.charAt(end - 1);
+            if (!Character.isDigit(c) && c != '#' && c != ' ' && c != '-' && c != '_') {
+                break;
+            }
+            end--;
+        }
+        return end == 0 ? label : label.substring(0, end);
+    }
+    
+    @ThreadSafety.Many
+    public synchronized void allocated(String label, HgBuffer.MemoryType memoryType, long size) {
+        final var entry = entries.computeIfAbsent(new Key(label, memoryType), Entry::new);
+        entry.liveBytes += size;
+        entry.liveCount++;
+        entry.allocations++;
+        entry.allocatedBytes += size;
+        typeBytes[memoryType.ordinal()] += size;
+        totalAllocations++;
+    }
+    
+    @ThreadSafety.Many
+    public synchronized void freed(String label, HgBuffer.MemoryType memoryType, long size) {
+        @Nullable
+        final var entry = entries.get(new Key(label, memoryType));
+        if (entry == null) {
+            assert false : "Freed untracked allocation " + label + " " + memoryType;
+            return;
+        }
+        entry.liveBytes -= size;
+        entry.liveCount--;
+        entry.frees++;
+        typeBytes[memoryType.ordinal()] -= size;
+        totalFrees++;
+    }
+    
+    @ThreadSafety.Many
+    public synchronized long totalAllocations() {
+        return totalAllocations;
+    }
+    
+    @ThreadSafety.Many
+    public synchronized long totalFrees() {
+        return totalFrees;
+    }
+    
+    @ThreadSafety.Many
+    public synchronized long liveBytes() {
+        long bytes = 0;
+        for (final var typeByte : typeBytes) {
+            bytes += typeByte;
+        }
+        return bytes;
+    }
+    
+    @ThreadSafety.Many
+    public void imageAllocated(String label, long size) {
+        allocated(label, imageMemoryType, size);
+    }
+    
+    @ThreadSafety.Many
+    public void imageFreed(String label, long size) {
+        freed(label, imageMemoryType, size);
+    }
+    
+    // Hg doesn't expose the image's actual allocation size, so this ignores alignment and compression
+    public static long estimateImageSize(int pixelSize, int width, int height, int layers, int mipLevels) {
+        long size = 0;
+        for (int i = 0; i < mipLevels; i++) {
+            size += (long) Math.max(1, width >> i) * Math.max(1, height >> i) * pixelSize;
+        }
+        return size * layers;
+    }
+    
+    @ThreadSafety.MainGraphics
+    public synchronized void endOfFrame() {
+        for (final var entry : entries.values()) {
+            final var events = (entry.allocations + entry.frees) - entry.lastFrameEvents;
+            entry.lastFrameEvents = entry.allocations + entry.frees;
+            entry.churn += (events - entry.churn) * CHURN_SMOOTHING;
+            if (entry.plot != null) {
+                entry.plot.setValue(entry.liveBytes);
+            }
+        }
+        if (typePlots != null) {
+            for (int i = 0; i < typePlots.length; i++) {
+                typePlots[i].setValue(typeBytes[i]);
+            }
+        }
+    }
+    
+    @ThreadSafety.Many
+    public synchronized void addDebugText(List<String> lines) {
+        sortEntries();
+        lines.add("Hg3D memory by label:");
+        for (int i = 0; i < Math.min(DEBUG_TEXT_LABELS, sortedEntries.size()); i++) {
+            final var entry = sortedEntries.get(i);
+            if (entry.liveBytes == 0) {
+                break;
+            }
+            lines.add(String.format("  %s (%s): %s in %d, %.1f/f churn", entry.key.label, entry.key.memoryType, MathUtil.byteString(entry.liveBytes), entry.liveCount, entry.churn));
+        }
+    }
+    
+    @ThreadSafety.Many
+    public synchronized String report() {
+        sortEntries();
+        final var builder = new StringBuilder();
+        builder.append(String.format("%-48s %-12s %12s %8s %10s %10s %14s %8s%n", "Label", "Memory", "Live", "Count", "Allocs", "Frees", "Total alloc'd", "Churn/f"));
+        for (final var entry : sortedEntries) {
+            builder.append(String.format("%-48s %-12s %12s %8d %10d %10d %14s %8.2f%n", entry.key.label, entry.key.memoryType, MathUtil.byteString(entry.liveBytes), entry.liveCount, entry.allocations, entry.frees, MathUtil.byteString(entry.allocatedBytes), entry.churn));
+        }
+        for (final var type : HgBuffer.MemoryType.values()) {
+            builder.append(String.format("Total %s: %s%n", type, MathUtil.byteString(typeBytes[type.ordinal()])));
+        }
+        return builder.toString();
+    }
+    
+    public void dumpReport() {
+        HG3D_LOG.info("Hg3D memory report\n{}", report());
+    }
+    
+    private void sortEntries() {
+        sortedEntries.clear();
+        sortedEntries.addAll(entries.values());
+        sortedEntries.sort(Comparator.comparingLong((Entry entry) -> entry.liveBytes).reversed());
+    }
+    
+    private record Key(String label, HgBuffer.MemoryType memoryType) {
+    }
+    
+    private static class Entry {
+        private final Key key;
+        @Nullable
+        private final Plot plot;
+        private long liveBytes;
+        private int liveCount;
+        private long allocations;
+        private long frees;
+        private long allocatedBytes;
+        private long lastFrameEvents;
+        private double churn;
+        
+        private Entry(Key key) {
+            this.key = key;
+            plot = TracyClient.isAvailable() ? TracyClient.createPlot("Hg3D memory " + key.label + " (" + key.memoryType + ")") : null;
+        }
+    }
+}
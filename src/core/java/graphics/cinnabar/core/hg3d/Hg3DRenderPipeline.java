@@ -38,6 +38,9 @@ public class Hg3DRenderPipeline implements Hg3DObject, CompiledRenderPipeline, D
     private final HgGraphicsPipeline.CreateInfo.State pipelineState;
     private final Map<HgRenderPass, HgGraphicsPipeline> pipelines = new Reference2ReferenceOpenHashMap<>();
     private final Map<String, HgFormat> texelBufferFormats = new Object2ReferenceArrayMap<>();
+    // sources with the defines injected, before Cinnabar's fixups, capture records these so replays don't need the game's shaders
+    private final String vertexGLSL;
+    private final String fragmentGLSL;
     public Hg3DRenderPipeline(Hg3DGpuDevice device, RenderPipeline pipeline, ShaderSource shaderSourceProvider) {
         this.info = pipeline;
         this.device = device;
@@ -58,6 +61,8 @@ public class Hg3DRenderPipeline implements Hg3DObject, CompiledRenderPipeline, D
         assert fragmentSource != null;
         final var glVertexGLSL = GlslPreprocessor.injectDefines(vertexSource, pipeline.getShaderDefines());
         final var glFragmentGLSL = GlslPreprocessor.injectDefines(fragmentSource, pipeline.getShaderDefines());
+        vertexGLSL = glVertexGLSL;
+        fragmentGLSL = glFragmentGLSL;
         
         final var alignment = device().getUniformOffsetAlignment();
         final var cinnabarStandardDefines = """
@@ -211,6 +216,7 @@ public class Hg3DRenderPipeline implements Hg3DObject, CompiledRenderPipeline, D
     }
     
     private HgGraphicsPipeline createPipeline(HgRenderPass renderPass) {
+        device.frameStats().increment(Hg3DFrameStats.Counter.PIPELINE_COMPILES);
         return device.hgDevice().createPipeline(new HgGraphicsPipeline.CreateInfo(renderPass, shaderSet, pipelineLayout, pipelineState)).setName(info.getLocation().toString());
     }
     
@@ -230,6 +236,14 @@ public class Hg3DRenderPipeline implements Hg3DObject, CompiledRenderPipeline, D
         return info;
     }
     
+    public String vertexGLSL() {
+        return vertexGLSL;
+    }
+    
+    public String fragmentGLSL() {
+        return fragmentGLSL;
+    }
+    
     record ShaderSourceCacheKey(Identifier location, ShaderType type) {
     }
     
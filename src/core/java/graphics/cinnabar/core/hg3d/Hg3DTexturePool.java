@@ -0,0 +1,102 @@
+package graphics.cinnabar.core.hg3d;
+
+import graphics.cinnabar.api.annotations.ThreadSafety;
+import graphics.cinnabar.api.hg.HgImage;
+import graphics.cinnabar.api.hg.enums.HgFormat;
+import graphics.cinnabar.api.util.Destroyable;
+import it.unimi.dsi.fastutil.objects.Object2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+
+import java.util.Map;
+
+// render targets get recreated constantly (resizes, post chains, etc), this keeps the backing images around so that
+// a texture with an identical description can just pick one back up instead of going through VMA again
+// images only come back into the pool once the frame that released them has retired
+public class Hg3DTexturePool implements Destroyable {
+    
+    // how many frames an image can sit unused before it's actually destroyed
+    private static final int MAX_IDLE_FRAMES = 16;
+    // idle images still hold memory, they are tracked under their own label while in the pool
+    private static final String TRACKING_LABEL = "Pooled render target";
+    
+    private final Hg3DGpuDevice device;
+    private final Map<Key, ReferenceArrayList<Entry>> available = new Object2ReferenceOpenHashMap<>();
+    private final ReferenceArrayList<Key> emptyKeys = new ReferenceArrayList<>();
+    private int pooledImages = 0;
+    private long reuseCount = 0;
+    
+    public Hg3DTexturePool(Hg3DGpuDevice device) {
+        this.device = device;
+    }
+    
+    @Override
+    public void destroy() {
+        available.values().forEach(list -> list.forEach(this::destroyEntry));
+        available.clear();
+        pooledImages = 0;
+    }
+    
+    @ThreadSafety.MainGraphics
+    public HgImage acquire(Key key) {
+        final var entries = available.get(key);
+        if (entries != null && !entries.isEmpty()) {
+            pooledImages--;
+            reuseCount++;
+            final var entry = entries.pop();
+            device.memoryTracker().imageFreed(TRACKING_LABEL, entry.size);
+            return entry.image;
+        }
+        // samples is always 1 until MSAA is a thing, its in the key so that won't be forgotten
+        assert key.samples == 1;
+        return device.hgDevice().createImage(HgImage.Type.TYPE_2D, key.format, key.width, key.height, 1, key.layers, key.mipLevels, key.usage, key.flags, false);
+    }
+    
+    @ThreadSafety.MainGraphics
+    public void release(Key key, HgImage image, long size) {
+        // GPU may still be using this image, so it goes through the same end of frame path as a destroy would
+        device.memoryTracker().imageAllocated(TRACKING_LABEL, size);
+        device.destroyEndOfFrame(() -> {
+            available.computeIfAbsent(key, _ -> new ReferenceArrayList<>()).push(new Entry(image, device.currentFrame(), size));
+            pooledImages++;
+        });
+    }
+    
+    @ThreadSafety.MainGraphics
+    public void endOfFrame() {
+        final var currentFrame = device.currentFrame();
+        for (final var mapEntry : available.entrySet()) {
+            final var entries = mapEntry.getValue();
+            // oldest entries are at the bottom of the stack
+            while (!entries.isEmpty() && currentFrame - entries.getFirst().releasedFrame > MAX_IDLE_FRAMES) {
+                destroyEntry(entries.removeFirst());
+                pooledImages--;
+            }
+            if (entries.isEmpty()) {
+                emptyKeys.add(mapEntry.getKey());
+            }
+        }
+        for (int i = 0; i < emptyKeys.size(); i++) {
+            available.remove(emptyKeys.get(i));
+        }
+        emptyKeys.clear();
+    }
+    
+    private void destroyEntry(Entry entry) {
+        entry.image.destroy();
+        device.memoryTracker().imageFreed(TRACKING_LABEL, entry.size);
+    }
+    
+    public int pooledImages() {
+        return pooledImages;
+    }
+    
+    public long reuseCount() {
+        return reuseCount;
+    }
+    
+    public record Key(HgFormat format, int width, int height, int layers, int mipLevels, long usage, int flags, int samples) {
+    }
+    
+    private record Entry(HgImage image, long releasedFrame, long size) {
+    }
+}
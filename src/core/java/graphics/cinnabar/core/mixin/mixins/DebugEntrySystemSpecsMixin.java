@@ -0,0 +1,34 @@
+package graphics.cinnabar.core.mixin.mixins;
+
+import graphics.cinnabar.core.hg3d.Hg3DBackend;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import net.minecraft.client.gui.components.debug.DebugEntrySystemSpecs;
+import net.minecraft.client.gui.components.debug.DebugScreenDisplayer;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(DebugEntrySystemSpecs.class)
+public class DebugEntrySystemSpecsMixin {
+    
+    @Unique
+    private static final Identifier CINNABAR_GROUP = Identifier.fromNamespaceAndPath("cinnabar", "memory");
+    
+    @Inject(method = "display", at = @At("TAIL"))
+    private void addCinnabarDebugText(DebugScreenDisplayer displayer, @Nullable Level serverOrClientLevel, @Nullable LevelChunk clientChunk, @Nullable LevelChunk serverChunk, CallbackInfo ci) {
+        @Nullable
+        final var device = Hg3DBackend.activeDevice();
+        if (device == null) {
+            return;
+        }
+        final var lines = new ReferenceArrayList<String>();
+        device.addDebugText(lines);
+        displayer.addToGroup(CINNABAR_GROUP, lines);
+    }
+}
@@ -3,6 +3,7 @@ package graphics.cinnabar.core.mixin.mixins;
 #if NEO
 import com.mojang.blaze3d.pipeline.RenderPipeline;
 import com.mojang.blaze3d.systems.RenderSystem;
+import graphics.cinnabar.loader.earlywindow.StartupTrace;
 import net.minecraft.client.renderer.ShaderManager;
 import net.minecraft.server.packs.resources.ResourceManager;
 import net.minecraft.util.profiling.ProfilerFiller;
@@ -27,8 +28,11 @@ public class ShaderManagerMixin {
     @SuppressWarnings("SpellCheckingInspection")
     @Inject(method = "apply", at = @At(value = "INVOKE", target = "Lcom/mojang/blaze3d/systems/GpuDevice;clearPipelineCache", remap = false), locals = LocalCapture.CAPTURE_FAILHARD)
     protected void cinnabar$kickPipelinesFirst(ShaderManager.Configs configs, ResourceManager resourceManager, ProfilerFiller profilerFiller, CallbackInfo callbackInfo, ShaderManager.CompilationCache sourceCache, Set<RenderPipeline> pipelineSet) {
-        for (RenderPipeline renderPipeline : pipelineSet) {
-            RenderSystem.getDevice().precompilePipeline(renderPipeline, sourceCache::getShaderSource);
+        // every reload comes through here, only the first is part of startup
+        try (final var _ = StartupTrace.phase("Pipeline precompile")) {
+            for (RenderPipeline renderPipeline : pipelineSet) {
+                RenderSystem.getDevice().precompilePipeline(renderPipeline, sourceCache::getShaderSource);
+            }
         }
     }
     #endif
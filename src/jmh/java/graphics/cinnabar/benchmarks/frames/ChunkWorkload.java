@@ -0,0 +1,99 @@
+package graphics.cinnabar.benchmarks.frames;
+
+import com.mojang.blaze3d.buffers.GpuBuffer;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.OptionalInt;
+import java.util.Random;
+
+// terrain, lots of static section buffers drawn with a shared quad index buffer and a per-section offset uniform
+// a few sections get rebuilt (re-uploaded) every frame, like chunk updates while moving
+public class ChunkWorkload implements FrameWorkload {
+    
+    private static final int SECTIONS = 512;
+    private static final int QUADS_PER_SECTION = 256;
+    private static final int REBUILDS_PER_FRAME = 8;
+    // small, so lavapipe's rasterizer isn't what's being measured
+    private static final float QUAD_SIZE = 0.004f;
+    
+    private final ReferenceArrayList<GpuBuffer> sections = new ReferenceArrayList<>();
+    private final Random random = new Random(0);
+    private GpuBuffer indices;
+    private GpuBuffer offsets;
+    private ByteBuffer rebuildData;
+    
+    @Override
+    public String name() {
+        return "chunk";
+    }
+    
+    @Override
+    public void setup(FrameScene scene) {
+        final var indexData = MemoryUtil.memAlloc(QUADS_PER_SECTION * 6 * Integer.BYTES);
+        for (int i = 0; i < QUADS_PER_SECTION; i++) {
+            final var base = i * 4;
+            indexData.putInt(base).putInt(base + 1).putInt(base + 2).putInt(base + 2).putInt(base + 3).putInt(base);
+        }
+        indexData.flip();
+        indices = scene.device.createBuffer(() -> "benchmark chunk indices", GpuBuffer.USAGE_INDEX, indexData);
+        MemoryUtil.memFree(indexData);
+        
+        rebuildData = MemoryUtil.memAlloc(QUADS_PER_SECTION * 4 * DefaultVertexFormat.POSITION_COLOR.getVertexSize());
+        for (int i = 0; i < SECTIONS; i++) {
+            fillSection(rebuildData);
+            sections.add(scene.device.createBuffer(() -> "benchmark chunk section", GpuBuffer.USAGE_VERTEX | GpuBuffer.USAGE_COPY_DST, rebuildData));
+        }
+        
+        final var offsetData = MemoryUtil.memCalloc(SECTIONS * scene.uniformStride);
+        for (int i = 0; i < SECTIONS; i++) {
+            offsetData.putFloat(i * scene.uniformStride, (i % 32) / 16.0f - 1.0f);
+            offsetData.putFloat(i * scene.uniformStride + Float.BYTES, (i / 32) / 8.0f - 1.0f);
+        }
+        offsets = scene.device.createBuffer(() -> "benchmark chunk offsets", GpuBuffer.USAGE_UNIFORM, offsetData);
+        MemoryUtil.memFree(offsetData);
+    }
+    
+    private void fillSection(ByteBuffer data) {
+        data.clear();
+        for (int i = 0; i < QUADS_PER_SECTION; i++) {
+            final var x = random.nextFloat() * 0.06f;
+            final var y = random.nextFloat() * 0.12f;
+            final var color = random.nextInt() | 0xFF000000;
+            data.putFloat(x).putFloat(y).putFloat(0).putInt(color);
+            data.putFloat(x + QUAD_SIZE).putFloat(y).putFloat(0).putInt(color);
+            data.putFloat(x + QUAD_SIZE).putFloat(y + QUAD_SIZE).putFloat(0).putInt(color);
+            data.putFloat(x).putFloat(y + QUAD_SIZE).putFloat(0).putInt(color);
+        }
+        data.flip();
+    }
+    
+    @Override
+    public void record(FrameScene scene, long frame) {
+        final var encoder = scene.encoder();
+        for (int i = 0; i < REBUILDS_PER_FRAME; i++) {
+            fillSection(rebuildData);
+            encoder.writeToBuffer(sections.get((int) ((frame * REBUILDS_PER_FRAME + i) % SECTIONS)).slice(), rebuildData);
+        }
+        try (final var pass = encoder.createRenderPass(() -> "benchmark chunks", scene.targetView, OptionalInt.of(0xFF000000))) {
+            pass.setPipeline(FrameScene.COLOR_PIPELINE);
+            pass.setIndexBuffer(indices, VertexFormat.IndexType.INT);
+            for (int i = 0; i < SECTIONS; i++) {
+                pass.setVertexBuffer(0, sections.get(i));
+                pass.setUniform("Transform", offsets.slice((long) i * scene.uniformStride, 16));
+                pass.drawIndexed(0, 0, QUADS_PER_SECTION * 6, 1);
+            }
+        }
+    }
+    
+    @Override
+    public void close() {
+        sections.forEach(GpuBuffer::close);
+        indices.close();
+        offsets.close();
+        MemoryUtil.memFree(rebuildData);
+    }
+}
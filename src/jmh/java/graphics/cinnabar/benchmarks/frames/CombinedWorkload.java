@@ -0,0 +1,31 @@
+package graphics.cinnabar.benchmarks.frames;
+
+import java.util.List;
+
+// every other workload in one frame, in vanilla's order, terrain, entities, post, then GUI on top
+public class CombinedWorkload implements FrameWorkload {
+    
+    private final List<FrameWorkload> workloads = List.of(new ChunkWorkload(), new EntityWorkload(), new PostWorkload(), new GuiWorkload());
+    
+    @Override
+    public String name() {
+        return "combined";
+    }
+    
+    @Override
+    public void setup(FrameScene scene) {
+        workloads.forEach(workload -> workload.setup(scene));
+    }
+    
+    @Override
+    public void record(FrameScene scene, long frame) {
+        for (int i = 0; i < workloads.size(); i++) {
+            workloads.get(i).record(scene, frame);
+        }
+    }
+    
+    @Override
+    public void close() {
+        workloads.forEach(FrameWorkload::close);
+    }
+}
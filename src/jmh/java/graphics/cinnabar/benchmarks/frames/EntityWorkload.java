@@ -0,0 +1,104 @@
+package graphics.cinnabar.benchmarks.frames;
+
+import com.mojang.blaze3d.buffers.GpuBuffer;
+import com.mojang.blaze3d.platform.NativeImage;
+import com.mojang.blaze3d.textures.GpuTexture;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import com.mojang.blaze3d.textures.TextureFormat;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.OptionalInt;
+
+// entities, all the vertices are rebuilt on the CPU and uploaded every frame, each entity gets its own transform uniform and a draw
+public class EntityWorkload implements FrameWorkload {
+    
+    private static final int ENTITIES = 400;
+    // a cube, as triangles
+    private static final int VERTICES_PER_ENTITY = 36;
+    private static final int TEXTURE_SIZE = 64;
+    private static final float ENTITY_SIZE = 0.01f;
+    
+    private GpuTexture texture;
+    private GpuTextureView textureView;
+    private GpuBuffer vertices;
+    private GpuBuffer transforms;
+    private ByteBuffer vertexData;
+    private ByteBuffer transformData;
+    
+    @Override
+    public String name() {
+        return "entity";
+    }
+    
+    @Override
+    public void setup(FrameScene scene) {
+        texture = scene.device.createTexture("benchmark entity texture", GpuTexture.USAGE_TEXTURE_BINDING | GpuTexture.USAGE_COPY_DST, TextureFormat.RGBA8, TEXTURE_SIZE, TEXTURE_SIZE, 1, 1);
+        textureView = scene.device.createTextureView(texture);
+        final var pixels = MemoryUtil.memAlloc(TEXTURE_SIZE * TEXTURE_SIZE * 4);
+        for (int i = 0; i < TEXTURE_SIZE * TEXTURE_SIZE; i++) {
+            pixels.putInt(((i ^ (i >> 6)) & 1) == 0 ? 0xFFFFFFFF : 0xFF808080);
+        }
+        pixels.flip();
+        scene.encoder().writeToTexture(texture, pixels, NativeImage.Format.RGBA, 0, 0, 0, 0, TEXTURE_SIZE, TEXTURE_SIZE);
+        MemoryUtil.memFree(pixels);
+        
+        vertexData = MemoryUtil.memAlloc(ENTITIES * VERTICES_PER_ENTITY * DefaultVertexFormat.POSITION_TEX_COLOR.getVertexSize());
+        vertices = scene.device.createBuffer(() -> "benchmark entity vertices", GpuBuffer.USAGE_VERTEX | GpuBuffer.USAGE_COPY_DST, vertexData.capacity());
+        transformData = MemoryUtil.memCalloc(ENTITIES * scene.uniformStride);
+        transforms = scene.device.createBuffer(() -> "benchmark entity transforms", GpuBuffer.USAGE_UNIFORM | GpuBuffer.USAGE_COPY_DST, transformData.capacity());
+    }
+    
+    private static void vertex(ByteBuffer data, float x, float y, float u, float v, int color) {
+        data.putFloat(x).putFloat(y).putFloat(0).putFloat(u).putFloat(v).putInt(color);
+    }
+    
+    @Override
+    public void record(FrameScene scene, long frame) {
+        // the model itself doesn't move, the transform does, like an animated entity with a pose stack
+        vertexData.clear();
+        for (int i = 0; i < ENTITIES; i++) {
+            for (int face = 0; face < VERTICES_PER_ENTITY / 6; face++) {
+                final var shade = 0xFF000000 | (0x40 + face * 0x20) * 0x010101;
+                final var x = face * ENTITY_SIZE * 0.1f;
+                vertex(vertexData, x, 0, 0, 0, shade);
+                vertex(vertexData, x + ENTITY_SIZE, 0, 1, 0, shade);
+                vertex(vertexData, x + ENTITY_SIZE, ENTITY_SIZE, 1, 1, shade);
+                vertex(vertexData, x + ENTITY_SIZE, ENTITY_SIZE, 1, 1, shade);
+                vertex(vertexData, x, ENTITY_SIZE, 0, 1, shade);
+                vertex(vertexData, x, 0, 0, 0, shade);
+            }
+        }
+        vertexData.flip();
+        transformData.clear();
+        for (int i = 0; i < ENTITIES; i++) {
+            final var phase = (frame + i) * 0.01f;
+            transformData.putFloat(i * scene.uniformStride, (i % 20) / 10.0f - 1.0f + (float) Math.sin(phase) * 0.02f);
+            transformData.putFloat(i * scene.uniformStride + Float.BYTES, (i / 20) / 10.0f - 1.0f);
+        }
+        
+        final var encoder = scene.encoder();
+        encoder.writeToBuffer(vertices.slice(), vertexData);
+        encoder.writeToBuffer(transforms.slice(), transformData);
+        try (final var pass = encoder.createRenderPass(() -> "benchmark entities", scene.targetView, OptionalInt.empty())) {
+            pass.setPipeline(FrameScene.TEXTURED_PIPELINE);
+            pass.bindTexture("Sampler0", textureView, scene.sampler);
+            pass.setVertexBuffer(0, vertices);
+            for (int i = 0; i < ENTITIES; i++) {
+                pass.setUniform("Transform", transforms.slice((long) i * scene.uniformStride, 16));
+                pass.draw(i * VERTICES_PER_ENTITY, VERTICES_PER_ENTITY);
+            }
+        }
+    }
+    
+    @Override
+    public void close() {
+        vertices.close();
+        transforms.close();
+        textureView.close();
+        texture.close();
+        MemoryUtil.memFree(vertexData);
+        MemoryUtil.memFree(transformData);
+    }
+}
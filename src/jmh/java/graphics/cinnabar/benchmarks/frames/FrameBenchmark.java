@@ -0,0 +1,241 @@
+package graphics.cinnabar.benchmarks.frames;
+
+import graphics.cinnabar.api.hg.Hg;
+import graphics.cinnabar.api.hg.HgCommandBuffer;
+import graphics.cinnabar.api.hg.HgDevice;
+import graphics.cinnabar.core.hg3d.Hg3DGpuDevice;
+import graphics.cinnabar.lib.parsers.Element;
+import graphics.cinnabar.lib.parsers.JSON5;
+import it.unimi.dsi.fastutil.objects.Object2ReferenceLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+// end to end frames through Hg3D and Mercury, offscreen, meant for a software Vulkan driver (lavapipe) so it runs on any Linux box
+// ./gradlew frameBenchmark -PframeArgs="--frames 300 --workloads chunk,gui"
+// --device headless runs the same workloads on the headless Hg device, only Hg3D's CPU side, no Vulkan needed at all
+// writes a JSON5 report, per workload: wall and thread CPU time per phase, Vulkan commands, submits, and allocations per frame
+public class FrameBenchmark {
+    
+    private static final Object2ReferenceLinkedOpenHashMap<String, Supplier<FrameWorkload>> WORKLOADS = new Object2ReferenceLinkedOpenHashMap<>();
+    
+    static {
+        WORKLOADS.put("chunk", ChunkWorkload::new);
+        WORKLOADS.put("entity", EntityWorkload::new);
+        WORKLOADS.put("gui", GuiWorkload::new);
+        WORKLOADS.put("post", PostWorkload::new);
+        WORKLOADS.put("combined", CombinedWorkload::new);
+    }
+    
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    private enum Phase {
+        // the workload's Hg3D calls
+        RECORD("record"),
+        // endFrame, the submit, plus waiting on the frame in flight limit, which is where lavapipe's time shows up
+        END_FRAME("endFrame"),
+        ;
+        
+        private final String key;
+        
+        Phase(String key) {
+            this.key = key;
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        int frames = 300;
+        int warmup = 60;
+        int width = 1280;
+        int height = 720;
+        List<String> workloadNames = List.copyOf(WORKLOADS.keySet());
+        String deviceType = "vulkan";
+        Path out = Path.of("build", "reports", "frameBenchmark.json5");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final var value = args[i + 1];
+            switch (args[i]) {
+                case "--frames" -> frames = Integer.parseInt(value);
+                case "--warmup" -> warmup = Integer.parseInt(value);
+                case "--width" -> width = Integer.parseInt(value);
+                case "--height" -> height = Integer.parseInt(value);
+                case "--workloads" -> workloadNames = List.of(value.split(","));
+                case "--device" -> deviceType = value;
+                case "--out" -> out = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+        
+        // must be set before Mercury or the Vulkan startup code is loaded, they are read once
+        System.setProperty("cinnabar.offscreen", "true");
+        System.setProperty("cinnabar.countCommands", "true");
+        // Cinnabar must be bootstrapped from a thread with MC's render thread's name
+        Thread.currentThread().setName("Render thread");
+        
+        final Hg3DGpuDevice device = switch (deviceType) {
+            case "vulkan" -> new Hg3DGpuDevice(FrameScene.SHADER_SOURCE, () -> Hg.createDevice(new HgDevice.CreateInfo(new ReferenceArrayList<>(), new ReferenceArrayList<>(), new ReferenceArrayList<>(), new ReferenceArrayList<>())));
+            case "headless" -> {
+                final var headless = new Hg3DGpuDevice(FrameScene.SHADER_SOURCE, Hg::createHeadlessDevice);
+                headless.attachWindow(0);
+                yield headless;
+            }
+            default -> throw new IllegalArgumentException("Unknown device " + deviceType + ", expected vulkan or headless");
+        };
+        final var scene = new FrameScene(device, width, height);
+        
+        final var results = new ReferenceArrayList<Element>();
+        for (final var workloadName : workloadNames) {
+            @Nullable
+            final var factory = WORKLOADS.get(workloadName);
+            if (factory == null) {
+                throw new IllegalArgumentException("Unknown workload " + workloadName + ", expected one of " + WORKLOADS.keySet());
+            }
+            try (final var workload = factory.get()) {
+                results.add(run(scene, workload, warmup, frames));
+            }
+            // nothing from this workload can still be in flight when the next one starts
+            device.hgDevice().waitIdle();
+        }
+        
+        final var report = map(null,
+                string("device", deviceType),
+                string("renderer", device.getRenderer()),
+                string("driver", device.getVersion()),
+                number("width", width),
+                number("height", height),
+                number("warmup", warmup),
+                number("frames", frames),
+                new Element(Element.Type.Array, null, "workloads", results.toArray(new Element[0]))
+        );
+        final var reportString = JSON5.parseElement(report);
+        System.out.println(reportString);
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Files.writeString(out, reportString);
+        
+        scene.close();
+        device.close();
+    }
+    
+    private static Element run(FrameScene scene, FrameWorkload workload, int warmup, int frames) {
+        final var device = scene.device;
+        final var hgDevice = device.hgDevice();
+        workload.setup(scene);
+        device.endFrame();
+        for (int i = 0; i < warmup; i++) {
+            workload.record(scene, i);
+            device.endFrame();
+        }
+        
+        final var phases = Phase.values();
+        final var wallNanos = new long[phases.length][frames];
+        final var cpuNanos = new long[phases.length][frames];
+        final var commandsBefore = commandCounts(hgDevice);
+        final var submitsBefore = hgDevice.submitCount();
+        final var allocationsBefore = device.memoryTracker().totalAllocations();
+        final var freesBefore = device.memoryTracker().totalFrees();
+        final var threadId = Thread.currentThread().threadId();
+        final var heapBytesBefore = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+        
+        for (int frame = 0; frame < frames; frame++) {
+            var wall = System.nanoTime();
+            var cpu = THREAD_BEAN.getCurrentThreadCpuTime();
+            workload.record(scene, warmup + frame);
+            wall = record(wallNanos, cpuNanos, Phase.RECORD, frame, wall, cpu);
+            cpu = THREAD_BEAN.getCurrentThreadCpuTime();
+            device.endFrame();
+            record(wallNanos, cpuNanos, Phase.END_FRAME, frame, wall, cpu);
+        }
+        
+        final var heapBytes = THREAD_BEAN.getThreadAllocatedBytes(threadId) - heapBytesBefore;
+        final var commandsAfter = commandCounts(hgDevice);
+        final var commandElements = new Element[commandsAfter.length];
+        for (int i = 0; i < commandsAfter.length; i++) {
+            commandElements[i] = number(HgCommandBuffer.Command.values()[i].name(), (double) (commandsAfter[i] - commandsBefore[i]) / frames);
+        }
+        final var phaseElements = new Element[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            phaseElements[i] = phase(phases[i].key, wallNanos[i], cpuNanos[i]);
+        }
+        final var totalWall = new long[frames];
+        final var totalCpu = new long[frames];
+        for (int frame = 0; frame < frames; frame++) {
+            for (int i = 0; i < phases.length; i++) {
+                totalWall[frame] += wallNanos[i][frame];
+                totalCpu[frame] += cpuNanos[i][frame];
+            }
+        }
+        return map(null,
+                string("name", workload.name()),
+                phase("frame", totalWall, totalCpu),
+                map("phases", phaseElements),
+                map("commandsPerFrame", commandElements),
+                number("submitsPerFrame", (double) (hgDevice.submitCount() - submitsBefore) / frames),
+                number("hg3dAllocationsPerFrame", (double) (device.memoryTracker().totalAllocations() - allocationsBefore) / frames),
+                number("hg3dFreesPerFrame", (double) (device.memoryTracker().totalFrees() - freesBefore) / frames),
+                number("hg3dLiveBytes", device.memoryTracker().liveBytes()),
+                number("heapBytesPerFrame", (double) heapBytes / frames)
+        );
+    }
+    
+    // returns the wall time the next phase starts at
+    private static long record(long[][] wallNanos, long[][] cpuNanos, Phase phase, int frame, long wallStart, long cpuStart) {
+        final var wallEnd = System.nanoTime();
+        wallNanos[phase.ordinal()][frame] = wallEnd - wallStart;
+        cpuNanos[phase.ordinal()][frame] = THREAD_BEAN.getCurrentThreadCpuTime() - cpuStart;
+        return wallEnd;
+    }
+    
+    private static long[] commandCounts(HgDevice device) {
+        final var commands = HgCommandBuffer.Command.values();
+        final var counts = new long[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            counts[i] = device.commandCount(commands[i]);
+        }
+        return counts;
+    }
+    
+    private static Element phase(String name, long[] wallNanos, long[] cpuNanos) {
+        final var sortedWall = wallNanos.clone();
+        Arrays.sort(sortedWall);
+        return map(name,
+                number("wallMeanUs", mean(wallNanos) / 1000.0),
+                number("wallP50Us", percentile(sortedWall, 0.5) / 1000.0),
+                number("wallP95Us", percentile(sortedWall, 0.95) / 1000.0),
+                number("wallP99Us", percentile(sortedWall, 0.99) / 1000.0),
+                number("wallMaxUs", sortedWall[sortedWall.length - 1] / 1000.0),
+                number("cpuMeanUs", mean(cpuNanos) / 1000.0)
+        );
+    }
+    
+    private static double mean(long[] values) {
+        long total = 0;
+        for (final var value : values) {
+            total += value;
+        }
+        return (double) total / values.length;
+    }
+    
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+    
+    private static Element map(@Nullable String name, Element... elements) {
+        return new Element(Element.Type.Map, null, name, elements);
+    }
+    
+    private static Element number(String name, Number value) {
+        return new Element(Element.Type.Number, null, name, value);
+    }
+    
+    private static Element string(String name, String value) {
+        return new Element(Element.Type.String, null, name, value);
+    }
+}
@@ -0,0 +1,179 @@
+package graphics.cinnabar.benchmarks.frames;
+
+import com.mojang.blaze3d.pipeline.RenderPipeline;
+import com.mojang.blaze3d.shaders.ShaderSource;
+import com.mojang.blaze3d.shaders.UniformType;
+import com.mojang.blaze3d.textures.AddressMode;
+import com.mojang.blaze3d.textures.FilterMode;
+import com.mojang.blaze3d.textures.GpuSampler;
+import com.mojang.blaze3d.textures.GpuTexture;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import com.mojang.blaze3d.textures.TextureFormat;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import graphics.cinnabar.core.hg3d.Hg3DCommandEncoder;
+import graphics.cinnabar.core.hg3d.Hg3DGpuDevice;
+import net.minecraft.resources.Identifier;
+
+import java.util.Map;
+import java.util.OptionalDouble;
+
+// what every workload draws with, the offscreen target stands in for the swapchain image
+// the shaders are cut down versions of vanilla's, same inputs and uniform/sampler names, so Hg3D takes the same paths
+public class FrameScene implements AutoCloseable {
+    
+    private static final String COLOR_VERTEX = """
+            #version 330
+            
+            layout(std140) uniform Transform {
+                vec4 Offset;
+            };
+            
+            in vec3 Position;
+            in vec4 Color;
+            
+            out vec4 vertexColor;
+            
+            void main() {
+                gl_Position = vec4(Position + Offset.xyz, 1.0);
+                vertexColor = Color;
+            }
+            """;
+    private static final String COLOR_FRAGMENT = """
+            #version 330
+            
+            in vec4 vertexColor;
+            
+            out vec4 fragColor;
+            
+            void main() {
+                fragColor = vertexColor;
+            }
+            """;
+    private static final String TEXTURED_VERTEX = """
+            #version 330
+            
+            layout(std140) uniform Transform {
+                vec4 Offset;
+            };
+            
+            in vec3 Position;
+            in vec2 UV0;
+            in vec4 Color;
+            
+            out vec2 texCoord0;
+            out vec4 vertexColor;
+            
+            void main() {
+                gl_Position = vec4(Position + Offset.xyz, 1.0);
+                texCoord0 = UV0;
+                vertexColor = Color;
+            }
+            """;
+    private static final String TEXTURED_FRAGMENT = """
+            #version 330
+            
+            uniform sampler2D Sampler0;
+            
+            in vec2 texCoord0;
+            in vec4 vertexColor;
+            
+            out vec4 fragColor;
+            
+            void main() {
+                fragColor = texture(Sampler0, texCoord0) * vertexColor;
+            }
+            """;
+    private static final String POST_VERTEX = """
+            #version 330
+            
+            in vec3 Position;
+            
+            out vec2 texCoord;
+            
+            void main() {
+                gl_Position = vec4(Position.xy, 0.0, 1.0);
+                texCoord = Position.xy * 0.5 + 0.5;
+            }
+            """;
+    private static final String POST_FRAGMENT = """
+            #version 330
+            
+            uniform sampler2D InSampler;
+            
+            in vec2 texCoord;
+            
+            out vec4 fragColor;
+            
+            void main() {
+                fragColor = texture(InSampler, texCoord) * 0.5 + texture(InSampler, texCoord + vec2(0.001)) * 0.5;
+            }
+            """;
+    
+    private static final Identifier COLOR = Identifier.fromNamespaceAndPath("cinnabar", "benchmark/color");
+    private static final Identifier TEXTURED = Identifier.fromNamespaceAndPath("cinnabar", "benchmark/textured");
+    private static final Identifier POST = Identifier.fromNamespaceAndPath("cinnabar", "benchmark/post");
+    
+    private static final Map<Identifier, String> VERTEX_SHADERS = Map.of(COLOR, COLOR_VERTEX, TEXTURED, TEXTURED_VERTEX, POST, POST_VERTEX);
+    private static final Map<Identifier, String> FRAGMENT_SHADERS = Map.of(COLOR, COLOR_FRAGMENT, TEXTURED, TEXTURED_FRAGMENT, POST, POST_FRAGMENT);
+    
+    public static final ShaderSource SHADER_SOURCE = (location, type) -> switch (type) {
+        case VERTEX -> VERTEX_SHADERS.get(location);
+        case FRAGMENT -> FRAGMENT_SHADERS.get(location);
+    };
+    
+    // vanilla's POSITION_COLOR pipelines, terrain and GUI fills
+    public static final RenderPipeline COLOR_PIPELINE = RenderPipeline.builder()
+                                                                      .withLocation(COLOR)
+                                                                      .withVertexShader(COLOR)
+                                                                      .withFragmentShader(COLOR)
+                                                                      .withUniform("Transform", UniformType.UNIFORM_BUFFER)
+                                                                      .withVertexFormat(DefaultVertexFormat.POSITION_COLOR, VertexFormat.Mode.TRIANGLES)
+                                                                      .build();
+    // entities and GUI sprites
+    public static final RenderPipeline TEXTURED_PIPELINE = RenderPipeline.builder()
+                                                                         .withLocation(TEXTURED)
+                                                                         .withVertexShader(TEXTURED)
+                                                                         .withFragmentShader(TEXTURED)
+                                                                         .withUniform("Transform", UniformType.UNIFORM_BUFFER)
+                                                                         .withSampler("Sampler0")
+                                                                         .withVertexFormat(DefaultVertexFormat.POSITION_TEX_COLOR, VertexFormat.Mode.TRIANGLES)
+                                                                         .build();
+    // fullscreen post chain passes
+    public static final RenderPipeline POST_PIPELINE = RenderPipeline.builder()
+                                                                     .withLocation(POST)
+                                                                     .withVertexShader(POST)
+                                                                     .withFragmentShader(POST)
+                                                                     .withSampler("InSampler")
+                                                                     .withVertexFormat(DefaultVertexFormat.POSITION, VertexFormat.Mode.TRIANGLES)
+                                                                     .build();
+    
+    public final Hg3DGpuDevice device;
+    public final int width;
+    public final int height;
+    public final GpuTexture target;
+    public final GpuTextureView targetView;
+    public final GpuSampler sampler;
+    public final int uniformStride;
+    
+    FrameScene(Hg3DGpuDevice device, int width, int height) {
+        this.device = device;
+        this.width = width;
+        this.height = height;
+        target = device.createTexture("benchmark target", GpuTexture.USAGE_RENDER_ATTACHMENT | GpuTexture.USAGE_TEXTURE_BINDING | GpuTexture.USAGE_COPY_DST | GpuTexture.USAGE_COPY_SRC, TextureFormat.RGBA8, width, height, 1, 1);
+        targetView = device.createTextureView(target);
+        sampler = device.createSampler(AddressMode.CLAMP_TO_EDGE, AddressMode.CLAMP_TO_EDGE, FilterMode.LINEAR, FilterMode.LINEAR, 1, OptionalDouble.empty());
+        // the Transform block is a single vec4, each object still gets its own aligned slot
+        uniformStride = Math.max(16, device.getUniformOffsetAlignment());
+    }
+    
+    public Hg3DCommandEncoder encoder() {
+        return device.createCommandEncoder();
+    }
+    
+    @Override
+    public void close() {
+        targetView.close();
+        target.close();
+    }
+}
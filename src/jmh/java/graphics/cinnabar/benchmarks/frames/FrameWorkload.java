@@ -0,0 +1,15 @@
+package graphics.cinnabar.benchmarks.frames;
+
+// a synthetic frame, shaped like one part of a vanilla frame
+// setup creates everything that lives across frames, record is called once per frame, before endFrame
+public interface FrameWorkload extends AutoCloseable {
+    
+    String name();
+    
+    void setup(FrameScene scene);
+    
+    void record(FrameScene scene, long frame);
+    
+    @Override
+    void close();
+}
@@ -0,0 +1,124 @@
+package graphics.cinnabar.benchmarks.frames;
+
+import com.mojang.blaze3d.buffers.GpuBuffer;
+import com.mojang.blaze3d.platform.NativeImage;
+import com.mojang.blaze3d.textures.GpuTexture;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import com.mojang.blaze3d.textures.TextureFormat;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.OptionalInt;
+
+// GUI, lots of tiny quads, switching between fills and sprites, with scissor changes for scrolled lists
+// one upload of everything per frame, then draws out of ranges of it
+public class GuiWorkload implements FrameWorkload {
+    
+    private static final int ELEMENTS = 2000;
+    private static final int ELEMENTS_PER_BATCH = 8;
+    private static final int BATCHES_PER_SCISSOR = 8;
+    private static final int VERTICES_PER_ELEMENT = 6;
+    private static final int ATLAS_SIZE = 256;
+    private static final float ELEMENT_SIZE = 0.02f;
+    
+    private GpuTexture atlas;
+    private GpuTextureView atlasView;
+    private GpuBuffer colorVertices;
+    private GpuBuffer spriteVertices;
+    private GpuBuffer transform;
+    private ByteBuffer colorData;
+    private ByteBuffer spriteData;
+    
+    @Override
+    public String name() {
+        return "gui";
+    }
+    
+    @Override
+    public void setup(FrameScene scene) {
+        atlas = scene.device.createTexture("benchmark gui atlas", GpuTexture.USAGE_TEXTURE_BINDING | GpuTexture.USAGE_COPY_DST, TextureFormat.RGBA8, ATLAS_SIZE, ATLAS_SIZE, 1, 1);
+        atlasView = scene.device.createTextureView(atlas);
+        final var pixels = MemoryUtil.memAlloc(ATLAS_SIZE * ATLAS_SIZE * 4);
+        for (int i = 0; i < ATLAS_SIZE * ATLAS_SIZE; i++) {
+            pixels.putInt(0xFF000000 | i * 0x9E3779);
+        }
+        pixels.flip();
+        scene.encoder().writeToTexture(atlas, pixels, NativeImage.Format.RGBA, 0, 0, 0, 0, ATLAS_SIZE, ATLAS_SIZE);
+        MemoryUtil.memFree(pixels);
+        
+        colorData = MemoryUtil.memAlloc(ELEMENTS * VERTICES_PER_ELEMENT * DefaultVertexFormat.POSITION_COLOR.getVertexSize());
+        spriteData = MemoryUtil.memAlloc(ELEMENTS * VERTICES_PER_ELEMENT * DefaultVertexFormat.POSITION_TEX_COLOR.getVertexSize());
+        colorVertices = scene.device.createBuffer(() -> "benchmark gui fill vertices", GpuBuffer.USAGE_VERTEX | GpuBuffer.USAGE_COPY_DST, colorData.capacity());
+        spriteVertices = scene.device.createBuffer(() -> "benchmark gui sprite vertices", GpuBuffer.USAGE_VERTEX | GpuBuffer.USAGE_COPY_DST, spriteData.capacity());
+        // GUI has no per-element transform, everything is already in screen space
+        final var transformData = MemoryUtil.memCalloc(16);
+        transform = scene.device.createBuffer(() -> "benchmark gui transform", GpuBuffer.USAGE_UNIFORM, transformData);
+        MemoryUtil.memFree(transformData);
+    }
+    
+    @Override
+    public void record(FrameScene scene, long frame) {
+        colorData.clear();
+        spriteData.clear();
+        for (int i = 0; i < ELEMENTS; i++) {
+            final var x = (i % 80) / 40.0f - 1.0f;
+            final var y = (i / 80) / 40.0f - 1.0f;
+            final var color = 0xFF000000 | (int) ((frame + i) * 0x010203);
+            colorData.putFloat(x).putFloat(y).putFloat(0).putInt(color);
+            colorData.putFloat(x + ELEMENT_SIZE).putFloat(y).putFloat(0).putInt(color);
+            colorData.putFloat(x + ELEMENT_SIZE).putFloat(y + ELEMENT_SIZE).putFloat(0).putInt(color);
+            colorData.putFloat(x + ELEMENT_SIZE).putFloat(y + ELEMENT_SIZE).putFloat(0).putInt(color);
+            colorData.putFloat(x).putFloat(y + ELEMENT_SIZE).putFloat(0).putInt(color);
+            colorData.putFloat(x).putFloat(y).putFloat(0).putInt(color);
+            final var u = (i % 16) / 16.0f;
+            final var v = (i / 16 % 16) / 16.0f;
+            spriteData.putFloat(x).putFloat(y).putFloat(0).putFloat(u).putFloat(v).putInt(-1);
+            spriteData.putFloat(x + ELEMENT_SIZE).putFloat(y).putFloat(0).putFloat(u + 0.0625f).putFloat(v).putInt(-1);
+            spriteData.putFloat(x + ELEMENT_SIZE).putFloat(y + ELEMENT_SIZE).putFloat(0).putFloat(u + 0.0625f).putFloat(v + 0.0625f).putInt(-1);
+            spriteData.putFloat(x + ELEMENT_SIZE).putFloat(y + ELEMENT_SIZE).putFloat(0).putFloat(u + 0.0625f).putFloat(v + 0.0625f).putInt(-1);
+            spriteData.putFloat(x).putFloat(y + ELEMENT_SIZE).putFloat(0).putFloat(u).putFloat(v + 0.0625f).putInt(-1);
+            spriteData.putFloat(x).putFloat(y).putFloat(0).putFloat(u).putFloat(v).putInt(-1);
+        }
+        colorData.flip();
+        spriteData.flip();
+        
+        final var encoder = scene.encoder();
+        encoder.writeToBuffer(colorVertices.slice(), colorData);
+        encoder.writeToBuffer(spriteVertices.slice(), spriteData);
+        try (final var pass = encoder.createRenderPass(() -> "benchmark gui", scene.targetView, OptionalInt.empty())) {
+            for (int batch = 0; batch * ELEMENTS_PER_BATCH < ELEMENTS; batch++) {
+                if (batch % BATCHES_PER_SCISSOR == 0) {
+                    if ((batch / BATCHES_PER_SCISSOR) % 2 == 0) {
+                        pass.enableScissor(0, 0, scene.width / 2, scene.height);
+                    } else {
+                        pass.disableScissor();
+                    }
+                }
+                final var sprites = batch % 2 == 1;
+                pass.setPipeline(sprites ? FrameScene.TEXTURED_PIPELINE : FrameScene.COLOR_PIPELINE);
+                pass.setUniform("Transform", transform);
+                if (sprites) {
+                    pass.bindTexture("Sampler0", atlasView, scene.sampler);
+                }
+                pass.setVertexBuffer(0, sprites ? spriteVertices : colorVertices);
+                final var first = batch * ELEMENTS_PER_BATCH;
+                final var count = Math.min(ELEMENTS_PER_BATCH, ELEMENTS - first);
+                for (int i = 0; i < count; i++) {
+                    pass.draw((first + i) * VERTICES_PER_ELEMENT, VERTICES_PER_ELEMENT);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void close() {
+        colorVertices.close();
+        spriteVertices.close();
+        transform.close();
+        atlasView.close();
+        atlas.close();
+        MemoryUtil.memFree(colorData);
+        MemoryUtil.memFree(spriteData);
+    }
+}
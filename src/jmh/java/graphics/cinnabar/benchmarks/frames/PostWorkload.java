@@ -0,0 +1,66 @@
+package graphics.cinnabar.benchmarks.frames;
+
+import com.mojang.blaze3d.buffers.GpuBuffer;
+import com.mojang.blaze3d.textures.GpuTexture;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import com.mojang.blaze3d.textures.TextureFormat;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.OptionalInt;
+
+// a post chain, fullscreen passes ping-ponging between two targets, each sampling the last, then copied back to the main target
+// few draws, so this is the render pass/framebuffer/barrier side of Hg3D rather than per-draw cost
+public class PostWorkload implements FrameWorkload {
+    
+    private static final int PASSES = 6;
+    
+    private final GpuTexture[] targets = new GpuTexture[2];
+    private final GpuTextureView[] targetViews = new GpuTextureView[2];
+    private GpuBuffer fullscreenTriangle;
+    
+    @Override
+    public String name() {
+        return "post";
+    }
+    
+    @Override
+    public void setup(FrameScene scene) {
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = scene.device.createTexture("benchmark post target", GpuTexture.USAGE_RENDER_ATTACHMENT | GpuTexture.USAGE_TEXTURE_BINDING | GpuTexture.USAGE_COPY_SRC, TextureFormat.RGBA8, scene.width, scene.height, 1, 1);
+            targetViews[i] = scene.device.createTextureView(targets[i]);
+        }
+        final var vertexData = MemoryUtil.memAlloc(3 * 3 * Float.BYTES);
+        vertexData.putFloat(-1).putFloat(-1).putFloat(0);
+        vertexData.putFloat(3).putFloat(-1).putFloat(0);
+        vertexData.putFloat(-1).putFloat(3).putFloat(0);
+        vertexData.flip();
+        fullscreenTriangle = scene.device.createBuffer(() -> "benchmark post triangle", GpuBuffer.USAGE_VERTEX, vertexData);
+        MemoryUtil.memFree(vertexData);
+    }
+    
+    @Override
+    public void record(FrameScene scene, long frame) {
+        final var encoder = scene.encoder();
+        var source = scene.targetView;
+        for (int i = 0; i < PASSES; i++) {
+            final var destination = targetViews[i % 2];
+            try (final var pass = encoder.createRenderPass(() -> "benchmark post", destination, OptionalInt.empty())) {
+                pass.setPipeline(FrameScene.POST_PIPELINE);
+                pass.bindTexture("InSampler", source, scene.sampler);
+                pass.setVertexBuffer(0, fullscreenTriangle);
+                pass.draw(0, 3);
+            }
+            source = destination;
+        }
+        encoder.copyTextureToTexture(source.texture(), scene.target, 0, 0, 0, 0, 0, scene.width, scene.height);
+    }
+    
+    @Override
+    public void close() {
+        fullscreenTriangle.close();
+        for (int i = 0; i < targets.length; i++) {
+            targetViews[i].close();
+            targets[i].close();
+        }
+    }
+}
@@ -0,0 +1,4 @@
+@NotNullDefault
+package graphics.cinnabar.benchmarks.frames;
+
+import graphics.cinnabar.api.annotations.NotNullDefault;
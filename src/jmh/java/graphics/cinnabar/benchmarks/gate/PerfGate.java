@@ -0,0 +1,303 @@
+package graphics.cinnabar.benchmarks.gate;
+
+import graphics.cinnabar.benchmarks.frames.FrameBenchmark;
+import graphics.cinnabar.lib.parsers.Element;
+import graphics.cinnabar.lib.parsers.JSON5;
+import it.unimi.dsi.fastutil.objects.Object2ReferenceLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// runs the CPU only benchmarks, JMH and the frame workloads on the headless device, and compares them against a stored baseline
+// nothing here needs a GPU or the network, so it can be run before opening a PR
+// ./gradlew perfGate -PperfGateArgs="--save-baseline" on the base commit, then ./gradlew perfGate on the change
+// results are stored as perf-results/<commit>.json5, --baseline takes a commit or a path, --threshold is the allowed slowdown in percent
+public class PerfGate {
+    
+    private static final String DEFAULT_INCLUDE = "graphics\\.cinnabar\\.benchmarks\\.(lib|memory|serialization|hg3d)\\.";
+    private static final String NAME_PREFIX = "graphics.cinnabar.benchmarks.";
+    
+    private record Measurement(String name, String unit, boolean higherIsBetter, double score, double error) {
+    }
+    
+    public static void main(String[] args) throws IOException, RunnerException {
+        @Nullable
+        String commit = null;
+        String baseline = "baseline";
+        Path resultsDir = Path.of("perf-results");
+        double thresholdPercent = 5;
+        String include = DEFAULT_INCLUDE;
+        int frames = 300;
+        boolean quick = false;
+        boolean saveBaseline = false;
+        boolean fail = true;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--commit" -> commit = args[++i];
+                case "--baseline" -> baseline = args[++i];
+                case "--results-dir" -> resultsDir = Path.of(args[++i]);
+                case "--threshold" -> thresholdPercent = Double.parseDouble(args[++i]);
+                case "--include" -> include = args[++i];
+                case "--frames" -> frames = Integer.parseInt(args[++i]);
+                case "--quick" -> quick = true;
+                case "--save-baseline" -> saveBaseline = true;
+                case "--no-fail" -> fail = false;
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+        if (commit == null) {
+            commit = currentCommit();
+        }
+        
+        final var measurements = new ReferenceArrayList<Measurement>();
+        if (!include.isEmpty()) {
+            runJMH(include, quick, measurements);
+        }
+        if (frames > 0) {
+            runFrames(resultsDir, frames, measurements);
+        }
+        
+        Files.createDirectories(resultsDir);
+        final var resultsFile = resultsDir.resolve(commit + ".json5");
+        final var report = JSON5.parseElement(toElement(commit, measurements));
+        Files.writeString(resultsFile, report);
+        System.out.println("Results for " + commit + " written to " + resultsFile.toAbsolutePath());
+        
+        var baselineFile = Path.of(baseline);
+        if (!Files.isRegularFile(baselineFile)) {
+            baselineFile = resultsDir.resolve(baseline + ".json5");
+        }
+        // read before it's possibly replaced below
+        @Nullable
+        final var baselineMeasurements = Files.isRegularFile(baselineFile) ? read(baselineFile) : null;
+        if (saveBaseline) {
+            final var savedBaseline = resultsDir.resolve("baseline.json5");
+            Files.writeString(savedBaseline, report);
+            System.out.println("Saved as the baseline, " + savedBaseline.toAbsolutePath());
+        }
+        if (baselineMeasurements == null) {
+            System.out.println("No baseline at " + baselineFile.toAbsolutePath() + ", nothing to compare against");
+            return;
+        }
+        
+        final var regressions = compare(baselineMeasurements, measurements, thresholdPercent);
+        if (regressions != 0) {
+            System.out.printf("%d regression(s) past %.1f%% against %s%n", regressions, thresholdPercent, baselineFile);
+            if (fail) {
+                System.exit(1);
+            }
+        } else {
+            System.out.printf("No regressions past %.1f%% against %s%n", thresholdPercent, baselineFile);
+        }
+    }
+    
+    private static String currentCommit() {
+        try {
+            final var commit = git("rev-parse", "--short", "HEAD");
+            // results from uncommitted changes shouldn't overwrite the commit's own
+            return git("status", "--porcelain", "--untracked-files=no").isEmpty() ? commit : commit + "-dirty";
+        } catch (IOException e) {
+            System.err.println("Couldn't get the current commit from git, pass --commit, " + e);
+            return "unknown";
+        }
+    }
+    
+    private static String git(String... args) throws IOException {
+        final var command = new ReferenceArrayList<String>();
+        command.add("git");
+        command.addAll(List.of(args));
+        final var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final var output = new String(process.getInputStream().readAllBytes()).trim();
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("git " + String.join(" ", args) + " failed: " + output);
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        return output;
+    }
+    
+    private static void runJMH(String include, boolean quick, ReferenceArrayList<Measurement> measurements) throws RunnerException {
+        final var options = new OptionsBuilder().include(include);
+        if (quick) {
+            // enough to catch a big regression, not to trust a small one
+            options.warmupIterations(2)
+                   .warmupTime(TimeValue.milliseconds(500))
+                   .measurementIterations(3)
+                   .measurementTime(TimeValue.milliseconds(500));
+        }
+        for (final RunResult result : new Runner(options.build()).run()) {
+            final var params = result.getParams();
+            final var name = new StringBuilder(params.getBenchmark().substring(NAME_PREFIX.length()));
+            if (!params.getParamsKeys().isEmpty()) {
+                name.append(' ');
+                for (final var key : params.getParamsKeys()) {
+                    name.append(key).append('=').append(params.getParam(key)).append(',');
+                }
+                name.setLength(name.length() - 1);
+            }
+            if (params.getMode() == Mode.SampleTime) {
+                name.append(" (sample)");
+            }
+            final var primary = result.getPrimaryResult();
+            final var error = primary.getScoreError();
+            measurements.add(new Measurement(name.toString(), primary.getScoreUnit(), params.getMode() == Mode.Throughput, primary.getScore(), Double.isNaN(error) ? 0 : error));
+        }
+    }
+    
+    // FrameBenchmark on the headless device, in this JVM, its report is read back so both stay in step
+    private static void runFrames(Path resultsDir, int frames, ReferenceArrayList<Measurement> measurements) throws IOException {
+        final var report = resultsDir.resolve("frameBenchmark-headless.json5");
+        FrameBenchmark.main(new String[]{"--device", "headless", "--frames", Integer.toString(frames), "--out", report.toString()});
+        @Nullable
+        final var root = JSON5.parseString(Files.readString(report));
+        @Nullable
+        final var workloads = root == null ? null : child(root, "workloads");
+        if (workloads == null || workloads.subArray == null) {
+            throw new IllegalStateException("Frame benchmark report " + report + " has no workloads");
+        }
+        for (final var workload : workloads.subArray) {
+            @Nullable
+            final var name = child(workload, "name");
+            @Nullable
+            final var frame = child(workload, "frame");
+            @Nullable
+            final var heapBytes = child(workload, "heapBytesPerFrame");
+            if (name == null || frame == null || heapBytes == null) {
+                throw new IllegalStateException("Malformed workload in frame benchmark report " + report);
+            }
+            for (final var metric : new String[]{"wallMeanUs", "wallP95Us", "cpuMeanUs"}) {
+                @Nullable
+                final var value = child(frame, metric);
+                if (value != null) {
+                    measurements.add(new Measurement("frames." + name.asString() + " " + metric, "us", false, value.asDouble(), 0));
+                }
+            }
+            measurements.add(new Measurement("frames." + name.asString() + " heapBytesPerFrame", "B", false, heapBytes.asDouble(), 0));
+        }
+    }
+    
+    private static int compare(Object2ReferenceLinkedOpenHashMap<String, Measurement> baseline, ReferenceArrayList<Measurement> current, double thresholdPercent) {
+        int nameWidth = "Benchmark".length();
+        for (final var measurement : current) {
+            nameWidth = Math.max(nameWidth, measurement.name.length());
+        }
+        final var rowFormat = "%-" + nameWidth + "s  %14s  %14s  %-10s  %9s  %s%n";
+        System.out.printf(rowFormat, "Benchmark", "Baseline", "Current", "Unit", "Change", "");
+        int regressions = 0;
+        for (final var measurement : current) {
+            @Nullable
+            final var base = baseline.get(measurement.name);
+            if (base == null) {
+                System.out.printf(rowFormat, measurement.name, "-", format(measurement.score, measurement.error), measurement.unit, "-", "new");
+                continue;
+            }
+            if (!base.unit.equals(measurement.unit) || base.score == 0) {
+                System.out.printf(rowFormat, measurement.name, format(base.score, base.error), format(measurement.score, measurement.error), measurement.unit, "-", "not comparable");
+                continue;
+            }
+            final var changePercent = (measurement.score - base.score) / base.score * 100;
+            // positive is worse, whichever way the unit goes
+            final var slowdownPercent = measurement.higherIsBetter ? -changePercent : changePercent;
+            // within both runs' error, JMH couldn't tell them apart, whatever the threshold says
+            final var withinError = Math.abs(measurement.score - base.score) <= measurement.error + base.error;
+            final String status;
+            if (slowdownPercent > thresholdPercent && !withinError) {
+                status = "REGRESSION";
+                regressions++;
+            } else if (slowdownPercent < -thresholdPercent && !withinError) {
+                status = "improved";
+            } else {
+                status = "";
+            }
+            System.out.printf(rowFormat, measurement.name, format(base.score, base.error), format(measurement.score, measurement.error), measurement.unit, String.format("%+.1f%%", changePercent), status);
+        }
+        final var currentNames = new ObjectOpenHashSet<String>();
+        current.forEach(measurement -> currentNames.add(measurement.name));
+        for (final var base : baseline.values()) {
+            if (!currentNames.contains(base.name)) {
+                System.out.printf(rowFormat, base.name, format(base.score, base.error), "-", base.unit, "-", "missing");
+            }
+        }
+        return regressions;
+    }
+    
+    private static String format(double score, double error) {
+        return error == 0 ? String.format("%.3f", score) : String.format("%.3f±%.3f", score, error);
+    }
+    
+    private static Element toElement(String commit, ReferenceArrayList<Measurement> measurements) {
+        final var results = new Element[measurements.size()];
+        for (int i = 0; i < results.length; i++) {
+            final var measurement = measurements.get(i);
+            results[i] = new Element(Element.Type.Map, null, null, new Element[]{
+                    new Element(Element.Type.String, null, "name", measurement.name),
+                    new Element(Element.Type.String, null, "unit", measurement.unit),
+                    new Element(Element.Type.Boolean, null, "higherIsBetter", measurement.higherIsBetter),
+                    new Element(Element.Type.Number, null, "score", measurement.score),
+                    new Element(Element.Type.Number, null, "error", measurement.error),
+            });
+        }
+        return new Element(Element.Type.Map, null, null, new Element[]{
+                new Element(Element.Type.String, null, "commit", commit),
+                new Element(Element.Type.Number, null, "timestamp", TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis())),
+                new Element(Element.Type.String, null, "jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version")),
+                new Element(Element.Type.Number, null, "cpus", Runtime.getRuntime().availableProcessors()),
+                new Element(Element.Type.Array, null, "results", results),
+        });
+    }
+    
+    private static Object2ReferenceLinkedOpenHashMap<String, Measurement> read(Path file) throws IOException {
+        @Nullable
+        final var root = JSON5.parseString(Files.readString(file));
+        @Nullable
+        final var results = root == null ? null : child(root, "results");
+        if (results == null || results.subArray == null) {
+            throw new IllegalStateException("Baseline " + file + " has no results");
+        }
+        final var measurements = new Object2ReferenceLinkedOpenHashMap<String, Measurement>();
+        for (final var result : results.subArray) {
+            @Nullable
+            final var name = child(result, "name");
+            @Nullable
+            final var unit = child(result, "unit");
+            @Nullable
+            final var higherIsBetter = child(result, "higherIsBetter");
+            @Nullable
+            final var score = child(result, "score");
+            @Nullable
+            final var error = child(result, "error");
+            if (name == null || unit == null || higherIsBetter == null || score == null || error == null) {
+                throw new IllegalStateException("Malformed result in baseline " + file);
+            }
+            measurements.put(name.asString(), new Measurement(name.asString(), unit.asString(), higherIsBetter.asBool(), score.asDouble(), error.asDouble()));
+        }
+        return measurements;
+    }
+    
+    @Nullable
+    private static Element child(Element map, String name) {
+        if (map.subArray == null) {
+            return null;
+        }
+        for (final var element : map.subArray) {
+            if (name.equals(element.name)) {
+                return element;
+            }
+        }
+        return null;
+    }
+}
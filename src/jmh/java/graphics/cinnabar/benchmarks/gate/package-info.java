@@ -0,0 +1,4 @@
+@NotNullDefault
+package graphics.cinnabar.benchmarks.gate;
+
+import graphics.cinnabar.api.annotations.NotNullDefault;
@@ -0,0 +1,224 @@
+package graphics.cinnabar.benchmarks.hg3d;
+
+import com.mojang.blaze3d.buffers.GpuBuffer;
+import com.mojang.blaze3d.buffers.GpuBufferSlice;
+import com.mojang.blaze3d.pipeline.RenderPipeline;
+import com.mojang.blaze3d.shaders.ShaderSource;
+import com.mojang.blaze3d.shaders.ShaderType;
+import com.mojang.blaze3d.shaders.UniformType;
+import com.mojang.blaze3d.textures.GpuTexture;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import com.mojang.blaze3d.textures.TextureFormat;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import graphics.cinnabar.api.hg.Hg;
+import graphics.cinnabar.api.hg.HgCommandBuffer;
+import graphics.cinnabar.core.headless.HeadlessDevice;
+import graphics.cinnabar.core.hg3d.Hg3DGpuDevice;
+import net.minecraft.resources.Identifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+
+// CPU cost of a frame through Hg3D, on the headless Hg device, so this is Cinnabar's recording/submit overhead with no driver under it
+// one op is one frame, ended with endFrame, the aux counters are what the headless device saw per frame
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class Hg3DFrameBenchmark {
+    
+    private static final String VERTEX_SHADER = """
+            #version 330
+            
+            layout(std140) uniform Frame {
+                vec4 Tint;
+            };
+            
+            in vec3 Position;
+            in vec4 Color;
+            
+            out vec4 vertexColor;
+            
+            void main() {
+                gl_Position = vec4(Position, 1.0);
+                vertexColor = Color * Tint;
+            }
+            """;
+    private static final String FRAGMENT_SHADER = """
+            #version 330
+            
+            in vec4 vertexColor;
+            
+            out vec4 fragColor;
+            
+            void main() {
+                fragColor = vertexColor;
+            }
+            """;
+    private static final ShaderSource SHADER_SOURCE = (_, type) -> type == ShaderType.VERTEX ? VERTEX_SHADER : FRAGMENT_SHADER;
+    private static final RenderPipeline PIPELINE = RenderPipeline.builder()
+                                                                 .withLocation(Identifier.fromNamespaceAndPath("cinnabar", "benchmark/triangle"))
+                                                                 .withVertexShader(Identifier.fromNamespaceAndPath("cinnabar", "benchmark/triangle"))
+                                                                 .withFragmentShader(Identifier.fromNamespaceAndPath("cinnabar", "benchmark/triangle"))
+                                                                 .withUniform("Frame", UniformType.UNIFORM_BUFFER)
+                                                                 .withVertexFormat(DefaultVertexFormat.POSITION_COLOR, VertexFormat.Mode.TRIANGLES)
+                                                                 .build();
+    
+    private static final int UNIFORM_STRIDE = 256;
+    private static final int UNIFORM_SLICES = 64;
+    private static final int UPLOAD_SIZE = 256;
+    
+    @Param({"100", "1000"})
+    public int draws;
+    
+    private Hg3DGpuDevice device;
+    private HeadlessDevice headless;
+    private GpuTexture target;
+    private GpuTextureView targetView;
+    private GpuBuffer vertices;
+    private GpuBuffer uniforms;
+    private GpuBufferSlice[] uniformSlices;
+    private GpuBuffer uploadTarget;
+    private ByteBuffer uploadData;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        // Hg3D bootstraps CinnabarLib, which must happen on the thread named like MC's render thread, JMH only uses this one thread here
+        Thread.currentThread().setName("Render thread");
+        device = new Hg3DGpuDevice(SHADER_SOURCE, Hg::createHeadlessDevice);
+        device.attachWindow(0);
+        headless = (HeadlessDevice) device.hgDevice();
+        
+        target = device.createTexture("benchmark target", GpuTexture.USAGE_RENDER_ATTACHMENT, TextureFormat.RGBA8, 1920, 1080, 1, 1);
+        targetView = device.createTextureView(target);
+        
+        // one triangle, POSITION_COLOR
+        final var vertexData = ByteBuffer.allocateDirect(3 * DefaultVertexFormat.POSITION_COLOR.getVertexSize()).order(ByteOrder.nativeOrder());
+        final float[][] positions = {{-1, -1, 0}, {1, -1, 0}, {0, 1, 0}};
+        for (final var position : positions) {
+            vertexData.putFloat(position[0]).putFloat(position[1]).putFloat(position[2]).putInt(0xFFFFFFFF);
+        }
+        vertexData.flip();
+        vertices = device.createBuffer(() -> "benchmark vertices", GpuBuffer.USAGE_VERTEX, vertexData);
+        
+        uniforms = device.createBuffer(() -> "benchmark uniforms", GpuBuffer.USAGE_UNIFORM | GpuBuffer.USAGE_COPY_DST, (long) UNIFORM_STRIDE * UNIFORM_SLICES);
+        uniformSlices = new GpuBufferSlice[UNIFORM_SLICES];
+        for (int i = 0; i < UNIFORM_SLICES; i++) {
+            uniformSlices[i] = uniforms.slice((long) i * UNIFORM_STRIDE, 16);
+        }
+        
+        uploadTarget = device.createBuffer(() -> "benchmark upload target", GpuBuffer.USAGE_VERTEX | GpuBuffer.USAGE_COPY_DST, (long) UPLOAD_SIZE * 1024);
+        uploadData = ByteBuffer.allocateDirect(UPLOAD_SIZE).order(ByteOrder.nativeOrder());
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        uploadTarget.close();
+        uniforms.close();
+        vertices.close();
+        targetView.close();
+        target.close();
+        device.close();
+    }
+    
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class FrameCounters {
+        public long submits;
+        public long executedDraws;
+        public long uniformWrites;
+        public long uniformSets;
+        private long lastSubmits;
+        private long lastDraws;
+        private long lastUniformWrites;
+        private long lastUniformSets;
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            submits = 0;
+            executedDraws = 0;
+            uniformWrites = 0;
+            uniformSets = 0;
+        }
+        
+        private void update(HeadlessDevice headless) {
+            final var currentSubmits = headless.submitCount();
+            final var currentDraws = headless.commandCount(HgCommandBuffer.Command.DRAW);
+            final var currentUniformWrites = headless.uniformWrites();
+            final var currentUniformSets = headless.uniformSetsAllocated();
+            submits += currentSubmits - lastSubmits;
+            executedDraws += currentDraws - lastDraws;
+            uniformWrites += currentUniformWrites - lastUniformWrites;
+            uniformSets += currentUniformSets - lastUniformSets;
+            lastSubmits = currentSubmits;
+            lastDraws = currentDraws;
+            lastUniformWrites = currentUniformWrites;
+            lastUniformSets = currentUniformSets;
+        }
+    }
+    
+    // same pipeline, buffers, and uniforms for every draw, the floor for a draw call
+    @Benchmark
+    public void draw(FrameCounters counters) {
+        try (final var pass = device.createCommandEncoder().createRenderPass(() -> "benchmark", targetView, OptionalInt.of(0))) {
+            pass.setPipeline(PIPELINE);
+            pass.setVertexBuffer(0, vertices);
+            pass.setUniform("Frame", uniformSlices[0]);
+            for (int i = 0; i < draws; i++) {
+                pass.draw(0, 3);
+            }
+        }
+        device.endFrame();
+        counters.update(headless);
+    }
+    
+    // a different uniform slice every draw, like per-object UBOs, each one dirties the set
+    @Benchmark
+    public void drawUniformChurn(FrameCounters counters) {
+        try (final var pass = device.createCommandEncoder().createRenderPass(() -> "benchmark", targetView, OptionalInt.of(0))) {
+            pass.setPipeline(PIPELINE);
+            pass.setVertexBuffer(0, vertices);
+            for (int i = 0; i < draws; i++) {
+                pass.setUniform("Frame", uniformSlices[i % UNIFORM_SLICES]);
+                pass.draw(0, 3);
+            }
+        }
+        device.endFrame();
+        counters.update(headless);
+    }
+    
+    // the same uniform range set again every draw through a fresh slice, like MC's per-draw setUniform calls
+    // the contents match what's bound, so uniformSets should stay at one per frame, not one per draw
+    @Benchmark
+    public void drawUniformRebind(FrameCounters counters) {
+        try (final var pass = device.createCommandEncoder().createRenderPass(() -> "benchmark", targetView, OptionalInt.of(0))) {
+            pass.setPipeline(PIPELINE);
+            pass.setVertexBuffer(0, vertices);
+            for (int i = 0; i < draws; i++) {
+                pass.setUniform("Frame", uniforms.slice(0, 16));
+                pass.draw(0, 3);
+            }
+        }
+        device.endFrame();
+        counters.update(headless);
+    }
+    
+    // small writes to a GPU buffer, through the encoder's upload path, outside of a render pass
+    @Benchmark
+    public void upload(FrameCounters counters) {
+        final var encoder = device.createCommandEncoder();
+        for (int i = 0; i < draws; i++) {
+            uploadData.clear();
+            encoder.writeToBuffer(uploadTarget.slice((long) (i % 1024) * UPLOAD_SIZE, UPLOAD_SIZE), uploadData);
+        }
+        device.endFrame();
+        counters.update(headless);
+    }
+}
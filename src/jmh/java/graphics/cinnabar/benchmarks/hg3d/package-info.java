@@ -0,0 +1,4 @@
+@NotNullDefault
+package graphics.cinnabar.benchmarks.hg3d;
+
+import graphics.cinnabar.api.annotations.NotNullDefault;
@@ -0,0 +1,137 @@
+package graphics.cinnabar.benchmarks.lib;
+
+import graphics.cinnabar.lib.datastructures.RingQueue;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// throughput of RingQueue under producer/consumer contention
+// the symmetric benchmark (each thread enqueues and dequeues) is the one to run with -t 1/2/4/8/... for contention scaling
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class RingQueueBenchmark {
+    
+    private static final Object ITEM = new Object();
+    
+    // the queue grows without bound otherwise, so producers use the backoff enqueue against this
+    private static final long SOFT_CAPACITY = 1 << 16;
+    
+    @Param({"0", "32"})
+    public int batchSize;
+    
+    private RingQueue<Object> queue;
+    private ReferenceArrayList<Object> batch;
+    
+    @Setup(Level.Iteration)
+    public void setup() {
+        queue = new RingQueue<>(10, SOFT_CAPACITY);
+        batch = new ReferenceArrayList<>();
+        for (int i = 0; i < Math.max(1, batchSize); i++) {
+            batch.add(ITEM);
+        }
+    }
+    
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class DequeueCounters {
+        public long dequeued;
+        public long empty;
+        private final ReferenceArrayList<Object> output = new ReferenceArrayList<>();
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            dequeued = 0;
+            empty = 0;
+        }
+    }
+    
+    private void produce() {
+        if (batchSize == 0) {
+            queue.enqueueWithBackoff(ITEM);
+        } else {
+            queue.enqueueManyWithBackoff(batch);
+        }
+    }
+    
+    private void consume(DequeueCounters counters, Blackhole blackhole) {
+        if (batchSize == 0) {
+            final var item = queue.dequeue();
+            if (item == null) {
+                counters.empty++;
+            } else {
+                counters.dequeued++;
+                blackhole.consume(item);
+            }
+            return;
+        }
+        counters.output.clear();
+        final var count = queue.dequeueMany(counters.output, batchSize);
+        if (count == 0) {
+            counters.empty++;
+        } else {
+            counters.dequeued += count;
+            blackhole.consume(counters.output);
+        }
+    }
+    
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void spscProducer() {
+        produce();
+    }
+    
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void spscConsumer(DequeueCounters counters, Blackhole blackhole) {
+        consume(counters, blackhole);
+    }
+    
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(4)
+    public void mpscProducer() {
+        produce();
+    }
+    
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(1)
+    public void mpscConsumer(DequeueCounters counters, Blackhole blackhole) {
+        consume(counters, blackhole);
+    }
+    
+    @Benchmark
+    @Group("mpmc")
+    @GroupThreads(4)
+    public void mpmcProducer() {
+        produce();
+    }
+    
+    @Benchmark
+    @Group("mpmc")
+    @GroupThreads(4)
+    public void mpmcConsumer(DequeueCounters counters, Blackhole blackhole) {
+        consume(counters, blackhole);
+    }
+    
+    // group state is per group, and -t makes more groups, so the symmetric case shares its queue across the whole run
+    @State(Scope.Benchmark)
+    public static class SharedQueue {
+        private final RingQueue<Object> queue = new RingQueue<>(10);
+    }
+    
+    // one enqueue and one dequeue per op from every thread, so depth stays bounded without backoff
+    @Benchmark
+    public Object symmetric(SharedQueue shared) {
+        shared.queue.forceEnqueue(ITEM);
+        return shared.queue.dequeue();
+    }
+}
@@ -0,0 +1,50 @@
+package graphics.cinnabar.benchmarks.lib;
+
+import graphics.cinnabar.lib.datastructures.RingQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// per call latency, sample time mode reports the percentiles (p50 through p99.99)
+// enqueue includes the occasional new segment, dequeue the occasional head move, those are what show up in the tail
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RingQueueLatencyBenchmark {
+    
+    private static final Object ITEM = new Object();
+    
+    @Param({"6", "10"})
+    public int segmentBits;
+    
+    private RingQueue<Object> queue;
+    
+    @Setup(Level.Iteration)
+    public void setup() {
+        queue = new RingQueue<>(segmentBits);
+    }
+    
+    // pairs an enqueue with a dequeue so the queue stays near empty, which is the common case for the work queues
+    @Benchmark
+    @Threads(1)
+    public Object enqueueDequeue() {
+        queue.forceEnqueue(ITEM);
+        return queue.dequeue();
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public Object enqueueDequeueContended() {
+        queue.forceEnqueue(ITEM);
+        return queue.dequeue();
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public boolean peek() {
+        return queue.peekTest(item -> item != null);
+    }
+}
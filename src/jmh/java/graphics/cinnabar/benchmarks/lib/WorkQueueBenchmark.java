@@ -0,0 +1,79 @@
+package graphics.cinnabar.benchmarks.lib;
+
+import graphics.cinnabar.api.threading.IWorkQueue;
+import graphics.cinnabar.api.threading.WorkQueueBootstrapper;
+import graphics.cinnabar.lib.threading.AtomicQueueSemaphore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+// round trips through the real QueueSystem worker threads, no Hg device is needed, the semaphore wait thread just sits idle
+// the benchmark thread only spins on the semaphore, it doesn't help, so this is the latency threads outside the queue system see
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkQueueBenchmark {
+    
+    // a little bit of cpu per task, so this measures the queue, not the task
+    private static final long WORK_TOKENS = 16;
+    
+    static {
+        // once per fork, starts the workers, whatever thread loads this gets registered as main
+        WorkQueueBootstrapper.bootstrap();
+    }
+    
+    @Param({"BACKGROUND_THREADS", "BACKGROUND_CLEANUP"})
+    public String queueName;
+    
+    @Param({"1", "64"})
+    public int tasks;
+    
+    private IWorkQueue queue;
+    private final AtomicQueueSemaphore hostSignal = new AtomicQueueSemaphore();
+    private final AtomicQueueSemaphore queueSignal = new AtomicQueueSemaphore();
+    private long nextValue = 0;
+    private final ArrayList<IWorkQueue.Work> work = new ArrayList<>();
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        queue = switch (queueName) {
+            case "BACKGROUND_THREADS" -> IWorkQueue.BACKGROUND_THREADS;
+            case "BACKGROUND_CLEANUP" -> IWorkQueue.BACKGROUND_CLEANUP;
+            default -> throw new IllegalArgumentException(queueName);
+        };
+        for (int i = 0; i < tasks; i++) {
+            work.add(_ -> Blackhole.consumeCPU(WORK_TOKENS));
+        }
+    }
+    
+    private void awaitQueueSignal(long value) {
+        while (queueSignal.value() < value) {
+            Thread.onSpinWait();
+        }
+    }
+    
+    // enqueue, run, signal, observed by the enqueueing thread
+    @Benchmark
+    public void enqueueSignal() {
+        final var value = ++nextValue;
+        queue.enqueue(work);
+        queue.signal(queueSignal, value);
+        awaitQueueSignal(value);
+    }
+    
+    // same, but the queue is blocked on a wait enqueued first, which the host releases, so this includes the wake from a semaphore
+    @Benchmark
+    public void waitEnqueueSignal() {
+        final var value = ++nextValue;
+        queue.wait(hostSignal, value);
+        queue.enqueue(work);
+        queue.signal(queueSignal, value);
+        hostSignal.singlaValue(value);
+        awaitQueueSignal(value);
+    }
+}
@@ -0,0 +1,4 @@
+@NotNullDefault
+package graphics.cinnabar.benchmarks.lib;
+
+import graphics.cinnabar.api.annotations.NotNullDefault;
@@ -0,0 +1,12 @@
+package graphics.cinnabar.benchmarks.memory;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// benchmarks that must not allocate on the heap, AllocationGate fails the build if one does
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AllocationFree {
+}
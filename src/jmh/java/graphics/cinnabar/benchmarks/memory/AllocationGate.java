@@ -0,0 +1,96 @@
+package graphics.cinnabar.benchmarks.memory;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+
+// runs the @AllocationFree benchmarks with -prof gc and fails if any of them allocates per op
+// ./gradlew allocationGate, -PallocationGateArgs="--include PointerWrapper --max-bytes 0.5" to narrow it down or loosen it
+// short iterations, this is for catching a new allocation, the timings from it aren't worth anything
+public class AllocationGate {
+    
+    // a truly allocation free benchmark still reads a hair above 0, anything real is at least an object header
+    private static final double DEFAULT_MAX_BYTES_PER_OP = 1.0;
+    
+    public static void main(String[] args) throws RunnerException {
+        String include = "graphics\\.cinnabar\\.benchmarks\\.memory\\.";
+        double maxBytesPerOp = DEFAULT_MAX_BYTES_PER_OP;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final var value = args[i + 1];
+            switch (args[i]) {
+                case "--include" -> include = value;
+                case "--max-bytes" -> maxBytesPerOp = Double.parseDouble(value);
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+        
+        final var options = new OptionsBuilder()
+                                    .include(include)
+                                    .addProfiler(GCProfiler.class)
+                                    .warmupIterations(3)
+                                    .warmupTime(TimeValue.milliseconds(500))
+                                    .measurementIterations(3)
+                                    .measurementTime(TimeValue.milliseconds(500))
+                                    .forks(1)
+                                    .build();
+        final var failures = new ArrayList<String>();
+        int checked = 0;
+        for (final var result : new Runner(options).run()) {
+            final var benchmark = result.getParams().getBenchmark();
+            if (!isAllocationFree(benchmark)) {
+                continue;
+            }
+            checked++;
+            final var bytesPerOp = bytesPerOp(result);
+            if (Double.isNaN(bytesPerOp)) {
+                failures.add(benchmark + " " + result.getParams() + ": no gc.alloc.rate.norm, is the GC profiler supported on this JVM?");
+            } else if (bytesPerOp > maxBytesPerOp) {
+                failures.add(String.format("%s %s: %.2f B/op allocated, at most %.2f is allowed", benchmark, result.getParams(), bytesPerOp, maxBytesPerOp));
+            }
+        }
+        
+        if (checked == 0) {
+            System.err.println("Allocation gate matched no @AllocationFree benchmarks with " + include);
+            System.exit(1);
+        }
+        if (!failures.isEmpty()) {
+            System.err.println("Allocation gate failed:");
+            failures.forEach(failure -> System.err.println("  " + failure));
+            System.exit(1);
+        }
+        System.out.println("Allocation gate passed, " + checked + " benchmark runs allocation free");
+    }
+    
+    private static boolean isAllocationFree(String benchmark) {
+        final var split = benchmark.lastIndexOf('.');
+        try {
+            final var benchmarkClass = Class.forName(benchmark.substring(0, split));
+            final var methodName = benchmark.substring(split + 1);
+            for (final Method method : benchmarkClass.getMethods()) {
+                if (method.getName().equals(methodName)) {
+                    return method.isAnnotationPresent(AllocationFree.class);
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Benchmark class for " + benchmark + " not found", e);
+        }
+        return false;
+    }
+    
+    private static double bytesPerOp(RunResult result) {
+        final var secondary = result.getSecondaryResults();
+        // older JMH prefixes profiler results with a dot
+        Result<?> norm = secondary.get("gc.alloc.rate.norm");
+        if (norm == null) {
+            norm = secondary.get("·gc.alloc.rate.norm");
+        }
+        return norm == null ? Double.NaN : norm.getScore();
+    }
+}
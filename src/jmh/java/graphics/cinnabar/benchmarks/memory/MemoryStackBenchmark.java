@@ -0,0 +1,108 @@
+package graphics.cinnabar.benchmarks.memory;
+
+import graphics.cinnabar.api.memory.GrowingMemoryStack;
+import graphics.cinnabar.api.memory.MagicMemorySizes;
+import org.lwjgl.system.MemoryStack;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// push/alloc/pop the way Mercury uses its stacks, one op is a whole pattern
+// LWJGL's fixed size MemoryStack is the baseline, GrowingMemoryStack shouldn't cost much more than it
+// allocations go through nmalloc/ncalloc, stack.mallocLong and friends make a buffer object on every call whatever the stack is
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryStackBenchmark {
+    
+    // GrowingMemoryStack's block size
+    private static final int BLOCK_SIZE = (int) (256 * MagicMemorySizes.KiB);
+    // roughly a Vk*CreateInfo and its arrays
+    private static final int STRUCT_SIZE = 64;
+    
+    @Param({"1", "4", "16"})
+    public int depth;
+    
+    private GrowingMemoryStack growingStack;
+    private MemoryStack lwjglStack;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        growingStack = new GrowingMemoryStack();
+        lwjglStack = MemoryStack.create(BLOCK_SIZE * 4);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        growingStack.destroy();
+    }
+    
+    private void nested(MemoryStack stack, int remaining, Blackhole blackhole) {
+        try (final var _ = stack.push()) {
+            blackhole.consume(stack.ncalloc(8, 1, STRUCT_SIZE));
+            blackhole.consume(stack.nmalloc(8, STRUCT_SIZE * 4));
+            if (remaining > 1) {
+                nested(stack, remaining - 1, blackhole);
+            }
+        }
+    }
+    
+    // frames inside frames, like a command recorded inside a submit
+    @Benchmark
+    @AllocationFree
+    public void growingNested(Blackhole blackhole) {
+        nested(growingStack, depth, blackhole);
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public void lwjglNested(Blackhole blackhole) {
+        nested(lwjglStack, depth, blackhole);
+    }
+    
+    // frames one after another at the same level, like a command buffer recording commands
+    @Benchmark
+    @AllocationFree
+    public void growingSequential(Blackhole blackhole) {
+        for (int i = 0; i < depth; i++) {
+            try (final var _ = growingStack.push()) {
+                blackhole.consume(growingStack.ncalloc(8, 1, STRUCT_SIZE));
+            }
+        }
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public void lwjglSequential(Blackhole blackhole) {
+        for (int i = 0; i < depth; i++) {
+            try (final var _ = lwjglStack.push()) {
+                blackhole.consume(lwjglStack.ncalloc(8, 1, STRUCT_SIZE));
+            }
+        }
+    }
+    
+    // every op spills into the next block, which is only allocated the first time
+    @Benchmark
+    @AllocationFree
+    public void growingBlockBoundary(Blackhole blackhole) {
+        try (final var _ = growingStack.push()) {
+            blackhole.consume(growingStack.nmalloc(8, BLOCK_SIZE - STRUCT_SIZE));
+            for (int i = 0; i < depth; i++) {
+                blackhole.consume(growingStack.nmalloc(8, STRUCT_SIZE * 2));
+            }
+        }
+    }
+    
+    // LWJGL allocates its buffer wrappers every call, escape analysis may or may not remove them, so this isn't gated
+    @Benchmark
+    public void growingBufferWrappers(Blackhole blackhole) {
+        try (final var stack = growingStack.push()) {
+            blackhole.consume(stack.mallocLong(depth));
+            blackhole.consume(stack.callocInt(depth));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package graphics.cinnabar.benchmarks.memory;
+
+import graphics.cinnabar.api.memory.PointerWrapper;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// PointerWrapper against the raw MemoryUtil/JOML calls it wraps, the difference is its range checking
+// one op fills or reads the whole buffer, like a uniform or vertex upload would
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PointerWrapperBenchmark {
+    
+    private static final int BUFFER_SIZE = 4096;
+    
+    private PointerWrapper wrapper;
+    private long address;
+    private final Matrix4f matrix = new Matrix4f().perspective(1.2f, 16f / 9f, 0.05f, 1024f);
+    private final Vector4f vector4 = new Vector4f(1, 2, 3, 4);
+    private final Vector3f vector3 = new Vector3f(1, 2, 3);
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        wrapper = PointerWrapper.alloc(BUFFER_SIZE, 16);
+        address = wrapper.pointer();
+        wrapper.clear();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        wrapper.free();
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public PointerWrapper wrapperPutInt() {
+        for (int i = 0; i < BUFFER_SIZE; i += 4) {
+            wrapper.putInt(i, i);
+        }
+        return wrapper;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public long rawPutInt() {
+        for (int i = 0; i < BUFFER_SIZE; i += 4) {
+            MemoryUtil.memPutInt(address + i, i);
+        }
+        return address;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public PointerWrapper wrapperPutFloat() {
+        for (int i = 0; i < BUFFER_SIZE; i += 4) {
+            wrapper.putFloat(i, i);
+        }
+        return wrapper;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public long rawPutFloat() {
+        for (int i = 0; i < BUFFER_SIZE; i += 4) {
+            MemoryUtil.memPutFloat(address + i, i);
+        }
+        return address;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public PointerWrapper wrapperPutLong() {
+        for (int i = 0; i < BUFFER_SIZE; i += 8) {
+            wrapper.putLong(i, i);
+        }
+        return wrapper;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public long rawPutLong() {
+        for (int i = 0; i < BUFFER_SIZE; i += 8) {
+            MemoryUtil.memPutLong(address + i, i);
+        }
+        return address;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public long wrapperGetInt() {
+        long sum = 0;
+        for (int i = 0; i < BUFFER_SIZE; i += 4) {
+            sum += wrapper.getInt(i);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public long rawGetInt() {
+        long sum = 0;
+        for (int i = 0; i < BUFFER_SIZE; i += 4) {
+            sum += MemoryUtil.memGetInt(address + i);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public double wrapperGetDouble() {
+        double sum = 0;
+        for (int i = 0; i < BUFFER_SIZE; i += 8) {
+            sum += wrapper.getDouble(i);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public double rawGetDouble() {
+        double sum = 0;
+        for (int i = 0; i < BUFFER_SIZE; i += 8) {
+            sum += MemoryUtil.memGetDouble(address + i);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public PointerWrapper wrapperPutMatrix4f() {
+        for (int i = 0; i < BUFFER_SIZE; i += 64) {
+            wrapper.putMatrix4f(i, matrix);
+        }
+        return wrapper;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public long rawPutMatrix4f() {
+        for (int i = 0; i < BUFFER_SIZE; i += 64) {
+            matrix.getToAddress(address + i);
+        }
+        return address;
+    }
+    
+    // no JOML equivalent, this is the per float path
+    @Benchmark
+    @AllocationFree
+    public PointerWrapper wrapperPutMatrix3x4f() {
+        for (int i = 0; i + 48 <= BUFFER_SIZE; i += 48) {
+            wrapper.putMatrix3x4f(i, matrix);
+        }
+        return wrapper;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public Matrix4f wrapperGetMatrix4f() {
+        for (int i = 0; i < BUFFER_SIZE; i += 64) {
+            wrapper.getMatrix4f(i, matrix);
+        }
+        return matrix;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public Matrix4f rawGetMatrix4f() {
+        for (int i = 0; i < BUFFER_SIZE; i += 64) {
+            matrix.setFromAddress(address + i);
+        }
+        return matrix;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public PointerWrapper wrapperPutVector4f() {
+        for (int i = 0; i < BUFFER_SIZE; i += 16) {
+            wrapper.putVector4f(i, vector4);
+        }
+        return wrapper;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public long rawPutVector4f() {
+        for (int i = 0; i < BUFFER_SIZE; i += 16) {
+            vector4.getToAddress(address + i);
+        }
+        return address;
+    }
+    
+    // vec3s are 16 byte aligned, as in std140
+    @Benchmark
+    @AllocationFree
+    public PointerWrapper wrapperPutVector3f() {
+        for (int i = 0; i < BUFFER_SIZE; i += 16) {
+            wrapper.putVector3f(i, vector3);
+        }
+        return wrapper;
+    }
+    
+    @Benchmark
+    @AllocationFree
+    public long rawPutVector3f() {
+        for (int i = 0; i < BUFFER_SIZE; i += 16) {
+            vector3.getToAddress(address + i);
+        }
+        return address;
+    }
+}
@@ -0,0 +1,145 @@
+package graphics.cinnabar.benchmarks.replay;
+
+import graphics.cinnabar.api.hg.Hg;
+import graphics.cinnabar.api.hg.HgDevice;
+import graphics.cinnabar.core.capture.CaptureReplay;
+import graphics.cinnabar.core.hg3d.Hg3DGpuDevice;
+import graphics.cinnabar.lib.parsers.Element;
+import graphics.cinnabar.lib.parsers.JSON5;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// replays a capture made with -Dcinnabar.capture=true, either through Mercury on a real (or lavapipe) Vulkan device, or the headless device to only time Hg3D's CPU side
+// ./gradlew replayCapture -PreplayArgs="--capture cinnabar_captures/capture-....hg3dcap --device headless --iterations 20"
+// writes a JSON5 report, frame times per captured frame, over every iteration after the warmup
+public class ReplayCapture {
+    
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    public static void main(String[] args) throws IOException {
+        @Nullable
+        Path capture = null;
+        String deviceType = "headless";
+        int iterations = 20;
+        int warmup = 2;
+        Path out = Path.of("build", "reports", "replayCapture.json5");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final var value = args[i + 1];
+            switch (args[i]) {
+                case "--capture" -> capture = Path.of(value);
+                case "--device" -> deviceType = value;
+                case "--iterations" -> iterations = Integer.parseInt(value);
+                case "--warmup" -> warmup = Integer.parseInt(value);
+                case "--out" -> out = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+        if (capture == null) {
+            throw new IllegalArgumentException("--capture is required");
+        }
+        
+        final var replay = CaptureReplay.read(capture);
+        
+        // Cinnabar must be bootstrapped from a thread with MC's render thread's name
+        Thread.currentThread().setName("Render thread");
+        final Hg3DGpuDevice device = switch (deviceType) {
+            case "headless" -> {
+                final var headless = new Hg3DGpuDevice(replay.shaderSource(), Hg::createHeadlessDevice);
+                headless.attachWindow(0);
+                yield headless;
+            }
+            case "vulkan" -> {
+                // must be set before Mercury or the Vulkan startup code is loaded, it is read once
+                System.setProperty("cinnabar.offscreen", "true");
+                yield new Hg3DGpuDevice(replay.shaderSource(), () -> Hg.createDevice(new HgDevice.CreateInfo(new ReferenceArrayList<>(), new ReferenceArrayList<>(), new ReferenceArrayList<>(), new ReferenceArrayList<>())));
+            }
+            default -> throw new IllegalArgumentException("Unknown device " + deviceType + ", expected headless or vulkan");
+        };
+        
+        final var frames = replay.frameCount();
+        final var wallNanos = new long[frames][iterations];
+        final var cpuNanos = new long[frames][iterations];
+        for (int iteration = -warmup; iteration < iterations; iteration++) {
+            replay.begin(device);
+            device.endFrame();
+            for (int frame = 0; frame < frames; frame++) {
+                final var wall = System.nanoTime();
+                final var cpu = THREAD_BEAN.getCurrentThreadCpuTime();
+                replay.replayFrame(frame);
+                device.endFrame();
+                if (iteration >= 0) {
+                    wallNanos[frame][iteration] = System.nanoTime() - wall;
+                    cpuNanos[frame][iteration] = THREAD_BEAN.getCurrentThreadCpuTime() - cpu;
+                }
+            }
+        }
+        // everything from the last iteration has to be done before its closed
+        device.hgDevice().waitIdle();
+        replay.close();
+        
+        final var frameElements = new Element[frames];
+        for (int frame = 0; frame < frames; frame++) {
+            frameElements[frame] = frame(null, wallNanos[frame], cpuNanos[frame]);
+        }
+        final var report = map(null,
+                string("capture", capture.toString()),
+                string("capturedOn", replay.renderer()),
+                string("device", deviceType),
+                string("renderer", device.getRenderer()),
+                number("warmup", warmup),
+                number("iterations", iterations),
+                frame("total", Arrays.stream(wallNanos).flatMapToLong(Arrays::stream).toArray(), Arrays.stream(cpuNanos).flatMapToLong(Arrays::stream).toArray()),
+                new Element(Element.Type.Array, null, "frames", frameElements)
+        );
+        final var reportString = JSON5.parseElement(report);
+        System.out.println(reportString);
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Files.writeString(out, reportString);
+        
+        device.close();
+    }
+    
+    private static Element frame(@Nullable String name, long[] wallNanos, long[] cpuNanos) {
+        final var sortedWall = wallNanos.clone();
+        Arrays.sort(sortedWall);
+        return map(name,
+                number("wallMeanUs", mean(wallNanos) / 1000.0),
+                number("wallP50Us", percentile(sortedWall, 0.5) / 1000.0),
+                number("wallP95Us", percentile(sortedWall, 0.95) / 1000.0),
+                number("wallMaxUs", sortedWall[sortedWall.length - 1] / 1000.0),
+                number("cpuMeanUs", mean(cpuNanos) / 1000.0)
+        );
+    }
+    
+    private static double mean(long[] values) {
+        long total = 0;
+        for (final var value : values) {
+            total += value;
+        }
+        return (double) total / values.length;
+    }
+    
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+    
+    private static Element map(@Nullable String name, Element... elements) {
+        return new Element(Element.Type.Map, null, name, elements);
+    }
+    
+    private static Element number(String name, Number value) {
+        return new Element(Element.Type.Number, null, name, value);
+    }
+    
+    private static Element string(String name, String value) {
+        return new Element(Element.Type.String, null, name, value);
+    }
+}
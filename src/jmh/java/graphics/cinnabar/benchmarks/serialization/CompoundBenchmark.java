@@ -0,0 +1,60 @@
+package graphics.cinnabar.benchmarks.serialization;
+
+import graphics.cinnabar.lib.robn.ROBN;
+import graphics.cinnabar.lib.serialization.PhosphophylliteCompound;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// PhosphophylliteCompound through ROBN, what network sync and saved block data cost
+// same bytes counter and -prof gc use as ConfigParserBenchmark
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompoundBenchmark {
+    
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public SyntheticPayloads.Size size;
+    
+    private PhosphophylliteCompound compound;
+    private byte[] robn;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        compound = SyntheticPayloads.compound(size);
+        robn = compound.toROBN().toByteArray();
+        if (new PhosphophylliteCompound(robn).getInt("int0") != compound.getInt("int0")) {
+            throw new IllegalStateException("Synthetic " + size + " compound doesn't round trip");
+        }
+        System.out.printf("%s compound: ROBN %d bytes%n", size, robn.length);
+    }
+    
+    @Benchmark
+    public ByteArrayList serialize(ConfigParserBenchmark.Bytes bytes) {
+        bytes.bytes += robn.length;
+        return compound.toROBN();
+    }
+    
+    @Benchmark
+    public PhosphophylliteCompound deserialize(ConfigParserBenchmark.Bytes bytes) {
+        bytes.bytes += robn.length;
+        return new PhosphophylliteCompound(robn);
+    }
+    
+    @Benchmark
+    public PhosphophylliteCompound roundTrip(ConfigParserBenchmark.Bytes bytes) {
+        bytes.bytes += robn.length;
+        return new PhosphophylliteCompound(compound.toROBN());
+    }
+    
+    // the untyped tree, without the compound wrapper
+    @Benchmark
+    public Object deserializeRaw(ConfigParserBenchmark.Bytes bytes) {
+        bytes.bytes += robn.length;
+        return ROBN.fromROBN(ByteArrayList.wrap(robn));
+    }
+}
@@ -0,0 +1,126 @@
+package graphics.cinnabar.benchmarks.serialization;
+
+import graphics.cinnabar.lib.parsers.Element;
+import graphics.cinnabar.lib.parsers.JSON5;
+import graphics.cinnabar.lib.parsers.ROBN;
+import graphics.cinnabar.lib.parsers.TOML;
+import graphics.cinnabar.lib.repack.tnjson.TnJson;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// the Element bridges the config system goes through, and tnjson under JSON5 on its own, so the bridge's share is visible
+// the bytes counter is the serialized size moved per op, so it reads as throughput in bytes/ms
+// allocation per byte: run with -prof gc, and divide gc.alloc.rate.norm by the sizes printed at setup
+// ./gradlew jmh -PjmhArgs="ConfigParserBenchmark -prof gc"
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigParserBenchmark {
+    
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public SyntheticPayloads.Size size;
+    
+    private Element tree;
+    private String json5;
+    private String toml;
+    private ByteArrayList robn;
+    private Map<String, Object> tnjsonMap;
+    
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        tree = SyntheticPayloads.configTree(size);
+        json5 = JSON5.parseElement(tree);
+        toml = TOML.parseElement(tree);
+        robn = ROBN.parseElement(tree);
+        if (robn == null || JSON5.parseString(json5) == null || TOML.parseString(toml) == null || ROBN.parseROBN(robn) == null) {
+            throw new IllegalStateException("Synthetic " + size + " config tree doesn't round trip");
+        }
+        tnjsonMap = TnJson.parse(json5);
+        System.out.printf("%s config tree: JSON5 %d chars, TOML %d chars, ROBN %d bytes%n", size, json5.length(), toml.length(), robn.size());
+    }
+    
+    @Benchmark
+    public Element json5Parse(Bytes bytes) {
+        bytes.bytes += json5.length();
+        return JSON5.parseString(json5);
+    }
+    
+    @Benchmark
+    public String json5Write(Bytes bytes) {
+        bytes.bytes += json5.length();
+        return JSON5.parseElement(tree);
+    }
+    
+    @Benchmark
+    public Element json5RoundTrip(Bytes bytes) {
+        bytes.bytes += json5.length();
+        return JSON5.parseString(JSON5.parseElement(tree));
+    }
+    
+    @Benchmark
+    public Element tomlParse(Bytes bytes) {
+        bytes.bytes += toml.length();
+        return TOML.parseString(toml);
+    }
+    
+    @Benchmark
+    public String tomlWrite(Bytes bytes) {
+        bytes.bytes += toml.length();
+        return TOML.parseElement(tree);
+    }
+    
+    @Benchmark
+    public Element tomlRoundTrip(Bytes bytes) {
+        bytes.bytes += toml.length();
+        return TOML.parseString(TOML.parseElement(tree));
+    }
+    
+    @Benchmark
+    public Element robnParse(Bytes bytes) {
+        bytes.bytes += robn.size();
+        return ROBN.parseROBN(robn);
+    }
+    
+    @Benchmark
+    public ByteArrayList robnWrite(Bytes bytes) {
+        bytes.bytes += robn.size();
+        return ROBN.parseElement(tree);
+    }
+    
+    @Benchmark
+    public Element robnRoundTrip(Bytes bytes) {
+        bytes.bytes += robn.size();
+        final var written = ROBN.parseElement(tree);
+        assert written != null;
+        return ROBN.parseROBN(written);
+    }
+    
+    @Benchmark
+    public Map<String, Object> tnjsonParse(Bytes bytes) {
+        bytes.bytes += json5.length();
+        return TnJson.parse(json5);
+    }
+    
+    @Benchmark
+    public String tnjsonWrite(Bytes bytes) {
+        bytes.bytes += json5.length();
+        return TnJson.toJson(tnjsonMap, TnJson.Mode.JSON5);
+    }
+}
@@ -0,0 +1,107 @@
+package graphics.cinnabar.benchmarks.serialization;
+
+import graphics.cinnabar.lib.parsers.Element;
+import graphics.cinnabar.lib.serialization.PhosphophylliteCompound;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+
+import java.util.Random;
+
+// deterministic config trees and sync payloads, shaped like what the config system and network sync actually move
+// fixed seed, so every fork and every run sees the same bytes
+public final class SyntheticPayloads {
+    
+    public enum Size {
+        // a handful of options, a single block's sync
+        SMALL(2, 1, 6, 1, 16),
+        // a typical mod config, a multiblock controller's sync
+        MEDIUM(8, 3, 12, 4, 256),
+        // a modpack sized config, a full multiblock resync
+        LARGE(32, 6, 24, 16, 4096),
+        ;
+        
+        final int sections;
+        final int subsections;
+        final int entries;
+        final int children;
+        final int listLength;
+        
+        Size(int sections, int subsections, int entries, int children, int listLength) {
+            this.sections = sections;
+            this.subsections = subsections;
+            this.entries = entries;
+            this.children = children;
+            this.listLength = listLength;
+        }
+    }
+    
+    private SyntheticPayloads() {
+    }
+    
+    // no arrays, TOML can't write them, so one tree round trips through every format
+    public static Element configTree(Size size) {
+        final var random = new Random(0x43494E4EL);
+        final var sections = new Element[size.sections];
+        for (int i = 0; i < sections.length; i++) {
+            final var children = new ReferenceArrayList<Element>();
+            entries(random, size.entries, children);
+            for (int j = 0; j < size.subsections; j++) {
+                final var subsection = new ReferenceArrayList<Element>();
+                entries(random, size.entries, subsection);
+                children.add(new Element(Element.Type.Map, "Subsection " + j + " of section " + i, "subsection" + j, subsection.toArray(new Element[0])));
+            }
+            sections[i] = new Element(Element.Type.Map, "Section " + i, "section" + i, children.toArray(new Element[0]));
+        }
+        return new Element(Element.Type.Map, null, null, sections);
+    }
+    
+    private static void entries(Random random, int count, ReferenceArrayList<Element> into) {
+        for (int i = 0; i < count; i++) {
+            final var name = "entry" + i;
+            // most options are documented, some aren't
+            final var comment = i % 3 == 0 ? null : "Controls " + name + "\nDefault: whatever it was";
+            into.add(switch (i % 4) {
+                case 0 -> new Element(Element.Type.Boolean, comment, name, random.nextBoolean());
+                case 1 -> new Element(Element.Type.Number, comment, name, random.nextInt(1 << 20));
+                case 2 -> new Element(Element.Type.Number, comment, name, random.nextDouble() * 1000);
+                default -> new Element(Element.Type.String, comment, name, "value_" + Long.toHexString(random.nextLong()));
+            });
+        }
+    }
+    
+    public static PhosphophylliteCompound compound(Size size) {
+        return compound(new Random(0x524F424EL), size, 2);
+    }
+    
+    private static PhosphophylliteCompound compound(Random random, Size size, int depth) {
+        final var compound = new PhosphophylliteCompound();
+        for (int i = 0; i < size.entries; i++) {
+            compound.put("int" + i, random.nextInt());
+            compound.put("long" + i, random.nextLong());
+            compound.put("double" + i, random.nextDouble());
+            compound.put("bool" + i, random.nextBoolean());
+            compound.put("string" + i, "value_" + Long.toHexString(random.nextLong()));
+        }
+        final var ints = new IntArrayList(size.listLength);
+        final var longs = new LongArrayList(size.listLength);
+        for (int i = 0; i < size.listLength; i++) {
+            ints.add(random.nextInt());
+            longs.add(random.nextLong());
+        }
+        compound.put("ints", ints);
+        compound.put("longs", longs);
+        final var strings = new ObjectArrayList<String>();
+        for (int i = 0; i < size.listLength / 16 + 1; i++) {
+            strings.add("minecraft:block_" + i);
+        }
+        compound.put("strings", strings);
+        if (depth > 0) {
+            for (int i = 0; i < size.children; i++) {
+                compound.put("child" + i, compound(random, size, depth - 1));
+            }
+        }
+        return compound;
+    }
+}
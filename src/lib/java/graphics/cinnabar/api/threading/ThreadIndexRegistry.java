@@ -11,10 +11,18 @@ public class ThreadIndexRegistry {
     public static final int mainThreadCount = 1;
     // reserve one for the render thread, server thread, and OS
     // granted, i cant control other mods making threads too
-    public static final int backgroundWorkThreadCount = Math.max(0, Runtime.getRuntime().availableProcessors() - 3);
+    // this is the ceiling, how many of these are actually taking work is adjusted at runtime based on load
+    public static final int backgroundWorkThreadCount = Math.max(0, Integer.getInteger("cinnabar.maxWorkerThreads", Runtime.getRuntime().availableProcessors() - 3));
+    // the worker count never gets scaled below this
+    public static final int minBackgroundWorkThreadCount = Math.min(backgroundWorkThreadCount, Math.max(1, Integer.getInteger("cinnabar.minWorkerThreads", 1)));
     // a single cleaner thread should be more than enough, this is where queued destroys will be called from
     public static final int backgroundCleanerThreadCount = 1;
-    public static final int totalThreads = mainThreadCount + backgroundWorkThreadCount + backgroundCleanerThreadCount;
+    // not real threads, these are lent to blocking I/O tasks (which run on virtual threads) while they run, and caps how many run at once
+    public static final int ioThreadCount = Math.max(1, Integer.getInteger("cinnabar.ioThreads", 8));
+    public static final int totalThreads = mainThreadCount + backgroundWorkThreadCount + backgroundCleanerThreadCount + ioThreadCount;
+    // main and cleanup come first, see ThreadIndex
+    public static final int firstBackgroundWorkThreadIndex = mainThreadCount + backgroundCleanerThreadCount;
+    public static final int firstIoThreadIndex = firstBackgroundWorkThreadIndex + backgroundWorkThreadCount;
     
     static {
         ThreadIndex.Bootstrapper.threadCount = totalThreads;
@@ -39,11 +47,17 @@ public class ThreadIndexRegistry {
         if (existingIndex != null) {
             return existingIndex;
         }
-        if (nextVal == totalThreads) {
+        if (nextVal == firstIoThreadIndex) {
             throw new IllegalStateException("Too many threads attempted to register a threadIndex");
         }
         final var index = new ThreadIndex(nextVal++);
         threadIndexThreadLocal.set(index);
         return index;
     }
+    
+    // I/O indices only, the caller is responsible for not handing the same one to two threads at once
+    public static void lendToThisThread(@Nullable ThreadIndex index) {
+        assert index == null || index.index() >= firstIoThreadIndex;
+        threadIndexThreadLocal.set(index);
+    }
 }
@@ -6,8 +6,12 @@ public class WorkQueueBootstrapper {
     public static void bootstrap() {
         IWorkQueue.Bootstrapper.MAIN_THREAD = QueueSystem.createMainThreadQueue();
         IWorkQueue.Bootstrapper.BACKGROUND_CLEANUP = QueueSystem.createCleanupThreadQueue();
-        IWorkQueue.Bootstrapper.BACKGROUND_THREADS = QueueSystem.createBackgroundThreadsQueue();
+        IWorkQueue.Bootstrapper.BACKGROUND_THREADS = QueueSystem.createBackgroundThreadsQueue(IWorkQueue.Priority.NORMAL);
+        IWorkQueue.Bootstrapper.BACKGROUND_THREADS_FRAME_CRITICAL = QueueSystem.createBackgroundThreadsQueue(IWorkQueue.Priority.FRAME_CRITICAL);
+        IWorkQueue.Bootstrapper.BACKGROUND_THREADS_BULK = QueueSystem.createBackgroundThreadsQueue(IWorkQueue.Priority.BULK);
         IWorkQueue.Bootstrapper.AFTER_END_OF_GPU_FRAME = QueueSystem.createCleanupThreadQueue();
+        IWorkQueue.Bootstrapper.BACKGROUND_IO = QueueSystem.createBlockingIOQueue();
+        IWorkQueue.Bootstrapper.HELP_WHILE_WAITING = QueueSystem::helpWhileWaiting;
         
         QueueSystem.startThreads();
     }
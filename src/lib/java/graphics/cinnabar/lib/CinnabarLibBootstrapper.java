@@ -2,6 +2,7 @@ package graphics.cinnabar.lib;
 
 import graphics.cinnabar.api.threading.ThreadIndexRegistry;
 import graphics.cinnabar.api.threading.WorkQueueBootstrapper;
+import graphics.cinnabar.loader.earlywindow.StartupTrace;
 
 import static graphics.cinnabar.lib.CinnabarLib.CINNABAR_LIB_LOG;
 
@@ -16,6 +17,12 @@ public class CinnabarLibBootstrapper {
         if (index.index() != 0) {
             throw new IllegalStateException("Main thread failed to get thread index 0");
         }
-        WorkQueueBootstrapper.bootstrap();
+        try (final var _ = StartupTrace.phase("WorkQueue bootstrap")) {
+            WorkQueueBootstrapper.bootstrap();
+        }
+        try (final var _ = StartupTrace.phase("shaderc natives")) {
+            // the render thread compiles shaders anyway, this just loads shaderc where it can be timed
+            ThreadGlobals.get();
+        }
     }
 }
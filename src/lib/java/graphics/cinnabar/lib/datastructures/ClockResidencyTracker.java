@@ -0,0 +1,194 @@
+package graphics.cinnabar.lib.datastructures;
+
+import graphics.cinnabar.api.annotations.ThreadSafety;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+// second chance (CLOCK) residency tracking
+// touching an entry is a single bit set, so its safe from any thread and doesn't need to splice anything
+// the sweep walks the hand around the slots, clearing reference bits, anything it finds that wasn't touched since the last pass is a victim
+// add/remove/get/pollVictims are owner (main) thread only, one sweep may run on another thread concurrently
+public class ClockResidencyTracker<T> {
+    
+    private static final VarHandle LONG_ARRAY_VAR_HANDLE = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle BITS_VAR_HANDLE;
+    private static final VarHandle VICTIMS_VAR_HANDLE;
+    private static final VarHandle SWEEPING_VAR_HANDLE;
+    
+    static {
+        try {
+            final var lookup = MethodHandles.lookup();
+            BITS_VAR_HANDLE = lookup.findVarHandle(ClockResidencyTracker.class, "bits", Bits.class);
+            VICTIMS_VAR_HANDLE = lookup.findVarHandle(ClockResidencyTracker.class, "publishedVictims", int[].class);
+            SWEEPING_VAR_HANDLE = lookup.findVarHandle(ClockResidencyTracker.class, "sweeping", boolean.class);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // owner thread only
+    private Object[] items;
+    private final IntArrayList freeSlots = new IntArrayList();
+    private int slotCount = 0;
+    private int liveCount = 0;
+    
+    // both bitsets are swapped out together when growing, so the sweep always sees a matching pair
+    // a touch or clear that races a grow can get lost, that only ever costs (or gives) one extra chance
+    @SuppressWarnings("FieldMayBeFinal")
+    private Bits bits;
+    
+    // sweep thread only
+    private int hand = 0;
+    private final IntArrayList sweepVictims = new IntArrayList();
+    
+    @SuppressWarnings("unused")
+    private int @Nullable [] publishedVictims;
+    @SuppressWarnings("unused")
+    private boolean sweeping;
+    
+    public ClockResidencyTracker(int initialCapacity) {
+        final var capacity = Math.max(64, (initialCapacity + 63) & ~63);
+        items = new Object[capacity];
+        bits = new Bits(new long[capacity >> 6], new long[capacity >> 6]);
+    }
+    
+    @ThreadSafety.MainGraphics
+    public int add(T item) {
+        final int slot;
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.popInt();
+        } else {
+            if (slotCount == items.length) {
+                grow();
+            }
+            slot = slotCount++;
+        }
+        items[slot] = item;
+        liveCount++;
+        final var currentBits = currentBits();
+        final var word = slot >>> 6;
+        final var mask = 1L << slot;
+        // new entries start referenced, so a slot that gets reused can't be mistaken for a victim the sweep found before it was reused
+        LONG_ARRAY_VAR_HANDLE.getAndBitwiseOrRelease(currentBits.referenced, word, mask);
+        LONG_ARRAY_VAR_HANDLE.getAndBitwiseOrRelease(currentBits.occupied, word, mask);
+        return slot;
+    }
+    
+    @ThreadSafety.MainGraphics
+    public void remove(int slot) {
+        assert items[slot] != null;
+        items[slot] = null;
+        liveCount--;
+        freeSlots.push(slot);
+        final var currentBits = currentBits();
+        LONG_ARRAY_VAR_HANDLE.getAndBitwiseAndRelease(currentBits.occupied, slot >>> 6, ~(1L << slot));
+    }
+    
+    @ThreadSafety.Any
+    public void touch(int slot) {
+        final var referenced = currentBits().referenced;
+        final var word = slot >>> 6;
+        final var mask = 1L << slot;
+        // nearly always already set, skip the atomic and the cache line invalidation when it is
+        if (((long) LONG_ARRAY_VAR_HANDLE.getOpaque(referenced, word) & mask) == 0) {
+            LONG_ARRAY_VAR_HANDLE.getAndBitwiseOrRelease(referenced, word, mask);
+        }
+    }
+    
+    @Nullable
+    @ThreadSafety.MainGraphics
+    public T get(int slot) {
+        //noinspection unchecked
+        return (T) items[slot];
+    }
+    
+    // slots are dense-ish, iterating 0 until slotCount and skipping nulls walks every entry
+    @ThreadSafety.MainGraphics
+    public int slotCount() {
+        return slotCount;
+    }
+    
+    @ThreadSafety.MainGraphics
+    public int size() {
+        return liveCount;
+    }
+    
+    // a victim is only still a victim if nothing touched it since the sweep found it
+    @ThreadSafety.MainGraphics
+    public boolean stillVictim(int slot) {
+        final var currentBits = currentBits();
+        final var word = slot >>> 6;
+        final var mask = 1L << slot;
+        return items[slot] != null && ((long) LONG_ARRAY_VAR_HANDLE.getAcquire(currentBits.referenced, word) & mask) == 0;
+    }
+    
+    // takes the victims from the most recent completed sweep, each may have been touched or removed since
+    @Nullable
+    @ThreadSafety.MainGraphics
+    public int[] pollVictims() {
+        return (int[]) VICTIMS_VAR_HANDLE.getAndSet(this, (int[]) null);
+    }
+    
+    @ThreadSafety.Many
+    public boolean sweeping() {
+        return (boolean) SWEEPING_VAR_HANDLE.getAcquire(this);
+    }
+    
+    // advances the hand by up to maxSlots, if another sweep is already running this does nothing
+    @ThreadSafety.Many
+    public void sweep(int maxSlots) {
+        if (!SWEEPING_VAR_HANDLE.compareAndSet(this, false, true)) {
+            return;
+        }
+        try {
+            final var currentBits = currentBits();
+            final var capacity = currentBits.occupied.length << 6;
+            sweepVictims.clear();
+            for (int i = 0; i < Math.min(maxSlots, capacity); i++) {
+                if (hand >= capacity) {
+                    hand = 0;
+                }
+                final var slot = hand++;
+                final var word = slot >>> 6;
+                final var mask = 1L << slot;
+                final var occupiedWord = (long) LONG_ARRAY_VAR_HANDLE.getAcquire(currentBits.occupied, word);
+                if (occupiedWord == 0) {
+                    // whole word is empty, skip to the next one
+                    i += 63 - (slot & 63);
+                    hand = (word + 1) << 6;
+                    continue;
+                }
+                if ((occupiedWord & mask) == 0) {
+                    continue;
+                }
+                final var previous = (long) LONG_ARRAY_VAR_HANDLE.getAndBitwiseAndRelease(currentBits.referenced, word, ~mask);
+                if ((previous & mask) == 0) {
+                    // second time the hand came by without a touch
+                    sweepVictims.add(slot);
+                }
+            }
+            // any unconsumed victims from the last sweep are stale anyway
+            VICTIMS_VAR_HANDLE.setRelease(this, sweepVictims.toIntArray());
+        } finally {
+            SWEEPING_VAR_HANDLE.setRelease(this, false);
+        }
+    }
+    
+    private Bits currentBits() {
+        return (Bits) BITS_VAR_HANDLE.getAcquire(this);
+    }
+    
+    private void grow() {
+        final var newCapacity = items.length * 2;
+        items = Arrays.copyOf(items, newCapacity);
+        final var oldBits = currentBits();
+        BITS_VAR_HANDLE.setRelease(this, new Bits(Arrays.copyOf(oldBits.occupied, newCapacity >> 6), Arrays.copyOf(oldBits.referenced, newCapacity >> 6)));
+    }
+    
+    private record Bits(long[] occupied, long[] referenced) {
+    }
+}
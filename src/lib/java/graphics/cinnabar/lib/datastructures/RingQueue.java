@@ -8,125 +8,343 @@ import org.jetbrains.annotations.Nullable;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Predicate;
 
+// MPMC queue made of a linked list of fixed size segments
+// indices are global and only ever go up, an index maps to segment (index >> segmentBits), so nothing ever has to wait for a slot to be freed
+// producers that run off the end link a new segment, consumed segments are unlinked as the head moves past them and left to the GC
+// segments are never reused, a producer or consumer still holding an old one can't see it change under it
 public class RingQueue<T> {
     
     private static final VarHandle LONG_ARRAY_VAR_HANDLE = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle INT_ARRAY_VAR_HANDLE = MethodHandles.arrayElementVarHandle(int[].class);
     private static final VarHandle OBJECT_ARRAY_VAR_HANDLE = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle HEAD_VAR_HANDLE;
+    private static final VarHandle TAIL_VAR_HANDLE;
+    private static final VarHandle NEXT_VAR_HANDLE;
     
-    private final int RING_SIZE_BITS;
-    private final int RING_SIZE;
-    private final long RING_INDEX_MASK;
+    static {
+        try {
+            final var lookup = MethodHandles.lookup();
+            HEAD_VAR_HANDLE = lookup.findVarHandle(RingQueue.class, "head", Segment.class);
+            TAIL_VAR_HANDLE = lookup.findVarHandle(RingQueue.class, "tail", Segment.class);
+            NEXT_VAR_HANDLE = lookup.findVarHandle(Segment.class, "next", Segment.class);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // slots start out 0, and are only ever filled once
+    private static final int SLOT_FILLED = 1;
     
-    private final Object[] ringObjects;
-    private final long[] ringVersions;
+    // backoff steps for the blocking enqueues, spin, then yield, then park with the time doubling up to the max
+    private static final int BACKOFF_SPINS = 64;
+    private static final int BACKOFF_YIELDS = 64;
+    private static final long BACKOFF_MAX_PARK_NANOS = 1_000_000;
+    
+    private final int SEGMENT_SIZE_BITS;
+    private final int SEGMENT_SIZE;
+    private final long SEGMENT_INDEX_MASK;
+    // only the *WithBackoff enqueues look at this, the force enqueues always go through
+    private final long softCapacity;
     
     // this is done as an array with indices 8 and 16 used to forcefully push these onto their own cache lines
     private static final int PUSH_ARRAY_INDEX = 8;
     private static final int POP_ARRAY_INDEX = 16;
     private final long[] pushPopIndices = new long[24];
     
-    public RingQueue(int ringBits) {
-        RING_SIZE_BITS = ringBits;
-        RING_SIZE = 1 << ringBits;
-        RING_INDEX_MASK = RING_SIZE - 1;
-        ringObjects = new Object[RING_SIZE];
-        ringVersions = new long[RING_SIZE];
+    // head is never past the segment of the pop index, tail is a hint that may lag behind the push index
+    @SuppressWarnings("FieldMayBeFinal")
+    private Segment head;
+    @SuppressWarnings("FieldMayBeFinal")
+    private Segment tail;
+    
+    public RingQueue(int segmentBits) {
+        this(segmentBits, Long.MAX_VALUE);
+    }
+    
+    public RingQueue(int segmentBits, long softCapacity) {
+        SEGMENT_SIZE_BITS = segmentBits;
+        SEGMENT_SIZE = 1 << segmentBits;
+        SEGMENT_INDEX_MASK = SEGMENT_SIZE - 1;
+        this.softCapacity = softCapacity;
+        head = tail = new Segment(0, SEGMENT_SIZE);
     }
     
     @ThreadSafety.Many
-    public void forceEnqueue(@Nullable T data) {
+    public long forceEnqueue(@Nullable T data) {
         final var index = (long) LONG_ARRAY_VAR_HANDLE.getAndAddAcquire(pushPopIndices, PUSH_ARRAY_INDEX, 1);
-        final var ringIndex = (int) (index & RING_INDEX_MASK);
-        final var expectedVersion = (index >> RING_SIZE_BITS) * 2;
-        
-        while ((long) LONG_ARRAY_VAR_HANDLE.get(ringVersions, ringIndex) != expectedVersion) {
-            VarHandle.acquireFence();
-            Thread.onSpinWait();
-        }
-        VarHandle.releaseFence();
-        OBJECT_ARRAY_VAR_HANDLE.setRelease(ringObjects, ringIndex, data);
-        LONG_ARRAY_VAR_HANDLE.setRelease(ringVersions, ringIndex, expectedVersion + 1);
+        fill(producerSegment(index), index, data);
+        return index;
     }
     
+    // a single atomic add claims the whole range, the items are then filled in order, following the segment links if it crosses any
     @ThreadSafety.Many
-    public void forceEnqueueMany(List<@Nullable T> data) {
-        final var baseIndex = (long) LONG_ARRAY_VAR_HANDLE.getAndAddAcquire(pushPopIndices, PUSH_ARRAY_INDEX, data.size());
+    public long forceEnqueueMany(List<@Nullable T> data) {
         final var count = data.size();
+        final var baseIndex = (long) LONG_ARRAY_VAR_HANDLE.getAndAddAcquire(pushPopIndices, PUSH_ARRAY_INDEX, count);
+        if (count == 0) {
+            return baseIndex;
+        }
+        var segment = producerSegment(baseIndex);
         for (int i = 0; i < count; i++) {
             final var index = baseIndex + i;
-            final var ringIndex = (int) (index & RING_INDEX_MASK);
-            final var expectedVersion = (index >> RING_SIZE_BITS) * 2;
-            
-            while ((long) LONG_ARRAY_VAR_HANDLE.get(ringVersions, ringIndex) != expectedVersion) {
-                VarHandle.acquireFence();
+            if ((index >>> SEGMENT_SIZE_BITS) != segment.id) {
+                segment = nextSegment(segment, true);
+                assert segment != null;
+                advanceTail(segment);
+            }
+            fill(segment, index, data.get(i));
+        }
+        return baseIndex;
+    }
+    
+    // waits, with backoff, while the queue is over its soft capacity
+    // an empty queue always accepts, so a batch larger than the capacity still goes through
+    @ThreadSafety.Many
+    public long enqueueWithBackoff(@Nullable T data) {
+        awaitCapacity(1);
+        return forceEnqueue(data);
+    }
+    
+    @ThreadSafety.Many
+    public long enqueueManyWithBackoff(List<@Nullable T> data) {
+        awaitCapacity(data.size());
+        return forceEnqueueMany(data);
+    }
+    
+    private void awaitCapacity(int count) {
+        int attempt = 0;
+        while (true) {
+            final var depth = pushIndex() - popIndex();
+            if (depth <= 0 || depth + count <= softCapacity) {
+                return;
+            }
+            if (attempt < BACKOFF_SPINS) {
                 Thread.onSpinWait();
+            } else if (attempt < BACKOFF_SPINS + BACKOFF_YIELDS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(Math.min(1000L << Math.min(attempt - BACKOFF_SPINS - BACKOFF_YIELDS, 20), BACKOFF_MAX_PARK_NANOS));
             }
-            
-            VarHandle.releaseFence();
-            OBJECT_ARRAY_VAR_HANDLE.setRelease(ringObjects, ringIndex, data.get(i));
-            LONG_ARRAY_VAR_HANDLE.setRelease(ringVersions, ringIndex, expectedVersion + 1);
+            attempt++;
         }
     }
     
+    // index the next enqueue will get, minus popIndex this is (roughly) the current depth
+    @ThreadSafety.Many
+    public long pushIndex() {
+        return (long) LONG_ARRAY_VAR_HANDLE.getAcquire(pushPopIndices, PUSH_ARRAY_INDEX);
+    }
+    
+    // index of the element at the head, which may not have finished being enqueued yet
+    @ThreadSafety.Many
+    public long popIndex() {
+        return (long) LONG_ARRAY_VAR_HANDLE.getAcquire(pushPopIndices, POP_ARRAY_INDEX);
+    }
+    
     @Nullable
     @ThreadSafety.Many
     public T dequeue() {
-        VarHandle.acquireFence();
-        final var index = (long) LONG_ARRAY_VAR_HANDLE.get(pushPopIndices, POP_ARRAY_INDEX);
-        final var ringIndex = (int) (index & RING_INDEX_MASK);
-        final var expectedVersion = (index >> RING_SIZE_BITS) * 2 + 1;
-        
-        VarHandle.acquireFence();
-        final var elementVersion = (long) LONG_ARRAY_VAR_HANDLE.get(ringVersions, ringIndex);
-        if (elementVersion != expectedVersion) {
+        final var index = popIndex();
+        @Nullable
+        final var segment = consumerSegment(index);
+        if (segment == null || !filled(segment, index)) {
             Thread.onSpinWait();
             return null;
         }
-        VarHandle.acquireFence();
         if (index != (long) LONG_ARRAY_VAR_HANDLE.compareAndExchange(pushPopIndices, POP_ARRAY_INDEX, index, index + 1)) {
             Thread.onSpinWait();
             return null;
         }
-        VarHandle.acquireFence();
-        final var data = OBJECT_ARRAY_VAR_HANDLE.get(ringObjects, ringIndex);
-        VarHandle.releaseFence();
-        OBJECT_ARRAY_VAR_HANDLE.set(ringObjects, ringIndex, null);
-        LONG_ARRAY_VAR_HANDLE.set(ringVersions, ringIndex, expectedVersion + 1);
-        //noinspection unchecked
-        return (T) data;
+        return take(segment, index);
+    }
+    
+    // takes up to maxCount consecutive ready items with a single CAS, returns how many were added to output
+    @ThreadSafety.Many
+    public int dequeueMany(List<? super @Nullable T> output, int maxCount) {
+        final var index = popIndex();
+        @Nullable
+        final var firstSegment = consumerSegment(index);
+        if (firstSegment == null) {
+            return 0;
+        }
+        @Nullable
+        var segment = firstSegment;
+        int count = 0;
+        while (count < maxCount) {
+            final var itemIndex = index + count;
+            if ((itemIndex >>> SEGMENT_SIZE_BITS) != segment.id) {
+                segment = nextSegment(segment, false);
+                if (segment == null) {
+                    break;
+                }
+            }
+            if (!filled(segment, itemIndex)) {
+                break;
+            }
+            count++;
+        }
+        if (count == 0) {
+            Thread.onSpinWait();
+            return 0;
+        }
+        if (index != (long) LONG_ARRAY_VAR_HANDLE.compareAndExchange(pushPopIndices, POP_ARRAY_INDEX, index, index + count)) {
+            Thread.onSpinWait();
+            return 0;
+        }
+        segment = firstSegment;
+        for (int i = 0; i < count; i++) {
+            final var itemIndex = index + i;
+            if ((itemIndex >>> SEGMENT_SIZE_BITS) != segment.id) {
+                segment = nextSegment(segment, false);
+                assert segment != null;
+            }
+            output.add(take(segment, itemIndex));
+        }
+        return count;
     }
     
+    // if the head element exists and passes the condition, it may be gone by the time this returns
+    @ThreadSafety.Many
+    public boolean peekTest(Predicate<@Nullable T> condition) {
+        final var index = popIndex();
+        @Nullable
+        final var segment = consumerSegment(index);
+        if (segment == null || !filled(segment, index)) {
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        final var data = (T) OBJECT_ARRAY_VAR_HANDLE.getAcquire(segment.objects, (int) (index & SEGMENT_INDEX_MASK));
+        return condition.test(data);
+    }
     
     @Nullable
     @ThreadSafety.Many
     public LongReferencePair<@Nullable T> conditionalDequeue(Predicate<@Nullable T> condition) {
-        VarHandle.acquireFence();
-        final var index = (long) LONG_ARRAY_VAR_HANDLE.get(pushPopIndices, POP_ARRAY_INDEX);
-        final var ringIndex = (int) (index & RING_INDEX_MASK);
-        final var expectedVersion = (index >> RING_SIZE_BITS) * 2 + 1;
-        
-        VarHandle.acquireFence();
-        final var elementVersion = (long) LONG_ARRAY_VAR_HANDLE.get(ringVersions, ringIndex);
-        if (elementVersion != expectedVersion) {
+        final var index = popIndex();
+        @Nullable
+        final var segment = consumerSegment(index);
+        if (segment == null || !filled(segment, index)) {
             Thread.onSpinWait();
             return null;
         }
-        VarHandle.acquireFence();
         @SuppressWarnings("unchecked")
-        final var data = (T) OBJECT_ARRAY_VAR_HANDLE.get(ringObjects, ringIndex);
+        final var data = (T) OBJECT_ARRAY_VAR_HANDLE.getAcquire(segment.objects, (int) (index & SEGMENT_INDEX_MASK));
         if (!condition.test(data)) {
             return null;
         }
-        VarHandle.acquireFence();
         if (index != (long) LONG_ARRAY_VAR_HANDLE.compareAndExchange(pushPopIndices, POP_ARRAY_INDEX, index, index + 1)) {
             Thread.onSpinWait();
             return null;
         }
-        VarHandle.releaseFence();
-        OBJECT_ARRAY_VAR_HANDLE.set(ringObjects, ringIndex, null);
-        LONG_ARRAY_VAR_HANDLE.set(ringVersions, ringIndex, expectedVersion + 1);
+        take(segment, index);
         return new LongReferenceImmutablePair<>(index, data);
     }
+    
+    private void fill(Segment segment, long index, @Nullable T data) {
+        final var slot = (int) (index & SEGMENT_INDEX_MASK);
+        OBJECT_ARRAY_VAR_HANDLE.setRelease(segment.objects, slot, data);
+        INT_ARRAY_VAR_HANDLE.setRelease(segment.states, slot, SLOT_FILLED);
+    }
+    
+    private boolean filled(Segment segment, long index) {
+        return (int) INT_ARRAY_VAR_HANDLE.getAcquire(segment.states, (int) (index & SEGMENT_INDEX_MASK)) == SLOT_FILLED;
+    }
+    
+    // only after winning the pop CAS for this index
+    @Nullable
+    private T take(Segment segment, long index) {
+        final var slot = (int) (index & SEGMENT_INDEX_MASK);
+        @SuppressWarnings("unchecked")
+        final var data = (T) OBJECT_ARRAY_VAR_HANDLE.getAcquire(segment.objects, slot);
+        // segments are never reused, this is only so a long lived segment doesn't keep consumed items alive
+        OBJECT_ARRAY_VAR_HANDLE.setOpaque(segment.objects, slot, null);
+        return data;
+    }
+    
+    // the slot for index was claimed, but not filled, so consumers can't be past its segment and head is a safe place to start
+    private Segment producerSegment(long index) {
+        final var targetId = index >>> SEGMENT_SIZE_BITS;
+        var segment = (Segment) TAIL_VAR_HANDLE.getAcquire(this);
+        if (segment.id > targetId) {
+            // another producer already moved the tail past this one
+            segment = (Segment) HEAD_VAR_HANDLE.getAcquire(this);
+            assert segment.id <= targetId;
+        }
+        while (segment.id < targetId) {
+            segment = nextSegment(segment, true);
+            assert segment != null;
+        }
+        advanceTail(segment);
+        return segment;
+    }
+    
+    // null if the segment doesn't exist yet, or this index is stale and the head already moved past it
+    @Nullable
+    private Segment consumerSegment(long index) {
+        final var targetId = index >>> SEGMENT_SIZE_BITS;
+        final var currentHead = (Segment) HEAD_VAR_HANDLE.getAcquire(this);
+        if (currentHead.id > targetId) {
+            return null;
+        }
+        @Nullable
+        var segment = currentHead;
+        while (segment.id < targetId) {
+            segment = nextSegment(segment, false);
+            if (segment == null) {
+                return null;
+            }
+        }
+        if (segment != currentHead) {
+            // everything before index has been consumed, nothing can need the earlier segments anymore
+            var observedHead = currentHead;
+            while (observedHead.id < segment.id) {
+                final var witness = (Segment) HEAD_VAR_HANDLE.compareAndExchange(this, observedHead, segment);
+                if (witness == observedHead) {
+                    break;
+                }
+                observedHead = witness;
+            }
+        }
+        return segment;
+    }
+    
+    @Nullable
+    private Segment nextSegment(Segment segment, boolean create) {
+        @Nullable
+        final var next = (Segment) NEXT_VAR_HANDLE.getAcquire(segment);
+        if (next != null || !create) {
+            return next;
+        }
+        final var newSegment = new Segment(segment.id + 1, SEGMENT_SIZE);
+        @Nullable
+        final var witness = (Segment) NEXT_VAR_HANDLE.compareAndExchange(segment, (Segment) null, newSegment);
+        // lost the race to link one, use the winner's
+        return witness == null ? newSegment : witness;
+    }
+    
+    private void advanceTail(Segment segment) {
+        // best effort, tail is only a starting point
+        final var currentTail = (Segment) TAIL_VAR_HANDLE.getAcquire(this);
+        if (currentTail.id < segment.id) {
+            TAIL_VAR_HANDLE.compareAndSet(this, currentTail, segment);
+        }
+    }
+    
+    private static final class Segment {
+        private final long id;
+        private final Object[] objects;
+        private final int[] states;
+        @Nullable
+        @SuppressWarnings("unused")
+        private Segment next;
+        
+        private Segment(long id, int size) {
+            this.id = id;
+            objects = new Object[size];
+            states = new int[size];
+        }
+    }
 }
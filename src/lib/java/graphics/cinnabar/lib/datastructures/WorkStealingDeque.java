@@ -0,0 +1,121 @@
+package graphics.cinnabar.lib.datastructures;
+
+import graphics.cinnabar.api.annotations.ThreadSafety;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Chase-Lev deque, the owner pushes and pops from the bottom (LIFO, whatever it just pushed is still in cache), thieves take from the top
+// the owner is whatever single thread the deque belongs to, any number of threads can steal concurrently
+public class WorkStealingDeque<T> {
+    
+    private static final VarHandle OBJECT_ARRAY_VAR_HANDLE = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle TOP_VAR_HANDLE;
+    private static final VarHandle BOTTOM_VAR_HANDLE;
+    private static final VarHandle ARRAY_VAR_HANDLE;
+    
+    static {
+        try {
+            final var lookup = MethodHandles.lookup();
+            TOP_VAR_HANDLE = lookup.findVarHandle(WorkStealingDeque.class, "top", long.class);
+            BOTTOM_VAR_HANDLE = lookup.findVarHandle(WorkStealingDeque.class, "bottom", long.class);
+            ARRAY_VAR_HANDLE = lookup.findVarHandle(WorkStealingDeque.class, "array", Object[].class);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // top and bottom are on their own cache lines, thieves hammer top while the owner works bottom
+    @SuppressWarnings("unused")
+    private long p00, p01, p02, p03, p04, p05, p06;
+    @SuppressWarnings("unused")
+    private long top;
+    @SuppressWarnings("unused")
+    private long p10, p11, p12, p13, p14, p15, p16;
+    @SuppressWarnings("unused")
+    private long bottom;
+    @SuppressWarnings("unused")
+    private long p20, p21, p22, p23, p24, p25, p26;
+    @SuppressWarnings("FieldMayBeFinal")
+    private Object[] array;
+    
+    public WorkStealingDeque(int initialSizeBits) {
+        array = new Object[1 << initialSizeBits];
+    }
+    
+    @ThreadSafety.Any
+    public void push(T item) {
+        final var b = (long) BOTTOM_VAR_HANDLE.getOpaque(this);
+        final var t = (long) TOP_VAR_HANDLE.getAcquire(this);
+        var a = (Object[]) ARRAY_VAR_HANDLE.getOpaque(this);
+        if (b - t > a.length - 1) {
+            a = grow(a, b, t);
+        }
+        OBJECT_ARRAY_VAR_HANDLE.setRelease(a, (int) (b & (a.length - 1)), item);
+        BOTTOM_VAR_HANDLE.setRelease(this, b + 1);
+    }
+    
+    @Nullable
+    @ThreadSafety.Any
+    public T pop() {
+        final var b = (long) BOTTOM_VAR_HANDLE.getOpaque(this) - 1;
+        final var a = (Object[]) ARRAY_VAR_HANDLE.getOpaque(this);
+        BOTTOM_VAR_HANDLE.setOpaque(this, b);
+        VarHandle.fullFence();
+        final var t = (long) TOP_VAR_HANDLE.getOpaque(this);
+        if (t > b) {
+            // empty
+            BOTTOM_VAR_HANDLE.setOpaque(this, b + 1);
+            return null;
+        }
+        final var slot = (int) (b & (a.length - 1));
+        //noinspection unchecked
+        var item = (T) OBJECT_ARRAY_VAR_HANDLE.get(a, slot);
+        if (t == b) {
+            // last item, race any thieves for it
+            if (!TOP_VAR_HANDLE.compareAndSet(this, t, t + 1)) {
+                item = null;
+            }
+            BOTTOM_VAR_HANDLE.setOpaque(this, b + 1);
+        }
+        // clear the slot so finished work (and whatever it captured) isn't kept alive until the next lap
+        // any thief that can still read this slot read it before its CAS, and for the last item that's before the CAS above, so it can't see the null
+        OBJECT_ARRAY_VAR_HANDLE.setOpaque(a, slot, null);
+        return item;
+    }
+    
+    @Nullable
+    @ThreadSafety.Many
+    public T steal() {
+        final var t = (long) TOP_VAR_HANDLE.getAcquire(this);
+        VarHandle.fullFence();
+        final var b = (long) BOTTOM_VAR_HANDLE.getAcquire(this);
+        if (t >= b) {
+            return null;
+        }
+        final var a = (Object[]) ARRAY_VAR_HANDLE.getAcquire(this);
+        //noinspection unchecked
+        final var item = (T) OBJECT_ARRAY_VAR_HANDLE.getAcquire(a, (int) (t & (a.length - 1)));
+        if (!TOP_VAR_HANDLE.compareAndSet(this, t, t + 1)) {
+            // lost to another thief (or the owner), caller can just try somewhere else
+            return null;
+        }
+        return item;
+    }
+    
+    @ThreadSafety.Many
+    public boolean isEmpty() {
+        return (long) TOP_VAR_HANDLE.getAcquire(this) >= (long) BOTTOM_VAR_HANDLE.getAcquire(this);
+    }
+    
+    private Object[] grow(Object[] oldArray, long b, long t) {
+        // old array is left as is, a thief that read it before the swap still reads the right item
+        final var newArray = new Object[oldArray.length * 2];
+        for (long i = t; i < b; i++) {
+            newArray[(int) (i & (newArray.length - 1))] = oldArray[(int) (i & (oldArray.length - 1))];
+        }
+        ARRAY_VAR_HANDLE.setRelease(this, newArray);
+        return newArray;
+    }
+}
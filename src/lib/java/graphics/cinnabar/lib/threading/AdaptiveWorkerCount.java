@@ -0,0 +1,121 @@
+package graphics.cinnabar.lib.threading;
+
+import graphics.cinnabar.api.annotations.ThreadSafety;
+import graphics.cinnabar.api.threading.ThreadIndexRegistry;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+// every worker up to the ceiling is started, but only the first activeCount (by thread index) take work, the rest sit parked
+// workers check if it's time to re-evaluate as they loop, so there is no separate thread for this, and nothing runs while everything is idle
+// grows quickly when work is waiting too long, shrinks one at a time after a few quiet intervals, so vanilla's own executors get the cores back when Cinnabar doesn't need them
+final class AdaptiveWorkerCount {
+    
+    private static final long ADJUST_INTERVAL_NANOS = 100_000_000L;
+    // oldest queued item waiting longer than this means there aren't enough workers
+    private static final long GROW_WAIT_NANOS = 2_000_000L;
+    private static final double GROW_UTILISATION = 0.9;
+    private static final double SHRINK_UTILISATION = 0.25;
+    private static final int SHRINK_AFTER_QUIET_INTERVALS = 3;
+    
+    private final int firstIndex = ThreadIndexRegistry.firstBackgroundWorkThreadIndex;
+    private final int minCount = ThreadIndexRegistry.minBackgroundWorkThreadCount;
+    private final int maxCount = ThreadIndexRegistry.backgroundWorkThreadCount;
+    private final @Nullable Thread[] threads = new Thread[ThreadIndexRegistry.totalThreads];
+    // oldest wait of anything in any background queue
+    private final LongSupplier oldestWaitNanos;
+    
+    private volatile int activeCount;
+    private volatile double utilisation = 0;
+    private final LongAdder busyNanos = new LongAdder();
+    private final AtomicLong nextAdjust = new AtomicLong(System.nanoTime() + ADJUST_INTERVAL_NANOS);
+    // adjusting thread only
+    private long lastAdjust = System.nanoTime();
+    private long lastBusyNanos = 0;
+    private int quietIntervals = 0;
+    
+    AdaptiveWorkerCount(LongSupplier oldestWaitNanos) {
+        this.oldestWaitNanos = oldestWaitNanos;
+        // start in the middle, it'll find where it needs to be within a few intervals
+        activeCount = Math.max(minCount, (maxCount + 1) / 2);
+    }
+    
+    @ThreadSafety.Many
+    void register(int threadIndex, Thread thread) {
+        threads[threadIndex] = thread;
+    }
+    
+    @ThreadSafety.Many
+    boolean isActive(int threadIndex) {
+        return threadIndex - firstIndex < activeCount;
+    }
+    
+    // parks until this worker is active again
+    @ThreadSafety.Many(note = "only from the worker itself")
+    void parkWhileInactive(int threadIndex) {
+        while (!isActive(threadIndex)) {
+            LockSupport.park(this);
+        }
+    }
+    
+    @ThreadSafety.Many
+    void recordBusy(long nanos) {
+        busyNanos.add(nanos);
+    }
+    
+    @ThreadSafety.Many
+    int activeCount() {
+        return activeCount;
+    }
+    
+    @ThreadSafety.Many
+    double utilisation() {
+        return utilisation;
+    }
+    
+    // cheap unless an interval has passed, then exactly one caller does the adjustment
+    @ThreadSafety.Many
+    void maybeAdjust() {
+        final var now = System.nanoTime();
+        final var next = nextAdjust.get();
+        if (now - next < 0 || !nextAdjust.compareAndSet(next, now + ADJUST_INTERVAL_NANOS)) {
+            return;
+        }
+        final var elapsed = Math.max(1, now - lastAdjust);
+        final var busy = busyNanos.sum();
+        final var currentCount = activeCount;
+        final var currentUtilisation = Math.min(1.0, (double) (busy - lastBusyNanos) / ((double) elapsed * Math.max(1, currentCount)));
+        lastAdjust = now;
+        lastBusyNanos = busy;
+        utilisation = currentUtilisation;
+        
+        final var oldestWait = oldestWaitNanos.getAsLong();
+        int newCount = currentCount;
+        if (oldestWait > GROW_WAIT_NANOS || (currentUtilisation > GROW_UTILISATION && oldestWait > 0)) {
+            quietIntervals = 0;
+            newCount = Math.min(maxCount, currentCount + Math.max(1, currentCount / 4));
+        } else if (currentUtilisation < SHRINK_UTILISATION && oldestWait < GROW_WAIT_NANOS / 4) {
+            if (++quietIntervals >= SHRINK_AFTER_QUIET_INTERVALS) {
+                quietIntervals = 0;
+                newCount = Math.max(minCount, currentCount - 1);
+            }
+        } else {
+            quietIntervals = 0;
+        }
+        if (newCount == currentCount) {
+            return;
+        }
+        activeCount = newCount;
+        // newly active workers are parked here, newly inactive ones may be parked as idle workers, both need a kick to notice
+        for (int i = Math.min(currentCount, newCount); i < Math.max(currentCount, newCount); i++) {
+            @Nullable
+            final var thread = threads[firstIndex + i];
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+}
@@ -2,9 +2,13 @@ package graphics.cinnabar.lib.threading;
 
 import graphics.cinnabar.api.threading.ISemaphore;
 import graphics.cinnabar.api.threading.ThreadIndex;
+import graphics.cinnabar.api.threading.ThreadIndexRegistry;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
 
 public class AtomicQueueSemaphore implements ISemaphore {
     
@@ -22,6 +26,11 @@ public class AtomicQueueSemaphore implements ISemaphore {
     @SuppressWarnings("unused")
     private long value;
     
+    // wakes for waiters the worker wake doesn't reach, the I/O dispatcher and parked I/O tasks
+    // the list is its own lock, the count lets a signal skip it when nobody is waiting
+    private final ReferenceArrayList<PendingWake> wakes = new ReferenceArrayList<>();
+    private volatile int wakeCount = 0;
+    
     @Override
     public long value() {
         return (long) VALUE_VAR_HANDLE.getAcquire(this);
@@ -33,6 +42,15 @@ public class AtomicQueueSemaphore implements ISemaphore {
             return;
         }
         final var threadIndex = ThreadIndex.currentThreadIndex();
+        if (threadIndex.valid() && threadIndex.index() >= ThreadIndexRegistry.firstIoThreadIndex) {
+            // I/O tasks are virtual threads, parking gives the carrier back, spinning would hold it for the whole wait
+            final var thread = Thread.currentThread();
+            wakeOnSignal(value, () -> LockSupport.unpark(thread));
+            while (value() < value) {
+                LockSupport.park(this);
+            }
+            return;
+        }
         while (value() < value) {
             QueueSystem.onSemaphoreSpinWait(threadIndex);
         }
@@ -40,9 +58,57 @@ public class AtomicQueueSemaphore implements ISemaphore {
     
     @Override
     public void singlaValue(long value) {
-        VALUE_VAR_HANDLE.setRelease(this, value);
-        // wake workers, this may have unblocked a queue
-        // TODO: is there a better way to handle this?
-        QueueSystem.wakeWorkers(Integer.MAX_VALUE);
+        // volatile, not release, this and the wake count read pair with the count write and value read in wakeOnSignal
+        VALUE_VAR_HANDLE.setVolatile(this, value);
+        if (wakeCount != 0) {
+            fireWakes();
+        }
+        // this may have unblocked a queue, one thread is enough, woken workers wake more if there is more to do
+        QueueSystem.wakeWorkers(1);
+        QueueSystem.wakeCleanupThread(1);
+    }
+    
+    // runs wake once the semaphore reaches value, on the signaling thread, or immediately if it already has
+    // same idea as QueueSystem.wakeThreadsOnSinal for Hg semaphores
+    public void wakeOnSignal(long value, Runnable wake) {
+        synchronized (wakes) {
+            wakes.add(new PendingWake(value, wake));
+            wakeCount = wakes.size();
+        }
+        // the signal may have landed before the wake was visible to it
+        if ((long) VALUE_VAR_HANDLE.getVolatile(this) >= value) {
+            fireWakes();
+        }
+    }
+    
+    private void fireWakes() {
+        final var current = value();
+        @Nullable
+        ReferenceArrayList<Runnable> fired = null;
+        synchronized (wakes) {
+            for (int i = wakes.size() - 1; i >= 0; i--) {
+                final var wake = wakes.get(i);
+                if (wake.value <= current) {
+                    if (fired == null) {
+                        fired = new ReferenceArrayList<>();
+                    }
+                    fired.add(wake.wake);
+                    // order doesn't matter, swap the last one in
+                    final var last = wakes.remove(wakes.size() - 1);
+                    if (i < wakes.size()) {
+                        wakes.set(i, last);
+                    }
+                }
+            }
+            wakeCount = wakes.size();
+        }
+        if (fired != null) {
+            for (int i = 0; i < fired.size(); i++) {
+                fired.get(i).run();
+            }
+        }
+    }
+    
+    private record PendingWake(long value, Runnable wake) {
     }
 }
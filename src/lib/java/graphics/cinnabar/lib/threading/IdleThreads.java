@@ -0,0 +1,92 @@
+package graphics.cinnabar.lib.threading;
+
+import graphics.cinnabar.api.annotations.ThreadSafety;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+// registry of parked threads, one bit per thread
+// a wake clears exactly as many bits as it wants threads, and unparks only those, so there is no thundering herd
+// threads set their bit _before_ the final check for work, so an enqueue that lands in between still finds it
+final class IdleThreads {
+    
+    // spin limits are in Thread.onSpinWait calls, adjusted per thread based on whether spinning has been paying off
+    static final int MIN_SPIN = 16;
+    static final int MAX_SPIN = 4096;
+    
+    private final @Nullable Thread[] threads;
+    private final AtomicLongArray idleBits;
+    private final AtomicInteger idleCount = new AtomicInteger();
+    // rotates where wakes start scanning, so the same few threads don't always get picked
+    private final AtomicInteger wakeCursor = new AtomicInteger();
+    
+    IdleThreads(int maxThreads) {
+        threads = new Thread[maxThreads];
+        idleBits = new AtomicLongArray((maxThreads + 63) >> 6);
+    }
+    
+    @ThreadSafety.Many
+    void register(int slot, Thread thread) {
+        threads[slot] = thread;
+    }
+    
+    @ThreadSafety.Many
+    int idleCount() {
+        return idleCount.get();
+    }
+    
+    // parks the calling thread until woken, unless hasWork says there's something to do after announcing itself idle
+    @ThreadSafety.Many(note = "each slot may only be parked by its own thread")
+    void park(int slot, BooleanSupplier hasWork) {
+        final var word = slot >> 6;
+        final var mask = 1L << slot;
+        // count goes up first, wakers skip scanning entirely when it's zero
+        idleCount.incrementAndGet();
+        idleBits.getAndAccumulate(word, mask, (a, b) -> a | b);
+        if (!hasWork.getAsBoolean()) {
+            LockSupport.park(this);
+        }
+        // woken, spuriously returned, or found work, if the bit is still set this thread took itself off the idle list
+        if ((idleBits.getAndAccumulate(word, ~mask, (a, b) -> a & b) & mask) != 0) {
+            idleCount.decrementAndGet();
+        }
+    }
+    
+    // wakes up to count threads, returns how many were actually idle
+    @ThreadSafety.Many
+    int wake(int count) {
+        if (count <= 0 || idleCount.get() == 0) {
+            return 0;
+        }
+        int woken = 0;
+        final var words = idleBits.length();
+        final var startWord = Math.floorMod(wakeCursor.getAndIncrement(), words);
+        for (int i = 0; i < words && woken < count; i++) {
+            final var wordIndex = (startWord + i) % words;
+            long word;
+            while (woken < count && (word = idleBits.get(wordIndex)) != 0) {
+                final var bit = Long.lowestOneBit(word);
+                if (!idleBits.compareAndSet(wordIndex, word, word & ~bit)) {
+                    // raced another waker or the thread itself, reread
+                    continue;
+                }
+                idleCount.decrementAndGet();
+                @Nullable
+                final var thread = threads[(wordIndex << 6) + Long.numberOfTrailingZeros(bit)];
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                }
+                woken++;
+            }
+        }
+        return woken;
+    }
+    
+    @ThreadSafety.Many
+    void wakeAll() {
+        wake(threads.length);
+    }
+}
@@ -2,9 +2,19 @@ package graphics.cinnabar.lib.threading;
 
 import graphics.cinnabar.api.hg.HgDevice;
 import graphics.cinnabar.api.hg.HgSemaphore;
+import graphics.cinnabar.api.threading.IWorkQueue;
 import graphics.cinnabar.api.threading.ThreadIndex;
 import graphics.cinnabar.api.threading.ThreadIndexRegistry;
+import it.unimi.dsi.fastutil.objects.ObjectHeapPriorityQueue;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
 
 public final class QueueSystem {
     private static int nextMainThreadQueue = 0;
@@ -13,8 +23,30 @@ public final class QueueSystem {
     private static final ReferenceArrayList<WorkQueue.SingleThread> cleanupThreadQueues = new ReferenceArrayList<>();
     private static int nextBackgroundQueue = 0;
     private static final ReferenceArrayList<WorkQueue.MultiThreaded> backgroundQueues = new ReferenceArrayList<>();
-    private static final ReferenceArrayList<HgSemaphore.Op> hgSemaphores = new ReferenceArrayList<>();
-    private static final ReferenceArrayList<HgSemaphore.Op> hgSemaphoresWaitCopy = new ReferenceArrayList<>();
+    // background lanes by priority, frame critical is strict, normal and bulk share what's left by weight
+    private static final ReferenceArrayList<WorkQueue.MultiThreaded> frameCriticalQueues = new ReferenceArrayList<>();
+    private static final ReferenceArrayList<WorkQueue.MultiThreaded> normalQueues = new ReferenceArrayList<>();
+    private static final ReferenceArrayList<WorkQueue.MultiThreaded> bulkQueues = new ReferenceArrayList<>();
+    // normal gets this many turns for every one bulk gets, when both have work
+    private static final int NORMAL_WEIGHT = 4;
+    // anything that has been waiting this long runs next regardless of priority, so a steady stream of frame critical work can't starve everything else
+    private static final long STARVATION_NANOS = 50_000_000L;
+    // per thread, so the weighting doesn't need any shared state
+    private static final int[] weightedTurns = new int[ThreadIndexRegistry.totalThreads];
+    // queue wakes waiting on a GPU semaphore, a min-heap per semaphore so only what was actually reached gets fired
+    private static final Object semaphoreWaitLock = new Object();
+    private static final Reference2ReferenceOpenHashMap<HgSemaphore, ObjectHeapPriorityQueue<PendingWake>> pendingWakes = new Reference2ReferenceOpenHashMap<>();
+    // host signaled by anything that changes what the wait thread should be waiting on, so it can re-arm without waiting for an unrelated signal
+    @Nullable
+    private static HgSemaphore doorbell;
+    private static long doorbellValue = 0;
+    // wait thread only
+    private static final ReferenceArrayList<HgSemaphore.Op> waitOps = new ReferenceArrayList<>();
+    private static final ReferenceArrayList<IntConsumer> firedWakes = new ReferenceArrayList<>();
+    private static final IdleThreads idleWorkers = new IdleThreads(ThreadIndexRegistry.totalThreads);
+    private static final AdaptiveWorkerCount workerCount = new AdaptiveWorkerCount(QueueSystem::oldestBackgroundWaitNanos);
+    @Nullable
+    private static volatile Thread cleanupThread;
     
     public static WorkQueue createMainThreadQueue() {
         synchronized (mainThreadQueues) {
@@ -34,20 +66,119 @@ public final class QueueSystem {
     }
     
     public static WorkQueue createBackgroundThreadsQueue() {
+        return createBackgroundThreadsQueue(IWorkQueue.Priority.NORMAL);
+    }
+    
+    public static WorkQueue createBackgroundThreadsQueue(IWorkQueue.Priority priority) {
         synchronized (backgroundQueues) {
-            final var newQueue = new WorkQueue.MultiThreaded(QueueSystem::wakeWorkers);
+            final var newQueue = new WorkQueue.MultiThreaded(priority, QueueSystem::wakeWorkers);
             backgroundQueues.add(newQueue);
+            lane(priority).add(newQueue);
             return newQueue;
         }
     }
     
-    // TODO: expose to API, this is to allow a waiting thread to do work
-    //       also, maybe return as soon as the semaphore signals, rather than after a queue that had work runs out of work?
+    // kept away from the worker threads entirely, these dispatch onto their own virtual threads
+    public static WorkQueue createBlockingIOQueue() {
+        return new WorkQueue.VirtualThreaded();
+    }
+    
+    private static ReferenceArrayList<WorkQueue.MultiThreaded> lane(IWorkQueue.Priority priority) {
+        return switch (priority) {
+            case FRAME_CRITICAL -> frameCriticalQueues;
+            case NORMAL -> normalQueues;
+            case BULK -> bulkQueues;
+        };
+    }
+    
+    public record LaneMetrics(IWorkQueue.Priority priority, int queues, long depth, double averageWaitMillis, double oldestWaitMillis) {
+    }
+    
+    // racy snapshot, for F3/profiling only
+    public static List<LaneMetrics> laneMetrics() {
+        final var now = System.nanoTime();
+        final var metrics = new ReferenceArrayList<LaneMetrics>();
+        for (final var priority : IWorkQueue.Priority.values()) {
+            final var queues = lane(priority);
+            long depth = 0;
+            double averageWait = 0;
+            long oldestWait = 0;
+            for (int i = 0; i < queues.size(); i++) {
+                final var queue = queues.get(i);
+                depth += queue.depth();
+                averageWait = Math.max(averageWait, queue.averageWaitNanos());
+                oldestWait = Math.max(oldestWait, queue.oldestWaitNanos(now));
+            }
+            metrics.add(new LaneMetrics(priority, queues.size(), depth, averageWait / 1_000_000.0, oldestWait / 1_000_000.0));
+        }
+        return metrics;
+    }
+    
+    // runs a single background item, picking the lane by priority
+    private static boolean runScheduled(ThreadIndex threadIndex) {
+        // starved work first, frame critical is excluded, it's already first otherwise
+        final var now = System.nanoTime();
+        if (runStarved(normalQueues, threadIndex, now) || runStarved(bulkQueues, threadIndex, now)) {
+            return true;
+        }
+        if (runAny(frameCriticalQueues, threadIndex)) {
+            return true;
+        }
+        final var bulkTurn = weightedTurns[threadIndex.index()]++ % (NORMAL_WEIGHT + 1) == NORMAL_WEIGHT;
+        if (bulkTurn) {
+            return runAny(bulkQueues, threadIndex) || runAny(normalQueues, threadIndex);
+        }
+        return runAny(normalQueues, threadIndex) || runAny(bulkQueues, threadIndex);
+    }
+    
+    private static boolean runScheduledUntilStalled(ThreadIndex threadIndex) {
+        boolean anyRan = false;
+        while (runScheduled(threadIndex)) {
+            anyRan = true;
+        }
+        return anyRan;
+    }
+    
+    private static boolean runStarved(ReferenceArrayList<WorkQueue.MultiThreaded> queues, ThreadIndex threadIndex, long now) {
+        for (int i = 0; i < queues.size(); i++) {
+            final var queue = queues.get(i);
+            if (queue.oldestWaitNanos(now) > STARVATION_NANOS && queue.runOne(threadIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean runAny(ReferenceArrayList<WorkQueue.MultiThreaded> queues, ThreadIndex threadIndex) {
+        final var size = queues.size();
+        // yes there is a race condition with `nextBackgroundQueue++`, 
+        // it doesn't matter because this is just trying to keep it from always only executing the first one  
+        final var start = nextBackgroundQueue++;
+        for (int i = 0; i < size; i++) {
+            if (queues.get(Math.floorMod(start + i, size)).runOne(threadIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // TODO: maybe return as soon as the semaphore signals, rather than after a queue that had work runs out of work?
     public static void onSemaphoreSpinWait(ThreadIndex threadIndex) {
-        if (!threadIndex.valid()) {
-            // don't know what thread this is, just loop
+        if (!helpWhileWaiting(threadIndex)) {
             Thread.onSpinWait();
-            return;
+        }
+    }
+    
+    // lets a thread that's waiting on something run work it would otherwise run anyway, used by semaphore waits and WorkFuture joins
+    // returns if anything ran
+    public static boolean helpWhileWaiting(ThreadIndex threadIndex) {
+        if (!threadIndex.valid()) {
+            // don't know what thread this is, it can't run anything
+            return false;
+        }
+        if (threadIndex.index() >= ThreadIndexRegistry.firstIoThreadIndex) {
+            // I/O tasks are on virtual threads, they park instead (see AtomicQueueSemaphore.waitValue and WorkFuture), running CPU work would just pin a carrier
+            return false;
         }
         switch (threadIndex.index()) {
             case 0 -> {
@@ -55,37 +186,24 @@ public final class QueueSystem {
                     final var queue = mainThreadQueues.get(nextMainThreadQueue++);
                     nextMainThreadQueue %= mainThreadQueues.size();
                     if (queue.runUntilStalled()) {
-                        return;
+                        return true;
                     }
                 }
                 // if all main thread work done, try and run some background work
-                for (int i = 0; i < backgroundQueues.size(); i++) {
-                    // yes there is a race condition with `nextBackgroundQueue++`, 
-                    // it doesn't matter because this is just trying to keep it from always only executing the first one  
-                    final var queue = backgroundQueues.get(nextBackgroundQueue++ % backgroundQueues.size());
-                    if (queue.runUntilStalled(threadIndex)) {
-                        return;
-                    }
-                }
+                return runScheduledUntilStalled(threadIndex);
             }
             case 1 -> {
                 for (int i = 0; i < cleanupThreadQueues.size(); i++) {
                     final var queue = cleanupThreadQueues.get(nextCleanupQueue++);
                     nextCleanupQueue %= cleanupThreadQueues.size();
                     if (queue.runUntilStalled()) {
-                        return;
+                        return true;
                     }
                 }
+                return false;
             }
             default -> {
-                for (int i = 0; i < backgroundQueues.size(); i++) {
-                    // yes there is a race condition with `nextBackgroundQueue++`, 
-                    // it doesn't matter because this is just trying to keep it from always only executing the first one  
-                    final var queue = backgroundQueues.get(nextBackgroundQueue++ % backgroundQueues.size());
-                    if (queue.runUntilStalled(threadIndex)) {
-                        return;
-                    }
-                }
+                return runScheduledUntilStalled(threadIndex);
             }
         }
     }
@@ -103,6 +221,7 @@ public final class QueueSystem {
         cleanupThread.setDaemon(true);
         cleanupThread.setPriority(7);
         cleanupThread.setName("CinnabarCleanup");
+        QueueSystem.cleanupThread = cleanupThread;
         cleanupThread.start();
         
         try {
@@ -122,41 +241,44 @@ public final class QueueSystem {
     
     public static void deviceShutdown(HgDevice device) {
         while (true) {
-            synchronized (hgSemaphores) {
+            synchronized (semaphoreWaitLock) {
                 boolean hasPendingSemaphore = false;
-                for (int i = 0; i < hgSemaphores.size(); i++) {
-                    if (hgSemaphores.get(i).semaphore().device() == device) {
+                for (final var semaphore : pendingWakes.keySet()) {
+                    if (semaphore.device() == device) {
                         hasPendingSemaphore = true;
                         break;
                     }
                 }
                 if (!hasPendingSemaphore) {
+                    // with nothing pending the wait thread isn't in a wait that includes the doorbell
+                    if (doorbell != null && doorbell.device() == device) {
+                        doorbell.destroy();
+                        doorbell = null;
+                    }
                     return;
                 }
-                // force wake that thread, in case its asleep
-                hgSemaphores.notify();
             }
+            Thread.onSpinWait();
         }
     }
     
     private static void cleanupThreadFunc() {
         try {
             ThreadIndexRegistry.registerThisThread();
-            mainLoop:
+            int spinLimit = IdleThreads.MIN_SPIN;
             while (true) {
-                for (int i = 0; i < cleanupThreadQueues.size(); i++) {
-                    final var queue = cleanupThreadQueues.get(nextCleanupQueue++);
-                    nextCleanupQueue %= cleanupThreadQueues.size();
-                    if (queue.runUntilStalled()) {
-                        continue mainLoop;
-                    }
+                if (runCleanupQueues()) {
+                    continue;
                 }
-                
-                synchronized (cleanupThreadQueues) {
-                    try {
-                        cleanupThreadQueues.wait(1);
-                    } catch (InterruptedException ignored) {
-                    }
+                if (spinFor(spinLimit, QueueSystem::cleanupHasRunnableWork)) {
+                    spinLimit = Math.min(spinLimit * 2, IdleThreads.MAX_SPIN);
+                    continue;
+                }
+                spinLimit = Math.max(spinLimit / 2, IdleThreads.MIN_SPIN);
+                // fully event driven, anything that can make cleanup work runnable unparks this thread
+                // an unpark that lands before this park just makes it return immediately
+                if (!cleanupHasRunnableWork()) {
+                    LockSupport.park();
                 }
             }
         } catch (Throwable e) {
@@ -165,32 +287,67 @@ public final class QueueSystem {
         }
     }
     
+    private static boolean runCleanupQueues() {
+        boolean ranAny = false;
+        for (int i = 0; i < cleanupThreadQueues.size(); i++) {
+            if (cleanupThreadQueues.get(i).runUntilStalled()) {
+                ranAny = true;
+            }
+        }
+        return ranAny;
+    }
+    
+    private static boolean cleanupHasRunnableWork() {
+        for (int i = 0; i < cleanupThreadQueues.size(); i++) {
+            if (cleanupThreadQueues.get(i).hasRunnableWork()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     public static void wakeCleanupThread(int ignored) {
-        synchronized (cleanupThreadQueues) {
-            cleanupThreadQueues.notify();
+        @Nullable
+        final var thread = cleanupThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
         }
     }
     
     private static void workerThreadFunc() {
         try {
             final var threadIndex = ThreadIndexRegistry.registerThisThread();
+            idleWorkers.register(threadIndex.index(), Thread.currentThread());
+            workerCount.register(threadIndex.index(), Thread.currentThread());
+            int spinLimit = IdleThreads.MIN_SPIN;
             while (true) {
-                boolean ranAny = false;
-                for (int i = 0; i < backgroundQueues.size(); i++) {
-                    final var queue = backgroundQueues.get(i);
-                    if (queue.runUntilStalled(threadIndex)) {
-                        ranAny = true;
+                workerCount.maybeAdjust();
+                if (!workerCount.isActive(threadIndex.index())) {
+                    // may have been woken for work on the way out, pass that on to a worker that will run it
+                    if (backgroundHasRunnableWork()) {
+                        idleWorkers.wake(1);
                     }
+                    workerCount.parkWhileInactive(threadIndex.index());
+                    continue;
                 }
-                if (ranAny) {
+                final var runStart = System.nanoTime();
+                if (runScheduledUntilStalled(threadIndex)) {
+                    workerCount.recordBusy(System.nanoTime() - runStart);
                     continue;
                 }
                 
-                synchronized (backgroundQueues) {
-                    try {
-                        backgroundQueues.wait();
-                    } catch (InterruptedException ignored) {
-                    }
+                // work tends to show up right behind other work, spinning a little is cheaper than a park/unpark round trip
+                // but only as long as it keeps paying off
+                if (spinFor(spinLimit, QueueSystem::backgroundHasRunnableWork)) {
+                    spinLimit = Math.min(spinLimit * 2, IdleThreads.MAX_SPIN);
+                    continue;
+                }
+                spinLimit = Math.max(spinLimit / 2, IdleThreads.MIN_SPIN);
+                
+                idleWorkers.park(threadIndex.index(), QueueSystem::backgroundHasRunnableWork);
+                // wakes only go to one thread at a time, if there is more than this thread will take, pass it on
+                if (backgroundHasRunnableWork()) {
+                    idleWorkers.wake(1);
                 }
             }
         } catch (Throwable e) {
@@ -199,67 +356,123 @@ public final class QueueSystem {
         }
     }
     
-    public static void wakeWorkers(int count) {
-        synchronized (backgroundQueues) {
-            if (count == 1) {
-                backgroundQueues.notify();
-            } else {
-                backgroundQueues.notifyAll();
+    private static long oldestBackgroundWaitNanos() {
+        final var now = System.nanoTime();
+        long oldest = 0;
+        for (int i = 0; i < backgroundQueues.size(); i++) {
+            oldest = Math.max(oldest, backgroundQueues.get(i).oldestWaitNanos(now));
+        }
+        return oldest;
+    }
+    
+    public static int maxWorkerCount() {
+        return ThreadIndexRegistry.backgroundWorkThreadCount;
+    }
+    
+    public static int activeWorkerCount() {
+        return workerCount.activeCount();
+    }
+    
+    // fraction of the active workers' time spent running work over the last adjustment interval
+    public static double workerUtilisation() {
+        return workerCount.utilisation();
+    }
+    
+    private static boolean backgroundHasRunnableWork() {
+        for (int i = 0; i < backgroundQueues.size(); i++) {
+            if (backgroundQueues.get(i).hasRunnableWork()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean spinFor(int iterations, BooleanSupplier condition) {
+        for (int i = 0; i < iterations; i++) {
+            Thread.onSpinWait();
+            if (condition.getAsBoolean()) {
+                return true;
             }
         }
+        return false;
+    }
+    
+    public static void wakeWorkers(int count) {
+        idleWorkers.wake(count);
     }
     
-    public static void wakeThreadsOnSinal(HgSemaphore semaphore, long value) {
-        synchronized (hgSemaphores) {
-            hgSemaphores.add(new HgSemaphore.Op(semaphore, value));
-            hgSemaphores.notify();
+    public static void wakeThreadsOnSinal(HgSemaphore semaphore, long value, IntConsumer wake) {
+        synchronized (semaphoreWaitLock) {
+            if (doorbell == null) {
+                doorbell = semaphore.device().createSemaphore(0);
+                doorbell.setName("Queue system doorbell");
+                doorbellValue = 0;
+            } else if (doorbell.device() != semaphore.device()) {
+                throw new IllegalStateException("Cannot wait on semaphores from multiple devices");
+            }
+            @Nullable
+            var heap = pendingWakes.get(semaphore);
+            if (heap == null) {
+                heap = new ObjectHeapPriorityQueue<>(PendingWake.COMPARATOR);
+                pendingWakes.put(semaphore, heap);
+            }
+            final var lowersWait = heap.isEmpty() || value < heap.first().value;
+            heap.enqueue(new PendingWake(value, wake));
+            if (lowersWait) {
+                // the wait thread may be waiting on a later value (or not on this semaphore at all), make it re-arm
+                doorbell.singlaValue(++doorbellValue);
+            }
+            semaphoreWaitLock.notify();
         }
     }
     
+    private record PendingWake(long value, IntConsumer wake) {
+        private static final Comparator<PendingWake> COMPARATOR = Comparator.comparingLong(PendingWake::value);
+    }
+    
     public static void vkSemaphoreWaitThread() {
         try {
-            
             while (true) {
-                if (hgSemaphores.isEmpty()) {
-                    synchronized (hgSemaphores) {
-                        if(hgSemaphores.isEmpty()) {
-                            try {
-                                hgSemaphores.wait();
-                            } catch (InterruptedException ignored) {
-                            }
+                final HgDevice hgDevice;
+                synchronized (semaphoreWaitLock) {
+                    while (pendingWakes.isEmpty()) {
+                        try {
+                            semaphoreWaitLock.wait();
+                        } catch (InterruptedException ignored) {
                         }
                     }
-                    continue;
-                }
-                final var hgDevice = hgSemaphores.getFirst().semaphore().device();
-                
-                synchronized (hgSemaphores){
-                    hgSemaphoresWaitCopy.clear();
-                    hgSemaphoresWaitCopy.addAll(hgSemaphores);
-                }
-                
-                for (int i = 0; i < hgSemaphoresWaitCopy.size(); i++) {
-                    final var semaphore = hgSemaphoresWaitCopy.get(i);
-                    if (hgDevice != semaphore.semaphore().device()) {
-                        System.exit(-1);
+                    assert doorbell != null;
+                    hgDevice = doorbell.device();
+                    waitOps.clear();
+                    // any doorbell ring after this snapshot makes the wait return immediately
+                    waitOps.add(new HgSemaphore.Op(doorbell, doorbellValue + 1));
+                    for (final var entry : pendingWakes.reference2ReferenceEntrySet()) {
+                        waitOps.add(new HgSemaphore.Op(entry.getKey(), entry.getValue().first().value));
                     }
                 }
                 
-                hgDevice.waitSemaphores(hgSemaphoresWaitCopy, -1, true);
-                
-                wakeWorkers(-1);
-                wakeCleanupThread(-1);
+                hgDevice.waitSemaphores(waitOps, -1, true);
                 
-                synchronized (hgSemaphores) {
-                    for (int i = 0; i < hgSemaphores.size(); i++) {
-                        final var op = hgSemaphores.get(i);
-                        if (op.value() <= op.semaphore().value()) {
-                            // this semaphore signaled, remove it from the list
-                            hgSemaphores.remove(i);
-                            i--;
+                synchronized (semaphoreWaitLock) {
+                    final var iterator = pendingWakes.reference2ReferenceEntrySet().fastIterator();
+                    while (iterator.hasNext()) {
+                        final var entry = iterator.next();
+                        final var reachedValue = entry.getKey().value();
+                        final var heap = entry.getValue();
+                        while (!heap.isEmpty() && heap.first().value <= reachedValue) {
+                            firedWakes.add(heap.dequeue().wake);
+                        }
+                        if (heap.isEmpty()) {
+                            iterator.remove();
                         }
                     }
                 }
+                
+                // only the queues that were waiting on something that got reached
+                for (int i = 0; i < firedWakes.size(); i++) {
+                    firedWakes.get(i).accept(1);
+                }
+                firedWakes.clear();
             }
         } catch (Throwable e) {
             e.printStackTrace();
@@ -8,13 +8,22 @@ import graphics.cinnabar.api.threading.IWorkQueue;
 import graphics.cinnabar.api.threading.ThreadIndex;
 import graphics.cinnabar.api.threading.ThreadIndexRegistry;
 import graphics.cinnabar.lib.datastructures.RingQueue;
+import graphics.cinnabar.lib.datastructures.WorkStealingDeque;
 import it.unimi.dsi.fastutil.longs.LongReferencePair;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.IntConsumer;
 
 public abstract class WorkQueue implements IWorkQueue {
@@ -23,23 +32,47 @@ public abstract class WorkQueue implements IWorkQueue {
     @Override
     @ThreadSafety.Many
     public void wait(ISemaphore semaphore, long value) {
-        workRing.forceEnqueue(new SemaphoreOp(semaphore, value, false));
+        enqueued(workRing.forceEnqueue(new SemaphoreOp(semaphore, value, false)), 1);
         if (semaphore.value() < value && semaphore instanceof HgSemaphore hgSemaphore) {
             // this semaphore isn't signaled yet, so this is a submit before signal
             // wake all the threads when it signals 
-            QueueSystem.wakeThreadsOnSinal(hgSemaphore, value);
+            QueueSystem.wakeThreadsOnSinal(hgSemaphore, value, threadWake);
+        } else if (semaphore.value() < value && semaphore instanceof AtomicQueueSemaphore queueSemaphore) {
+            // a CPU queue's signal only wakes workers and the cleanup thread itself, anything else (the I/O dispatcher) has to ask
+            queueSemaphore.wakeOnSignal(value, () -> threadWake.accept(1));
         }
     }
     
     private static final VarHandle LONG_ARRAY_VAR_HANDLE = MethodHandles.arrayElementVarHandle(long[].class);
     
-    protected final RingQueue<Object> workRing = new RingQueue<>(16);
+    // enqueue times of the most recent items by ring index, only for wait time metrics and starvation checks
+    // anything further back than this just reads a newer time, which is fine for that
+    private static final int ENQUEUE_TIME_RING_BITS = 12;
+    private static final long ENQUEUE_TIME_RING_MASK = (1 << ENQUEUE_TIME_RING_BITS) - 1;
+    
+    protected final RingQueue<Object> workRing = new RingQueue<>(10);
+    private final long[] enqueueNanos = new long[1 << ENQUEUE_TIME_RING_BITS];
     private final IntConsumer threadWake;
     
     protected WorkQueue(IntConsumer threadWake) {
         this.threadWake = threadWake;
     }
     
+    private void enqueued(long index, int count) {
+        final var now = System.nanoTime();
+        for (int i = 0; i < Math.min(count, enqueueNanos.length); i++) {
+            enqueueNanos[(int) ((index + i) & ENQUEUE_TIME_RING_MASK)] = now;
+        }
+    }
+    
+    protected long enqueuedAt(long index) {
+        return enqueueNanos[(int) (index & ENQUEUE_TIME_RING_MASK)];
+    }
+    
+    // cheap check used before parking, false positives just cost a trip through the run loop
+    @ThreadSafety.Many
+    abstract boolean hasRunnableWork();
+    
     @API
     @Override
     @ThreadSafety.Many
@@ -49,7 +82,7 @@ public abstract class WorkQueue implements IWorkQueue {
         }
         // its fine, probably
         //noinspection unchecked
-        workRing.forceEnqueueMany((List<Object>) (Object) work);
+        enqueued(workRing.forceEnqueueMany((List<Object>) (Object) work), work.size());
         threadWake.accept(work.size());
     }
     
@@ -57,7 +90,7 @@ public abstract class WorkQueue implements IWorkQueue {
     @Override
     @ThreadSafety.Many
     public void enqueue(Work work) {
-        workRing.forceEnqueue(work);
+        enqueued(workRing.forceEnqueue(work), 1);
         threadWake.accept(1);
     }
     
@@ -79,9 +112,9 @@ public abstract class WorkQueue implements IWorkQueue {
     @Override
     @ThreadSafety.Many
     public void signal(ISemaphore semaphore, long value) {
-        workRing.forceEnqueue(new SemaphoreOp(semaphore, value, true));
-        QueueSystem.wakeWorkers(1);
-        QueueSystem.wakeCleanupThread(1);
+        enqueued(workRing.forceEnqueue(new SemaphoreOp(semaphore, value, true)), 1);
+        // signals don't need anything to run, but they may be what a parked thread is waiting on
+        threadWake.accept(1);
     }
     
     public static class SingleThread extends WorkQueue {
@@ -104,6 +137,14 @@ public abstract class WorkQueue implements IWorkQueue {
             breakpointCounter++;
         }
         
+        @Override
+        boolean hasRunnableWork() {
+            if (pendingWait != null) {
+                return pendingWait.isSignaled();
+            }
+            return workRing.peekTest(_ -> true);
+        }
+        
         @API
         @ThreadSafety.Many
         public long insertBreakpoint() {
@@ -172,17 +213,187 @@ public abstract class WorkQueue implements IWorkQueue {
         }
     }
     
+    // work enqueued from outside goes through the shared ring, which is what gives the start in order and wait/signal guarantees
+    // work enqueued from inside one of this queue's tasks is pushed to that thread's own deque instead, and is part of the task that spawned it
+    // idle threads steal from a random other thread's deque, so spawned work still spreads out
+    // once a task group waits on this queue, the rest of what it enqueues goes through the ring, behind that wait
     public static class MultiThreaded extends WorkQueue {
         
         private final long[] executingIndex = new long[ThreadIndexRegistry.totalThreads];
         private final RingQueue<LongReferencePair<SemaphoreOp>> pendingSignals = new RingQueue<>(8);
+        private final WorkStealingDeque<Spawned>[] localDeques;
+        // task group each thread is currently executing, so enqueues from inside a task know to stay local
+        private final @Nullable TaskGroup[] executingGroup = new TaskGroup[ThreadIndexRegistry.totalThreads];
+        // groups with spawned work still outstanding, a signal can't pass any of them
+        private final ConcurrentSkipListSet<TaskGroup> openGroups = new ConcurrentSkipListSet<>(Comparator.comparingLong(TaskGroup::rootIndex));
+        
+        private final Priority priority;
+        // racy, its only informational
+        private double averageWaitNanos = 0;
         
-        MultiThreaded(IntConsumer wakeThread) {
+        MultiThreaded(Priority priority, IntConsumer wakeThread) {
             super(wakeThread);
+            this.priority = priority;
             Arrays.fill(executingIndex, Long.MAX_VALUE);
+            //noinspection unchecked
+            localDeques = new WorkStealingDeque[ThreadIndexRegistry.totalThreads];
+            for (int i = 0; i < localDeques.length; i++) {
+                localDeques[i] = new WorkStealingDeque<>(8);
+            }
+        }
+        
+        // everything spawned from a ring item (recursively) shares its ring index
+        private static final class TaskGroup {
+            private final long rootIndex;
+            private final AtomicInteger pending = new AtomicInteger(1);
+            // set by a wait from inside the group, enqueues after it can't skip ahead of the wait by staying local
+            private volatile boolean waited = false;
+            // only ever set by the root task's thread, before any spawned task can exist
+            private boolean registered = false;
+            
+            private TaskGroup(long rootIndex) {
+                this.rootIndex = rootIndex;
+            }
+            
+            private long rootIndex() {
+                return rootIndex;
+            }
+        }
+        
+        private record Spawned(Work work, TaskGroup group) {
+        }
+        
+        @Override
+        boolean hasRunnableWork() {
+            if (workRing.peekTest(MultiThreaded::waitConditionCheck)) {
+                return true;
+            }
+            for (int i = 0; i < localDeques.length; i++) {
+                if (!localDeques[i].isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        @ThreadSafety.Many
+        public Priority priority() {
+            return priority;
         }
         
-        private static boolean waitConditionCheck(@Nullable Object item) {
+        // items enqueued but not yet started, spawned work isn't counted, it's part of the task that spawned it
+        @ThreadSafety.Many
+        public long depth() {
+            return Math.max(0, workRing.pushIndex() - workRing.popIndex());
+        }
+        
+        @ThreadSafety.Many
+        public long oldestWaitNanos(long now) {
+            if (depth() == 0) {
+                return 0;
+            }
+            return Math.max(0, now - enqueuedAt(workRing.popIndex()));
+        }
+        
+        @ThreadSafety.Many
+        public double averageWaitNanos() {
+            return averageWaitNanos;
+        }
+        
+        @Nullable
+        private TaskGroup currentGroup() {
+            final var threadIndex = ThreadIndex.currentThreadIndex();
+            if (!threadIndex.valid()) {
+                return null;
+            }
+            return executingGroup[threadIndex.index()];
+        }
+        
+        private void spawn(TaskGroup group, Work work) {
+            if (!group.registered) {
+                group.registered = true;
+                openGroups.add(group);
+            }
+            group.pending.incrementAndGet();
+            localDeques[ThreadIndex.currentThreadIndex().index()].push(new Spawned(work, group));
+        }
+        
+        @API
+        @Override
+        @ThreadSafety.Many
+        public void wait(ISemaphore semaphore, long value) {
+            @Nullable
+            final var group = currentGroup();
+            if (group != null) {
+                group.waited = true;
+            }
+            super.wait(semaphore, value);
+        }
+        
+        @API
+        @Override
+        @ThreadSafety.Many
+        public void enqueue(Work work) {
+            @Nullable
+            final var group = currentGroup();
+            if (group == null || group.waited) {
+                super.enqueue(work);
+                return;
+            }
+            spawn(group, work);
+            QueueSystem.wakeWorkers(1);
+        }
+        
+        @API
+        @Override
+        @ThreadSafety.Many
+        public void enqueue(List<? extends Work> work) {
+            @Nullable
+            final var group = currentGroup();
+            if (group == null || group.waited) {
+                super.enqueue(work);
+                return;
+            }
+            if (work.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < work.size(); i++) {
+                spawn(group, work.get(i));
+            }
+            QueueSystem.wakeWorkers(work.size());
+        }
+        
+        private void execute(ThreadIndex index, TaskGroup group, Work work) {
+            final var previousGroup = executingGroup[index.index()];
+            executingGroup[index.index()] = group;
+            try {
+                work.accept(index);
+            } finally {
+                executingGroup[index.index()] = previousGroup;
+                if (group.pending.decrementAndGet() == 0 && group.registered) {
+                    openGroups.remove(group);
+                }
+            }
+        }
+        
+        @Nullable
+        private Spawned steal(ThreadIndex index) {
+            final var start = ThreadLocalRandom.current().nextInt(localDeques.length);
+            for (int i = 0; i < localDeques.length; i++) {
+                final var victim = (start + i) % localDeques.length;
+                if (victim == index.index()) {
+                    continue;
+                }
+                @Nullable
+                final var stolen = localDeques[victim].steal();
+                if (stolen != null) {
+                    return stolen;
+                }
+            }
+            return null;
+        }
+        
+        static boolean waitConditionCheck(@Nullable Object item) {
             // a signal doesn't need to wait on anything for being dequeued, only waits do
             return !(item instanceof SemaphoreOp semaphoreOp) || semaphoreOp.signal || semaphoreOp.isSignaled();
         }
@@ -197,7 +408,10 @@ public abstract class WorkQueue implements IWorkQueue {
                     return false;
                 }
             }
-            return true;
+            // spawned work counts as part of the ring item that spawned it
+            @Nullable
+            final var oldestGroup = openGroups.isEmpty() ? null : openGroups.first();
+            return oldestGroup == null || oldestGroup.rootIndex >= entry.firstLong();
         }
         
         private void processPendingSignals() {
@@ -208,25 +422,49 @@ public abstract class WorkQueue implements IWorkQueue {
             }
         }
         
-        private boolean runOne(ThreadIndex index) {
+        @ThreadSafety.Many
+        boolean runOne(ThreadIndex index) {
             assert ThreadIndex.currentThreadIndex() == index;
             if (!index.valid()) {
                 throw new IllegalStateException();
             }
             processPendingSignals();
+            // this can be a nested call from a task that's helping while it waits, the outer task is still executing, and still blocks signals after it
+            final var outerIndex = (long) LONG_ARRAY_VAR_HANDLE.getOpaque(executingIndex, index.index());
+            // own spawned work first, it's the most recent and most likely to still be in cache
+            @Nullable
+            final var local = localDeques[index.index()].pop();
+            if (local != null) {
+                execute(index, local.group, local.work);
+                processPendingSignals();
+                return true;
+            }
             // prevent signaling a semaphore
             LONG_ARRAY_VAR_HANDLE.setRelease(executingIndex, index.index(), 0);
             @Nullable final var entry = workRing.conditionalDequeue(MultiThreaded::waitConditionCheck);
             if (entry == null) {
-                LONG_ARRAY_VAR_HANDLE.setRelease(executingIndex, index.index(), Long.MAX_VALUE);
-                return false;
+                LONG_ARRAY_VAR_HANDLE.setRelease(executingIndex, index.index(), outerIndex);
+                // nothing in order to start, help with someone else's spawned work
+                @Nullable
+                final var stolen = steal(index);
+                if (stolen == null) {
+                    return false;
+                }
+                execute(index, stolen.group, stolen.work);
+                processPendingSignals();
+                return true;
+            }
+            LONG_ARRAY_VAR_HANDLE.setRelease(executingIndex, index.index(), Math.min(outerIndex, entry.firstLong()));
+            // the time is written just after the enqueue, so this can pick up the time from a lap ago, those are just dropped
+            final var waited = System.nanoTime() - enqueuedAt(entry.firstLong());
+            if (waited >= 0 && waited < 1_000_000_000L) {
+                averageWaitNanos += (waited - averageWaitNanos) * (1.0 / 64.0);
             }
-            LONG_ARRAY_VAR_HANDLE.setRelease(executingIndex, index.index(), entry.firstLong());
             
             @Nullable final var item = entry.value();
             switch (item) {
                 case null -> {
-                    LONG_ARRAY_VAR_HANDLE.setRelease(executingIndex, index.index(), Long.MAX_VALUE);
+                    LONG_ARRAY_VAR_HANDLE.setRelease(executingIndex, index.index(), outerIndex);
                     return false;
                 }
                 case SemaphoreOp semaphoreOp -> {
@@ -236,12 +474,12 @@ public abstract class WorkQueue implements IWorkQueue {
                     }
                     // waits don't actually execute anything
                 }
-                case Work work -> work.accept(index);
+                case Work work -> execute(index, new TaskGroup(entry.firstLong()), work);
                 default -> {
                 }
             }
             
-            LONG_ARRAY_VAR_HANDLE.setRelease(executingIndex, index.index(), Long.MAX_VALUE);
+            LONG_ARRAY_VAR_HANDLE.setRelease(executingIndex, index.index(), outerIndex);
             processPendingSignals();
             return true;
         }
@@ -256,4 +494,105 @@ public abstract class WorkQueue implements IWorkQueue {
             return anyRan;
         }
     }
+    
+    // for blocking work (disk, network), every task gets its own virtual thread, so blocking doesn't hold one of the CPU workers
+    // same guarantees as MultiThreaded, a single dispatcher starts items in order, and a signal waits for everything before it to finish
+    // tasks borrow one of the I/O thread indices while they run, which also caps how many run at once, the rest just wait for one (cheap on a virtual thread)
+    public static class VirtualThreaded extends WorkQueue {
+        
+        private static final ArrayBlockingQueue<ThreadIndex> freeIndices = new ArrayBlockingQueue<>(ThreadIndexRegistry.ioThreadCount);
+        
+        static {
+            for (int i = 0; i < ThreadIndexRegistry.ioThreadCount; i++) {
+                freeIndices.add(new ThreadIndex(ThreadIndexRegistry.firstIoThreadIndex + i));
+            }
+        }
+        
+        private final AtomicReference<@Nullable Thread> dispatcher;
+        // ring indices of tasks started but not yet finished
+        private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+        // dispatcher only
+        private final ArrayDeque<LongReferencePair<Object>> pendingSignals = new ArrayDeque<>();
+        
+        VirtualThreaded() {
+            this(new AtomicReference<>());
+        }
+        
+        private VirtualThreaded(AtomicReference<@Nullable Thread> dispatcher) {
+            super(_ -> {
+                @Nullable
+                final var thread = dispatcher.get();
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                }
+            });
+            this.dispatcher = dispatcher;
+            Thread.ofVirtual().name("CinnabarIODispatch").start(this::dispatchLoop);
+        }
+        
+        @Override
+        boolean hasRunnableWork() {
+            return workRing.peekTest(MultiThreaded::waitConditionCheck) || (!pendingSignals.isEmpty() && signalReady(pendingSignals.peekFirst().firstLong()));
+        }
+        
+        private boolean signalReady(long signalIndex) {
+            return inFlight.isEmpty() || inFlight.first() > signalIndex;
+        }
+        
+        private void processPendingSignals() {
+            while (!pendingSignals.isEmpty() && signalReady(pendingSignals.peekFirst().firstLong())) {
+                ((SemaphoreOp) pendingSignals.pollFirst().value()).doSignal();
+            }
+        }
+        
+        private void dispatchLoop() {
+            dispatcher.set(Thread.currentThread());
+            while (true) {
+                processPendingSignals();
+                @Nullable final var entry = workRing.conditionalDequeue(MultiThreaded::waitConditionCheck);
+                if (entry == null) {
+                    // task completions, enqueues, and semaphore waits all unpark this
+                    if (!hasRunnableWork()) {
+                        LockSupport.park(this);
+                    }
+                    continue;
+                }
+                switch (entry.value()) {
+                    case SemaphoreOp semaphoreOp when semaphoreOp.signal -> {
+                        //noinspection unchecked
+                        pendingSignals.addLast((LongReferencePair<Object>) (Object) entry);
+                    }
+                    case Work work -> start(entry.firstLong(), work);
+                    case null, default -> {
+                        // waits don't actually execute anything
+                    }
+                }
+            }
+        }
+        
+        private void start(long ringIndex, Work work) {
+            inFlight.add(ringIndex);
+            Thread.ofVirtual().name("CinnabarIO").start(() -> {
+                try {
+                    final var threadIndex = freeIndices.take();
+                    ThreadIndexRegistry.lendToThisThread(threadIndex);
+                    try {
+                        work.accept(threadIndex);
+                    } finally {
+                        ThreadIndexRegistry.lendToThisThread(null);
+                        freeIndices.add(threadIndex);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    inFlight.remove(ringIndex);
+                    @Nullable
+                    final var thread = dispatcher.get();
+                    if (thread != null) {
+                        LockSupport.unpark(thread);
+                    }
+                }
+            });
+        }
+    }
 }
@@ -0,0 +1,13 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.annotations.UsedFromReflection;
+import graphics.cinnabar.api.hg.HgDevice;
+
+// CPU only Hg implementation, buffers are plain host memory, command buffers only record, and submits complete as soon as their waits are met
+// for measuring the CPU side of everything above Hg (Hg3D) without a GPU, not for rendering anything
+public class Headless {
+    @UsedFromReflection
+    public static HgDevice createDevice() {
+        return new HeadlessDevice();
+    }
+}
@@ -0,0 +1,54 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgBuffer;
+import graphics.cinnabar.api.hg.enums.HgFormat;
+import graphics.cinnabar.api.memory.PointerWrapper;
+
+public class HeadlessBuffer extends HeadlessObject<HgBuffer> implements HgBuffer {
+    
+    private final long size;
+    private final PointerWrapper memory;
+    
+    public HeadlessBuffer(HeadlessDevice device, long size) {
+        super(device);
+        this.size = size;
+        // same alignment as any real allocation will have
+        memory = PointerWrapper.alloc(size, 256);
+        device.allocated(size);
+    }
+    
+    @Override
+    public void destroy() {
+        memory.free();
+        device.allocated(-size);
+    }
+    
+    @Override
+    public long size() {
+        return size;
+    }
+    
+    @Override
+    public MemoryType memoryType() {
+        // it's all host memory, so this looks like an iGPU to whatever is using it
+        return MemoryType.UMA;
+    }
+    
+    @Override
+    public PointerWrapper map() {
+        return memory;
+    }
+    
+    @Override
+    public void unmap() {
+    }
+    
+    @Override
+    public View view(HgFormat format, long offset, long size) {
+        return new HeadlessBufferView(this, format, offset, size);
+    }
+    
+    PointerWrapper memory() {
+        return memory;
+    }
+}
@@ -0,0 +1,36 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgBuffer;
+import graphics.cinnabar.api.hg.enums.HgFormat;
+
+public class HeadlessBufferView extends HeadlessObject<HgBuffer.View> implements HgBuffer.View {
+    
+    private final HeadlessBuffer buffer;
+    private final HgFormat format;
+    private final long offset;
+    private final long size;
+    
+    public HeadlessBufferView(HeadlessBuffer buffer, HgFormat format, long offset, long size) {
+        super(buffer.device());
+        this.buffer = buffer;
+        this.format = format;
+        this.offset = offset;
+        this.size = size;
+    }
+    
+    public HeadlessBuffer buffer() {
+        return buffer;
+    }
+    
+    public HgFormat format() {
+        return format;
+    }
+    
+    public long offset() {
+        return offset;
+    }
+    
+    public long size() {
+        return size;
+    }
+}
@@ -0,0 +1,241 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.*;
+import graphics.cinnabar.api.memory.PointerWrapper;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+// records how many of each kind of command there were, buffer to buffer copies are the only thing actually done, when it's executed
+// the state asserts are the ones the validation layers would catch, so Hg3D misuse still shows up without a GPU
+public class HeadlessCommandBuffer extends HeadlessObject<HgCommandBuffer> implements HgCommandBuffer {
+    
+    private static final Command[] COMMANDS = Command.values();
+    
+    private final long[] counts = new long[COMMANDS.length];
+    // src, dst pairs
+    private final ReferenceArrayList<HgBuffer.Slice> bufferCopies = new ReferenceArrayList<>();
+    private boolean recording = false;
+    private boolean inRenderPass = false;
+    @Nullable
+    private HgGraphicsPipeline boundPipeline;
+    
+    public HeadlessCommandBuffer(HeadlessDevice device) {
+        super(device);
+    }
+    
+    private HgCommandBuffer record(Command command) {
+        assert recording;
+        counts[command.ordinal()]++;
+        return this;
+    }
+    
+    private HgCommandBuffer recordOutsideRenderPass(Command command) {
+        assert !inRenderPass;
+        return record(command);
+    }
+    
+    private HgCommandBuffer recordInsideRenderPass(Command command) {
+        assert inRenderPass;
+        return record(command);
+    }
+    
+    @Override
+    public HgCommandBuffer begin() {
+        assert !recording;
+        recording = true;
+        boundPipeline = null;
+        Arrays.fill(counts, 0);
+        bufferCopies.clear();
+        return this;
+    }
+    
+    @Override
+    public HgCommandBuffer end() {
+        assert recording;
+        assert !inRenderPass;
+        recording = false;
+        return this;
+    }
+    
+    // queue side, with the device's semaphore lock held
+    void execute() {
+        assert !recording;
+        for (int i = 0; i < bufferCopies.size(); i += 2) {
+            final var src = bufferCopies.get(i);
+            final var dst = bufferCopies.get(i + 1);
+            PointerWrapper.copy(((HeadlessBuffer) src.buffer()).memory(), src.offset(), ((HeadlessBuffer) dst.buffer()).memory(), dst.offset(), src.size());
+        }
+        device.executed(counts);
+    }
+    
+    @Override
+    public HgCommandBuffer pushDebugGroup(String name) {
+        return record(Command.DEBUG_GROUP);
+    }
+    
+    @Override
+    public HgCommandBuffer popDebugGroup() {
+        return record(Command.DEBUG_GROUP);
+    }
+    
+    @Override
+    public HgCommandBuffer barrier() {
+        return record(Command.BARRIER);
+    }
+    
+    @Override
+    public HgCommandBuffer barrier(long srcStage, long srcAccess, long dstStage, long dstAccess) {
+        return record(Command.BARRIER);
+    }
+    
+    @Override
+    public HgCommandBuffer queueOwnershipTransfer(HgQueue fromQueue, HgQueue toQueue, @Nullable List<HgBuffer.Slice> buffers, @Nullable List<HgImage.ResourceRange> images, long srcStage, long srcAccess, long dstStage, long dstAccess) {
+        return record(Command.BARRIER);
+    }
+    
+    @Override
+    public HgCommandBuffer initImages(List<HgImage> images) {
+        return record(Command.BARRIER);
+    }
+    
+    @Override
+    public HgCommandBuffer copyBufferToBuffer(HgBuffer.Slice src, HgBuffer.Slice dst) {
+        if (src.size() > dst.size() || src.offset() + src.size() > src.buffer().size() || dst.offset() + src.size() > dst.buffer().size()) {
+            throw new IllegalArgumentException("Buffer copy out of bounds");
+        }
+        bufferCopies.add(src);
+        bufferCopies.add(dst);
+        return recordOutsideRenderPass(Command.COPY);
+    }
+    
+    @Override
+    public HgCommandBuffer copyBufferToImage(HgBuffer.ImageSlice buffer, HgImage.TransferRange image) {
+        return recordOutsideRenderPass(Command.COPY);
+    }
+    
+    @Override
+    public HgCommandBuffer copyImageToBuffer(HgImage.TransferRange image, HgBuffer.ImageSlice buffer) {
+        return recordOutsideRenderPass(Command.COPY);
+    }
+    
+    @Override
+    public HgCommandBuffer copyImageToImage(HgImage.TransferRange src, HgImage.TransferRange dst) {
+        return recordOutsideRenderPass(Command.COPY);
+    }
+    
+    @Override
+    public HgCommandBuffer clearColorImage(HgImage.ResourceRange image, int clearARGB) {
+        return recordOutsideRenderPass(Command.CLEAR);
+    }
+    
+    @Override
+    public HgCommandBuffer clearDepthStencilImage(HgImage.ResourceRange image, double clearDepth, int clearStencil) {
+        return recordOutsideRenderPass(Command.CLEAR);
+    }
+    
+    @Override
+    public HgCommandBuffer blitToSwapchain(HgImage.View view, HgSurface.Swapchain swapchain) {
+        return recordOutsideRenderPass(Command.BLIT);
+    }
+    
+    @Override
+    public HgCommandBuffer beginRenderPass(HgRenderPass renderPass, HgFramebuffer framebuffer) {
+        recordOutsideRenderPass(Command.RENDER_PASS);
+        inRenderPass = true;
+        return this;
+    }
+    
+    @Override
+    public HgCommandBuffer endRenderPass() {
+        assert inRenderPass;
+        inRenderPass = false;
+        return this;
+    }
+    
+    @Override
+    public HgCommandBuffer setViewport(int attachment, int x, int y, int width, int height) {
+        return recordInsideRenderPass(Command.DYNAMIC_STATE);
+    }
+    
+    @Override
+    public HgCommandBuffer setScissor(int attachment, int x, int y, int width, int height) {
+        return recordInsideRenderPass(Command.DYNAMIC_STATE);
+    }
+    
+    @Override
+    public HgCommandBuffer clearAttachments(IntList clearColors, double clearDepth, int x, int y, int width, int height) {
+        return recordInsideRenderPass(Command.CLEAR);
+    }
+    
+    @Override
+    public HgCommandBuffer bindPipeline(HgGraphicsPipeline pipeline) {
+        boundPipeline = pipeline;
+        return recordInsideRenderPass(Command.BIND_PIPELINE);
+    }
+    
+    @Override
+    public HgCommandBuffer bindUniformSet(int index, HgUniformSet uniformSet) {
+        assert boundPipeline != null;
+        return recordInsideRenderPass(Command.BIND_UNIFORM_SET);
+    }
+    
+    @Override
+    public HgCommandBuffer bindUniformSet(int index, HgUniformSet uniformSet, IntList dynamicOffsets) {
+        assert boundPipeline != null;
+        return recordInsideRenderPass(Command.BIND_UNIFORM_SET);
+    }
+    
+    @Override
+    public HgCommandBuffer bindVertexBuffer(int index, HgBuffer.Slice buffer) {
+        return recordInsideRenderPass(Command.BIND_VERTEX_BUFFER);
+    }
+    
+    @Override
+    public HgCommandBuffer bindIndexBuffer(HgBuffer.Slice buffer, int type) {
+        return recordInsideRenderPass(Command.BIND_INDEX_BUFFER);
+    }
+    
+    @Override
+    public HgCommandBuffer draw(int vertexCount, int instanceCount, int firstVertex, int firstInstance) {
+        assert boundPipeline != null;
+        return recordInsideRenderPass(Command.DRAW);
+    }
+    
+    @Override
+    public HgCommandBuffer drawIndexed(int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance) {
+        assert boundPipeline != null;
+        return recordInsideRenderPass(Command.DRAW);
+    }
+    
+    @Override
+    public HgCommandBuffer drawIndirect(HgBuffer.Slice commands) {
+        assert boundPipeline != null;
+        return recordInsideRenderPass(Command.DRAW_INDIRECT);
+    }
+    
+    @Override
+    public HgCommandBuffer drawIndexedIndirect(HgBuffer.Slice commands) {
+        assert boundPipeline != null;
+        return recordInsideRenderPass(Command.DRAW_INDIRECT);
+    }
+    
+    static class CommandPool extends HeadlessObject<HgCommandBuffer.Pool> implements HgCommandBuffer.Pool {
+        
+        CommandPool(HeadlessDevice device) {
+            super(device);
+        }
+        
+        @Override
+        public HgCommandBuffer allocate() {
+            return new HeadlessCommandBuffer(device);
+        }
+        
+        @Override
+        public void reset() {
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.*;
+import graphics.cinnabar.api.hg.enums.HgFormat;
+import graphics.cinnabar.lib.util.MathUtil;
+import it.unimi.dsi.fastutil.longs.LongLongImmutablePair;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class HeadlessDevice implements HgDevice {
+    
+    // reported as the budget of the single (UMA) heap
+    private static final long MEMORY_BUDGET = 16L << 30;
+    
+    public final HeadlessQueue graphicsQueue;
+    public final HeadlessQueue computeQueue;
+    public final HeadlessQueue transferQueue;
+    
+    // all queue execution and every semaphore signal happens with this held, host waits wait on it
+    private final Object semaphoreLock = new Object();
+    
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLongArray executedCommands = new AtomicLongArray(HgCommandBuffer.Command.values().length);
+    private final LongAdder submits = new LongAdder();
+    private final LongAdder uniformWrites = new LongAdder();
+    private final LongAdder uniformSetsAllocated = new LongAdder();
+    private long frame = 0;
+    
+    public HeadlessDevice() {
+        graphicsQueue = new HeadlessQueue(this, HgQueue.Type.GRAPHICS);
+        computeQueue = new HeadlessQueue(this, HgQueue.Type.COMPUTE);
+        transferQueue = new HeadlessQueue(this, HgQueue.Type.TRANSFER);
+    }
+    
+    @Override
+    public void destroy() {
+    }
+    
+    @Override
+    public HgDevice setName(String label) {
+        return this;
+    }
+    
+    @Override
+    public void setAllocFailedCallback(@Nullable AllocFailedCallback callback) {
+        // allocations don't fail here, beyond running out of host memory
+    }
+    
+    @Override
+    public void waitIdle() {
+        synchronized (semaphoreLock) {
+            while (!graphicsQueue.idleLocked() || !computeQueue.idleLocked() || !transferQueue.idleLocked()) {
+                try {
+                    semaphoreLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    
+    @Override
+    public HeadlessQueue queue(HgQueue.Type queueType) {
+        return switch (queueType) {
+            case GRAPHICS -> graphicsQueue;
+            case COMPUTE -> computeQueue;
+            case TRANSFER -> transferQueue;
+        };
+    }
+    
+    @Override
+    public HeadlessBuffer createBuffer(HgBuffer.MemoryRequest request, long size, long usage) {
+        return new HeadlessBuffer(this, size);
+    }
+    
+    @Override
+    public HeadlessBuffer tryCreateBuffer(HgBuffer.MemoryRequest request, long size, long usage) {
+        return createBuffer(request, size, usage);
+    }
+    
+    @Override
+    public HeadlessImage createImage(HgImage.Type type, HgFormat format, int width, int height, int depth, int layers, int mipLevels, long usage, int flags, boolean hostMemory) {
+        return new HeadlessImage(this, type, format, width, height, depth, layers, mipLevels);
+    }
+    
+    @Override
+    public HeadlessSampler createSampler(HgSampler.CreateInfo createInfo) {
+        return new HeadlessSampler(this, createInfo);
+    }
+    
+    @Override
+    public HeadlessFramebuffer createFramebuffer(HgFramebuffer.CreateInfo createInfo) {
+        return new HeadlessFramebuffer(this, createInfo);
+    }
+    
+    @Override
+    public HeadlessRenderPass createRenderPass(HgRenderPass.CreateInfo createInfo) {
+        return new HeadlessRenderPass(this, createInfo);
+    }
+    
+    @Override
+    public HeadlessUniformSetLayout createUniformSetLayout(HgUniformSet.Layout.CreateInfo createInfo) {
+        return new HeadlessUniformSetLayout(this, createInfo);
+    }
+    
+    @Override
+    public HeadlessShaderSet createShaderSet(HgGraphicsPipeline.ShaderSet.CreateInfo createInfo) {
+        return new HeadlessShaderSet(this, createInfo);
+    }
+    
+    @Override
+    public HeadlessGraphicsPipelineLayout createPipelineLayout(HgGraphicsPipeline.Layout.CreateInfo createInfo) {
+        return new HeadlessGraphicsPipelineLayout(this, createInfo);
+    }
+    
+    @Override
+    public HeadlessGraphicsPipeline createPipeline(HgGraphicsPipeline.CreateInfo createInfo) {
+        return new HeadlessGraphicsPipeline(this, createInfo);
+    }
+    
+    @Override
+    public HeadlessSurface createSurface(long glfwWindowHandle) {
+        return new HeadlessSurface(this);
+    }
+    
+    @Override
+    public HeadlessSemaphore createSemaphore(long initialValue) {
+        return new HeadlessSemaphore(this, initialValue);
+    }
+    
+    @Override
+    public boolean waitSemaphores(List<HgSemaphore.Op> hgSemaphores, long timeout, boolean any) {
+        if (satisfied(hgSemaphores, any)) {
+            return true;
+        }
+        final var deadline = System.nanoTime() + timeout;
+        synchronized (semaphoreLock) {
+            while (!satisfied(hgSemaphores, any)) {
+                try {
+                    if (timeout < 0) {
+                        semaphoreLock.wait();
+                        continue;
+                    }
+                    final var remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(semaphoreLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    private static boolean satisfied(List<HgSemaphore.Op> ops, boolean any) {
+        for (int i = 0; i < ops.size(); i++) {
+            final var op = ops.get(i);
+            final var signaled = op.semaphore().value() >= op.value();
+            if (signaled == any) {
+                return any;
+            }
+        }
+        return !any;
+    }
+    
+    void hostSignal(HeadlessSemaphore semaphore, long value) {
+        synchronized (semaphoreLock) {
+            semaphore.signalLocked(value);
+            runReadyLocked();
+        }
+    }
+    
+    void submit(HeadlessQueue queue, HeadlessQueue.Submitted submitted) {
+        submits.increment();
+        synchronized (semaphoreLock) {
+            queue.enqueueLocked(submitted);
+            runReadyLocked();
+        }
+    }
+    
+    // a signal from one queue can unblock another, keep going until nothing else can run
+    private void runReadyLocked() {
+        boolean ran;
+        do {
+            ran = graphicsQueue.runReadyLocked();
+            ran |= computeQueue.runReadyLocked();
+            ran |= transferQueue.runReadyLocked();
+        } while (ran);
+        semaphoreLock.notifyAll();
+    }
+    
+    void executed(long[] commandCounts) {
+        for (int i = 0; i < commandCounts.length; i++) {
+            if (commandCounts[i] != 0) {
+                executedCommands.addAndGet(i, commandCounts[i]);
+            }
+        }
+    }
+    
+    void allocated(long bytes) {
+        allocatedBytes.addAndGet(bytes);
+    }
+    
+    void uniformWrites(int count) {
+        uniformWrites.add(count);
+    }
+    
+    void uniformSetAllocated() {
+        uniformSetsAllocated.increment();
+    }
+    
+    @Override
+    public long commandCount(HgCommandBuffer.Command command) {
+        return executedCommands.get(command.ordinal());
+    }
+    
+    @Override
+    public long submitCount() {
+        return submits.sum();
+    }
+    
+    public long uniformWrites() {
+        return uniformWrites.sum();
+    }
+    
+    public long uniformSetsAllocated() {
+        return uniformSetsAllocated.sum();
+    }
+    
+    public long allocatedBytes() {
+        return allocatedBytes.get();
+    }
+    
+    @Override
+    public HeadlessDeviceProperties properties() {
+        return HeadlessDeviceProperties.DEFAULT;
+    }
+    
+    @Override
+    public void addDebugText(List<String> lines) {
+        lines.add(String.format("Headless: %s allocated, %d submits, %d draws", MathUtil.byteString(allocatedBytes.get()), submits.sum(), commandCount(HgCommandBuffer.Command.DRAW) + commandCount(HgCommandBuffer.Command.DRAW_INDIRECT)));
+    }
+    
+    @Override
+    public void markFame() {
+        frame++;
+    }
+    
+    public long frame() {
+        return frame;
+    }
+    
+    @Override
+    public LongLongImmutablePair hostLocalMemoryStats() {
+        return new LongLongImmutablePair(allocatedBytes.get(), MEMORY_BUDGET);
+    }
+    
+    @Override
+    public LongLongImmutablePair deviceLocalMemoryStats() {
+        return new LongLongImmutablePair(allocatedBytes.get(), MEMORY_BUDGET);
+    }
+    
+    @Override
+    public LongLongImmutablePair mappableDeviceMemoryStats() {
+        return new LongLongImmutablePair(allocatedBytes.get(), MEMORY_BUDGET);
+    }
+    
+    @Override
+    public boolean UMA() {
+        return true;
+    }
+    
+    @Override
+    public boolean ReBAR() {
+        return true;
+    }
+}
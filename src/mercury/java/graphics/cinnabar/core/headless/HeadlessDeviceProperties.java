@@ -0,0 +1,18 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgDevice;
+
+// limits picked to match a typical desktop GPU, so Hg3D takes the same paths it would on real hardware
+public record HeadlessDeviceProperties(
+        String apiVersion, String driverVersion, String renderer, String vendor,
+        long uboAlignment, int maxTexture2dSize,
+        long maxMemoryAllocSize,
+        float maxAnisotropy
+) implements HgDevice.Properties {
+    public static final HeadlessDeviceProperties DEFAULT = new HeadlessDeviceProperties(
+            "Headless", "0.0.0", "Cinnabar headless", "Cinnabar",
+            256, 16384,
+            1L << 32,
+            16.0f
+    );
+}
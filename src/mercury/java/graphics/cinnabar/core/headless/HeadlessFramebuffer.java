@@ -0,0 +1,30 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgFramebuffer;
+import graphics.cinnabar.api.hg.HgImage;
+
+import java.util.Objects;
+
+public class HeadlessFramebuffer extends HeadlessObject<HgFramebuffer> implements HgFramebuffer {
+    
+    private final int width;
+    private final int height;
+    
+    public HeadlessFramebuffer(HeadlessDevice device, CreateInfo createInfo) {
+        super(device);
+        // same as Mercury, sized from the first attachment
+        final HgImage.View firstAttachment = createInfo.colorAttachments().isEmpty() ? Objects.requireNonNull(createInfo.depthAttachment()) : createInfo.colorAttachments().getFirst();
+        width = firstAttachment.image().width() >> firstAttachment.baseMipLevel();
+        height = firstAttachment.image().height() >> firstAttachment.baseMipLevel();
+    }
+    
+    @Override
+    public int width() {
+        return width;
+    }
+    
+    @Override
+    public int height() {
+        return height;
+    }
+}
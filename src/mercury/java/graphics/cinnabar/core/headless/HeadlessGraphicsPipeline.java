@@ -0,0 +1,22 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgGraphicsPipeline;
+
+public class HeadlessGraphicsPipeline extends HeadlessObject<HgGraphicsPipeline> implements HgGraphicsPipeline {
+    
+    private final CreateInfo createInfo;
+    
+    public HeadlessGraphicsPipeline(HeadlessDevice device, CreateInfo createInfo) {
+        super(device);
+        this.createInfo = createInfo;
+    }
+    
+    @Override
+    public Layout layout() {
+        return createInfo.layout();
+    }
+    
+    public CreateInfo createInfo() {
+        return createInfo;
+    }
+}
@@ -0,0 +1,29 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgGraphicsPipeline;
+import graphics.cinnabar.api.hg.HgUniformSet;
+import it.unimi.dsi.fastutil.objects.ReferenceImmutableList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+public class HeadlessGraphicsPipelineLayout extends HeadlessObject<HgGraphicsPipeline.Layout> implements HgGraphicsPipeline.Layout {
+    
+    private final List<HgUniformSet.Layout> uniformSetLayouts;
+    
+    public HeadlessGraphicsPipelineLayout(HeadlessDevice device, CreateInfo createInfo) {
+        super(device);
+        uniformSetLayouts = new ReferenceImmutableList<>(createInfo.uniformLayouts());
+    }
+    
+    @Override
+    public int maximumUniformSetIndex() {
+        return uniformSetLayouts.size();
+    }
+    
+    @Nullable
+    @Override
+    public HgUniformSet.Layout uniformSetLayout(int setIndex) {
+        return uniformSetLayouts.get(setIndex);
+    }
+}
@@ -0,0 +1,67 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgImage;
+import graphics.cinnabar.api.hg.enums.HgFormat;
+
+// no backing memory, nothing ever reads an image back from the headless device
+public class HeadlessImage extends HeadlessObject<HgImage> implements HgImage {
+    
+    private final Type type;
+    private final HgFormat format;
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int layerCount;
+    private final int levelCount;
+    
+    public HeadlessImage(HeadlessDevice device, Type type, HgFormat format, int width, int height, int depth, int layerCount, int levelCount) {
+        super(device);
+        this.type = type;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.layerCount = layerCount;
+        this.levelCount = levelCount;
+    }
+    
+    @Override
+    public Type type() {
+        return type;
+    }
+    
+    @Override
+    public HgFormat format() {
+        return format;
+    }
+    
+    @Override
+    public int width() {
+        return width;
+    }
+    
+    @Override
+    public int height() {
+        return height;
+    }
+    
+    @Override
+    public int depth() {
+        return depth;
+    }
+    
+    @Override
+    public int layerCount() {
+        return layerCount;
+    }
+    
+    @Override
+    public int levelCount() {
+        return levelCount;
+    }
+    
+    @Override
+    public View createView(View.Type viewType, HgFormat format, int baseMipLevel, int mipLevels, int baseArrayLayer, int layerCount) {
+        return new HeadlessImageView(this, viewType, format, baseMipLevel, mipLevels, baseArrayLayer, layerCount);
+    }
+}
@@ -0,0 +1,61 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgImage;
+import graphics.cinnabar.api.hg.enums.HgFormat;
+
+public class HeadlessImageView extends HeadlessObject<HgImage.View> implements HgImage.View {
+    
+    private final HeadlessImage image;
+    private final Type type;
+    private final HgFormat format;
+    private final int baseMipLevel;
+    private final int levelCount;
+    private final int baseArrayLayer;
+    private final int layerCount;
+    
+    public HeadlessImageView(HeadlessImage image, Type type, HgFormat format, int baseMipLevel, int levelCount, int baseArrayLayer, int layerCount) {
+        super(image.device());
+        this.image = image;
+        this.type = type;
+        this.format = format;
+        this.baseMipLevel = baseMipLevel;
+        this.levelCount = levelCount;
+        this.baseArrayLayer = baseArrayLayer;
+        this.layerCount = layerCount;
+    }
+    
+    @Override
+    public HeadlessImage image() {
+        return image;
+    }
+    
+    @Override
+    public Type type() {
+        return type;
+    }
+    
+    @Override
+    public HgFormat format() {
+        return format;
+    }
+    
+    @Override
+    public int baseArrayLayer() {
+        return baseArrayLayer;
+    }
+    
+    @Override
+    public int layerCount() {
+        return layerCount;
+    }
+    
+    @Override
+    public int baseMipLevel() {
+        return baseMipLevel;
+    }
+    
+    @Override
+    public int levelCount() {
+        return levelCount;
+    }
+}
@@ -0,0 +1,36 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgObject;
+import org.jetbrains.annotations.Nullable;
+
+public abstract class HeadlessObject<T extends HgObject<T>> implements HgObject<T> {
+    
+    protected final HeadlessDevice device;
+    @Nullable
+    private String name;
+    
+    public HeadlessObject(HeadlessDevice device) {
+        this.device = device;
+    }
+    
+    @Override
+    public HeadlessDevice device() {
+        return device;
+    }
+    
+    @Override
+    public void destroy() {
+    }
+    
+    @Override
+    public T setName(String label) {
+        name = label;
+        //noinspection unchecked
+        return (T) this;
+    }
+    
+    @Nullable
+    public String name() {
+        return name;
+    }
+}
@@ -0,0 +1,116 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgCommandBuffer;
+import graphics.cinnabar.api.hg.HgQueue;
+import graphics.cinnabar.api.hg.HgSemaphore;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+// submissions run in order, each one as soon as everything it waits on is signaled, there is no GPU time between submit and signal
+public class HeadlessQueue extends HeadlessObject<HgQueue> implements HgQueue {
+    
+    private final Type type;
+    // guarded by the device's semaphore lock
+    private final ArrayDeque<Submitted> pending = new ArrayDeque<>();
+    
+    public HeadlessQueue(HeadlessDevice device, Type type) {
+        super(device);
+        this.type = type;
+    }
+    
+    public Type type() {
+        return type;
+    }
+    
+    @Override
+    public Submission submit() {
+        return new HeadlessSubmission();
+    }
+    
+    @Override
+    public HgCommandBuffer.Pool createCommandPool(boolean commandBufferReset, boolean oneTimeSubmit) {
+        return new HeadlessCommandBuffer.CommandPool(device);
+    }
+    
+    @Override
+    public boolean needsOwnershipTransfer(HgQueue otherQueue) {
+        // one pool of host memory, nothing to transfer
+        return false;
+    }
+    
+    void enqueueLocked(Submitted submitted) {
+        pending.add(submitted);
+    }
+    
+    boolean idleLocked() {
+        return pending.isEmpty();
+    }
+    
+    // returns if anything ran
+    boolean runReadyLocked() {
+        boolean ran = false;
+        while (!pending.isEmpty() && pending.peekFirst().ready()) {
+            final var submitted = pending.pollFirst();
+            for (int i = 0; i < submitted.commandBuffers.size(); i++) {
+                ((HeadlessCommandBuffer) submitted.commandBuffers.get(i)).execute();
+            }
+            for (int i = 0; i < submitted.signals.size(); i++) {
+                final var signal = submitted.signals.get(i);
+                ((HeadlessSemaphore) signal.semaphore()).signalLocked(signal.value());
+            }
+            ran = true;
+        }
+        return ran;
+    }
+    
+    record Submitted(List<HgSemaphore.Op> waits, List<HgCommandBuffer> commandBuffers, List<HgSemaphore.Op> signals) {
+        boolean ready() {
+            for (int i = 0; i < waits.size(); i++) {
+                final var wait = waits.get(i);
+                if (wait.semaphore().value() < wait.value()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    private class HeadlessSubmission implements Submission {
+        
+        private final ReferenceArrayList<HgSemaphore.Op> waits = new ReferenceArrayList<>();
+        private final ReferenceArrayList<HgCommandBuffer> commandBuffers = new ReferenceArrayList<>();
+        private final ReferenceArrayList<HgSemaphore.Op> signals = new ReferenceArrayList<>();
+        
+        @Override
+        public void wait(HgSemaphore semaphore, long value, long stages) {
+            waits.add(new HgSemaphore.Op(semaphore, value));
+        }
+        
+        @Override
+        public void execute(HgCommandBuffer commandBuffer) {
+            commandBuffers.add(commandBuffer);
+        }
+        
+        @Override
+        public void execute(HgCommandBuffer... commandBuffers) {
+            this.commandBuffers.addElements(this.commandBuffers.size(), commandBuffers);
+        }
+        
+        @Override
+        public void execute(List<HgCommandBuffer> commandBuffers) {
+            this.commandBuffers.addAll(commandBuffers);
+        }
+        
+        @Override
+        public void signal(HgSemaphore semaphore, long value, long stages) {
+            signals.add(new HgSemaphore.Op(semaphore, value));
+        }
+        
+        @Override
+        public void close() {
+            device.submit(HeadlessQueue.this, new Submitted(waits, commandBuffers, signals));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgRenderPass;
+
+public class HeadlessRenderPass extends HeadlessObject<HgRenderPass> implements HgRenderPass {
+    
+    private final CreateInfo createInfo;
+    
+    public HeadlessRenderPass(HeadlessDevice device, CreateInfo createInfo) {
+        super(device);
+        this.createInfo = createInfo;
+    }
+    
+    @Override
+    public int colorAttachmentCount() {
+        return createInfo.colorFormats().size();
+    }
+}
@@ -0,0 +1,17 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgSampler;
+
+public class HeadlessSampler extends HeadlessObject<HgSampler> implements HgSampler {
+    
+    private final CreateInfo createInfo;
+    
+    public HeadlessSampler(HeadlessDevice device, CreateInfo createInfo) {
+        super(device);
+        this.createInfo = createInfo;
+    }
+    
+    public CreateInfo createInfo() {
+        return createInfo;
+    }
+}
@@ -0,0 +1,42 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgSemaphore;
+
+import java.util.List;
+
+public class HeadlessSemaphore extends HeadlessObject<HgSemaphore> implements HgSemaphore {
+    
+    // only written with the device's semaphore lock held
+    private volatile long value;
+    
+    public HeadlessSemaphore(HeadlessDevice device, long initialValue) {
+        super(device);
+        // -1 is a binary semaphore, those are only ever waited/signaled with 0
+        value = Math.max(0, initialValue);
+    }
+    
+    @Override
+    public long value() {
+        return value;
+    }
+    
+    @Override
+    public void waitValue(long value, long timeout) {
+        if (this.value >= value) {
+            return;
+        }
+        device.waitSemaphores(List.of(new Op(this, value)), timeout, false);
+    }
+    
+    @Override
+    public void singlaValue(long value) {
+        device.hostSignal(this, value);
+    }
+    
+    // timeline values only go up, binary semaphores signal 0 and stay at 0
+    void signalLocked(long value) {
+        if (value > this.value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgGraphicsPipeline;
+import graphics.cinnabar.api.hg.HgUniformSet;
+import graphics.cinnabar.core.mercury.MercuryShaderReflection;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+// still compiles and reflects the shaders, Hg3D needs the attribs and uniform layouts out of them, there just aren't any VkShaderModules made
+public class HeadlessShaderSet extends HeadlessObject<HgGraphicsPipeline.ShaderSet> implements HgGraphicsPipeline.ShaderSet {
+    
+    private final List<VertexAttrib> attribs;
+    private final int attachmentCount;
+    private final ReferenceArrayList<HgUniformSet.Layout.@Nullable CreateInfo> uniformSetCreateInfos = new ReferenceArrayList<>();
+    private final long pushConstantsSize;
+    
+    public HeadlessShaderSet(HeadlessDevice device, CreateInfo createInfo) {
+        super(device);
+        final var reflection = new MercuryShaderReflection(createInfo);
+        try {
+            attribs = reflection.attribs();
+            attachmentCount = reflection.attachmentCount();
+            uniformSetCreateInfos.addAll(reflection.uniformSetCreateInfos());
+            pushConstantsSize = reflection.pushConstantsSize();
+        } finally {
+            reflection.destroy();
+        }
+    }
+    
+    @Nullable
+    @Override
+    public List<VertexAttrib> attribs() {
+        return attribs;
+    }
+    
+    @Override
+    public int attachmentCount() {
+        return attachmentCount;
+    }
+    
+    @Override
+    public int maximumUniformSetIndex() {
+        return uniformSetCreateInfos.size();
+    }
+    
+    @Nullable
+    @Override
+    public HgUniformSet.Layout.CreateInfo uniformSetLayoutCreateInfo(int setIndex) {
+        return uniformSetCreateInfos.get(setIndex);
+    }
+    
+    @Override
+    public long pushConstantsSize() {
+        return pushConstantsSize;
+    }
+}
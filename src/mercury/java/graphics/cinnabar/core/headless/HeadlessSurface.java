@@ -0,0 +1,65 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgSemaphore;
+import graphics.cinnabar.api.hg.HgSurface;
+import org.jetbrains.annotations.Nullable;
+
+// no window, a fixed size swapchain that always acquires and presents
+public class HeadlessSurface extends HeadlessObject<HgSurface> implements HgSurface {
+    
+    public static final int WIDTH = 1920;
+    public static final int HEIGHT = 1080;
+    
+    public HeadlessSurface(HeadlessDevice device) {
+        super(device);
+    }
+    
+    @Override
+    public Swapchain createSwapchain(boolean vsync, @Nullable Swapchain previous) {
+        if (previous != null) {
+            previous.destroy();
+        }
+        return new HeadlessSwapchain(device);
+    }
+    
+    static class HeadlessSwapchain extends HeadlessObject<Swapchain> implements Swapchain {
+        
+        // used as a binary semaphore, waited and signaled with 0
+        private final HeadlessSemaphore semaphore;
+        
+        HeadlessSwapchain(HeadlessDevice device) {
+            super(device);
+            semaphore = device.createSemaphore(-1);
+        }
+        
+        @Override
+        public void destroy() {
+            semaphore.destroy();
+        }
+        
+        @Override
+        public int width() {
+            return WIDTH;
+        }
+        
+        @Override
+        public int height() {
+            return HEIGHT;
+        }
+        
+        @Override
+        public boolean acquire() {
+            return true;
+        }
+        
+        @Override
+        public boolean present() {
+            return true;
+        }
+        
+        @Override
+        public HgSemaphore currentSemaphore() {
+            return semaphore;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.hg.HgUniformSet;
+import it.unimi.dsi.fastutil.objects.ReferenceImmutableList;
+
+import java.util.List;
+
+public class HeadlessUniformSetLayout extends HeadlessObject<HgUniformSet.Layout> implements HgUniformSet.Layout {
+    
+    private final List<Binding> bindings;
+    
+    public HeadlessUniformSetLayout(HeadlessDevice device, CreateInfo createInfo) {
+        super(device);
+        bindings = new ReferenceImmutableList<>(createInfo.bindings());
+    }
+    
+    @Override
+    public List<Binding> bindings() {
+        return bindings;
+    }
+    
+    @Override
+    public HgUniformSet.Pool createPool(HgUniformSet.Pool.CreateInfo createInfo) {
+        return new SetPool(this);
+    }
+    
+    static class SetPool extends HeadlessObject<HgUniformSet.Pool> implements HgUniformSet.Pool {
+        
+        private final HeadlessUniformSetLayout layout;
+        
+        SetPool(HeadlessUniformSetLayout layout) {
+            super(layout.device);
+            this.layout = layout;
+        }
+        
+        @Override
+        public HgUniformSet allocate() {
+            device.uniformSetAllocated();
+            return new SetInstance(layout);
+        }
+    }
+    
+    // keeps the last write for each binding, so the writes cost about what building the vk structs would
+    static class SetInstance extends HeadlessObject<HgUniformSet> implements HgUniformSet {
+        
+        private final Write[] boundWrites;
+        
+        SetInstance(HeadlessUniformSetLayout layout) {
+            super(layout.device);
+            boundWrites = new Write[layout.bindings.size()];
+        }
+        
+        @Override
+        public void write(List<Write> writes) {
+            for (int i = 0; i < writes.size(); i++) {
+                final var write = writes.get(i);
+                final var location = write.binding().location();
+                if (location < 0 || location >= boundWrites.length) {
+                    throw new IllegalArgumentException("Binding " + write.binding().name() + " at " + location + " is outside the set's layout");
+                }
+                boundWrites[location] = write;
+            }
+            device.uniformWrites(writes.size());
+        }
+    }
+}
@@ -0,0 +1,6 @@
+@ApiStatus.Internal
+@NotNullDefault
+package graphics.cinnabar.core.headless;
+
+import graphics.cinnabar.api.annotations.NotNullDefault;
+import org.jetbrains.annotations.ApiStatus;
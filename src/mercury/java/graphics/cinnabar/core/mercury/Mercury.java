@@ -15,6 +15,10 @@ public class Mercury {
     public static final boolean MERCURY_VALIDATION = Config.mercuryValidationLayers;
     // vulkan validation doesnt work with renderdoc attached
     public static final boolean VULKAN_VALIDATION = !RENDERDOC_ATTACHED && Config.vulkanValidationLayers;
+    // per command type counts, for the benchmark harness, off otherwise so recording doesn't pay for it
+    public static final boolean COUNT_COMMANDS = Config.countCommands;
+    // timestamp queries around render passes, copies, and blits, see MercuryGpuTimer
+    public static final boolean GPU_TIMESTAMPS = Config.gpuTimestamps;
     
     public static final ThreadLocal<MemoryStack> MEMORY_STACK = ThreadLocal.withInitial(GrowingMemoryStack::new);
     
@@ -36,5 +40,9 @@ public class Mercury {
         public static boolean mercuryValidationLayers = Boolean.getBoolean("cinnabar.mercuryValidationLayers");
         @UsedFromReflection
         public static boolean vulkanValidationLayers = Boolean.getBoolean("cinnabar.vulkanValidationLayers");
+        @UsedFromReflection
+        public static boolean countCommands = Boolean.getBoolean("cinnabar.countCommands");
+        @UsedFromReflection
+        public static boolean gpuTimestamps = Boolean.getBoolean("cinnabar.gpuTimestamps");
     }
 }
@@ -52,16 +52,15 @@ public class MercuryBuffer extends MercuryObject<HgBuffer> implements HgBuffer {
                     allocCreateInfo.requiredFlags(VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
                     allocCreateInfo.preferredFlags(VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT);
                     // because this buffer is allowed on both host and device, both's memory types can be used
-                    allocCreateInfo.memoryTypeBits(device.allowedHostBufferMemoryBits | device.allowedDeviceBufferMemoryBits);
+                    // if the BAR is out of budget, this falls back to host memory
+                    allocCreateInfo.memoryTypeBits(device.allowedHostBufferMemoryBits | device.allowedMappableDeviceBufferMemoryBits);
                 }
                 case GPU -> {
                     allocCreateInfo.usage(VMA_MEMORY_USAGE_AUTO_PREFER_DEVICE);
                     allocCreateInfo.requiredFlags(VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT);
+                    // not asking for host access, so VMA will prefer non-mappable types when there are any
+                    // buffers that want to be in the BAR ask for MAPPABLE_PREF_GPU instead
                     allocCreateInfo.memoryTypeBits(device.allowedDeviceBufferMemoryBits);
-                    if (!RENDERDOC_ATTACHED) {
-                        allocCreateInfo.flags(allocCreateInfo.flags() | VMA_ALLOCATION_CREATE_HOST_ACCESS_SEQUENTIAL_WRITE_BIT | VMA_ALLOCATION_CREATE_HOST_ACCESS_ALLOW_TRANSFER_INSTEAD_BIT);
-                        allocCreateInfo.preferredFlags(VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
-                    }
                 }
                 default -> throw new NotImplemented();
             }
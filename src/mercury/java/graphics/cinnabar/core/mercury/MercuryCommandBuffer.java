@@ -8,6 +8,7 @@ import it.unimi.dsi.fastutil.longs.LongIntImmutablePair;
 import org.jetbrains.annotations.Nullable;
 import org.lwjgl.vulkan.*;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -23,11 +24,18 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     private final GrowingMemoryStack memoryStack;
     @Nullable
     private MercuryGraphicsPipelineLayout currentPipelineLayout;
+    // only filled in with Mercury.COUNT_COMMANDS, added to the device's totals when submitted
+    private final long[] commandCounts = new long[Command.values().length];
+    // only with Mercury.GPU_TIMESTAMPS, and on the graphics queue
+    @Nullable
+    private final MercuryGpuTimer gpuTimer;
+    private long renderPassScope = -1;
     
-    public MercuryCommandBuffer(MercuryDevice device, VkCommandBuffer commandBuffer, Consumer<VkCommandBuffer> freeFunction) {
+    public MercuryCommandBuffer(MercuryDevice device, VkCommandBuffer commandBuffer, Consumer<VkCommandBuffer> freeFunction, @Nullable MercuryGpuTimer gpuTimer) {
         super(device);
         this.commandBuffer = commandBuffer;
         this.freeFunction = freeFunction;
+        this.gpuTimer = gpuTimer;
         memoryStack = new GrowingMemoryStack();
     }
     
@@ -48,6 +56,9 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     @Override
     public HgCommandBuffer begin() {
         vkBeginCommandBuffer(commandBuffer, beginInfo);
+        if (Mercury.COUNT_COMMANDS) {
+            Arrays.fill(commandCounts, 0);
+        }
         return this;
     }
     
@@ -58,11 +69,32 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
         return this;
     }
     
+    private void count(Command command) {
+        if (Mercury.COUNT_COMMANDS) {
+            commandCounts[command.ordinal()]++;
+        }
+    }
+    
+    long[] commandCounts() {
+        return commandCounts;
+    }
+    
+    private long beginScope(MercuryGpuTimer.Scope scope) {
+        return gpuTimer != null ? gpuTimer.beginScope(commandBuffer, scope) : -1;
+    }
+    
+    private void endScope(long scope) {
+        if (gpuTimer != null) {
+            gpuTimer.endScope(commandBuffer, scope);
+        }
+    }
+    
     // ---------- Always valid commands ----------
     
     
     @Override
     public HgCommandBuffer pushDebugGroup(String name) {
+        count(Command.DEBUG_GROUP);
         if (device.debugUtilsEnabled()) {
             try (final var stack = memoryStack.push()) {
                 final var labelInfo = VkDebugUtilsLabelEXT.calloc(stack).sType$Default();
@@ -80,6 +112,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer popDebugGroup() {
+        count(Command.DEBUG_GROUP);
         if (device.debugUtilsEnabled()) {
             EXTDebugUtils.vkCmdEndDebugUtilsLabelEXT(commandBuffer);
         }
@@ -94,6 +127,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer barrier(long srcStage, long srcAccess, long destStage, long dstAccess) {
+        count(Command.BARRIER);
         try (final var stack = this.memoryStack.push()) {
             final var memoryBarrier = VkMemoryBarrier2.calloc(1, stack).sType$Default();
             memoryBarrier.srcStageMask(srcStage);
@@ -114,6 +148,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer initImages(List<HgImage> images) {
+        count(Command.BARRIER);
         try (final var stack = memoryStack.push()) {
             final var imageBarriers = VkImageMemoryBarrier2.calloc(images.size(), stack).sType$Default();
             for (int i = 0; i < images.size(); i++) {
@@ -148,6 +183,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer copyBufferToBuffer(HgBuffer.Slice src, HgBuffer.Slice dst) {
+        count(Command.COPY);
         try (final var stack = memoryStack.push()) {
             
             final VkBufferCopy.Buffer bufferCopies;
@@ -162,13 +198,16 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
             
             bufferCopies.position(0);
             
+            final var scope = beginScope(MercuryGpuTimer.Scope.COPY);
             vkCmdCopyBuffer(commandBuffer, ((MercuryBuffer) src.buffer()).vkBuffer(), ((MercuryBuffer) dst.buffer()).vkBuffer(), bufferCopies);
+            endScope(scope);
         }
         return this;
     }
     
     @Override
     public HgCommandBuffer copyBufferToImage(HgBuffer.ImageSlice buffer, HgImage.TransferRange imageRange) {
+        count(Command.COPY);
         try (final var stack = memoryStack.push()) {
             final var copy = VkBufferImageCopy.calloc(1, stack);
             copy.bufferOffset(buffer.offset());
@@ -182,13 +221,16 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
             copy.bufferRowLength(buffer.width());
             copy.bufferImageHeight(buffer.height());
             
+            final var scope = beginScope(MercuryGpuTimer.Scope.COPY);
             vkCmdCopyBufferToImage(commandBuffer, ((MercuryBuffer) buffer.buffer()).vkBuffer(), ((MercuryImage) imageRange.image()).vkImage(), VK_IMAGE_LAYOUT_GENERAL, copy);
+            endScope(scope);
         }
         return this;
     }
     
     @Override
     public HgCommandBuffer copyImageToBuffer(HgImage.TransferRange imageRange, HgBuffer.ImageSlice buffer) {
+        count(Command.COPY);
         try (final var stack = memoryStack.push()) {
             final var copy = VkBufferImageCopy.calloc(1, stack);
             copy.bufferOffset(buffer.offset());
@@ -202,13 +244,16 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
             copy.bufferRowLength(buffer.width());
             copy.bufferImageHeight(buffer.height());
             
+            final var scope = beginScope(MercuryGpuTimer.Scope.COPY);
             vkCmdCopyImageToBuffer(commandBuffer, ((MercuryImage) imageRange.image()).vkImage(), VK_IMAGE_LAYOUT_GENERAL, ((MercuryBuffer) buffer.buffer()).vkBuffer(), copy);
+            endScope(scope);
         }
         return this;
     }
     
     @Override
     public HgCommandBuffer copyImageToImage(HgImage.TransferRange src, HgImage.TransferRange dst) {
+        count(Command.COPY);
         try (final var stack = memoryStack.push()) {
             final var copy = VkImageCopy.calloc(1, stack);
             {
@@ -228,13 +273,16 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
                 copy.dstOffset().set(dst.offset().x(), dst.offset().y(), dst.offset().z());
             }
             copy.extent().set(src.extent().x(), src.extent().y(), src.extent().z());
+            final var scope = beginScope(MercuryGpuTimer.Scope.COPY);
             vkCmdCopyImage(commandBuffer, ((MercuryImage) src.image()).vkImage(), VK_IMAGE_LAYOUT_GENERAL, ((MercuryImage) dst.image()).vkImage(), VK_IMAGE_LAYOUT_GENERAL, copy);
+            endScope(scope);
         }
         return this;
     }
     
     @Override
     public HgCommandBuffer clearColorImage(HgImage.ResourceRange range, int clearARGB) {
+        count(Command.CLEAR);
         assert range.image() instanceof MercuryImage;
         try (final var stack = this.memoryStack.push()) {
             final var vkClearColor = VkClearColorValue.calloc(stack);
@@ -256,6 +304,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer clearDepthStencilImage(HgImage.ResourceRange range, double clearDepth, int clearStencil) {
+        count(Command.CLEAR);
         assert range.image() instanceof MercuryImage;
         try (final var stack = this.memoryStack.push()) {
             final var clearValue = VkClearDepthStencilValue.calloc(stack);
@@ -280,6 +329,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer blitToSwapchain(HgImage.View view, HgSurface.Swapchain swapchain) {
+        count(Command.BLIT);
         assert swapchain instanceof MercurySwapchain;
         assert view instanceof MercuryImageView;
         try (final var stack = memoryStack.push()) {
@@ -333,7 +383,9 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
             blitRegion.dstOffsets(dstOffsets);
             
             // these barriers are for the src texture, they should be relaxed, but that's a later problem
+            final var scope = beginScope(MercuryGpuTimer.Scope.BLIT);
             vkCmdBlitImage(commandBuffer, ((MercuryImage) view.image()).vkImage(), VK_IMAGE_LAYOUT_GENERAL, ((MercurySwapchain) swapchain).currentVkImage(), VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, blitRegion, VK_FILTER_NEAREST);
+            endScope(scope);
             
             imageBarrier.oldLayout(VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL);
             imageBarrier.newLayout(VK_IMAGE_LAYOUT_PRESENT_SRC_KHR);
@@ -349,6 +401,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer beginRenderPass(HgRenderPass renderPass, HgFramebuffer framebuffer) {
+        count(Command.RENDER_PASS);
         try (final var stack = memoryStack.push()) {
             final var passBeginInfo = VkRenderPassBeginInfo.calloc(stack).sType$Default();
             passBeginInfo.renderPass(((MercuryRenderPass) renderPass).vkRenderPass());
@@ -362,6 +415,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
             final var subpassBeginInfo = VkSubpassBeginInfo.calloc(stack).sType$Default();
             subpassBeginInfo.contents(VK_SUBPASS_CONTENTS_INLINE);
             
+            renderPassScope = beginScope(MercuryGpuTimer.Scope.RENDER_PASS);
             vkCmdBeginRenderPass2(commandBuffer, passBeginInfo, subpassBeginInfo);
         }
         return this;
@@ -370,11 +424,14 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     @Override
     public HgCommandBuffer endRenderPass() {
         vkCmdEndRenderPass(commandBuffer);
+        endScope(renderPassScope);
+        renderPassScope = -1;
         return this;
     }
     
     @Override
     public HgCommandBuffer setViewport(int attachment, int x, int y, int width, int height) {
+        count(Command.DYNAMIC_STATE);
         try (final var stack = memoryStack.push()) {
             final var viewport = VkViewport.calloc(1, stack);
             viewport.x(x);
@@ -390,6 +447,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer setScissor(int attachment, int x, int y, int width, int height) {
+        count(Command.DYNAMIC_STATE);
         try (final var stack = memoryStack.push()) {
             final var scissor = VkRect2D.calloc(1, stack);
             scissor.offset().set(x, y);
@@ -401,6 +459,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer clearAttachments(IntList clearColors, double clearDepth, int x, int y, int width, int height) {
+        count(Command.CLEAR);
         try (final var stack = memoryStack().push()) {
             final var rects = VkClearRect.calloc(clearColors.size() + 1, stack);
             for (int i = 0; i < clearColors.size() + 1; i++) {
@@ -447,6 +506,7 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer bindPipeline(HgGraphicsPipeline pipeline) {
+        count(Command.BIND_PIPELINE);
         final var mercuryPipeline = ((MercuryGraphicsPipeline) pipeline);
         currentPipelineLayout = (MercuryGraphicsPipelineLayout) mercuryPipeline.layout();
         vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, mercuryPipeline.vkPipeline());
@@ -455,42 +515,62 @@ public class MercuryCommandBuffer extends MercuryObject<HgCommandBuffer> impleme
     
     @Override
     public HgCommandBuffer bindUniformSet(int index, HgUniformSet uniformSet) {
+        count(Command.BIND_UNIFORM_SET);
         vkCmdBindDescriptorSets(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, currentPipelineLayout.vkPipelineLayout(), index, new long[]{((MercuryUniformSetPool.SetInstance) uniformSet).set()}, null);
         return this;
     }
     
+    @Override
+    public HgCommandBuffer bindUniformSet(int index, HgUniformSet uniformSet, IntList dynamicOffsets) {
+        count(Command.BIND_UNIFORM_SET);
+        try (final var stack = memoryStack.push()) {
+            final var offsets = stack.mallocInt(dynamicOffsets.size());
+            for (int i = 0; i < dynamicOffsets.size(); i++) {
+                offsets.put(i, dynamicOffsets.getInt(i));
+            }
+            vkCmdBindDescriptorSets(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, currentPipelineLayout.vkPipelineLayout(), index, stack.longs(((MercuryUniformSetPool.SetInstance) uniformSet).set()), offsets);
+        }
+        return this;
+    }
+    
     @Override
     public HgCommandBuffer bindVertexBuffer(int index, HgBuffer.Slice buffer) {
+        count(Command.BIND_VERTEX_BUFFER);
         vkCmdBindVertexBuffers(commandBuffer, index, new long[]{((MercuryBuffer) buffer.buffer()).vkBuffer()}, new long[]{buffer.offset()});
         return this;
     }
     
     @Override
     public HgCommandBuffer bindIndexBuffer(HgBuffer.Slice buffer, int type) {
+        count(Command.BIND_INDEX_BUFFER);
         vkCmdBindIndexBuffer(commandBuffer, ((MercuryBuffer) buffer.buffer()).vkBuffer(), buffer.offset(), type);
         return this;
     }
     
     @Override
     public HgCommandBuffer draw(int vertexCount, int instanceCount, int firstVertex, int firstInstance) {
+        count(Command.DRAW);
         vkCmdDraw(commandBuffer, vertexCount, instanceCount, firstVertex, firstInstance);
         return this;
     }
     
     @Override
     public HgCommandBuffer drawIndexed(int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance) {
+        count(Command.DRAW);
         vkCmdDrawIndexed(commandBuffer, indexCount, instanceCount, firstIndex, vertexOffset, firstInstance);
         return this;
     }
     
     @Override
     public HgCommandBuffer drawIndirect(HgBuffer.Slice commands) {
+        count(Command.DRAW_INDIRECT);
         vkCmdDrawIndirect(commandBuffer, ((MercuryBuffer) commands.buffer()).vkBuffer(), commands.offset(), Math.toIntExact(commands.size() / VkDrawIndirectCommand.SIZEOF), VkDrawIndirectCommand.SIZEOF);
         return this;
     }
     
     @Override
     public HgCommandBuffer drawIndexedIndirect(HgBuffer.Slice commands) {
+        count(Command.DRAW_INDIRECT);
         vkCmdDrawIndexedIndirect(commandBuffer, ((MercuryBuffer) commands.buffer()).vkBuffer(), commands.offset(), Math.toIntExact(commands.size() / VkDrawIndexedIndirectCommand.SIZEOF), VkDrawIndexedIndirectCommand.SIZEOF);
         return this;
     }
@@ -3,6 +3,7 @@ package graphics.cinnabar.core.mercury;
 import graphics.cinnabar.api.hg.HgCommandBuffer;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongIntImmutablePair;
+import org.jetbrains.annotations.Nullable;
 import org.lwjgl.vulkan.VkCommandBuffer;
 import org.lwjgl.vulkan.VkCommandBufferAllocateInfo;
 import org.lwjgl.vulkan.VkCommandPoolCreateInfo;
@@ -14,6 +15,9 @@ public class MercuryCommandPool extends MercuryObject<HgCommandBuffer.Pool> impl
     private static final int COMMAND_BUFFER_ALLOC_SIZE = 128;
     
     private final boolean commandBufferReset;
+    // timestamps are only checked for the graphics queue's family
+    @Nullable
+    private final MercuryGpuTimer gpuTimer;
     private final VkCommandBufferAllocateInfo allocInfo = VkCommandBufferAllocateInfo.calloc().sType$Default();
     private final long poolHandle;
     private final LongArrayList newBuffers = new LongArrayList();
@@ -22,6 +26,7 @@ public class MercuryCommandPool extends MercuryObject<HgCommandBuffer.Pool> impl
     public MercuryCommandPool(MercuryDevice device, int queueFamily, boolean commandBufferReset, boolean oneTimeSubmit) {
         super(device);
         this.commandBufferReset = commandBufferReset;
+        gpuTimer = queueFamily == device.graphicsQueue.familyIndex() ? device.gpuTimer() : null;
         try (final var stack = memoryStack().push()) {
             final var createInfo = VkCommandPoolCreateInfo.calloc(stack).sType$Default();
             if (commandBufferReset) {
@@ -85,7 +90,7 @@ public class MercuryCommandPool extends MercuryObject<HgCommandBuffer.Pool> impl
         if (newBuffers.isEmpty()) {
             allocateMoreBuffers();
         }
-        return new MercuryCommandBuffer(device, new VkCommandBuffer(newBuffers.popLong(), device.vkDevice()), this::freeBuffer);
+        return new MercuryCommandBuffer(device, new VkCommandBuffer(newBuffers.popLong(), device.vkDevice()), this::freeBuffer, gpuTimer);
     }
     
     @Override
@@ -1,9 +1,12 @@
 package graphics.cinnabar.core.mercury;
 
+import com.mojang.jtracy.Plot;
+import com.mojang.jtracy.TracyClient;
 import graphics.cinnabar.api.exceptions.VkOutOfDeviceMemory;
 import graphics.cinnabar.api.hg.*;
 import graphics.cinnabar.api.hg.enums.HgFormat;
 import graphics.cinnabar.lib.util.MathUtil;
+import graphics.cinnabar.loader.earlywindow.StartupTrace;
 import graphics.cinnabar.loader.earlywindow.VulkanStartup;
 import graphics.cinnabar.loader.earlywindow.vulkan.VulkanDebug;
 import it.unimi.dsi.fastutil.longs.LongLongImmutablePair;
@@ -15,6 +18,8 @@ import org.lwjgl.util.vma.VmaVulkanFunctions;
 import org.lwjgl.vulkan.*;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.function.Predicate;
 
@@ -29,8 +34,7 @@ import static org.lwjgl.vulkan.VK12.*;
 public class MercuryDevice implements HgDevice {
     
     private static final List<String> requiredDeviceExtensions = List.of(
-            VK_KHR_SYNCHRONIZATION_2_EXTENSION_NAME,
-            VK_KHR_SWAPCHAIN_EXTENSION_NAME
+            VK_KHR_SYNCHRONIZATION_2_EXTENSION_NAME
     );
     
     public final MercuryQueue graphicsQueue;
@@ -49,13 +53,26 @@ public class MercuryDevice implements HgDevice {
     public final boolean UMA;
     public final int allowedHostBufferMemoryBits;
     public final int allowedDeviceBufferMemoryBits;
+    // host-visible device-local memory, with ReBAR this is the main VRAM heap, without it it's the small (usually 256MB) BAR heap
+    public final int allowedMappableDeviceBufferMemoryBits;
+    public final boolean ReBAR;
+    private final int mappableDeviceHeap;
     
     @Nullable
     private AllocFailedCallback allocFailedCallback;
     
+    private final AtomicLongArray commandCounts = new AtomicLongArray(HgCommandBuffer.Command.values().length);
+    private final LongAdder submitCount = new LongAdder();
+    
+    @Nullable
+    private final MercuryGpuTimer gpuTimer;
+    // usage and budget per heap
+    @Nullable
+    private final Plot[] heapPlots;
+    
     public MercuryDevice(HgDevice.CreateInfo createInfo) {
         // TODO: the vulkan instance can be statically created
-        try (final var stack = memoryStack().push()) {
+        try (final var stack = memoryStack().push(); final var _ = StartupTrace.phase("Mercury instance")) {
             final var debugCreateInfo = VulkanDebug.getCreateInfo(stack, new VulkanDebug.MessageSeverity[]{VulkanDebug.MessageSeverity.ERROR, VulkanDebug.MessageSeverity.WARNING, VulkanDebug.MessageSeverity.INFO}, new VulkanDebug.MessageType[]{VulkanDebug.MessageType.GENERAL, VulkanDebug.MessageType.VALIDATION});
             final var instanceAndDebugCallback = VulkanStartup.createVkInstance(Mercury.VULKAN_VALIDATION, debugCreateInfo);
             vkInstance = instanceAndDebugCallback.instance();
@@ -68,6 +85,9 @@ public class MercuryDevice implements HgDevice {
         final var featureEnablers = createInfo.featureEnablers().clone();
         final var extensions = createInfo.requiredDeviceExtensions().clone();
         extensions.addAll(requiredDeviceExtensions);
+        if (!VulkanStartup.Config.offscreen) {
+            extensions.add(VK_KHR_SWAPCHAIN_EXTENSION_NAME);
+        }
         
         featureChainBuilders.add(MercuryDeviceStartup::allocFeatureChain);
         featureCheckers.add(MercuryDeviceStartup::hasAllRequiredFeatures);
@@ -87,7 +107,7 @@ public class MercuryDevice implements HgDevice {
             return true;
         };
         
-        try {
+        try (final var _ = StartupTrace.phase("Mercury physical device selection")) {
             vkPhysicalDevice = VulkanStartup.selectPhysicalDevice(vkInstance, featureChainBuilder, featureChecker, -1, enabledLayersAndInstanceExtensions, extensions);
         } catch (Exception e) {
             if (debugCallback != -1) {
@@ -98,7 +118,7 @@ public class MercuryDevice implements HgDevice {
         }
         
         final VulkanStartup.Device deviceAndQueues;
-        try (final var stack = MemoryStack.stackPush()) {
+        try (final var stack = MemoryStack.stackPush(); final var _ = StartupTrace.phase("Mercury device creation")) {
             
             final var deviceFeatures2 = VkPhysicalDeviceFeatures2.calloc(stack).sType$Default();
             featureChainBuilder.accept(stack, deviceFeatures2);
@@ -138,7 +158,7 @@ public class MercuryDevice implements HgDevice {
         
         properties = MercuryDeviceProperties.create(this);
         
-        try (final var stack = memoryStack().push()) {
+        try (final var stack = memoryStack().push(); final var _ = StartupTrace.phase("VMA allocator")) {
             
             final var vmaVulkanFunctions = VmaVulkanFunctions.calloc(stack);
             vmaVulkanFunctions.set(vkInstance, vkDevice);
@@ -177,6 +197,9 @@ public class MercuryDevice implements HgDevice {
                 }
                 allowedHostBufferMemoryBits = mappableTypes;
                 allowedDeviceBufferMemoryBits = mappableTypes;
+                allowedMappableDeviceBufferMemoryBits = mappableTypes;
+                ReBAR = true;
+                mappableDeviceHeap = 0;
             } else {
                 // non-UMA, probably
                 UMA = false;
@@ -205,12 +228,18 @@ public class MercuryDevice implements HgDevice {
                 
                 
                 int mappableDeviceTypes = 0;
+                int barTypes = 0;
+                int barHeap = -1;
                 int deviceTypes = 0;
                 int hostTypes = 0;
                 for (int i = 0; i < memoryProperties.memoryTypeCount(); i++) {
                     final var type = memoryProperties.memoryTypes(i);
                     if (type.heapIndex() == deviceHeap && (type.propertyFlags() & (hostVisibleCoherentDeviceLocal)) == hostVisibleCoherentDeviceLocal) {
                         mappableDeviceTypes |= 1 << i;
+                    } else if ((type.propertyFlags() & (hostVisibleCoherentDeviceLocal)) == hostVisibleCoherentDeviceLocal && (barHeap == -1 || barHeap == type.heapIndex())) {
+                        // the small BAR heap, only one of these is expected
+                        barHeap = type.heapIndex();
+                        barTypes |= 1 << i;
                     }
                     if (type.heapIndex() == deviceHeap && (type.propertyFlags() & (VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT)) == VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT) {
                         deviceTypes |= 1 << i;
@@ -220,16 +249,34 @@ public class MercuryDevice implements HgDevice {
                         hostTypes |= 1 << i;
                     }
                 }
-                // if there are mappable types, use those. not all GPUs will have them for the selected heap
-                allowedDeviceBufferMemoryBits = mappableDeviceTypes == 0 ? deviceTypes : mappableDeviceTypes;
+                // plain device buffers can go in any of the device local types, mappable ones are only used when asked for
+                // this keeps static data from eating the BAR when it's small, Hg3D decides what is worth putting there
+                allowedDeviceBufferMemoryBits = deviceTypes;
                 allowedHostBufferMemoryBits = hostTypes;
+                ReBAR = mappableDeviceTypes != 0;
+                allowedMappableDeviceBufferMemoryBits = ReBAR ? mappableDeviceTypes : barTypes;
+                mappableDeviceHeap = ReBAR ? deviceHeap : barHeap;
             }
             
+            if (TracyClient.isAvailable()) {
+                heapPlots = new Plot[heapCount * 2];
+                for (int i = 0; i < heapCount; i++) {
+                    heapPlots[i * 2] = TracyClient.createPlot("Mercury heap " + i + " usage");
+                    heapPlots[i * 2 + 1] = TracyClient.createPlot("Mercury heap " + i + " budget");
+                }
+            } else {
+                heapPlots = null;
+            }
         }
+        
+        gpuTimer = Mercury.GPU_TIMESTAMPS ? MercuryGpuTimer.create(this) : null;
     }
     
     @Override
     public void destroy() {
+        if (gpuTimer != null) {
+            gpuTimer.destroy();
+        }
         vmaDestroyAllocator(vmaAllocator);
         vkDestroyDevice(vkDevice, null);
         if (debugCallback != -1) {
@@ -246,8 +293,17 @@ public class MercuryDevice implements HgDevice {
         return vmaAllocator;
     }
     
+    public List<String> enabledDeviceExtensions() {
+        return enabledDeviceExtensions;
+    }
+    
+    @Nullable
+    public MercuryGpuTimer gpuTimer() {
+        return gpuTimer;
+    }
+    
     @Override
-    public Properties properties() {
+    public MercuryDeviceProperties properties() {
         return properties;
     }
     
@@ -340,6 +396,9 @@ public class MercuryDevice implements HgDevice {
     
     @Override
     public MercurySurface createSurface(long glfwWindowHandle) {
+        if (VulkanStartup.Config.offscreen) {
+            throw new IllegalStateException("No surfaces in offscreen mode");
+        }
         return new MercurySurface(this, glfwWindowHandle);
     }
     
@@ -381,11 +440,50 @@ public class MercuryDevice implements HgDevice {
                 lines.add(String.format("Heap %d usage: %s/%s/%s", i, MathUtil.byteString(stats.statistics().allocationBytes()), MathUtil.byteString(stats.statistics().blockBytes()), MathUtil.byteString(stats.budget())));
             }
         }
+        if (gpuTimer != null) {
+            gpuTimer.addDebugText(lines);
+        }
     }
     
     @Override
     public void markFame() {
         vmaSetCurrentFrameIndex(vmaAllocator, currentVmaFrame++);
+        if (gpuTimer != null) {
+            gpuTimer.endFrame();
+        }
+        if (heapPlots != null) {
+            try (final var stack = memoryStack().push()) {
+                final var stats = VmaBudget.calloc(VK_MAX_MEMORY_HEAPS, stack);
+                vmaGetHeapBudgets(vmaAllocator, stats);
+                for (int i = 0; i < heapPlots.length / 2; i++) {
+                    stats.position(i);
+                    heapPlots[i * 2].setValue(stats.usage());
+                    heapPlots[i * 2 + 1].setValue(stats.budget());
+                }
+            }
+        }
+    }
+    
+    void commandsSubmitted(long[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                commandCounts.addAndGet(i, counts[i]);
+            }
+        }
+    }
+    
+    void submitted() {
+        submitCount.increment();
+    }
+    
+    @Override
+    public long commandCount(HgCommandBuffer.Command command) {
+        return commandCounts.get(command.ordinal());
+    }
+    
+    @Override
+    public long submitCount() {
+        return submitCount.sum();
     }
     
     @Override
@@ -413,6 +511,25 @@ public class MercuryDevice implements HgDevice {
         return UMA;
     }
     
+    @Override
+    public boolean ReBAR() {
+        return ReBAR;
+    }
+    
+    @Override
+    public LongLongImmutablePair mappableDeviceMemoryStats() {
+        if (mappableDeviceHeap == -1) {
+            // no BAR at all
+            return new LongLongImmutablePair(0, 0);
+        }
+        try (final var stack = memoryStack().push()) {
+            final var stats = VmaBudget.calloc(VK_MAX_MEMORY_HEAPS, stack);
+            vmaGetHeapBudgets(vmaAllocator, stats);
+            stats.position(mappableDeviceHeap);
+            return new LongLongImmutablePair(stats.statistics().allocationBytes(), stats.budget());
+        }
+    }
+    
     @Override
     public LongLongImmutablePair deviceLocalMemoryStats() {
         try (final var stack = memoryStack().push()) {
@@ -11,7 +11,8 @@ public record MercuryDeviceProperties(
         String apiVersion, String driverVersion, String renderer, String vendor,
         long uboAlignment, int maxTexture2dSize,
         long maxMemoryAllocSize,
-        float maxAnisotropy
+        float maxAnisotropy,
+        int maxDynamicUniformBuffers
 ) implements HgDevice.Properties {
     public static MercuryDeviceProperties create(MercuryDevice device) {
         try (final var stack = MEMORY_STACK.get().push()) {
@@ -39,7 +40,8 @@ public record MercuryDeviceProperties(
                     apiVersionUsed, driverVersion, renderer, vendorString,
                     limits.minUniformBufferOffsetAlignment(), limits.maxImageDimension2D(),
                     vk11Props.maxMemoryAllocationSize(),
-                    limits.maxSamplerAnisotropy()
+                    limits.maxSamplerAnisotropy(),
+                    limits.maxDescriptorSetUniformBuffersDynamic()
             );
         }
     }
@@ -63,6 +63,12 @@ public class MercuryDeviceStartup {
         physicalDeviceFeatures11.shaderDrawParameters(true);
         
         physicalDeviceFeatures12.timelineSemaphore(true);
+        // optional, only the GPU timer needs it
+        @Nullable
+        final var supportedFeatures12 = findPNextStruct(deviceFeatures.address(), VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_VULKAN_1_2_FEATURES, VkPhysicalDeviceVulkan12Features::create);
+        if (supportedFeatures12 != null && supportedFeatures12.hostQueryReset()) {
+            physicalDeviceFeatures12.hostQueryReset(true);
+        }
         
         sync2Features.synchronization2(true);
     }
@@ -0,0 +1,274 @@
+package graphics.cinnabar.core.mercury;
+
+import com.mojang.jtracy.Plot;
+import com.mojang.jtracy.TracyClient;
+import graphics.cinnabar.api.annotations.ThreadSafety;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.vulkan.*;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static graphics.cinnabar.core.mercury.Mercury.MEMORY_STACK;
+import static graphics.cinnabar.core.mercury.Mercury.MERCURY_LOG;
+import static org.lwjgl.vulkan.EXTCalibratedTimestamps.*;
+import static org.lwjgl.vulkan.VK12.*;
+
+// GPU time, from timestamp queries written around render passes, copies, and blits on the graphics queue
+// read back when the frame's query slot comes around again, by then the GPU is long done with it
+// jtracy has no GPU context API, so this goes to Tracy as plots rather than GPU zones, and to F3
+// with VK_EXT_calibrated_timestamps, GPU ticks are mapped to System.nanoTime, which gives how far behind the CPU the GPU finishes a frame
+public class MercuryGpuTimer {
+    
+    public enum Scope {
+        RENDER_PASS,
+        COPY,
+        BLIT,
+        ;
+        
+        private static final Scope[] VALUES = values();
+    }
+    
+    // more than can ever be in flight, a slot is always finished when it's reused
+    private static final int FRAME_SLOTS = 4;
+    private static final int MAX_SCOPES_PER_FRAME = 4096;
+    private static final int RECALIBRATE_FRAMES = 256;
+    
+    private final MercuryDevice device;
+    private final long[] queryPools = new long[FRAME_SLOTS];
+    private final byte[][] scopeKinds = new byte[FRAME_SLOTS][MAX_SCOPES_PER_FRAME];
+    private final int[] scopeCounts = new int[FRAME_SLOTS];
+    private final long[] frameEndNanos = new long[FRAME_SLOTS];
+    // slot in the upper half, scope index in the lower, so a recording thread racing markFame can't get one slot's index into another slot's pool
+    private final AtomicLong nextScope = new AtomicLong();
+    private int currentSlot = 0;
+    private long frame = 0;
+    
+    private final double nanosPerTick;
+    private final int validBits;
+    private final boolean calibrated;
+    private long calibrationTicks;
+    private long calibrationNanos;
+    
+    private final double[] scopeNanos = new double[Scope.VALUES.length];
+    private double frameNanos;
+    private double latencyNanos = Double.NaN;
+    private long droppedScopes;
+    
+    @Nullable
+    private final Plot[] scopePlots;
+    @Nullable
+    private final Plot framePlot;
+    @Nullable
+    private final Plot latencyPlot;
+    
+    private MercuryGpuTimer(MercuryDevice device, double nanosPerTick, int validBits, boolean calibrated) {
+        this.device = device;
+        this.nanosPerTick = nanosPerTick;
+        this.validBits = validBits;
+        this.calibrated = calibrated;
+        try (final var stack = MEMORY_STACK.get().push()) {
+            final var createInfo = VkQueryPoolCreateInfo.calloc(stack).sType$Default();
+            createInfo.queryType(VK_QUERY_TYPE_TIMESTAMP);
+            createInfo.queryCount(MAX_SCOPES_PER_FRAME * 2);
+            final var handlePtr = stack.longs(0);
+            for (int i = 0; i < FRAME_SLOTS; i++) {
+                vkCreateQueryPool(device.vkDevice(), createInfo, null, handlePtr);
+                queryPools[i] = handlePtr.get(0);
+                vkResetQueryPool(device.vkDevice(), queryPools[i], 0, MAX_SCOPES_PER_FRAME * 2);
+            }
+        }
+        if (calibrated) {
+            calibrate();
+        }
+        if (TracyClient.isAvailable()) {
+            scopePlots = new Plot[Scope.VALUES.length];
+            for (final var scope : Scope.VALUES) {
+                scopePlots[scope.ordinal()] = TracyClient.createPlot("GPU " + scope.name().toLowerCase().replace('_', ' ') + " ms");
+            }
+            framePlot = TracyClient.createPlot("GPU frame ms");
+            latencyPlot = calibrated ? TracyClient.createPlot("GPU latency ms") : null;
+        } else {
+            scopePlots = null;
+            framePlot = null;
+            latencyPlot = null;
+        }
+    }
+    
+    // null if the graphics queue can't do timestamps, or host query reset isn't there
+    @Nullable
+    static MercuryGpuTimer create(MercuryDevice device) {
+        try (final var stack = MEMORY_STACK.get().push()) {
+            final var physicalDevice = device.vkDevice().getPhysicalDevice();
+            final var features12 = VkPhysicalDeviceVulkan12Features.calloc(stack).sType$Default();
+            final var features2 = VkPhysicalDeviceFeatures2.calloc(stack).sType$Default().pNext(features12);
+            vkGetPhysicalDeviceFeatures2(physicalDevice, features2);
+            if (!features12.hostQueryReset()) {
+                MERCURY_LOG.warn("GPU timestamps requested, but host query reset isn't supported");
+                return null;
+            }
+            
+            final var countPtr = stack.ints(0);
+            vkGetPhysicalDeviceQueueFamilyProperties(physicalDevice, countPtr, null);
+            final var families = VkQueueFamilyProperties.calloc(countPtr.get(0), stack);
+            vkGetPhysicalDeviceQueueFamilyProperties(physicalDevice, countPtr, families);
+            final var validBits = families.get(device.graphicsQueue.familyIndex()).timestampValidBits();
+            final var properties = VkPhysicalDeviceProperties.calloc(stack);
+            vkGetPhysicalDeviceProperties(physicalDevice, properties);
+            final var timestampPeriod = properties.limits().timestampPeriod();
+            if (validBits == 0 || timestampPeriod == 0) {
+                MERCURY_LOG.warn("GPU timestamps requested, but the graphics queue doesn't support them");
+                return null;
+            }
+            
+            boolean calibrated = false;
+            if (device.enabledDeviceExtensions().contains(VK_EXT_CALIBRATED_TIMESTAMPS_EXTENSION_NAME)) {
+                vkGetPhysicalDeviceCalibrateableTimeDomainsEXT(physicalDevice, countPtr, null);
+                final var domains = stack.mallocInt(countPtr.get(0));
+                vkGetPhysicalDeviceCalibrateableTimeDomainsEXT(physicalDevice, countPtr, domains);
+                for (int i = 0; i < domains.capacity(); i++) {
+                    if (domains.get(i) == VK_TIME_DOMAIN_DEVICE_EXT) {
+                        calibrated = true;
+                        break;
+                    }
+                }
+            }
+            return new MercuryGpuTimer(device, timestampPeriod, validBits, calibrated);
+        }
+    }
+    
+    void destroy() {
+        for (final var queryPool : queryPools) {
+            vkDestroyQueryPool(device.vkDevice(), queryPool, null);
+        }
+    }
+    
+    // returns the scope to end, or -1 if this frame is out of queries
+    @ThreadSafety.Many
+    long beginScope(VkCommandBuffer commandBuffer, Scope scope) {
+        final var allocation = nextScope.getAndIncrement();
+        final var slot = (int) (allocation >>> 32);
+        final var index = (int) allocation;
+        if (index >= MAX_SCOPES_PER_FRAME) {
+            return -1;
+        }
+        scopeKinds[slot][index] = (byte) scope.ordinal();
+        vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, queryPools[slot], index * 2);
+        return allocation;
+    }
+    
+    @ThreadSafety.Many
+    void endScope(VkCommandBuffer commandBuffer, long scope) {
+        if (scope == -1) {
+            return;
+        }
+        vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, queryPools[(int) (scope >>> 32)], (int) scope * 2 + 1);
+    }
+    
+    @ThreadSafety.MainGraphics
+    void endFrame() {
+        final var nextSlot = (currentSlot + 1) % FRAME_SLOTS;
+        readResults(nextSlot);
+        vkResetQueryPool(device.vkDevice(), queryPools[nextSlot], 0, MAX_SCOPES_PER_FRAME * 2);
+        
+        final var closed = nextScope.getAndSet((long) nextSlot << 32);
+        final var used = (int) closed;
+        scopeCounts[currentSlot] = Math.min(used, MAX_SCOPES_PER_FRAME);
+        droppedScopes = Math.max(0, used - MAX_SCOPES_PER_FRAME);
+        frameEndNanos[currentSlot] = System.nanoTime();
+        currentSlot = nextSlot;
+        
+        if (calibrated && ++frame % RECALIBRATE_FRAMES == 0) {
+            // the clocks drift apart slowly
+            calibrate();
+        }
+    }
+    
+    private void calibrate() {
+        try (final var stack = MEMORY_STACK.get().push()) {
+            final var info = VkCalibratedTimestampInfoEXT.calloc(1, stack).sType$Default();
+            info.timeDomain(VK_TIME_DOMAIN_DEVICE_EXT);
+            final var timestamp = stack.longs(0);
+            final var deviation = stack.longs(0);
+            // only the device domain is asked for, and bracketed with nanoTime, so this doesn't care which host clock nanoTime uses
+            final var before = System.nanoTime();
+            vkGetCalibratedTimestampsEXT(device.vkDevice(), info, timestamp, deviation);
+            final var after = System.nanoTime();
+            calibrationTicks = timestamp.get(0);
+            calibrationNanos = before + (after - before) / 2;
+        }
+    }
+    
+    private void readResults(int slot) {
+        final var count = scopeCounts[slot];
+        if (count == 0) {
+            return;
+        }
+        scopeCounts[slot] = 0;
+        try (final var stack = MEMORY_STACK.get().push()) {
+            // each query is its value then its availability
+            final var results = stack.mallocLong(count * 4);
+            // VK_NOT_READY is fine, scopes that never got submitted are skipped
+            vkGetQueryPoolResults(device.vkDevice(), queryPools[slot], 0, count * 2, results, 16, VK_QUERY_RESULT_64_BIT | VK_QUERY_RESULT_WITH_AVAILABILITY_BIT);
+            
+            final var kinds = scopeKinds[slot];
+            final var totals = new long[Scope.VALUES.length];
+            boolean any = false;
+            long base = 0;
+            long first = 0;
+            long last = 0;
+            for (int i = 0; i < count; i++) {
+                if (results.get(i * 4 + 1) == 0 || results.get(i * 4 + 3) == 0) {
+                    continue;
+                }
+                final var begin = results.get(i * 4);
+                final var end = results.get(i * 4 + 2);
+                totals[kinds[i]] += ticksBetween(begin, end);
+                if (!any) {
+                    any = true;
+                    base = begin;
+                }
+                first = Math.min(first, ticksBetween(base, begin));
+                last = Math.max(last, ticksBetween(base, end));
+            }
+            if (!any) {
+                return;
+            }
+            
+            for (int i = 0; i < totals.length; i++) {
+                scopeNanos[i] = totals[i] * nanosPerTick;
+            }
+            frameNanos = (last - first) * nanosPerTick;
+            if (calibrated) {
+                final var gpuEndNanos = calibrationNanos + (ticksBetween(calibrationTicks, base) + last) * nanosPerTick;
+                latencyNanos = gpuEndNanos - frameEndNanos[slot];
+            }
+        }
+        
+        if (scopePlots != null) {
+            for (int i = 0; i < scopePlots.length; i++) {
+                scopePlots[i].setValue(scopeNanos[i] / 1_000_000.0);
+            }
+            framePlot.setValue(frameNanos / 1_000_000.0);
+            if (latencyPlot != null) {
+                latencyPlot.setValue(latencyNanos / 1_000_000.0);
+            }
+        }
+    }
+    
+    // signed, timestamps only have validBits bits and can wrap
+    private long ticksBetween(long from, long to) {
+        final var shift = 64 - validBits;
+        return ((to - from) << shift) >> shift;
+    }
+    
+    void addDebugText(List<String> lines) {
+        lines.add(String.format("GPU frame: %.2fms, render passes %.2fms, copies %.2fms, blits %.2fms", frameNanos / 1_000_000.0, scopeNanos[Scope.RENDER_PASS.ordinal()] / 1_000_000.0, scopeNanos[Scope.COPY.ordinal()] / 1_000_000.0, scopeNanos[Scope.BLIT.ordinal()] / 1_000_000.0));
+        if (calibrated) {
+            lines.add(String.format("GPU latency: %.2fms", latencyNanos / 1_000_000.0));
+        }
+        if (droppedScopes != 0) {
+            lines.add(String.format("GPU timestamps: %d scopes over the per-frame limit", droppedScopes));
+        }
+    }
+}
@@ -4,15 +4,19 @@ import graphics.cinnabar.api.hg.HgCommandBuffer;
 import graphics.cinnabar.api.hg.HgQueue;
 import graphics.cinnabar.api.hg.HgSemaphore;
 import graphics.cinnabar.api.memory.GrowingMemoryStack;
+import graphics.cinnabar.lib.datastructures.RingQueue;
 import it.unimi.dsi.fastutil.longs.LongIntImmutablePair;
 import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import org.jetbrains.annotations.Nullable;
 import org.lwjgl.vulkan.VkCommandBufferSubmitInfo;
 import org.lwjgl.vulkan.VkQueue;
 import org.lwjgl.vulkan.VkSemaphoreSubmitInfo;
 import org.lwjgl.vulkan.VkSubmitInfo2;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static graphics.cinnabar.api.exceptions.VkException.checkVkCode;
 import static org.lwjgl.vulkan.KHRSynchronization2.vkQueueSubmit2KHR;
 import static org.lwjgl.vulkan.VK10.*;
 
@@ -20,14 +24,22 @@ public class MercuryQueue extends MercuryObject<HgQueue> implements HgQueue {
     
     private final VkQueue vkQueue;
     private final int queueFamily;
+    // submitter only
     private final GrowingMemoryStack stack = new GrowingMemoryStack();
     
+    // closed submissions from any thread get pushed here, whichever thread finds nobody else submitting drains everything pending into a single vkQueueSubmit2KHR
+    // everyone else waits for their batch to go out, so close() still only returns once its submit has been made
+    private static final int MAX_BATCHES_PER_SUBMIT = 64;
+    private final RingQueue<PendingSubmit> pendingSubmits = new RingQueue<>(6);
+    private final AtomicBoolean submitting = new AtomicBoolean();
+    private final ReferenceArrayList<PendingSubmit> drainedSubmits = new ReferenceArrayList<>();
+    
     MercuryQueue(MercuryDevice device, VkQueue vkQueue, int queueFamily) {
         super(device);
         this.vkQueue = vkQueue;
         this.queueFamily = queueFamily;
     }
-
+    
     public int familyIndex() {
         return queueFamily;
     }
@@ -52,7 +64,7 @@ public class MercuryQueue extends MercuryObject<HgQueue> implements HgQueue {
                 }
                 currentStage.waits.add(new SemaphoreOp((MercurySemaphore) semaphore, value, stages));
             }
-
+            
             @Override
             public void execute(HgCommandBuffer commandBuffer) {
                 if (!currentStage.signals.isEmpty()) {
@@ -92,61 +104,140 @@ public class MercuryQueue extends MercuryObject<HgQueue> implements HgQueue {
             @Override
             public void close() {
                 stages.add(currentStage);
-                synchronized (MercuryQueue.this) {
-                    try (final var stack = MercuryQueue.this.stack.push()) {
-                        final var submits = VkSubmitInfo2.calloc(stages.size(), stack);
-                        for (int i = 0; i < stages.size(); i++) {
-                            final var stage = stages.get(i);
-                            submits.position(i).sType$Default();
-                            if (!stage.waits.isEmpty()) {
-                                final var waits = VkSemaphoreSubmitInfo.calloc(stage.waits.size(), stack);
-                                submits.pWaitSemaphoreInfos(waits);
-                                for (int j = 0; j < stage.waits.size(); j++) {
-                                    final var wait = stage.waits.get(j);
-                                    waits.position(j).sType$Default();
-                                    waits.semaphore(wait.semaphore.vkSemaphore());
-                                    waits.value(wait.value);
-                                    waits.stageMask(wait.stages);
-                                }
-                            }
-                            if (!stage.commandBuffers.isEmpty()) {
-                                final var buffers = VkCommandBufferSubmitInfo.calloc(stage.commandBuffers.size(), stack);
-                                submits.pCommandBufferInfos(buffers);
-                                for (int j = 0; j < stage.commandBuffers.size(); j++) {
-                                    final var buffer = stage.commandBuffers.get(j);
-                                    buffers.position(j).sType$Default();
-                                    buffers.commandBuffer(buffer.vkCommandBuffer());
-                                }
-                            }
-                            if (!stage.signals.isEmpty()) {
-                                final var signals = VkSemaphoreSubmitInfo.calloc(stage.signals.size(), stack);
-                                submits.pSignalSemaphoreInfos(signals);
-                                for (int j = 0; j < stage.signals.size(); j++) {
-                                    final var signal = stage.signals.get(j);
-                                    signals.position(j).sType$Default();
-                                    signals.semaphore(signal.semaphore.vkSemaphore());
-                                    signals.value(signal.value);
-                                    signals.stageMask(signal.stages);
-                                }
+                submitAndWait(new PendingSubmit(stages));
+            }
+        };
+    }
+    
+    private void submitAndWait(PendingSubmit submit) {
+        pendingSubmits.forceEnqueue(submit);
+        int spins = 0;
+        while (!submit.submitted) {
+            // the previous submitter may have finished before this was enqueued, so this has to keep trying to take over rather than just wait
+            if (!submitting.get() && submitting.compareAndSet(false, true)) {
+                try {
+                    drainPendingSubmits();
+                } finally {
+                    submitting.set(false);
+                }
+                continue;
+            }
+            if (spins++ < 64) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        // whoever drained this batch may have been another thread, the failure is thrown in every thread that had a batch in that submit
+        @Nullable
+        final var failure = submit.failure;
+        if (failure instanceof RuntimeException exception) {
+            throw exception;
+        }
+        if (failure instanceof Error error) {
+            throw error;
+        }
+    }
+    
+    private void drainPendingSubmits() {
+        while (pendingSubmits.popIndex() != pendingSubmits.pushIndex()) {
+            drainedSubmits.clear();
+            if (pendingSubmits.dequeueMany(drainedSubmits, MAX_BATCHES_PER_SUBMIT) == 0) {
+                // someone is mid enqueue, it'll be there momentarily
+                continue;
+            }
+            @Nullable
+            Throwable failure = null;
+            try {
+                vkSubmit(drainedSubmits);
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+            for (int i = 0; i < drainedSubmits.size(); i++) {
+                final var batch = drainedSubmits.get(i);
+                // failure is written first, submitted is what the producer spins on
+                batch.failure = failure;
+                batch.submitted = true;
+            }
+        }
+    }
+    
+    // every batch's stages go into one call, in order, which is the same as submitting them one after another
+    private void vkSubmit(List<PendingSubmit> batches) {
+        int submitCount = 0;
+        for (int i = 0; i < batches.size(); i++) {
+            submitCount += batches.get(i).stages.size();
+        }
+        try (final var stack = this.stack.push()) {
+            final var submits = VkSubmitInfo2.calloc(submitCount, stack);
+            int submitIndex = 0;
+            for (int b = 0; b < batches.size(); b++) {
+                final var stages = batches.get(b).stages;
+                for (int i = 0; i < stages.size(); i++) {
+                    final var stage = stages.get(i);
+                    submits.position(submitIndex++).sType$Default();
+                    if (!stage.waits.isEmpty()) {
+                        final var waits = VkSemaphoreSubmitInfo.calloc(stage.waits.size(), stack);
+                        submits.pWaitSemaphoreInfos(waits);
+                        for (int j = 0; j < stage.waits.size(); j++) {
+                            final var wait = stage.waits.get(j);
+                            waits.position(j).sType$Default();
+                            waits.semaphore(wait.semaphore.vkSemaphore());
+                            waits.value(wait.value);
+                            waits.stageMask(wait.stages);
+                        }
+                    }
+                    if (!stage.commandBuffers.isEmpty()) {
+                        final var buffers = VkCommandBufferSubmitInfo.calloc(stage.commandBuffers.size(), stack);
+                        submits.pCommandBufferInfos(buffers);
+                        for (int j = 0; j < stage.commandBuffers.size(); j++) {
+                            final var buffer = stage.commandBuffers.get(j);
+                            buffers.position(j).sType$Default();
+                            buffers.commandBuffer(buffer.vkCommandBuffer());
+                            if (Mercury.COUNT_COMMANDS) {
+                                device.commandsSubmitted(buffer.commandCounts());
                             }
                         }
-                        submits.position(0);
-                        synchronized (vkQueue) {
-                            vkQueueSubmit2KHR(vkQueue, submits, VK_NULL_HANDLE);
+                    }
+                    if (!stage.signals.isEmpty()) {
+                        final var signals = VkSemaphoreSubmitInfo.calloc(stage.signals.size(), stack);
+                        submits.pSignalSemaphoreInfos(signals);
+                        for (int j = 0; j < stage.signals.size(); j++) {
+                            final var signal = stage.signals.get(j);
+                            signals.position(j).sType$Default();
+                            signals.semaphore(signal.semaphore.vkSemaphore());
+                            signals.value(signal.value);
+                            signals.stageMask(signal.stages);
                         }
                     }
                 }
             }
-            
-            record SemaphoreOp(MercurySemaphore semaphore, long value, long stages) {
-            }
-            
-            record SubmitStage(List<SemaphoreOp> waits, List<MercuryCommandBuffer> commandBuffers, List<SemaphoreOp> signals) {
-                public SubmitStage() {
-                    this(new ReferenceArrayList<>(), new ReferenceArrayList<>(), new ReferenceArrayList<>());
-                }
+            submits.position(0);
+            synchronized (vkQueue) {
+                checkVkCode(vkQueueSubmit2KHR(vkQueue, submits, VK_NULL_HANDLE));
             }
-        };
+            device.submitted();
+        }
+    }
+    
+    private static final class PendingSubmit {
+        private final List<SubmitStage> stages;
+        @Nullable
+        private volatile Throwable failure = null;
+        private volatile boolean submitted = false;
+        
+        private PendingSubmit(List<SubmitStage> stages) {
+            this.stages = stages;
+        }
+    }
+    
+    private record SemaphoreOp(MercurySemaphore semaphore, long value, long stages) {
+    }
+    
+    private record SubmitStage(List<SemaphoreOp> waits, List<MercuryCommandBuffer> commandBuffers, List<SemaphoreOp> signals) {
+        public SubmitStage() {
+            this(new ReferenceArrayList<>(), new ReferenceArrayList<>(), new ReferenceArrayList<>());
+        }
     }
     
     @Override
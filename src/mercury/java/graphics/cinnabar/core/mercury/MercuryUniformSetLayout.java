@@ -1,11 +1,14 @@
 package graphics.cinnabar.core.mercury;
 
 import graphics.cinnabar.api.hg.HgUniformSet;
+import graphics.cinnabar.api.hg.enums.HgUniformType;
 import it.unimi.dsi.fastutil.longs.LongIntImmutablePair;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
 import it.unimi.dsi.fastutil.objects.ReferenceImmutableList;
 import org.lwjgl.vulkan.VkDescriptorSetLayoutBinding;
 import org.lwjgl.vulkan.VkDescriptorSetLayoutCreateInfo;
 
+import java.util.Comparator;
 import java.util.List;
 
 import static graphics.cinnabar.api.exceptions.VkException.checkVkCode;
@@ -17,13 +20,25 @@ public class MercuryUniformSetLayout extends MercuryObject<HgUniformSet.Layout>
     
     public MercuryUniformSetLayout(MercuryDevice device, HgUniformSet.Layout.CreateInfo createInfo) {
         super(device);
-        this.bindings = new ReferenceImmutableList<>(createInfo.bindings());
+        // UBOs are promoted to dynamic so that a change in offset within the same buffer only needs a rebind, not a new set
+        // dynamic offsets are given in binding order, so keep the list sorted by location to make that order obvious
+        final var sortedBindings = new ReferenceArrayList<>(createInfo.bindings());
+        sortedBindings.sort(Comparator.comparingInt(Binding::location));
+        int dynamicBuffersLeft = device.properties().maxDynamicUniformBuffers();
+        for (int i = 0; i < sortedBindings.size(); i++) {
+            final var binding = sortedBindings.get(i);
+            if (binding.type() == HgUniformType.UNIFORM_BUFFER && binding.count() == 1 && dynamicBuffersLeft > 0) {
+                dynamicBuffersLeft--;
+                sortedBindings.set(i, new Binding(binding.name(), binding.location(), HgUniformType.UNIFORM_BUFFER_DYNAMIC, binding.count(), binding.updateAfterBind(), binding.variableCount(), binding.size()));
+            }
+        }
+        this.bindings = new ReferenceImmutableList<>(sortedBindings);
         
         try (final var stack = memoryStack().push()) {
             
-            final var vkBindings = VkDescriptorSetLayoutBinding.calloc(createInfo.bindings().size(), stack);
-            for (int i = 0; i < createInfo.bindings().size(); i++) {
-                final var binding = createInfo.bindings().get(i);
+            final var vkBindings = VkDescriptorSetLayoutBinding.calloc(bindings.size(), stack);
+            for (int i = 0; i < bindings.size(); i++) {
+                final var binding = bindings.get(i);
                 vkBindings.position(i);
                 vkBindings.binding(binding.location());
                 vkBindings.descriptorType(MercuryConst.vkDescriptorType(binding.type()));
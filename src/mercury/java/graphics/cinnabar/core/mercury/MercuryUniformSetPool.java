@@ -45,13 +45,7 @@ public class MercuryUniformSetPool extends MercuryObject<HgUniformSet.Pool> impl
         }
         poolSize = VkDescriptorPoolSize.calloc(countsMap.size());
         for (Int2IntMap.Entry entry : countsMap.int2IntEntrySet()) {
-            final var vkUniformType = switch (HgUniformType.values()[entry.getIntKey()]) {
-                case COMBINED_IMAGE_SAMPLER -> VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER;
-                case UNIFORM_TEXEL_BUFFER -> VK_DESCRIPTOR_TYPE_UNIFORM_TEXEL_BUFFER;
-                case UNIFORM_BUFFER -> VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER;
-                case STORAGE_BUFFER -> VK_DESCRIPTOR_TYPE_STORAGE_BUFFER;
-            };
-            poolSize.type(vkUniformType);
+            poolSize.type(MercuryConst.vkDescriptorType(HgUniformType.values()[entry.getIntKey()]));
             poolSize.descriptorCount(entry.getIntValue() * VK_POOL_SIZE);
             poolSize.position(poolSize.position() + 1);
         }